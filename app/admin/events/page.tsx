@@ -6,6 +6,8 @@ type FunnelStep = {
   eventType: string;
   events: number;
   conversionFromPrevious: number | null;
+  uniqueSessions?: number;
+  uniqueUsers?: number;
 };
 
 type FunnelPayload = {
@@ -22,6 +24,8 @@ type TopProduct = {
   purchases: number;
   viewToCartConversion: number;
   cartToPurchaseConversion: number;
+  uniqueSessions?: number;
+  uniqueUsers?: number;
 };
 
 type TopBrand = {
@@ -296,6 +300,9 @@ export default function AdminEventsAnalyticsPage() {
             <div className="mt-1 text-xs text-black/45">
               Конверсия от прошлого шага: {formatPercent(step.conversionFromPrevious)}
             </div>
+            <div className="mt-1 text-xs text-black/45">
+              ≈ {formatNumber(step.uniqueUsers ?? 0)} польз. · {formatNumber(step.uniqueSessions ?? 0)} сессий
+            </div>
           </div>
         ))}
       </div>
@@ -502,6 +509,7 @@ export default function AdminEventsAnalyticsPage() {
                   <th className="px-2 py-2 font-medium">Покупки</th>
                   <th className="px-2 py-2 font-medium">View → Cart</th>
                   <th className="px-2 py-2 font-medium">Cart → Purchase</th>
+                  <th className="px-2 py-2 font-medium">≈ Пользователи</th>
                 </tr>
               </thead>
               <tbody>
@@ -513,6 +521,7 @@ export default function AdminEventsAnalyticsPage() {
                     <td className="px-2 py-2">{formatNumber(item.purchases)}</td>
                     <td className="px-2 py-2">{formatPercent(item.viewToCartConversion)}</td>
                     <td className="px-2 py-2">{formatPercent(item.cartToPurchaseConversion)}</td>
+                    <td className="px-2 py-2">{formatNumber(item.uniqueUsers ?? 0)}</td>
                   </tr>
                 ))}
               </tbody>
@@ -18,28 +18,38 @@ function buildServiceUrl(path: string): string | null {
   return new URL(path, base.endsWith("/") ? base : `${base}/`).toString();
 }
 
+// /api/v1/events/batch is capped at 500 events; larger arrays go through the NDJSON stream endpoint.
+const MAX_JSON_BATCH = 500;
+
 export async function emitServerEvents(
   payload: ServerTrackEventPayload | ServerTrackEventPayload[]
 ) {
   const apiKey = process.env.EVENTS_SERVICE_API_KEY;
+  const stream = Array.isArray(payload) && payload.length > MAX_JSON_BATCH;
   const url = buildServiceUrl(
-    Array.isArray(payload) ? "/api/v1/events/batch" : "/api/v1/events"
+    stream
+      ? "/api/v1/events/stream"
+      : Array.isArray(payload)
+        ? "/api/v1/events/batch"
+        : "/api/v1/events"
   );
 
   if (!apiKey || !url) {
     return false;
   }
 
-  const body = Array.isArray(payload) ? { events: payload } : payload;
+  const body = stream
+    ? (payload as ServerTrackEventPayload[]).map((event) => JSON.stringify(event)).join("\n")
+    : JSON.stringify(Array.isArray(payload) ? { events: payload } : payload);
 
   try {
     const upstream = await fetch(url, {
       method: "POST",
       headers: {
-        "Content-Type": "application/json",
+        "Content-Type": stream ? "application/x-ndjson" : "application/json",
         "X-Events-Api-Key": apiKey,
       },
-      body: JSON.stringify(body),
+      body,
       cache: "no-store",
       signal: AbortSignal.timeout(3000),
     });
@@ -0,0 +1,209 @@
+package com.projectx.analytics.aggregation.service;
+
+import com.projectx.analytics.aggregation.model.AggregatedBucket;
+import com.projectx.analytics.aggregation.model.BucketKey;
+import com.projectx.analytics.aggregation.repository.AggregationRepository;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.analytics.cache.QueryResultCache;
+import com.projectx.analytics.analytics.cache.RecommendationCache;
+import com.projectx.analytics.analytics.cube.MetricsCube;
+import com.projectx.analytics.analytics.repository.ViewerProfileRepository;
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.repository.EventWriteHorizonRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-JVM part of one incremental aggregation run: window bounds, merging the ingested deltas into
+ * the stored buckets (sketch unions and estimates) and collecting the days to roll up. The
+ * repository is an in-memory stand-in, so JDBC time is excluded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventAggregationBenchmark {
+
+    private static final String[] EVENT_TYPES = {"PRODUCT_VIEW", "ADD_TO_CART", "PURCHASE", "FAVORITE_ADD"};
+
+    @Param({"500", "5000"})
+    public int buckets;
+
+    private EventAggregationService service;
+
+    @Setup
+    public void setUp() {
+        Instant hour = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        List<AggregatedBucket> deltas = new ArrayList<>(buckets);
+        List<AggregatedBucket> stored = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            Instant bucketStart = hour.minus(i % 6, ChronoUnit.HOURS);
+            String eventType = EVENT_TYPES[i % EVENT_TYPES.length];
+            int productKey = i / EVENT_TYPES.length;
+            deltas.add(bucket(bucketStart, eventType, productKey, 20, i));
+            stored.add(bucket(bucketStart, eventType, productKey, 400, i + 1_000_000));
+        }
+
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getAggregation().setMode(AnalyticsProperties.AggregationMode.INCREMENTAL);
+        properties.getAggregation().setLagSeconds(0);
+        service = new EventAggregationService(
+                new InMemoryAggregationRepository(deltas, stored),
+                new NoOpWriteHorizonRepository(),
+                properties,
+                new MetricsCube(null, properties),
+                new QueryResultCache(properties, new SimpleMeterRegistry()),
+                null,
+                null,
+                new NoOpViewerProfileRepository(),
+                new RecommendationCache(properties, new SimpleMeterRegistry()),
+                TransactionOperations.withoutTransaction(),
+                new SimpleMeterRegistry()
+        );
+    }
+
+    @Benchmark
+    public void incrementalRun() {
+        service.runAggregationOnce();
+    }
+
+    private static AggregatedBucket bucket(Instant start, String eventType, int productKey, int members, long seed) {
+        HyperLogLog sessions = new HyperLogLog();
+        HyperLogLog users = new HyperLogLog();
+        for (int i = 0; i < members; i++) {
+            sessions.add(seed * 31 + i);
+            if (i % 3 == 0) {
+                users.add(seed * 17 + i);
+            }
+        }
+        return new AggregatedBucket(
+                start, eventType, productKey, members, sessions.estimate(), users.estimate(), sessions, users
+        );
+    }
+
+    private static final class InMemoryAggregationRepository extends AggregationRepository {
+
+        private final List<AggregatedBucket> deltas;
+        private final List<AggregatedBucket> stored;
+
+        InMemoryAggregationRepository(List<AggregatedBucket> deltas, List<AggregatedBucket> stored) {
+            super(null);
+            this.deltas = deltas;
+            this.stored = stored;
+        }
+
+        @Override
+        public Instant lockAndGetLastProcessedAt() {
+            return Instant.now().minus(1, ChronoUnit.MINUTES);
+        }
+
+        @Override
+        public Instant getLastIngestedAt() {
+            return Instant.now().minus(1, ChronoUnit.MINUTES);
+        }
+
+        @Override
+        public List<AggregatedBucket> aggregateIngestedRange(Instant from, Instant to) {
+            return deltas;
+        }
+
+        @Override
+        public List<AggregatedBucket> findMetrics(Collection<BucketKey> keys) {
+            return stored;
+        }
+
+        @Override
+        public void upsertMetrics(List<AggregatedBucket> rows) {
+        }
+
+        @Override
+        public void addBrandMetricsIngestedRange(Instant from, Instant to) {
+        }
+
+        @Override
+        public List<AggregatedBucket> findDailyMetrics(Collection<BucketKey> keys) {
+            List<AggregatedBucket> days = new ArrayList<>(stored.size());
+            for (AggregatedBucket row : stored) {
+                days.add(new AggregatedBucket(
+                        row.bucketStart().truncatedTo(ChronoUnit.DAYS), row.eventType(), row.productKey(),
+                        row.totalEvents(), row.uniqueSessions(), row.uniqueUsers(),
+                        row.sessionsSketch(), row.usersSketch()
+                ));
+            }
+            return days;
+        }
+
+        @Override
+        public void upsertDailyMetrics(List<AggregatedBucket> rows) {
+        }
+
+        @Override
+        public List<AggregatedBucket> rollupDay(Instant dayStart) {
+            return List.of();
+        }
+
+        @Override
+        public void replaceDailyMetrics(Instant dayStart, List<AggregatedBucket> rows) {
+        }
+
+        @Override
+        public void updateLastProcessedAt(Instant processedAt) {
+        }
+
+        @Override
+        public void updateLastIngestedAt(Instant ingestedAt) {
+        }
+    }
+
+    private static final class NoOpWriteHorizonRepository extends EventWriteHorizonRepository {
+
+        NoOpWriteHorizonRepository() {
+            super(null);
+        }
+
+        @Override
+        public Instant committedBefore(Instant upperBound) {
+            return upperBound;
+        }
+    }
+
+    private static final class NoOpViewerProfileRepository extends ViewerProfileRepository {
+
+        NoOpViewerProfileRepository() {
+            super(null);
+        }
+
+        @Override
+        public Instant getIngestedAt() {
+            return null;
+        }
+
+        @Override
+        public void deleteStale(Instant windowStart) {
+        }
+
+        @Override
+        public void updateIngestedAt(Instant value) {
+        }
+    }
+}
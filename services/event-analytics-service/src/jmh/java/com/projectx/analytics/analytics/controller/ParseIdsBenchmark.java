@@ -0,0 +1,54 @@
+package com.projectx.analytics.analytics.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the {@code excludeProductIds} CSV on the recommendations endpoint. Every tenth
+ * entry is padded, repeated or not a number, as clients send them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseIdsBenchmark {
+
+    @Param({"20", "1000"})
+    public int ids;
+
+    private String csv;
+
+    @Setup
+    public void setUp() {
+        StringJoiner joiner = new StringJoiner(",");
+        for (int i = 1; i <= ids; i++) {
+            switch (i % 10) {
+                case 3 -> joiner.add(" " + i + " ");
+                case 6 -> joiner.add(String.valueOf(i - 1));
+                case 9 -> joiner.add("x" + i);
+                default -> joiner.add(String.valueOf(100_000 + i));
+            }
+        }
+        csv = joiner.toString();
+    }
+
+    @Benchmark
+    public List<Integer> parseIds() {
+        return AnalyticsController.parseIds(csv);
+    }
+}
@@ -0,0 +1,100 @@
+package com.projectx.analytics.analytics.cube;
+
+import com.projectx.analytics.aggregation.model.AggregatedBucket;
+import com.projectx.analytics.aggregation.repository.AggregationRepository;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.config.AnalyticsProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Top-products and funnel reads answered from the in-memory cube over a week of hourly slices.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsCubeBenchmark {
+
+    private static final String[] EVENT_TYPES = {
+            "PRODUCT_VIEW", "ADD_TO_CART", "START_CHECKOUT", "PURCHASE", "SEARCH"
+    };
+    private static final int HOURS = 168;
+    private static final int PRODUCTS_PER_HOUR = 300;
+
+    private MetricsCube cube;
+    private Instant from;
+    private Instant to;
+
+    @Setup
+    public void setUp() {
+        to = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        from = to.minus(HOURS - 1, ChronoUnit.HOURS);
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getCube().setEnabled(true);
+        properties.getCube().setRetentionHours(HOURS + 24);
+        cube = new MetricsCube(new SyntheticMetrics(from), properties);
+        cube.reload();
+    }
+
+    @Benchmark
+    public Optional<List<ProductTotals>> topProductsWeek() {
+        return cube.topProducts(from, to, 20);
+    }
+
+    @Benchmark
+    public Optional<List<EventTypeTotals>> funnelWeek() {
+        return cube.totalsByEventType(from, to, List.of(EVENT_TYPES));
+    }
+
+    private static final class SyntheticMetrics extends AggregationRepository {
+
+        private final Instant firstHour;
+
+        SyntheticMetrics(Instant firstHour) {
+            super(null);
+            this.firstHour = firstHour;
+        }
+
+        @Override
+        public void forEachMetricSince(Instant since, Consumer<AggregatedBucket> consumer) {
+            for (int hour = 0; hour < HOURS; hour++) {
+                Instant bucketStart = firstHour.plus(hour, ChronoUnit.HOURS);
+                for (int product = 1; product <= PRODUCTS_PER_HOUR; product++) {
+                    for (String eventType : EVENT_TYPES) {
+                        consumer.accept(bucket(bucketStart, eventType, (product * 7 + hour) % 2_000 + 1));
+                    }
+                }
+            }
+        }
+
+        private static AggregatedBucket bucket(Instant start, String eventType, int productKey) {
+            HyperLogLog sessions = new HyperLogLog();
+            HyperLogLog users = new HyperLogLog();
+            for (int i = 0; i < 8; i++) {
+                sessions.add(productKey * 131L + i);
+                users.add(productKey * 17L + i / 2);
+            }
+            return new AggregatedBucket(
+                    start, eventType, productKey, 8, sessions.estimate(), users.estimate(), sessions, users
+            );
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.projectx.analytics.analytics.scoring;
+
+import com.projectx.analytics.analytics.service.ProductPopularityService;
+import com.projectx.analytics.config.AnalyticsProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One in-process recommendation ranking over a synthetic catalog, for an anonymous viewer and for
+ * a viewer with a long history, with and without a category filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecommendationEngineBenchmark {
+
+    private static final int BRANDS = 300;
+    private static final int CATEGORIES = 40;
+
+    @Param({"10000", "100000"})
+    public int products;
+
+    private RecommendationEngine engine;
+    private ViewerScores activeViewer;
+    private List<Integer> excludes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int[] productIds = new int[products];
+        int[] brandIds = new int[products];
+        int[] categoryIds = new int[products];
+        float[] scores = new float[products * 2 + 1];
+        for (int i = 0; i < products; i++) {
+            productIds[i] = i * 2 + 1;
+            brandIds[i] = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(BRANDS);
+            categoryIds[i] = 1 + random.nextInt(CATEGORIES);
+            scores[productIds[i]] = random.nextFloat() * 50;
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.of(productIds, brandIds, categoryIds);
+
+        AnalyticsProperties properties = new AnalyticsProperties();
+        ProductCatalog catalog = new ProductCatalog(null, properties) {
+            @Override
+            Optional<CatalogSnapshot> snapshot() {
+                return Optional.of(snapshot);
+            }
+        };
+        ProductPopularityService popularity = new ProductPopularityService(null, properties) {
+            @Override
+            public float scoreOf(int productId) {
+                return productId > 0 && productId < scores.length ? scores[productId] : 0f;
+            }
+        };
+        engine = new RecommendationEngine(catalog, popularity);
+
+        int[] viewerProducts = random.ints(200, 0, products).distinct().sorted().map(i -> i * 2 + 1).toArray();
+        double[] productScores = random.doubles(viewerProducts.length, 0, 20).toArray();
+        int[] viewerBrands = random.ints(30, 1, BRANDS + 1).distinct().sorted().toArray();
+        double[] brandScores = random.doubles(viewerBrands.length, 0, 10).toArray();
+        activeViewer = new ViewerScores(viewerProducts, productScores, viewerBrands, brandScores);
+        excludes = List.of(viewerProducts[0], viewerProducts[1], viewerProducts[2]);
+    }
+
+    @Benchmark
+    public Optional<List<ScoredProduct>> anonymousViewer() {
+        return engine.rank(ViewerScores.EMPTY, null, List.of(), 24, "bench");
+    }
+
+    @Benchmark
+    public Optional<List<ScoredProduct>> activeViewer() {
+        return engine.rank(activeViewer, null, excludes, 24, "bench");
+    }
+
+    @Benchmark
+    public Optional<List<ScoredProduct>> activeViewerInCategory() {
+        return engine.rank(activeViewer, 7, excludes, 24, "bench");
+    }
+}
@@ -0,0 +1,130 @@
+package com.projectx.analytics.event.repository;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * One 500-event write per operation in each write mode, against the database in
+ * EVENTS_BENCH_DB_URL (a disposable one, jdbc:postgresql://...) or an embedded Postgres when it is
+ * not set. Unlike the other benchmarks this one measures the database round trips, so compare
+ * runs on the same machine only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EventWriteBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"BATCH_INSERT", "COPY"})
+    public AnalyticsProperties.WriteMode writeMode;
+
+    private EmbeddedPostgres postgres;
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private EventWriteRepository repository;
+    private List<NormalizedEvent> batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        String jdbcUrl = System.getenv("EVENTS_BENCH_DB_URL");
+        if (jdbcUrl == null || jdbcUrl.isBlank()) {
+            postgres = EmbeddedPostgres.builder().start();
+            jdbcUrl = postgres.getJdbcUrl("postgres", "postgres");
+        }
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        dataSource.setMaximumPoolSize(2);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // The migrations join "Product"; only the columns they read.
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS "Product" (
+                  id integer PRIMARY KEY,
+                  "brandId" integer
+                )
+                """);
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getIngestion().setWriteMode(writeMode);
+        repository = new EventWriteRepository(jdbcTemplate, properties, new SimpleMeterRegistry());
+    }
+
+    // Every iteration starts from an empty table, so both modes write into the same index sizes.
+    @Setup(Level.Iteration)
+    public void truncate() {
+        jdbcTemplate.execute("TRUNCATE analytics_events_raw");
+    }
+
+    // Fresh ids per operation; building 500 records is negligible next to the write.
+    @Setup(Level.Invocation)
+    public void nextBatch() {
+        batch = batch();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dataSource.close();
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Benchmark
+    public int insertEvents() {
+        return repository.insertEvents(batch);
+    }
+
+    private static List<NormalizedEvent> batch() {
+        Instant now = Instant.now();
+        return IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> new NormalizedEvent(
+                        UUID.randomUUID(),
+                        i % 10 == 0 ? "ADD_TO_CART" : "PRODUCT_VIEW",
+                        i % 3 == 0 ? (long) i : null,
+                        "bench-session-" + (i % 50),
+                        1 + (i % 400),
+                        1 + (i % 40),
+                        null,
+                        "/product/" + (1 + (i % 400)),
+                        "bench",
+                        "desktop",
+                        now,
+                        "{\"categoryId\":" + (i % 12) + "}"
+                ))
+                .toList();
+    }
+}
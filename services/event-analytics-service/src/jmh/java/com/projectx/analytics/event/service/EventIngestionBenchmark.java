@@ -0,0 +1,165 @@
+package com.projectx.analytics.event.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.dto.BatchEventRequest;
+import com.projectx.analytics.event.dto.CompactEventRequest;
+import com.projectx.analytics.event.dto.EventRequest;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-side ingestion cost: binding a 500-event batch body (JSON and the CBOR compact format)
+ * and normalizing single events, including the metadata re-serialization. The ObjectMapper is
+ * built the way Spring Boot builds it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventIngestionBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    private ObjectReader batchReader;
+    private byte[] batchBody;
+    private byte[] compactBody;
+    private ObjectReader compactReader;
+    private CompactBatchDecoder compactDecoder;
+    private EventIngestionService service;
+    private EventRequest withMetadata;
+    private EventRequest withoutMetadata;
+    private List<EventRequest> batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        batchReader = objectMapper.readerFor(BatchEventRequest.class);
+        batchBody = objectMapper.writeValueAsBytes(new BatchEventRequest(requests(BATCH_SIZE)));
+        AnalyticsProperties properties = new AnalyticsProperties();
+        // normalize() touches neither the writer nor the queue; the dictionary is empty, as before its first load.
+        service = new EventIngestionService(
+                null, objectMapper, null, new BrandDictionary(null), properties,
+                new Bulkheads(properties, new SimpleMeterRegistry()), new SimpleMeterRegistry()
+        );
+        compactBody = new CBORMapper().writeValueAsBytes(compact(requests(BATCH_SIZE)));
+        compactReader = new CBORMapper().readerForListOf(CompactEventRequest.class);
+        compactDecoder = new CompactBatchDecoder(
+                service, Validation.buildDefaultValidatorFactory().getValidator()
+        );
+        withMetadata = requests(1).get(0);
+        batch = requests(BATCH_SIZE);
+        withoutMetadata = new EventRequest(
+                null, "product_view", 7L, "session-7", 42, null, "/product/42", "web", "mobile", null, null
+        );
+    }
+
+    @Benchmark
+    public BatchEventRequest deserializeBatch() throws IOException {
+        return batchReader.readValue(batchBody);
+    }
+
+    @Benchmark
+    public List<CompactEventRequest> deserializeCompactBatch() throws IOException {
+        return compactReader.readValue(compactBody);
+    }
+
+    // Adds the per-event validation that the JSON path gets from @Valid after binding.
+    @Benchmark
+    public List<EventRequest> decodeCompactBatch() throws IOException {
+        return compactDecoder.decode(new ByteArrayInputStream(compactBody));
+    }
+
+    @Benchmark
+    public NormalizedEvent normalizeWithMetadata() {
+        return service.normalize(withMetadata);
+    }
+
+    @Benchmark
+    public List<NormalizedEvent> normalizeBatch() {
+        return service.normalizeAll(batch);
+    }
+
+    @Benchmark
+    public NormalizedEvent normalizeWithoutMetadata() {
+        return service.normalize(withoutMetadata);
+    }
+
+    private static List<Map<String, Object>> compact(List<EventRequest> requests) {
+        List<Map<String, Object>> events = new ArrayList<>(requests.size());
+        for (EventRequest request : requests) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("i", ByteBuffer.allocate(16)
+                    .putLong(request.eventId().getMostSignificantBits())
+                    .putLong(request.eventId().getLeastSignificantBits())
+                    .array());
+            event.put("t", CompactEventRequest.codeOf(request.eventType()));
+            if (request.userId() != null) {
+                event.put("u", request.userId());
+            }
+            event.put("s", request.sessionId());
+            event.put("p", request.productId());
+            event.put("w", request.pageUrl());
+            event.put("r", request.source());
+            event.put("d", request.deviceType());
+            event.put("a", request.occurredAt().toEpochMilli());
+            event.put("m", request.metadata());
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static List<EventRequest> requests(int count) {
+        Instant now = Instant.parse("2025-06-01T12:00:00Z");
+        List<EventRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            metadata.put("categoryId", i % 12);
+            metadata.put("brandId", String.valueOf(1 + i % 40));
+            metadata.put("query", "sneakers size " + (38 + i % 8));
+            metadata.put("position", i % 24);
+            requests.add(new EventRequest(
+                    UUID.randomUUID(),
+                    i % 10 == 0 ? "ADD_TO_CART" : "PRODUCT_VIEW",
+                    i % 3 == 0 ? (long) i : null,
+                    "bench-session-" + (i % 50),
+                    1 + (i % 400),
+                    null,
+                    "/product/" + (1 + (i % 400)),
+                    "web",
+                    "desktop",
+                    now.plusMillis(i),
+                    metadata
+            ));
+        }
+        return requests;
+    }
+}
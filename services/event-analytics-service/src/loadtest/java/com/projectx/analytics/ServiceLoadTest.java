@@ -0,0 +1,465 @@
+package com.projectx.analytics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.projectx.analytics.aggregation.service.EventAggregationService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * End-to-end load test: starts the service against an embedded Postgres (or the disposable
+ * database in LOADTEST_DB_URL, jdbc:postgresql://... form), seeds a synthetic "Brand"/"Product"
+ * catalog and lets closed-loop clients replay a mix of single events, batches and recommendation
+ * reads over HTTP while incremental aggregation runs in a loop next to them. Only part of the
+ * {@code load-test} Maven profile; tune it with -Dloadtest.* system properties.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@DisplayName("Service — end-to-end load test")
+class ServiceLoadTest {
+
+    private static final String API_KEY = "load-test-key";
+    private static final Path REPORT = Path.of("target", "loadtest-result.json");
+
+    // Share of client iterations per endpoint; the rest are recommendation reads.
+    private static final double SINGLE_EVENT_SHARE = 0.55;
+    private static final double BATCH_SHARE = 0.15;
+    private static final double LOGGED_IN_SHARE = 0.7;
+
+    // Roughly what the storefront sends: mostly views, a thin tail of purchases.
+    private static final String[] EVENT_TYPES = {
+            "PRODUCT_VIEW", "SEARCH", "BRAND_CLICK", "FAVORITE_ADD",
+            "ADD_TO_CART", "REMOVE_FROM_CART", "START_CHECKOUT", "PURCHASE"
+    };
+    private static final int[] EVENT_WEIGHTS = {60, 10, 8, 6, 10, 2, 2, 2};
+
+    private final Settings settings = Settings.fromSystemProperties();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private URI baseUri;
+
+    @BeforeAll
+    void startService() throws IOException {
+        String jdbcUrl = System.getenv("LOADTEST_DB_URL");
+        if (jdbcUrl == null || jdbcUrl.isBlank()) {
+            postgres = EmbeddedPostgres.builder().start();
+            jdbcUrl = postgres.getJdbcUrl("postgres", "postgres");
+        }
+        // The migrations join "Product", so the catalog has to exist before Flyway runs.
+        seedCatalog(jdbcUrl);
+        // The same database doubles as the read replica, so reads go through the replica pool.
+        String readUrl = System.getenv().getOrDefault("LOADTEST_DB_READ_URL", jdbcUrl);
+
+        context = new SpringApplicationBuilder(EventAnalyticsApplication.class).run(
+                "--server.port=0",
+                "--EVENTS_DB_URL=" + jdbcUrl,
+                "--EVENTS_DB_POOL_MAX=" + settings.dbPoolSize(),
+                "--EVENTS_DB_READ_URL=" + readUrl,
+                "--EVENTS_DB_READ_POOL_MAX=" + settings.dbPoolSize(),
+                // The bulkhead defaults assume 10-connection pools; keep the README ratio (6 of 10).
+                "--analytics.bulkheads.recommendations.max-concurrent=" + settings.dbPoolSize() * 6 / 10,
+                "--spring.flyway.enabled=true",
+                "--spring.flyway.baseline-on-migrate=true",
+                "--spring.flyway.baseline-version=0",
+                "--analytics.security.api-key=" + API_KEY,
+                "--analytics.aggregation.fixed-delay-ms=999999999",
+                "--analytics.aggregation.lag-seconds=0",
+                "--analytics.ingestion.async-enabled=true",
+                "--analytics.cube.enabled=true",
+                "--analytics.scoring.enabled=true",
+                "--analytics.partitions.enabled=true"
+        );
+        int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        baseUri = URI.create("http://localhost:" + port);
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    @AfterAll
+    void stopService() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void replayTrafficMix() throws Exception {
+        long started = System.nanoTime();
+        long measureFrom = started + Duration.ofSeconds(settings.warmupSeconds()).toNanos();
+        long deadline = measureFrom + Duration.ofSeconds(settings.durationSeconds()).toNanos();
+
+        List<Future<ClientStats>> clients = new ArrayList<>(settings.clients());
+        Future<Samples> aggregation;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.clients(); i++) {
+                clients.add(executor.submit(() -> runClient(measureFrom, deadline)));
+            }
+            aggregation = executor.submit(() -> runAggregation(measureFrom, deadline));
+        }
+
+        ClientStats total = new ClientStats();
+        for (Future<ClientStats> client : clients) {
+            total.merge(client.get());
+        }
+        Samples aggregationRuns = aggregation.get();
+
+        Map<String, Object> report = report(total, aggregationRuns);
+        Files.createDirectories(REPORT.getParent());
+        objectMapper.writeValue(REPORT.toFile(), report);
+        System.out.println(objectMapper.writeValueAsString(report));
+
+        for (Endpoint endpoint : Endpoint.values()) {
+            Samples latencies = total.latencies.get(endpoint);
+            assertThat(latencies.size()).as(endpoint.label).isPositive();
+            assertThat(total.errors.get(endpoint).size())
+                    .as(endpoint.label + " errors")
+                    .isLessThanOrEqualTo((int) (latencies.size() * settings.maxErrorRate()));
+        }
+        assertThat(aggregationRuns.size()).isPositive();
+    }
+
+    private ClientStats runClient(long measureFrom, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ClientStats stats = new ClientStats();
+        while (System.nanoTime() < deadline) {
+            double roll = random.nextDouble();
+            Endpoint endpoint;
+            HttpRequest request;
+            if (roll < SINGLE_EVENT_SHARE) {
+                endpoint = Endpoint.EVENT;
+                request = post("/api/v1/events", randomEvent(random));
+            } else if (roll < SINGLE_EVENT_SHARE + BATCH_SHARE) {
+                endpoint = Endpoint.BATCH;
+                List<Map<String, Object>> events = new ArrayList<>(settings.batchSize());
+                for (int i = 0; i < settings.batchSize(); i++) {
+                    events.add(randomEvent(random));
+                }
+                request = post("/api/v1/events/batch", Map.of("events", events));
+            } else {
+                endpoint = Endpoint.RECOMMENDATIONS;
+                request = get(recommendationQuery(random));
+            }
+
+            long sent = System.nanoTime();
+            boolean ok;
+            try {
+                int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                ok = status >= 200 && status < 300;
+            } catch (IOException ex) {
+                ok = false;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long elapsed = System.nanoTime() - sent;
+            if (sent >= measureFrom) {
+                (ok ? stats.latencies : stats.errors).get(endpoint).add(elapsed);
+            }
+        }
+        return stats;
+    }
+
+    // Runs back to back with a pause, like the scheduler with a short fixed delay. A run can take
+    // longer than the warmup, so every run that ends inside the measured window counts.
+    private Samples runAggregation(long measureFrom, long deadline) throws InterruptedException {
+        EventAggregationService aggregationService = context.getBean(EventAggregationService.class);
+        Samples runs = new Samples();
+        while (System.nanoTime() < deadline) {
+            long started = System.nanoTime();
+            aggregationService.runAggregationOnce();
+            long finished = System.nanoTime();
+            if (finished >= measureFrom) {
+                runs.add(finished - started);
+            }
+            Thread.sleep(settings.aggregationPauseMs());
+        }
+        return runs;
+    }
+
+    private Map<String, Object> randomEvent(ThreadLocalRandom random) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        String eventType = weightedEventType(random);
+        int userId = 1 + random.nextInt(settings.users());
+        event.put("eventId", UUID.randomUUID());
+        event.put("eventType", eventType);
+        if (random.nextDouble() < LOGGED_IN_SHARE) {
+            event.put("userId", userId);
+        }
+        event.put("sessionId", "load-" + userId + "-" + random.nextInt(4));
+        if (!"SEARCH".equals(eventType)) {
+            event.put("productId", skewedProductId(random));
+        }
+        if ("PURCHASE".equals(eventType)) {
+            event.put("orderId", random.nextLong(1, Long.MAX_VALUE));
+        }
+        event.put("source", "load-test");
+        event.put("deviceType", random.nextBoolean() ? "mobile" : "desktop");
+        event.put("metadata", "SEARCH".equals(eventType)
+                ? Map.of("query", "query-" + random.nextInt(500))
+                : Map.of());
+        return event;
+    }
+
+    private String recommendationQuery(ThreadLocalRandom random) {
+        int userId = 1 + random.nextInt(settings.users());
+        StringBuilder query = new StringBuilder("/api/v1/analytics/recommendations?limit=20");
+        if (random.nextDouble() < LOGGED_IN_SHARE) {
+            query.append("&userId=").append(userId);
+        }
+        query.append("&sessionId=load-").append(userId).append('-').append(random.nextInt(4));
+        if (random.nextInt(4) == 0) {
+            query.append("&categoryId=").append(1 + random.nextInt(settings.categories()));
+        }
+        if (random.nextBoolean()) {
+            query.append("&excludeProductIds=")
+                    .append(skewedProductId(random)).append(',')
+                    .append(skewedProductId(random));
+        }
+        return query.toString();
+    }
+
+    private String weightedEventType(ThreadLocalRandom random) {
+        int roll = random.nextInt(Arrays.stream(EVENT_WEIGHTS).sum());
+        for (int i = 0; i < EVENT_WEIGHTS.length; i++) {
+            roll -= EVENT_WEIGHTS[i];
+            if (roll < 0) {
+                return EVENT_TYPES[i];
+            }
+        }
+        return EVENT_TYPES[0];
+    }
+
+    // Cubing a uniform value sends most traffic to the first products, like a real bestseller head.
+    private int skewedProductId(ThreadLocalRandom random) {
+        double u = random.nextDouble();
+        return 1 + (int) (settings.products() * u * u * u);
+    }
+
+    private HttpRequest post(String path, Object body) {
+        try {
+            return HttpRequest.newBuilder(baseUri.resolve(path))
+                    .header("X-Events-Api-Key", API_KEY)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private HttpRequest get(String pathAndQuery) {
+        return HttpRequest.newBuilder(baseUri.resolve(pathAndQuery))
+                .header("X-Events-Api-Key", API_KEY)
+                .GET()
+                .build();
+    }
+
+    private void seedCatalog(String jdbcUrl) {
+        try (HikariDataSource dataSource = new HikariDataSource()) {
+            dataSource.setJdbcUrl(jdbcUrl);
+            dataSource.setMaximumPoolSize(1);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            // Only the columns the service reads; the real tables are owned by the storefront schema.
+            jdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS "Brand" (
+                      id integer PRIMARY KEY,
+                      name text NOT NULL UNIQUE
+                    )
+                    """);
+            jdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS "Product" (
+                      id integer PRIMARY KEY,
+                      name text NOT NULL,
+                      "brandId" integer REFERENCES "Brand"(id),
+                      "categoryId" integer NOT NULL,
+                      available boolean,
+                      "deletedAt" timestamptz
+                    )
+                    """);
+            jdbcTemplate.update("""
+                    INSERT INTO "Brand" (id, name)
+                    SELECT g, 'Brand ' || g FROM generate_series(1, ?) g
+                    ON CONFLICT DO NOTHING
+                    """, settings.brands());
+            // Every 20th product has no brand, every 50th is unavailable and every 97th deleted.
+            jdbcTemplate.update("""
+                    INSERT INTO "Product" (id, name, "brandId", "categoryId", available, "deletedAt")
+                    SELECT
+                      g,
+                      'Product ' || g,
+                      CASE WHEN g % 20 = 0 THEN NULL ELSE 1 + (g * 7919) % ? END,
+                      1 + (g * 104729) % ?,
+                      g % 50 <> 0,
+                      CASE WHEN g % 97 = 0 THEN now() END
+                    FROM generate_series(1, ?) g
+                    ON CONFLICT DO NOTHING
+                    """, settings.brands(), settings.categories(), settings.products());
+        }
+    }
+
+    private Map<String, Object> report(ClientStats total, Samples aggregationRuns) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            Samples latencies = total.latencies.get(endpoint);
+            Map<String, Object> summary = latencies.summary();
+            summary.put("errors", total.errors.get(endpoint).size());
+            summary.put("perSecond", (double) latencies.size() / settings.durationSeconds());
+            if (endpoint == Endpoint.BATCH) {
+                summary.put("eventsPerSecond",
+                        (double) latencies.size() * settings.batchSize() / settings.durationSeconds());
+            }
+            endpoints.put(endpoint.label, summary);
+        }
+        report.put("endpoints", endpoints);
+        report.put("aggregationRuns", aggregationRuns.summary());
+        return report;
+    }
+
+    private enum Endpoint {
+        EVENT("POST /api/v1/events"),
+        BATCH("POST /api/v1/events/batch"),
+        RECOMMENDATIONS("GET /api/v1/analytics/recommendations");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    record Settings(
+            int durationSeconds,
+            int warmupSeconds,
+            int clients,
+            int batchSize,
+            int products,
+            int brands,
+            int categories,
+            int users,
+            int dbPoolSize,
+            long aggregationPauseMs,
+            double maxErrorRate
+    ) {
+
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    Integer.getInteger("loadtest.durationSeconds", 60),
+                    Integer.getInteger("loadtest.warmupSeconds", 10),
+                    Integer.getInteger("loadtest.clients", 64),
+                    Integer.getInteger("loadtest.batchSize", 50),
+                    Integer.getInteger("loadtest.products", 20_000),
+                    Integer.getInteger("loadtest.brands", 300),
+                    Integer.getInteger("loadtest.categories", 40),
+                    Integer.getInteger("loadtest.users", 10_000),
+                    Integer.getInteger("loadtest.dbPoolSize", 20),
+                    Long.getLong("loadtest.aggregationPauseMs", 2_000),
+                    Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0.001"))
+            );
+        }
+    }
+
+    private static final class ClientStats {
+
+        private final Map<Endpoint, Samples> latencies = new EnumMap<>(Endpoint.class);
+        private final Map<Endpoint, Samples> errors = new EnumMap<>(Endpoint.class);
+
+        private ClientStats() {
+            for (Endpoint endpoint : Endpoint.values()) {
+                latencies.put(endpoint, new Samples());
+                errors.put(endpoint, new Samples());
+            }
+        }
+
+        private void merge(ClientStats other) {
+            for (Endpoint endpoint : Endpoint.values()) {
+                latencies.get(endpoint).addAll(other.latencies.get(endpoint));
+                errors.get(endpoint).addAll(other.errors.get(endpoint));
+            }
+        }
+    }
+
+    // Raw nanosecond samples; exact percentiles are cheap at load-test sizes.
+    private static final class Samples {
+
+        private long[] values = new long[1_024];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private Map<String, Object> summary() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", size);
+            summary.put("p50Ms", percentileMs(sorted, 0.50));
+            summary.put("p95Ms", percentileMs(sorted, 0.95));
+            summary.put("p99Ms", percentileMs(sorted, 0.99));
+            summary.put("maxMs", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6);
+            return summary;
+        }
+
+        private static double percentileMs(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
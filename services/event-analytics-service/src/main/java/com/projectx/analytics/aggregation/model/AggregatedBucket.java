@@ -1,5 +1,6 @@
 package com.projectx.analytics.aggregation.model;
 
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
 import java.time.Instant;
 
 public record AggregatedBucket(
@@ -8,6 +9,23 @@ public record AggregatedBucket(
     int productKey,
     long totalEvents,
     long uniqueSessions,
-    long uniqueUsers
+    long uniqueUsers,
+    HyperLogLog sessionsSketch,
+    HyperLogLog usersSketch
 ) {
+
+  public AggregatedBucket(
+      Instant bucketStart,
+      String eventType,
+      int productKey,
+      long totalEvents,
+      long uniqueSessions,
+      long uniqueUsers
+  ) {
+    this(bucketStart, eventType, productKey, totalEvents, uniqueSessions, uniqueUsers, null, null);
+  }
+
+  public BucketKey key() {
+    return new BucketKey(bucketStart, eventType, productKey);
+  }
 }
@@ -0,0 +1,10 @@
+package com.projectx.analytics.aggregation.model;
+
+import java.time.Instant;
+
+public record BucketKey(
+    Instant bucketStart,
+    String eventType,
+    int productKey
+) {
+}
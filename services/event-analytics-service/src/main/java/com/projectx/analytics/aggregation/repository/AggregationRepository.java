@@ -1,12 +1,23 @@
 package com.projectx.analytics.aggregation.repository;
 
 import com.projectx.analytics.aggregation.model.AggregatedBucket;
+import com.projectx.analytics.aggregation.model.BucketKey;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -16,18 +27,86 @@ public class AggregationRepository {
       "SELECT last_processed_at FROM analytics_aggregation_state WHERE id = 1 FOR UPDATE";
   private static final String UPDATE_STATE_SQL =
       "UPDATE analytics_aggregation_state SET last_processed_at = ? WHERE id = 1";
+  private static final String SELECT_INGESTED_STATE_SQL =
+      "SELECT last_ingested_at FROM analytics_aggregation_state WHERE id = 1";
+  private static final String UPDATE_INGESTED_STATE_SQL =
+      "UPDATE analytics_aggregation_state SET last_ingested_at = ? WHERE id = 1";
 
-  private static final String AGGREGATE_RANGE_SQL = """
+  // One row per distinct (bucket, session, user) so sketches can be built without shipping raw events.
+  private static final String AGGREGATE_OCCURRED_RANGE_SQL = """
       SELECT
         date_trunc('hour', occurred_at) AS bucket_start,
         event_type,
         COALESCE(product_id, 0) AS product_key,
-        COUNT(*) AS total_events,
-        COUNT(DISTINCT session_id) AS unique_sessions,
-        COUNT(DISTINCT user_id) AS unique_users
+        hashtextextended(session_id, 0) AS session_hash,
+        user_id,
+        COUNT(*) AS total_events
       FROM analytics_events_raw
       WHERE occurred_at >= ? AND occurred_at < ?
-      GROUP BY 1, 2, 3
+      GROUP BY 1, 2, 3, 4, 5
+      """;
+
+  private static final String AGGREGATE_INGESTED_RANGE_SQL = """
+      SELECT
+        date_trunc('hour', occurred_at) AS bucket_start,
+        event_type,
+        COALESCE(product_id, 0) AS product_key,
+        hashtextextended(session_id, 0) AS session_hash,
+        user_id,
+        COUNT(*) AS total_events
+      FROM analytics_events_raw
+      WHERE created_at >= ? AND created_at < ?
+      GROUP BY 1, 2, 3, 4, 5
+      """;
+
+  // Rebuilds hours in incremental mode: everything that occurred in them and is below the ingest
+  // watermark being committed, so later deltas are not counted twice.
+  private static final String AGGREGATE_OCCURRED_RANGE_INGESTED_BEFORE_SQL = """
+      SELECT
+        date_trunc('hour', occurred_at) AS bucket_start,
+        event_type,
+        COALESCE(product_id, 0) AS product_key,
+        hashtextextended(session_id, 0) AS session_hash,
+        user_id,
+        COUNT(*) AS total_events
+      FROM analytics_events_raw
+      WHERE occurred_at >= ? AND occurred_at < ?
+        AND created_at < ?
+      GROUP BY 1, 2, 3, 4, 5
+      """;
+
+  private static final String SELECT_METRICS_BY_KEYS_SQL = """
+      SELECT
+        h.bucket_start,
+        h.event_type,
+        h.product_key,
+        h.total_events,
+        h.unique_sessions,
+        h.unique_users,
+        h.sessions_sketch,
+        h.users_sketch
+      FROM analytics_event_metrics_hourly h
+      JOIN unnest(?::timestamptz[], ?::varchar[], ?::int[]) AS k(bucket_start, event_type, product_key)
+        ON h.bucket_start = k.bucket_start
+       AND h.event_type = k.event_type
+       AND h.product_key = k.product_key
+      """;
+
+  private static final String SELECT_DAILY_BY_KEYS_SQL = """
+      SELECT
+        d.day_start AS bucket_start,
+        d.event_type,
+        d.product_key,
+        d.total_events,
+        d.unique_sessions,
+        d.unique_users,
+        d.sessions_sketch,
+        d.users_sketch
+      FROM analytics_event_metrics_daily d
+      JOIN unnest(?::timestamptz[], ?::varchar[], ?::int[]) AS k(day_start, event_type, product_key)
+        ON d.day_start = k.day_start
+       AND d.event_type = k.event_type
+       AND d.product_key = k.product_key
       """;
 
   private static final String DELETE_RANGE_SQL = """
@@ -36,6 +115,68 @@ public class AggregationRepository {
         AND bucket_start < date_trunc('hour', ?::timestamptz) + interval '1 hour'
       """;
 
+  // Brand hours are cut in UTC, like the hours the range planner computes, whatever the session
+  // TimeZone is; half-hour offsets would otherwise shift every bucket.
+  private static final String DELETE_BRAND_RANGE_SQL = """
+      DELETE FROM analytics_brand_metrics_hourly
+      WHERE bucket_start >= date_trunc('hour', ?::timestamptz, 'UTC')
+        AND bucket_start < date_trunc('hour', ?::timestamptz, 'UTC') + interval '1 hour'
+      """;
+
+  private static final String INSERT_BRAND_OCCURRED_RANGE_SQL = """
+      INSERT INTO analytics_brand_metrics_hourly (
+        bucket_start, brand_id, views, add_to_cart, purchases, brand_clicks, updated_at
+      )
+      SELECT
+        date_trunc('hour', e.occurred_at, 'UTC'),
+        COALESCE(e.brand_id, p."brandId"),
+        COUNT(*) FILTER (WHERE e.event_type = 'PRODUCT_VIEW'),
+        COUNT(*) FILTER (WHERE e.event_type = 'ADD_TO_CART'),
+        COUNT(*) FILTER (WHERE e.event_type = 'PURCHASE'),
+        COUNT(*) FILTER (WHERE e.event_type = 'BRAND_CLICK'),
+        now()
+      FROM analytics_events_raw e
+      LEFT JOIN "Product" p ON e.brand_id IS NULL AND p.id = e.product_id
+      WHERE e.occurred_at >= ? AND e.occurred_at < ?
+        AND COALESCE(e.brand_id, p."brandId") IS NOT NULL
+        AND e.event_type IN ('PRODUCT_VIEW', 'ADD_TO_CART', 'PURCHASE', 'BRAND_CLICK')
+      GROUP BY 1, 2
+      ON CONFLICT (bucket_start, brand_id)
+      DO UPDATE SET
+        views = EXCLUDED.views,
+        add_to_cart = EXCLUDED.add_to_cart,
+        purchases = EXCLUDED.purchases,
+        brand_clicks = EXCLUDED.brand_clicks,
+        updated_at = now()
+      """;
+
+  private static final String ADD_BRAND_INGESTED_RANGE_SQL = """
+      INSERT INTO analytics_brand_metrics_hourly AS t (
+        bucket_start, brand_id, views, add_to_cart, purchases, brand_clicks, updated_at
+      )
+      SELECT
+        date_trunc('hour', e.occurred_at, 'UTC'),
+        COALESCE(e.brand_id, p."brandId"),
+        COUNT(*) FILTER (WHERE e.event_type = 'PRODUCT_VIEW'),
+        COUNT(*) FILTER (WHERE e.event_type = 'ADD_TO_CART'),
+        COUNT(*) FILTER (WHERE e.event_type = 'PURCHASE'),
+        COUNT(*) FILTER (WHERE e.event_type = 'BRAND_CLICK'),
+        now()
+      FROM analytics_events_raw e
+      LEFT JOIN "Product" p ON e.brand_id IS NULL AND p.id = e.product_id
+      WHERE e.created_at >= ? AND e.created_at < ?
+        AND COALESCE(e.brand_id, p."brandId") IS NOT NULL
+        AND e.event_type IN ('PRODUCT_VIEW', 'ADD_TO_CART', 'PURCHASE', 'BRAND_CLICK')
+      GROUP BY 1, 2
+      ON CONFLICT (bucket_start, brand_id)
+      DO UPDATE SET
+        views = t.views + EXCLUDED.views,
+        add_to_cart = t.add_to_cart + EXCLUDED.add_to_cart,
+        purchases = t.purchases + EXCLUDED.purchases,
+        brand_clicks = t.brand_clicks + EXCLUDED.brand_clicks,
+        updated_at = now()
+      """;
+
   private static final String INSERT_METRICS_SQL = """
       INSERT INTO analytics_event_metrics_hourly (
         bucket_start,
@@ -44,13 +185,61 @@ public class AggregationRepository {
         total_events,
         unique_sessions,
         unique_users,
+        sessions_sketch,
+        users_sketch,
         updated_at
-      ) VALUES (?, ?, ?, ?, ?, ?, now())
+      ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, now())
       ON CONFLICT (bucket_start, event_type, product_key)
       DO UPDATE SET
         total_events = EXCLUDED.total_events,
         unique_sessions = EXCLUDED.unique_sessions,
         unique_users = EXCLUDED.unique_users,
+        sessions_sketch = EXCLUDED.sessions_sketch,
+        users_sketch = EXCLUDED.users_sketch,
+        updated_at = now()
+      """;
+
+  private static final String SELECT_HOURLY_DAY_SQL = """
+      SELECT
+        event_type,
+        product_key,
+        total_events,
+        unique_sessions,
+        unique_users,
+        sessions_sketch,
+        users_sketch
+      FROM analytics_event_metrics_hourly
+      WHERE bucket_start >= ? AND bucket_start < ?
+      """;
+
+  private static final String SELECT_METRICS_SINCE_SQL = """
+      SELECT bucket_start, event_type, product_key, total_events, sessions_sketch, users_sketch
+      FROM analytics_event_metrics_hourly
+      WHERE bucket_start >= ?
+      """;
+
+  private static final String DELETE_DAILY_SQL =
+      "DELETE FROM analytics_event_metrics_daily WHERE day_start = ?";
+
+  private static final String INSERT_DAILY_SQL = """
+      INSERT INTO analytics_event_metrics_daily (
+        day_start,
+        event_type,
+        product_key,
+        total_events,
+        unique_sessions,
+        unique_users,
+        sessions_sketch,
+        users_sketch,
+        updated_at
+      ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, now())
+      ON CONFLICT (day_start, event_type, product_key)
+      DO UPDATE SET
+        total_events = EXCLUDED.total_events,
+        unique_sessions = EXCLUDED.unique_sessions,
+        unique_users = EXCLUDED.unique_users,
+        sessions_sketch = EXCLUDED.sessions_sketch,
+        users_sketch = EXCLUDED.users_sketch,
         updated_at = now()
       """;
 
@@ -71,19 +260,97 @@ public class AggregationRepository {
     jdbcTemplate.update(UPDATE_STATE_SQL, Timestamp.from(processedAt));
   }
 
+  public Instant getLastIngestedAt() {
+    return jdbcTemplate.queryForObject(
+        SELECT_INGESTED_STATE_SQL,
+        (rs, rowNum) -> {
+          Timestamp value = rs.getTimestamp("last_ingested_at");
+          return value == null ? null : value.toInstant();
+        }
+    );
+  }
+
+  public void updateLastIngestedAt(Instant ingestedAt) {
+    jdbcTemplate.update(UPDATE_INGESTED_STATE_SQL, Timestamp.from(ingestedAt));
+  }
+
   public List<AggregatedBucket> aggregateRange(Instant from, Instant to) {
+    return aggregate(AGGREGATE_OCCURRED_RANGE_SQL, from, to);
+  }
+
+  public List<AggregatedBucket> aggregateIngestedRange(Instant from, Instant to) {
+    return aggregate(AGGREGATE_INGESTED_RANGE_SQL, from, to);
+  }
+
+  public List<AggregatedBucket> aggregateRangeIngestedBefore(Instant from, Instant to, Instant ingestedBefore) {
+    return aggregate(
+        AGGREGATE_OCCURRED_RANGE_INGESTED_BEFORE_SQL,
+        from,
+        to,
+        ingestedBefore
+    );
+  }
+
+  public List<AggregatedBucket> findMetrics(Collection<BucketKey> keys) {
+    return findByKeys(SELECT_METRICS_BY_KEYS_SQL, keys);
+  }
+
+  // Keys carry the day start as bucketStart, matching rollupDay.
+  public List<AggregatedBucket> findDailyMetrics(Collection<BucketKey> keys) {
+    return findByKeys(SELECT_DAILY_BY_KEYS_SQL, keys);
+  }
+
+  private List<AggregatedBucket> findByKeys(String sql, Collection<BucketKey> keys) {
+    if (keys.isEmpty()) {
+      return List.of();
+    }
+
+    Timestamp[] bucketStarts = new Timestamp[keys.size()];
+    String[] eventTypes = new String[keys.size()];
+    Integer[] productKeys = new Integer[keys.size()];
+    int i = 0;
+    for (BucketKey key : keys) {
+      bucketStarts[i] = Timestamp.from(key.bucketStart());
+      eventTypes[i] = key.eventType();
+      productKeys[i] = key.productKey();
+      i++;
+    }
+
     return jdbcTemplate.query(
-        AGGREGATE_RANGE_SQL,
+        connection -> {
+          PreparedStatement ps = connection.prepareStatement(sql);
+          ps.setArray(1, connection.createArrayOf("timestamptz", bucketStarts));
+          ps.setArray(2, connection.createArrayOf("varchar", eventTypes));
+          ps.setArray(3, connection.createArrayOf("int4", productKeys));
+          return ps;
+        },
         (rs, rowNum) -> new AggregatedBucket(
             rs.getTimestamp("bucket_start").toInstant(),
             rs.getString("event_type"),
             rs.getInt("product_key"),
             rs.getLong("total_events"),
             rs.getLong("unique_sessions"),
-            rs.getLong("unique_users")
-        ),
-        Timestamp.from(from),
-        Timestamp.from(to)
+            rs.getLong("unique_users"),
+            readSketch(rs, "sessions_sketch"),
+            readSketch(rs, "users_sketch")
+        )
+    );
+  }
+
+  public void forEachMetricSince(Instant from, Consumer<AggregatedBucket> consumer) {
+    jdbcTemplate.query(
+        SELECT_METRICS_SINCE_SQL,
+        (RowCallbackHandler) rs -> consumer.accept(new AggregatedBucket(
+            rs.getTimestamp("bucket_start").toInstant(),
+            rs.getString("event_type"),
+            rs.getInt("product_key"),
+            rs.getLong("total_events"),
+            0L,
+            0L,
+            readSketch(rs, "sessions_sketch"),
+            readSketch(rs, "users_sketch")
+        )),
+        Timestamp.from(from)
     );
   }
 
@@ -95,11 +362,61 @@ public class AggregationRepository {
     );
   }
 
+  // Brand counts have no sketches, so they are rebuilt or added entirely in SQL. Events that got
+  // no brand at ingest (product unknown to the dictionary snapshot) are resolved here instead.
+  public void replaceBrandMetricsRange(Instant from, Instant to) {
+    jdbcTemplate.update(DELETE_BRAND_RANGE_SQL, Timestamp.from(from), Timestamp.from(to));
+    jdbcTemplate.update(INSERT_BRAND_OCCURRED_RANGE_SQL, Timestamp.from(from), Timestamp.from(to));
+  }
+
+  public void addBrandMetricsIngestedRange(Instant from, Instant to) {
+    jdbcTemplate.update(ADD_BRAND_INGESTED_RANGE_SQL, Timestamp.from(from), Timestamp.from(to));
+  }
+
   public void upsertMetrics(List<AggregatedBucket> rows) {
+    upsert(INSERT_METRICS_SQL, rows);
+  }
+
+  // Rebuilds one UTC day from its hourly rows; bucketStart of the result is the day start.
+  public List<AggregatedBucket> rollupDay(Instant dayStart) {
+    Map<BucketKey, RollupAccumulator> buckets = new LinkedHashMap<>();
+    jdbcTemplate.query(
+        SELECT_HOURLY_DAY_SQL,
+        (RowCallbackHandler) rs -> {
+          BucketKey key = new BucketKey(dayStart, rs.getString("event_type"), rs.getInt("product_key"));
+          buckets.computeIfAbsent(key, RollupAccumulator::new).add(
+              rs.getLong("total_events"),
+              rs.getLong("unique_sessions"),
+              rs.getLong("unique_users"),
+              readSketch(rs, "sessions_sketch"),
+              readSketch(rs, "users_sketch")
+          );
+        },
+        Timestamp.from(dayStart),
+        Timestamp.from(dayStart.plus(1, ChronoUnit.DAYS))
+    );
+
+    List<AggregatedBucket> rows = new ArrayList<>(buckets.size());
+    for (RollupAccumulator bucket : buckets.values()) {
+      rows.add(bucket.toBucket());
+    }
+    return rows;
+  }
+
+  public void replaceDailyMetrics(Instant dayStart, List<AggregatedBucket> rows) {
+    jdbcTemplate.update(DELETE_DAILY_SQL, Timestamp.from(dayStart));
+    upsert(INSERT_DAILY_SQL, rows);
+  }
+
+  public void upsertDailyMetrics(List<AggregatedBucket> rows) {
+    upsert(INSERT_DAILY_SQL, rows);
+  }
+
+  private void upsert(String sql, List<AggregatedBucket> rows) {
     if (rows.isEmpty()) {
       return;
     }
-    jdbcTemplate.batchUpdate(INSERT_METRICS_SQL, new BatchPreparedStatementSetter() {
+    jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
       @Override
       public void setValues(PreparedStatement ps, int i) throws java.sql.SQLException {
         AggregatedBucket row = rows.get(i);
@@ -109,6 +426,8 @@ public class AggregationRepository {
         ps.setLong(4, row.totalEvents());
         ps.setLong(5, row.uniqueSessions());
         ps.setLong(6, row.uniqueUsers());
+        ps.setBytes(7, row.sessionsSketch() == null ? null : row.sessionsSketch().toBytes());
+        ps.setBytes(8, row.usersSketch() == null ? null : row.usersSketch().toBytes());
       }
 
       @Override
@@ -117,4 +436,121 @@ public class AggregationRepository {
       }
     });
   }
+
+  private List<AggregatedBucket> aggregate(String sql, Instant... bounds) {
+    Object[] params = new Object[bounds.length];
+    for (int i = 0; i < bounds.length; i++) {
+      params[i] = Timestamp.from(bounds[i]);
+    }
+    Map<BucketKey, BucketAccumulator> buckets = new LinkedHashMap<>();
+    jdbcTemplate.query(
+        sql,
+        (RowCallbackHandler) rs -> {
+          BucketKey key = new BucketKey(
+              rs.getTimestamp("bucket_start").toInstant(),
+              rs.getString("event_type"),
+              rs.getInt("product_key")
+          );
+          long userId = rs.getLong("user_id");
+          boolean hasUser = !rs.wasNull();
+          buckets.computeIfAbsent(key, BucketAccumulator::new)
+              .add(rs.getLong("total_events"), rs.getLong("session_hash"), hasUser, userId);
+        },
+        params
+    );
+
+    List<AggregatedBucket> rows = new ArrayList<>(buckets.size());
+    for (BucketAccumulator bucket : buckets.values()) {
+      rows.add(bucket.toBucket());
+    }
+    return rows;
+  }
+
+  private static HyperLogLog readSketch(ResultSet rs, String column) throws SQLException {
+    byte[] bytes = rs.getBytes(column);
+    return bytes == null ? null : HyperLogLog.fromBytes(bytes);
+  }
+
+  private static final class RollupAccumulator {
+
+    private final BucketKey key;
+    private HyperLogLog sessions = new HyperLogLog();
+    private HyperLogLog users = new HyperLogLog();
+    private long totalEvents;
+    private long uniqueSessions;
+    private long uniqueUsers;
+
+    private RollupAccumulator(BucketKey key) {
+      this.key = key;
+    }
+
+    // One hour without a sketch makes the whole day's uniques a lower bound.
+    private void add(
+        long events,
+        long hourSessions,
+        long hourUsers,
+        HyperLogLog sessionsSketch,
+        HyperLogLog usersSketch
+    ) {
+      totalEvents += events;
+      uniqueSessions = Math.max(uniqueSessions, hourSessions);
+      uniqueUsers = Math.max(uniqueUsers, hourUsers);
+      sessions = union(sessions, sessionsSketch);
+      users = union(users, usersSketch);
+    }
+
+    private static HyperLogLog union(HyperLogLog accumulated, HyperLogLog hour) {
+      if (accumulated == null || hour == null) {
+        return null;
+      }
+      accumulated.merge(hour);
+      return accumulated;
+    }
+
+    private AggregatedBucket toBucket() {
+      return new AggregatedBucket(
+          key.bucketStart(),
+          key.eventType(),
+          key.productKey(),
+          totalEvents,
+          sessions == null ? uniqueSessions : sessions.estimate(),
+          users == null ? uniqueUsers : users.estimate(),
+          sessions,
+          users
+      );
+    }
+  }
+
+  private static final class BucketAccumulator {
+
+    private final BucketKey key;
+    private final HyperLogLog sessions = new HyperLogLog();
+    private final HyperLogLog users = new HyperLogLog();
+    private long totalEvents;
+
+    private BucketAccumulator(BucketKey key) {
+      this.key = key;
+    }
+
+    private void add(long events, long sessionHash, boolean hasUser, long userId) {
+      totalEvents += events;
+      sessions.add(sessionHash);
+      if (hasUser) {
+        users.add(userId);
+      }
+    }
+
+    private AggregatedBucket toBucket() {
+      return new AggregatedBucket(
+          key.bucketStart(),
+          key.eventType(),
+          key.productKey(),
+          totalEvents,
+          sessions.estimate(),
+          users.estimate(),
+          sessions,
+          users
+      );
+    }
+  }
 }
@@ -1,16 +1,41 @@
 package com.projectx.analytics.aggregation.service;
 
 import com.projectx.analytics.aggregation.model.AggregatedBucket;
+import com.projectx.analytics.aggregation.model.BucketKey;
 import com.projectx.analytics.aggregation.repository.AggregationRepository;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.analytics.cache.QueryResultCache;
+import com.projectx.analytics.analytics.cache.RecommendationCache;
+import com.projectx.analytics.analytics.cube.MetricsCube;
+import com.projectx.analytics.analytics.repository.ViewerProfileRepository;
+import com.projectx.analytics.analytics.service.ItemCooccurrenceService;
+import com.projectx.analytics.analytics.service.ProductPopularityService;
 import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.repository.EventWriteHorizonRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 public class EventAggregationService {
@@ -18,32 +43,129 @@ public class EventAggregationService {
   private static final Logger log = LoggerFactory.getLogger(EventAggregationService.class);
 
   private final AggregationRepository aggregationRepository;
+  private final EventWriteHorizonRepository writeHorizon;
   private final AnalyticsProperties properties;
+  private final MetricsCube metricsCube;
+  private final QueryResultCache resultCache;
+  private final ProductPopularityService productPopularityService;
+  private final ItemCooccurrenceService itemCooccurrenceService;
+  private final ViewerProfileRepository viewerProfileRepository;
+  private final RecommendationCache recommendationCache;
+  private final TransactionOperations transactions;
+  private final MeterRegistry meterRegistry;
+  private final Counter bucketsWritten;
+
+  // Committed aggregation watermark, published for the lag gauge.
+  private volatile Instant processedUpTo;
 
   public EventAggregationService(
       AggregationRepository aggregationRepository,
-      AnalyticsProperties properties
+      EventWriteHorizonRepository writeHorizon,
+      AnalyticsProperties properties,
+      MetricsCube metricsCube,
+      QueryResultCache resultCache,
+      ProductPopularityService productPopularityService,
+      ItemCooccurrenceService itemCooccurrenceService,
+      ViewerProfileRepository viewerProfileRepository,
+      RecommendationCache recommendationCache,
+      TransactionOperations transactions,
+      MeterRegistry meterRegistry
   ) {
     this.aggregationRepository = aggregationRepository;
+    this.writeHorizon = writeHorizon;
     this.properties = properties;
+    this.metricsCube = metricsCube;
+    this.resultCache = resultCache;
+    this.productPopularityService = productPopularityService;
+    this.itemCooccurrenceService = itemCooccurrenceService;
+    this.viewerProfileRepository = viewerProfileRepository;
+    this.recommendationCache = recommendationCache;
+    this.transactions = transactions;
+    this.meterRegistry = meterRegistry;
+    this.bucketsWritten = meterRegistry.counter("events.aggregation.buckets");
+    Gauge.builder("events.aggregation.lag", this, EventAggregationService::lagSeconds)
+        .description("Seconds between now and the last committed aggregation watermark")
+        .baseUnit("seconds")
+        .register(meterRegistry);
   }
 
   @Scheduled(fixedDelayString = "${analytics.aggregation.fixed-delay-ms}")
   public void runScheduledAggregation() {
-    runAggregationOnce();
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "success";
+    try {
+      runAggregationOnce();
+    } catch (RuntimeException ex) {
+      outcome = "failure";
+      throw ex;
+    } finally {
+      sample.stop(meterRegistry.timer(
+          "events.aggregation.run",
+          "mode", properties.getAggregation().getMode().name().toLowerCase(Locale.ROOT),
+          "outcome", outcome
+      ));
+    }
+    productPopularityService.refreshIfDue();
+    itemCooccurrenceService.refreshIfDue();
   }
 
-  @Transactional
+  double lagSeconds() {
+    Instant watermark = processedUpTo;
+    return watermark == null
+        ? Double.NaN
+        : Duration.between(watermark, Instant.now()).toMillis() / 1000.0;
+  }
+
+  // The scheduled run calls this on the same instance, past the Spring proxy, so the transaction
+  // is opened explicitly. Metric deltas, profile deltas and both watermarks commit or roll back
+  // together; the state row lock also keeps a second instance out until then.
   public void runAggregationOnce() {
+    transactions.executeWithoutResult(status -> aggregate());
+  }
+
+  private void aggregate() {
     Instant upperBound = Instant.now()
         .minusSeconds(properties.getAggregation().getLagSeconds())
         .truncatedTo(ChronoUnit.SECONDS);
 
     Instant lastProcessedAt = aggregationRepository.lockAndGetLastProcessedAt();
-    Instant lookbackStart = upperBound.minus(
-        properties.getAggregation().getLookbackHours(),
-        ChronoUnit.HOURS
-    );
+    // Rows of a transaction still open carry its start time, so the ingest watermarks stop there.
+    upperBound = writeHorizon.committedBefore(upperBound).truncatedTo(ChronoUnit.SECONDS);
+    if (processedUpTo == null) {
+      processedUpTo = lastProcessedAt;
+    }
+    Instant lastIngestedAt = null;
+    if (properties.getAggregation().getMode() == AnalyticsProperties.AggregationMode.INCREMENTAL) {
+      lastIngestedAt = aggregationRepository.getLastIngestedAt();
+    }
+    if (lastIngestedAt != null) {
+      aggregateIncrement(lastIngestedAt, upperBound);
+    } else {
+      recompute(lastProcessedAt, upperBound);
+    }
+    updateViewerProfiles(upperBound);
+  }
+
+  // Profiles only ever add counts, so they follow their own ingest watermark in both modes.
+  // Cached recommendations of the viewers they changed are dropped once the new counts are visible.
+  private void updateViewerProfiles(Instant upperBound) {
+    Instant from = viewerProfileRepository.getIngestedAt();
+    if (from != null && !upperBound.isAfter(from)) {
+      return;
+    }
+    Instant windowStart = upperBound.minus(ViewerProfileRepository.WINDOW_DAYS, ChronoUnit.DAYS);
+    if (from != null) {
+      List<String> viewers = viewerProfileRepository.applyIngestedRange(from, upperBound, windowStart);
+      if (!viewers.isEmpty()) {
+        afterCommit(() -> recommendationCache.invalidateViewers(viewers));
+      }
+    }
+    viewerProfileRepository.deleteStale(windowStart);
+    viewerProfileRepository.updateIngestedAt(upperBound);
+  }
+
+  private void recompute(Instant lastProcessedAt, Instant upperBound) {
+    Instant lookbackStart = lookbackStart(upperBound);
 
     Instant from = lastProcessedAt.isAfter(lookbackStart) ? lastProcessedAt : lookbackStart;
     from = from.truncatedTo(ChronoUnit.HOURS);
@@ -55,7 +177,24 @@ public class EventAggregationService {
     List<AggregatedBucket> rows = aggregationRepository.aggregateRange(from, upperBound);
     aggregationRepository.deleteMetricsRange(from, upperBound);
     aggregationRepository.upsertMetrics(rows);
+    aggregationRepository.replaceBrandMetricsRange(from, upperBound);
+    Set<Instant> days = new TreeSet<>();
+    Instant day = from.truncatedTo(ChronoUnit.DAYS);
+    while (day.isBefore(upperBound)) {
+      days.add(day);
+      day = day.plus(1, ChronoUnit.DAYS);
+    }
+    rollupDays(days);
+    Instant replacedFrom = from;
+    afterCommit(() -> {
+      metricsCube.replaceHours(replacedFrom, upperBound, rows);
+      resultCache.invalidate(replacedFrom, upperBound);
+      bucketsWritten.increment(rows.size());
+      processedUpTo = upperBound;
+    });
     aggregationRepository.updateLastProcessedAt(upperBound);
+    // Keeps the ingest watermark in step so switching to incremental mode does not double count.
+    aggregationRepository.updateLastIngestedAt(upperBound);
 
     log.info(
         "Aggregation completed. from={}, to={}, buckets={}",
@@ -64,4 +203,196 @@ public class EventAggregationService {
         rows.size()
     );
   }
+
+  private void aggregateIncrement(Instant lastIngestedAt, Instant upperBound) {
+    if (!upperBound.isAfter(lastIngestedAt)) {
+      return;
+    }
+
+    List<AggregatedBucket> deltas = aggregationRepository.aggregateIngestedRange(lastIngestedAt, upperBound);
+    List<AggregatedBucket> rows = mergeWithExisting(deltas, upperBound);
+    aggregationRepository.upsertMetrics(rows);
+    aggregationRepository.addBrandMetricsIngestedRange(lastIngestedAt, upperBound);
+    mergeDays(deltas);
+    afterCommit(() -> {
+      metricsCube.upsert(rows);
+      invalidateResults(rows);
+      bucketsWritten.increment(rows.size());
+      processedUpTo = upperBound;
+    });
+    aggregationRepository.updateLastProcessedAt(upperBound);
+    aggregationRepository.updateLastIngestedAt(upperBound);
+
+    log.info(
+        "Incremental aggregation completed. from={}, to={}, buckets={}",
+        lastIngestedAt,
+        upperBound,
+        rows.size()
+    );
+  }
+
+  // Late events can touch old hours, so the span runs from the oldest to the newest bucket written.
+  private void invalidateResults(List<AggregatedBucket> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    Instant first = rows.get(0).bucketStart();
+    Instant last = first;
+    for (AggregatedBucket row : rows) {
+      Instant bucketStart = row.bucketStart();
+      if (bucketStart.isBefore(first)) {
+        first = bucketStart;
+      } else if (bucketStart.isAfter(last)) {
+        last = bucketStart;
+      }
+    }
+    resultCache.invalidate(first, last);
+  }
+
+  // The cube must never show rows that a rollback would undo.
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+
+  // A recompute rewrites its hours, so the days it spans are rebuilt from the hourly table and
+  // the rollup equals the sum of its hours.
+  private void rollupDays(Set<Instant> days) {
+    for (Instant day : days) {
+      aggregationRepository.replaceDailyMetrics(day, aggregationRepository.rollupDay(day));
+    }
+  }
+
+  // The ingested deltas are added to their daily rows the same way they are added to the hours,
+  // so a run only touches the daily rows its events fall into, late events included. Rows
+  // backfilled without sketches (V5) cannot take a union; their days are rebuilt from the hours.
+  private void mergeDays(List<AggregatedBucket> deltas) {
+    Map<BucketKey, AggregatedBucket> dayDeltas = new LinkedHashMap<>();
+    for (AggregatedBucket delta : deltas) {
+      AggregatedBucket dayDelta = new AggregatedBucket(
+          delta.bucketStart().truncatedTo(ChronoUnit.DAYS),
+          delta.eventType(),
+          delta.productKey(),
+          delta.totalEvents(),
+          delta.uniqueSessions(),
+          delta.uniqueUsers(),
+          delta.sessionsSketch(),
+          delta.usersSketch()
+      );
+      dayDeltas.merge(dayDelta.key(), dayDelta, EventAggregationService::merge);
+    }
+    if (dayDeltas.isEmpty()) {
+      return;
+    }
+
+    Map<BucketKey, AggregatedBucket> existing =
+        existingByKey(dayDeltas.keySet(), aggregationRepository::findDailyMetrics);
+    Set<Instant> rebuild = new TreeSet<>();
+    List<AggregatedBucket> merged = new ArrayList<>(dayDeltas.size());
+    for (AggregatedBucket delta : dayDeltas.values()) {
+      AggregatedBucket current = existing.get(delta.key());
+      if (current == null) {
+        merged.add(delta);
+      } else if (current.sessionsSketch() == null || current.usersSketch() == null) {
+        rebuild.add(delta.bucketStart());
+      } else {
+        merged.add(merge(current, delta));
+      }
+    }
+    aggregationRepository.upsertDailyMetrics(merged);
+    rollupDays(rebuild);
+  }
+
+  private Instant lookbackStart(Instant upperBound) {
+    return upperBound.minus(properties.getAggregation().getLookbackHours(), ChronoUnit.HOURS);
+  }
+
+  // Rows written before sketches existed (V4) cannot take a union. When a delta touches one inside
+  // the lookback window, where raw partitions are never dropped, its whole hour is recomputed from
+  // the events ingested so far, deltas included, and gets sketches. Older ones keep a lower bound.
+  private List<AggregatedBucket> mergeWithExisting(List<AggregatedBucket> deltas, Instant upperBound) {
+    if (deltas.isEmpty()) {
+      return List.of();
+    }
+
+    List<BucketKey> keys = new ArrayList<>(deltas.size());
+    for (AggregatedBucket delta : deltas) {
+      keys.add(delta.key());
+    }
+    Map<BucketKey, AggregatedBucket> existing = existingByKey(keys, aggregationRepository::findMetrics);
+
+    Instant lookbackStart = lookbackStart(upperBound).truncatedTo(ChronoUnit.HOURS);
+    Set<Instant> rebuild = new TreeSet<>();
+    for (AggregatedBucket row : existing.values()) {
+      if ((row.sessionsSketch() == null || row.usersSketch() == null)
+          && !row.bucketStart().isBefore(lookbackStart)) {
+        rebuild.add(row.bucketStart());
+      }
+    }
+
+    List<AggregatedBucket> merged = new ArrayList<>(deltas.size());
+    for (AggregatedBucket delta : deltas) {
+      if (rebuild.contains(delta.bucketStart())) {
+        continue;
+      }
+      AggregatedBucket current = existing.get(delta.key());
+      merged.add(current == null ? delta : merge(current, delta));
+    }
+    for (Instant hour : rebuild) {
+      merged.addAll(aggregationRepository.aggregateRangeIngestedBefore(
+          hour,
+          hour.plus(1, ChronoUnit.HOURS),
+          upperBound
+      ));
+    }
+    return merged;
+  }
+
+  private static Map<BucketKey, AggregatedBucket> existingByKey(
+      Collection<BucketKey> keys,
+      Function<Collection<BucketKey>, List<AggregatedBucket>> finder
+  ) {
+    Map<BucketKey, AggregatedBucket> existing = new HashMap<>();
+    for (AggregatedBucket row : finder.apply(keys)) {
+      existing.put(row.key(), row);
+    }
+    return existing;
+  }
+
+  private static AggregatedBucket merge(AggregatedBucket current, AggregatedBucket delta) {
+    HyperLogLog sessions = union(current.sessionsSketch(), delta.sessionsSketch());
+    HyperLogLog users = union(current.usersSketch(), delta.usersSketch());
+    return new AggregatedBucket(
+        current.bucketStart(),
+        current.eventType(),
+        current.productKey(),
+        current.totalEvents() + delta.totalEvents(),
+        uniques(sessions, current.uniqueSessions(), delta.uniqueSessions()),
+        uniques(users, current.uniqueUsers(), delta.uniqueUsers()),
+        sessions,
+        users
+    );
+  }
+
+  // Sketch-less rows outside the lookback window stay that way; see mergeWithExisting.
+  private static HyperLogLog union(HyperLogLog current, HyperLogLog delta) {
+    if (current == null || delta == null) {
+      return null;
+    }
+    HyperLogLog merged = current.copy();
+    merged.merge(delta);
+    return merged;
+  }
+
+  private static long uniques(HyperLogLog merged, long current, long delta) {
+    return merged != null ? merged.estimate() : Math.max(current, delta);
+  }
 }
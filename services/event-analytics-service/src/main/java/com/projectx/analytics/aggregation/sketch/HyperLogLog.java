@@ -0,0 +1,265 @@
+package com.projectx.analytics.aggregation.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Mergeable distinct-count sketch with a fixed upper bound of 2^precision bytes.
+ * Small sketches are kept sparse (sorted index/rank pairs) and switch to dense registers
+ * once the sparse form would be larger. Estimation uses Ertl's improved raw estimator,
+ * which needs no empirical bias tables and stays unbiased across the small-cardinality range.
+ */
+public final class HyperLogLog {
+
+  public static final int DEFAULT_PRECISION = 12;
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 16;
+
+  private static final byte FORMAT_SPARSE = 1;
+  private static final byte FORMAT_DENSE = 2;
+  private static final int SPARSE_ENTRY_BYTES = 3;
+  private static final double ALPHA_INF = 0.5 / Math.log(2);
+
+  private final int precision;
+  private final int registerCount;
+  private final int sparseLimit;
+
+  private byte[] dense;
+  private int[] sparse;
+  private int sparseSize;
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("HyperLogLog precision must be between "
+          + MIN_PRECISION + " and " + MAX_PRECISION);
+    }
+    this.precision = precision;
+    this.registerCount = 1 << precision;
+    this.sparseLimit = registerCount / SPARSE_ENTRY_BYTES;
+    this.sparse = new int[8];
+  }
+
+  public int precision() {
+    return precision;
+  }
+
+  public boolean isEmpty() {
+    if (dense == null) {
+      return sparseSize == 0;
+    }
+    for (byte register : dense) {
+      if (register != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void add(long value) {
+    long hash = mix(value);
+    int index = (int) (hash >>> (Long.SIZE - precision));
+    long remaining = hash << precision;
+    int rank = remaining == 0
+        ? Long.SIZE - precision + 1
+        : Long.numberOfLeadingZeros(remaining) + 1;
+    update(index, rank);
+  }
+
+  public void merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precision");
+    }
+    if (other.dense == null) {
+      for (int i = 0; i < other.sparseSize; i++) {
+        update(other.sparse[i] >>> 8, other.sparse[i] & 0xFF);
+      }
+      return;
+    }
+    toDense();
+    for (int i = 0; i < registerCount; i++) {
+      if (other.dense[i] > dense[i]) {
+        dense[i] = other.dense[i];
+      }
+    }
+  }
+
+  public long estimate() {
+    int q = Long.SIZE - precision;
+    int[] histogram = new int[q + 2];
+    if (dense == null) {
+      histogram[0] = registerCount - sparseSize;
+      for (int i = 0; i < sparseSize; i++) {
+        histogram[sparse[i] & 0xFF]++;
+      }
+    } else {
+      for (byte register : dense) {
+        histogram[register]++;
+      }
+    }
+
+    double m = registerCount;
+    double z = m * tau((m - histogram[q + 1]) / m);
+    for (int k = q; k >= 1; k--) {
+      z = 0.5 * (z + histogram[k]);
+    }
+    z += m * sigma(histogram[0] / m);
+    return Math.round(ALPHA_INF * m * m / z);
+  }
+
+  public HyperLogLog copy() {
+    HyperLogLog copy = new HyperLogLog(precision);
+    copy.merge(this);
+    return copy;
+  }
+
+  public byte[] toBytes() {
+    if (dense == null) {
+      ByteBuffer buffer = ByteBuffer.allocate(2 + Integer.BYTES + sparseSize * SPARSE_ENTRY_BYTES);
+      buffer.put(FORMAT_SPARSE).put((byte) precision).putInt(sparseSize);
+      for (int i = 0; i < sparseSize; i++) {
+        buffer.putShort((short) (sparse[i] >>> 8)).put((byte) (sparse[i] & 0xFF));
+      }
+      return buffer.array();
+    }
+    byte[] bytes = new byte[2 + registerCount];
+    bytes[0] = FORMAT_DENSE;
+    bytes[1] = (byte) precision;
+    System.arraycopy(dense, 0, bytes, 2, registerCount);
+    return bytes;
+  }
+
+  public static HyperLogLog fromBytes(byte[] bytes) {
+    if (bytes == null || bytes.length < 2) {
+      throw new IllegalArgumentException("Serialized HyperLogLog is truncated");
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    byte format = buffer.get();
+    HyperLogLog sketch = new HyperLogLog(buffer.get());
+    if (format == FORMAT_DENSE) {
+      if (buffer.remaining() != sketch.registerCount) {
+        throw new IllegalArgumentException("Serialized HyperLogLog has wrong register count");
+      }
+      sketch.dense = new byte[sketch.registerCount];
+      buffer.get(sketch.dense);
+      sketch.sparse = null;
+      return sketch;
+    }
+    if (format != FORMAT_SPARSE) {
+      throw new IllegalArgumentException("Unknown HyperLogLog format: " + format);
+    }
+    int size = buffer.getInt();
+    if (size < 0 || buffer.remaining() != size * SPARSE_ENTRY_BYTES) {
+      throw new IllegalArgumentException("Serialized HyperLogLog has wrong sparse size");
+    }
+    for (int i = 0; i < size; i++) {
+      int index = Short.toUnsignedInt(buffer.getShort());
+      int rank = Byte.toUnsignedInt(buffer.get());
+      sketch.update(index, rank);
+    }
+    return sketch;
+  }
+
+  private void update(int index, int rank) {
+    if (dense != null) {
+      if (rank > dense[index]) {
+        dense[index] = (byte) rank;
+      }
+      return;
+    }
+
+    int position = findSparse(index);
+    if (position >= 0) {
+      if (rank > (sparse[position] & 0xFF)) {
+        sparse[position] = (index << 8) | rank;
+      }
+      return;
+    }
+
+    int insertAt = -position - 1;
+    if (sparseSize == sparse.length) {
+      sparse = Arrays.copyOf(sparse, sparse.length * 2);
+    }
+    System.arraycopy(sparse, insertAt, sparse, insertAt + 1, sparseSize - insertAt);
+    sparse[insertAt] = (index << 8) | rank;
+    sparseSize++;
+    if (sparseSize > sparseLimit) {
+      toDense();
+    }
+  }
+
+  private int findSparse(int index) {
+    int low = 0;
+    int high = sparseSize - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midIndex = sparse[mid] >>> 8;
+      if (midIndex < index) {
+        low = mid + 1;
+      } else if (midIndex > index) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private void toDense() {
+    if (dense != null) {
+      return;
+    }
+    dense = new byte[registerCount];
+    for (int i = 0; i < sparseSize; i++) {
+      dense[sparse[i] >>> 8] = (byte) (sparse[i] & 0xFF);
+    }
+    sparse = null;
+    sparseSize = 0;
+  }
+
+  // MurmurHash3 fmix64: spreads ids and database-side hashes uniformly over 64 bits.
+  private static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static double sigma(double x) {
+    if (x == 1.0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double y = 1.0;
+    double z = x;
+    double previous;
+    do {
+      x *= x;
+      previous = z;
+      z += x * y;
+      y += y;
+    } while (z != previous);
+    return z;
+  }
+
+  private static double tau(double x) {
+    if (x == 0.0 || x == 1.0) {
+      return 0.0;
+    }
+    double y = 1.0;
+    double z = 1.0 - x;
+    double previous;
+    do {
+      x = Math.sqrt(x);
+      previous = z;
+      y *= 0.5;
+      z -= (1.0 - x) * (1.0 - x) * y;
+    } while (z != previous);
+    return z / 3.0;
+  }
+}
@@ -0,0 +1,176 @@
+package com.projectx.analytics.analytics.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.springframework.stereotype.Component;
+
+/**
+ * Funnel and top-product results keyed by the hour buckets they read. Both the cube and the SQL
+ * path read exactly the buckets starting in {@code [ceil(from), floor(to)]}, so that key is exact.
+ * An entry over closed hours lives until the aggregation rewrites one of its hours. An entry that
+ * reaches into the open hour also expires after a short TTL. Results are read from replicas that
+ * may trail the primary by up to {@code replica-lag-ms}, so an entry loaded that soon after an
+ * invalidation of one of its hours may predate the rewrite; it expires once that bound has passed.
+ */
+@Component
+public class QueryResultCache {
+
+  private static final long SECONDS_PER_HOUR = 3_600;
+
+  private final boolean enabled;
+  private final long lagSeconds;
+  private final long openHourTtlNanos;
+  private final long replicaLagNanos;
+  private final Cache<Key, Entry> cache;
+  private final Counter invalidated;
+  // Puts hold the read lock, so an invalidation cannot slip between a put's generation check and
+  // the write itself.
+  private final ReentrantReadWriteLock invalidationLock = new ReentrantReadWriteLock();
+  private volatile long generation;
+  // Invalidations younger than the replica lag bound, oldest first; replaced under the write lock.
+  private volatile List<Invalidation> recentInvalidations = List.of();
+
+  public QueryResultCache(AnalyticsProperties properties, MeterRegistry meterRegistry) {
+    AnalyticsProperties.ResultCache settings = properties.getResultCache();
+    this.enabled = settings.isEnabled();
+    this.lagSeconds = properties.getAggregation().getLagSeconds();
+    this.openHourTtlNanos = TimeUnit.MILLISECONDS.toNanos(settings.getOpenHourTtlMs());
+    this.replicaLagNanos = TimeUnit.MILLISECONDS.toNanos(settings.getReplicaLagMs());
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(settings.getMaxWeight())
+        .weigher((Key key, Entry entry) -> entry.weight())
+        .expireAfter(new Expiry<Key, Entry>() {
+          @Override
+          public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+            return entry.ttlNanos();
+          }
+
+          @Override
+          public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+          }
+
+          @Override
+          public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .recordStats()
+        .build();
+    if (enabled) {
+      CaffeineCacheMetrics.monitor(meterRegistry, cache, "analytics-results");
+    }
+    this.invalidated = meterRegistry.counter("analytics.result.cache.invalidated");
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> Optional<T> get(Key key) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    Entry entry = cache.getIfPresent(key);
+    return entry == null ? Optional.empty() : Optional.of((T) entry.value());
+  }
+
+  // Read before computing a result and pass it to put, which drops results an invalidation overtook.
+  public long generation() {
+    return generation;
+  }
+
+  public void put(Key key, Object value, int rows, long observedGeneration) {
+    if (!enabled) {
+      return;
+    }
+    invalidationLock.readLock().lock();
+    try {
+      if (generation != observedGeneration) {
+        return;
+      }
+      cache.put(key, new Entry(value, rows + 1, ttlNanos(key)));
+    } finally {
+      invalidationLock.readLock().unlock();
+    }
+  }
+
+  // Drops every entry that read a bucket starting in [from, to].
+  public void invalidate(Instant from, Instant to) {
+    long first = floorHour(from);
+    long last = floorHour(to);
+    int removed = 0;
+    invalidationLock.writeLock().lock();
+    try {
+      generation++;
+      long now = System.nanoTime();
+      List<Invalidation> recent = new ArrayList<>(recentInvalidations.size() + 1);
+      for (Invalidation invalidation : recentInvalidations) {
+        if (now - invalidation.at() < replicaLagNanos) {
+          recent.add(invalidation);
+        }
+      }
+      recent.add(new Invalidation(first, last, now));
+      recentInvalidations = List.copyOf(recent);
+      for (Key key : cache.asMap().keySet()) {
+        if (key.reads(first, last) && cache.asMap().remove(key) != null) {
+          removed++;
+        }
+      }
+    } finally {
+      invalidationLock.writeLock().unlock();
+    }
+    invalidated.increment(removed);
+  }
+
+  private long ttlNanos(Key key) {
+    long ttl = key.lastHour() >= openHour() ? openHourTtlNanos : Long.MAX_VALUE;
+    long now = System.nanoTime();
+    for (Invalidation invalidation : recentInvalidations) {
+      long settlesIn = invalidation.at() + replicaLagNanos - now;
+      if (settlesIn > 0 && key.reads(invalidation.firstHour(), invalidation.lastHour())) {
+        ttl = Math.min(ttl, settlesIn);
+      }
+    }
+    return ttl;
+  }
+
+  private long openHour() {
+    return floorHour(Instant.now().minusSeconds(lagSeconds));
+  }
+
+  private static long floorHour(Instant instant) {
+    return Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_HOUR);
+  }
+
+  private static long ceilHour(Instant instant) {
+    long hour = floorHour(instant);
+    return hour * SECONDS_PER_HOUR == instant.getEpochSecond() && instant.getNano() == 0 ? hour : hour + 1;
+  }
+
+  /** Hours are epoch hours of the first and last bucket start the query reads. */
+  public record Key(String query, long firstHour, long lastHour, int limit) {
+
+    public static Key of(String query, Instant from, Instant to, int limit) {
+      return new Key(query, ceilHour(from), floorHour(to), limit);
+    }
+
+    boolean reads(long first, long last) {
+      return firstHour <= last && lastHour >= first;
+    }
+  }
+
+  private record Entry(Object value, int weight, long ttlNanos) {
+  }
+
+  private record Invalidation(long firstHour, long lastHour, long at) {
+  }
+}
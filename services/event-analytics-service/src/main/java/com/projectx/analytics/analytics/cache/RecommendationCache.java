@@ -0,0 +1,172 @@
+package com.projectx.analytics.analytics.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.projectx.analytics.analytics.dto.PersonalizedRecommendationResponse;
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-viewer recommendation answers kept for a few seconds. The first request for a key computes
+ * on its own thread; identical requests arriving meanwhile wait for that computation instead of
+ * starting their own. A failed computation is shared by its waiters and removed before it
+ * completes, so it is never cached.
+ */
+@Component
+public class RecommendationCache {
+
+  private final boolean enabled;
+  private final Cache<Key, CompletableFuture<PersonalizedRecommendationResponse>> cache;
+  // Keys by viewer, so invalidation touches only that viewer's entries. A key is added under the
+  // viewer's lock together with its entry and pruned once the entry is gone.
+  private final ConcurrentHashMap<String, Set<Key>> keysByViewer = new ConcurrentHashMap<>();
+  private final Counter coalesced;
+  private final Counter invalidated;
+
+  public RecommendationCache(AnalyticsProperties properties, MeterRegistry meterRegistry) {
+    AnalyticsProperties.RecommendationCache settings = properties.getRecommendationCache();
+    this.enabled = settings.isEnabled();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(settings.getMaxSize())
+        .expireAfterWrite(Duration.ofMillis(settings.getTtlMs()))
+        .removalListener(this::onRemoval)
+        .recordStats()
+        .build();
+    if (enabled) {
+      CaffeineCacheMetrics.monitor(meterRegistry, cache, "recommendations");
+    }
+    this.coalesced = meterRegistry.counter("analytics.recommendation.cache.coalesced");
+    this.invalidated = meterRegistry.counter("analytics.recommendation.cache.invalidated");
+  }
+
+  public PersonalizedRecommendationResponse get(Key key, Supplier<PersonalizedRecommendationResponse> loader) {
+    if (!enabled) {
+      return loader.get();
+    }
+    CompletableFuture<PersonalizedRecommendationResponse> future = cache.getIfPresent(key);
+    if (future != null) {
+      if (!future.isDone()) {
+        coalesced.increment();
+      }
+      return join(future);
+    }
+
+    CompletableFuture<PersonalizedRecommendationResponse> created = new CompletableFuture<>();
+    future = claim(key, created);
+    if (future != created) {
+      if (!future.isDone()) {
+        coalesced.increment();
+      }
+      return join(future);
+    }
+    try {
+      PersonalizedRecommendationResponse response = loader.get();
+      created.complete(response);
+      // Restarts the TTL from completion; does nothing if the entry was invalidated meanwhile.
+      cache.asMap().replace(key, created, created);
+      return response;
+    } catch (RuntimeException | Error ex) {
+      cache.asMap().remove(key, created);
+      created.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  // Also drops computations still in flight, so their results are not stored.
+  public void invalidateViewers(Collection<String> viewerKeys) {
+    if (!enabled || viewerKeys.isEmpty()) {
+      return;
+    }
+    int removed = 0;
+    for (String viewer : viewerKeys) {
+      Set<Key> keys = keysByViewer.remove(viewer);
+      if (keys == null) {
+        continue;
+      }
+      for (Key key : keys) {
+        if (cache.asMap().remove(key) != null) {
+          removed++;
+        }
+      }
+    }
+    invalidated.increment(removed);
+  }
+
+  private CompletableFuture<PersonalizedRecommendationResponse> claim(
+      Key key,
+      CompletableFuture<PersonalizedRecommendationResponse> created
+  ) {
+    if (key.viewer() == null) {
+      CompletableFuture<PersonalizedRecommendationResponse> existing = cache.asMap().putIfAbsent(key, created);
+      return existing == null ? created : existing;
+    }
+    @SuppressWarnings("unchecked")
+    CompletableFuture<PersonalizedRecommendationResponse>[] claimed = new CompletableFuture[1];
+    keysByViewer.compute(key.viewer(), (viewer, keys) -> {
+      Set<Key> indexed = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+      CompletableFuture<PersonalizedRecommendationResponse> existing = cache.asMap().putIfAbsent(key, created);
+      claimed[0] = existing == null ? created : existing;
+      indexed.add(key);
+      return indexed;
+    });
+    return claimed[0];
+  }
+
+  // Runs after the entry is gone; the viewer's lock orders it against a new entry for the same key.
+  private void onRemoval(Key key, Object value, RemovalCause cause) {
+    if (key == null || key.viewer() == null || cause == RemovalCause.REPLACED) {
+      return;
+    }
+    keysByViewer.computeIfPresent(key.viewer(), (viewer, keys) -> {
+      if (!cache.asMap().containsKey(key)) {
+        keys.remove(key);
+      }
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  private static PersonalizedRecommendationResponse join(
+      CompletableFuture<PersonalizedRecommendationResponse> future
+  ) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (ex.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * A null seed stands for the default seed, which the cached answer fixed when it was computed.
+   */
+  public record Key(String viewer, Integer categoryId, List<Integer> excludes, int limit, String seed) {
+
+    // Exclusion order does not change the answer, so it does not split the key either.
+    public static Key of(String viewer, Integer categoryId, List<Integer> excludes, int limit, String seed) {
+      return new Key(
+          viewer,
+          categoryId,
+          excludes.stream().sorted().toList(),
+          limit,
+          seed == null || seed.isBlank() ? null : seed.trim()
+      );
+    }
+  }
+}
@@ -100,7 +100,28 @@ public class AnalyticsController {
     );
   }
 
-  private List<Integer> parseIds(String csv) {
+  @GetMapping("/recommendations/related")
+  public PersonalizedRecommendationResponse getRelatedRecommendations(
+      @RequestParam(required = false) Long userId,
+      @RequestParam(required = false) String sessionId,
+      @RequestParam(required = false) Integer productId,
+      @RequestParam(required = false) Integer categoryId,
+      @RequestParam(required = false) String excludeProductIds,
+      @RequestParam(defaultValue = "20") int limit
+  ) {
+    int safeLimit = Math.max(1, Math.min(100, limit));
+    List<Integer> excludeIds = parseIds(excludeProductIds);
+    return recommendationQueryService.getRelatedRecommendations(
+        userId,
+        sessionId,
+        productId,
+        categoryId,
+        excludeIds,
+        safeLimit
+    );
+  }
+
+  static List<Integer> parseIds(String csv) {
     if (csv == null || csv.isBlank()) {
       return List.of();
     }
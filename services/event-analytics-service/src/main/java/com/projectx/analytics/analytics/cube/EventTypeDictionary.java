@@ -0,0 +1,51 @@
+package com.projectx.analytics.analytics.cube;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps event type names to dense ids so slices can store a {@code short} per cell.
+ * Only the cube's writer adds names; ids are never reused or reordered.
+ */
+final class EventTypeDictionary {
+
+  private final Map<String, Short> ids = new HashMap<>();
+  private String[] names = new String[0];
+
+  short idOf(String name) {
+    Short id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    if (names.length == Short.MAX_VALUE) {
+      throw new IllegalStateException("Too many distinct event types in metrics cube");
+    }
+    short next = (short) names.length;
+    names = Arrays.copyOf(names, names.length + 1);
+    names[next] = name;
+    ids.put(name, next);
+    return next;
+  }
+
+  // Lookup without registering, for readers; -1 when the type has never been seen.
+  int find(String name) {
+    Short id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  String nameOf(int id) {
+    return names[id];
+  }
+
+  int size() {
+    return names.length;
+  }
+
+  EventTypeDictionary copy() {
+    EventTypeDictionary copy = new EventTypeDictionary();
+    copy.ids.putAll(ids);
+    copy.names = names.clone();
+    return copy;
+  }
+}
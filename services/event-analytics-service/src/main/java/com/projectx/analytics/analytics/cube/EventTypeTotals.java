@@ -0,0 +1,9 @@
+package com.projectx.analytics.analytics.cube;
+
+public record EventTypeTotals(
+    String eventType,
+    long totalEvents,
+    long uniqueSessions,
+    long uniqueUsers
+) {
+}
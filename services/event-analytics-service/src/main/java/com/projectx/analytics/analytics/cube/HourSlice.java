@@ -0,0 +1,95 @@
+package com.projectx.analytics.analytics.cube;
+
+import com.projectx.analytics.aggregation.model.AggregatedBucket;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable column store for one hour bucket: one cell per (event type, product key), sorted by
+ * type id then product. Per-type totals and sketch unions are precomputed for the funnel.
+ */
+final class HourSlice {
+
+  final long hour;
+  final short[] types;
+  final int[] products;
+  final long[] totals;
+  final HyperLogLog[] sessions;
+  final HyperLogLog[] users;
+
+  final long[] typeTotals;
+  final HyperLogLog[] typeSessions;
+  final HyperLogLog[] typeUsers;
+
+  private HourSlice(long hour, int cells, int typeCount) {
+    this.hour = hour;
+    this.types = new short[cells];
+    this.products = new int[cells];
+    this.totals = new long[cells];
+    this.sessions = new HyperLogLog[cells];
+    this.users = new HyperLogLog[cells];
+    this.typeTotals = new long[typeCount];
+    this.typeSessions = new HyperLogLog[typeCount];
+    this.typeUsers = new HyperLogLog[typeCount];
+  }
+
+  static HourSlice of(long hour, List<AggregatedBucket> rows, EventTypeDictionary dictionary) {
+    for (AggregatedBucket row : rows) {
+      dictionary.idOf(row.eventType());
+    }
+    List<AggregatedBucket> sorted = new ArrayList<>(rows);
+    sorted.sort(Comparator
+        .comparingInt((AggregatedBucket row) -> dictionary.idOf(row.eventType()))
+        .thenComparingInt(AggregatedBucket::productKey));
+
+    HourSlice slice = new HourSlice(hour, sorted.size(), dictionary.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      AggregatedBucket row = sorted.get(i);
+      short type = dictionary.idOf(row.eventType());
+      slice.types[i] = type;
+      slice.products[i] = row.productKey();
+      slice.totals[i] = row.totalEvents();
+      slice.sessions[i] = row.sessionsSketch();
+      slice.users[i] = row.usersSketch();
+
+      slice.typeTotals[type] += row.totalEvents();
+      slice.typeSessions[type] = union(slice.typeSessions[type], row.sessionsSketch());
+      slice.typeUsers[type] = union(slice.typeUsers[type], row.usersSketch());
+    }
+    return slice;
+  }
+
+  int size() {
+    return types.length;
+  }
+
+  List<AggregatedBucket> toBuckets(EventTypeDictionary dictionary) {
+    Instant bucketStart = Instant.ofEpochSecond(hour * 3600);
+    List<AggregatedBucket> rows = new ArrayList<>(types.length);
+    for (int i = 0; i < types.length; i++) {
+      rows.add(new AggregatedBucket(
+          bucketStart,
+          dictionary.nameOf(types[i]),
+          products[i],
+          totals[i],
+          0L,
+          0L,
+          sessions[i],
+          users[i]
+      ));
+    }
+    return rows;
+  }
+
+  private static HyperLogLog union(HyperLogLog accumulated, HyperLogLog sketch) {
+    if (sketch == null) {
+      return accumulated;
+    }
+    HyperLogLog result = accumulated == null ? new HyperLogLog(sketch.precision()) : accumulated;
+    result.merge(sketch);
+    return result;
+  }
+}
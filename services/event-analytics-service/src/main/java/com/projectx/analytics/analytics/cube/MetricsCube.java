@@ -0,0 +1,364 @@
+package com.projectx.analytics.analytics.cube;
+
+import com.projectx.analytics.aggregation.model.AggregatedBucket;
+import com.projectx.analytics.aggregation.model.BucketKey;
+import com.projectx.analytics.aggregation.repository.AggregationRepository;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.config.AnalyticsProperties;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process copy of the last {@code analytics.cube.retention-hours} of hourly metrics, stored
+ * as one immutable {@link HourSlice} per hour. Readers work on a published snapshot without
+ * locking; {@link com.projectx.analytics.aggregation.service.EventAggregationService} patches it
+ * after each committed run. Ranges that start before the window are answered by Postgres.
+ */
+@Component
+public class MetricsCube {
+
+  private static final Logger log = LoggerFactory.getLogger(MetricsCube.class);
+  private static final long SECONDS_PER_HOUR = 3600;
+
+  private final AggregationRepository aggregationRepository;
+  private final AnalyticsProperties.Cube settings;
+  private final long maxFutureSkewSeconds;
+
+  // Serializes writers; readers only see the volatile snapshot. Not synchronized, so a reload
+  // blocked on JDBC does not pin a virtual thread to its carrier.
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private volatile Snapshot snapshot;
+
+  public MetricsCube(AggregationRepository aggregationRepository, AnalyticsProperties properties) {
+    this.aggregationRepository = aggregationRepository;
+    this.settings = properties.getCube();
+    this.maxFutureSkewSeconds = properties.getIngestion().getMaxFutureSkewSeconds();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (!settings.isEnabled()) {
+      return;
+    }
+    try {
+      reload();
+    } catch (RuntimeException ex) {
+      log.warn("Metrics cube load failed; analytics reads fall back to Postgres until the next run", ex);
+    }
+  }
+
+  public void reload() {
+    writeLock.lock();
+    try {
+      load();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void load() {
+    long firstHour = windowStartHour();
+    long lastHour = windowEndHour();
+    EventTypeDictionary dictionary = new EventTypeDictionary();
+    Map<Long, List<AggregatedBucket>> byHour = new TreeMap<>();
+    aggregationRepository.forEachMetricSince(
+        Instant.ofEpochSecond(firstHour * SECONDS_PER_HOUR),
+        row -> {
+          long hour = hourOf(row.bucketStart());
+          if (hour <= lastHour) {
+            byHour.computeIfAbsent(hour, key -> new ArrayList<>()).add(row);
+          }
+        }
+    );
+
+    Map<Long, HourSlice> slices = new TreeMap<>();
+    long cells = 0;
+    for (Map.Entry<Long, List<AggregatedBucket>> entry : byHour.entrySet()) {
+      HourSlice slice = HourSlice.of(entry.getKey(), entry.getValue(), dictionary);
+      slices.put(entry.getKey(), slice);
+      cells += slice.size();
+    }
+    snapshot = Snapshot.of(firstHour, slices, dictionary);
+    log.info("Metrics cube loaded. fromHour={}, hours={}, cells={}", firstHour, slices.size(), cells);
+  }
+
+  public boolean isReady() {
+    return snapshot != null;
+  }
+
+  // Every hour bucket from from's hour through to's hour is replaced by rows, mirroring
+  // AggregationRepository.deleteMetricsRange in a delete-and-recompute run.
+  public void replaceHours(Instant from, Instant to, List<AggregatedBucket> rows) {
+    patch(hourOf(from), hourOf(to) + 1, rows);
+  }
+
+  // Rows overwrite their cells; other cells in the same hour are kept.
+  public void upsert(List<AggregatedBucket> rows) {
+    patch(0, 0, rows);
+  }
+
+  public Optional<List<EventTypeTotals>> totalsByEventType(
+      Instant from,
+      Instant to,
+      Collection<String> eventTypes
+  ) {
+    Snapshot current = snapshot;
+    if (current == null || !current.covers(from)) {
+      return Optional.empty();
+    }
+
+    List<HourSlice> slices = current.slicesBetween(from, to);
+    List<EventTypeTotals> result = new ArrayList<>(eventTypes.size());
+    for (String eventType : eventTypes) {
+      int type = current.dictionary.find(eventType);
+      long total = 0;
+      HyperLogLog sessions = new HyperLogLog();
+      HyperLogLog users = new HyperLogLog();
+      if (type >= 0) {
+        for (HourSlice slice : slices) {
+          if (type >= slice.typeTotals.length) {
+            continue;
+          }
+          total += slice.typeTotals[type];
+          merge(sessions, slice.typeSessions[type]);
+          merge(users, slice.typeUsers[type]);
+        }
+      }
+      result.add(new EventTypeTotals(eventType, total, sessions.estimate(), users.estimate()));
+    }
+    return Optional.of(result);
+  }
+
+  public Optional<List<ProductTotals>> topProducts(Instant from, Instant to, int limit) {
+    Snapshot current = snapshot;
+    if (current == null || !current.covers(from)) {
+      return Optional.empty();
+    }
+
+    int viewType = current.dictionary.find("PRODUCT_VIEW");
+    int cartType = current.dictionary.find("ADD_TO_CART");
+    int purchaseType = current.dictionary.find("PURCHASE");
+    List<HourSlice> slices = current.slicesBetween(from, to);
+
+    ProductAccumulator products = new ProductAccumulator(1024);
+    for (HourSlice slice : slices) {
+      for (int i = 0; i < slice.size(); i++) {
+        if (slice.products[i] <= 0) {
+          continue;
+        }
+        int slot = products.slotOf(slice.products[i]);
+        int type = slice.types[i];
+        if (type == viewType) {
+          products.views[slot] += slice.totals[i];
+        } else if (type == cartType) {
+          products.addToCart[slot] += slice.totals[i];
+        } else if (type == purchaseType) {
+          products.purchases[slot] += slice.totals[i];
+        }
+      }
+    }
+
+    int[] top = selectTop(products, Math.min(limit, products.size));
+    int[] rankBySlot = new int[products.size];
+    Arrays.fill(rankBySlot, -1);
+    HyperLogLog[] sessions = new HyperLogLog[top.length];
+    HyperLogLog[] users = new HyperLogLog[top.length];
+    for (int rank = 0; rank < top.length; rank++) {
+      rankBySlot[top[rank]] = rank;
+      sessions[rank] = new HyperLogLog();
+      users[rank] = new HyperLogLog();
+    }
+    for (HourSlice slice : slices) {
+      for (int i = 0; i < slice.size(); i++) {
+        int slot = slice.products[i] > 0 ? products.find(slice.products[i]) : -1;
+        if (slot >= 0 && rankBySlot[slot] >= 0) {
+          merge(sessions[rankBySlot[slot]], slice.sessions[i]);
+          merge(users[rankBySlot[slot]], slice.users[i]);
+        }
+      }
+    }
+
+    List<ProductTotals> result = new ArrayList<>(top.length);
+    for (int rank = 0; rank < top.length; rank++) {
+      int slot = top[rank];
+      result.add(new ProductTotals(
+          products.products[slot],
+          products.views[slot],
+          products.addToCart[slot],
+          products.purchases[slot],
+          sessions[rank].estimate(),
+          users[rank].estimate()
+      ));
+    }
+    return Optional.of(result);
+  }
+
+  private void patch(long replaceFromHour, long replaceToHour, List<AggregatedBucket> rows) {
+    writeLock.lock();
+    try {
+      applyPatch(replaceFromHour, replaceToHour, rows);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void applyPatch(long replaceFromHour, long replaceToHour, List<AggregatedBucket> rows) {
+    if (!settings.isEnabled()) {
+      return;
+    }
+    Snapshot current = snapshot;
+    if (current == null) {
+      // The reload reads committed state, which already contains these rows.
+      onApplicationReady();
+      return;
+    }
+
+    long firstHour = Math.max(current.firstHour, windowStartHour());
+    long lastHour = windowEndHour();
+    EventTypeDictionary dictionary = current.dictionary.copy();
+    Map<Long, HourSlice> slices = new TreeMap<>();
+    for (HourSlice slice : current.slices) {
+      if (slice != null && slice.hour >= firstHour) {
+        slices.put(slice.hour, slice);
+      }
+    }
+    for (long hour = Math.max(replaceFromHour, firstHour); hour < replaceToHour; hour++) {
+      slices.remove(hour);
+    }
+
+    Map<Long, Map<BucketKey, AggregatedBucket>> changes = new TreeMap<>();
+    for (AggregatedBucket row : rows) {
+      long hour = hourOf(row.bucketStart());
+      if (hour < firstHour || hour > lastHour) {
+        continue;
+      }
+      changes.computeIfAbsent(hour, key -> {
+        Map<BucketKey, AggregatedBucket> cells = new LinkedHashMap<>();
+        HourSlice existing = slices.get(key);
+        if (existing != null) {
+          for (AggregatedBucket cell : existing.toBuckets(current.dictionary)) {
+            cells.put(cell.key(), cell);
+          }
+        }
+        return cells;
+      }).put(row.key(), row);
+    }
+    for (Map.Entry<Long, Map<BucketKey, AggregatedBucket>> entry : changes.entrySet()) {
+      List<AggregatedBucket> cells = new ArrayList<>(entry.getValue().values());
+      slices.put(entry.getKey(), HourSlice.of(entry.getKey(), cells, dictionary));
+    }
+
+    snapshot = Snapshot.of(firstHour, slices, dictionary);
+  }
+
+  // Keeps the top-N slots ordered like the SQL: purchases, then add-to-cart, then views.
+  private static int[] selectTop(ProductAccumulator products, int limit) {
+    int[] top = new int[limit];
+    int count = 0;
+    for (int slot = 0; slot < products.size; slot++) {
+      if (count == limit && !ranksHigher(products, slot, top[count - 1])) {
+        continue;
+      }
+      int position = count < limit ? count++ : limit - 1;
+      while (position > 0 && ranksHigher(products, slot, top[position - 1])) {
+        top[position] = top[position - 1];
+        position--;
+      }
+      top[position] = slot;
+    }
+    return top;
+  }
+
+  private static boolean ranksHigher(ProductAccumulator products, int a, int b) {
+    if (products.purchases[a] != products.purchases[b]) {
+      return products.purchases[a] > products.purchases[b];
+    }
+    if (products.addToCart[a] != products.addToCart[b]) {
+      return products.addToCart[a] > products.addToCart[b];
+    }
+    return products.views[a] > products.views[b];
+  }
+
+  private static void merge(HyperLogLog target, HyperLogLog sketch) {
+    if (sketch != null) {
+      target.merge(sketch);
+    }
+  }
+
+  private long windowStartHour() {
+    return hourOf(Instant.now()) - settings.getRetentionHours();
+  }
+
+  // Ingestion rejects occurredAt further ahead, so later hours can only hold rows written before
+  // that check; skipping them keeps the slice array bounded by the window.
+  private long windowEndHour() {
+    return hourOf(Instant.now().plusSeconds(maxFutureSkewSeconds));
+  }
+
+  private static long hourOf(Instant instant) {
+    return Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_HOUR);
+  }
+
+  private static long ceilHour(Instant instant) {
+    return Math.floorDiv(instant.getEpochSecond() + SECONDS_PER_HOUR - 1, SECONDS_PER_HOUR);
+  }
+
+  private static final class Snapshot {
+
+    private final long firstHour;
+    private final HourSlice[] slices;
+    private final EventTypeDictionary dictionary;
+
+    private Snapshot(long firstHour, HourSlice[] slices, EventTypeDictionary dictionary) {
+      this.firstHour = firstHour;
+      this.slices = slices;
+      this.dictionary = dictionary;
+    }
+
+    private static Snapshot of(
+        long firstHour,
+        Map<Long, HourSlice> slicesByHour,
+        EventTypeDictionary dictionary
+    ) {
+      long lastHour = firstHour - 1;
+      for (long hour : slicesByHour.keySet()) {
+        lastHour = Math.max(lastHour, hour);
+      }
+      HourSlice[] slices = new HourSlice[(int) (lastHour - firstHour + 1)];
+      for (Map.Entry<Long, HourSlice> entry : slicesByHour.entrySet()) {
+        slices[(int) (entry.getKey() - firstHour)] = entry.getValue();
+      }
+      return new Snapshot(firstHour, slices, dictionary);
+    }
+
+    private boolean covers(Instant from) {
+      return ceilHour(from) >= firstHour;
+    }
+
+    // Hour buckets whose start lies in [from, to], matching the SQL range filter.
+    private List<HourSlice> slicesBetween(Instant from, Instant to) {
+      int start = (int) Math.max(0, ceilHour(from) - firstHour);
+      int end = (int) Math.min(slices.length - 1, hourOf(to) - firstHour);
+      List<HourSlice> result = new ArrayList<>(Math.max(0, end - start + 1));
+      for (int i = start; i <= end; i++) {
+        if (slices[i] != null) {
+          result.add(slices[i]);
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.projectx.analytics.analytics.cube;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing {@code int productKey -> slot} table with per-slot counters, so a range scan
+ * over many hours sums per product without boxing.
+ */
+final class ProductAccumulator {
+
+  private static final int EMPTY = 0;
+
+  private int[] keys;
+  private int[] slots;
+  private int mask;
+
+  int size;
+  int[] products;
+  long[] views;
+  long[] addToCart;
+  long[] purchases;
+
+  ProductAccumulator(int expected) {
+    int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+    keys = new int[capacity];
+    slots = new int[capacity];
+    mask = capacity - 1;
+    products = new int[Math.max(8, expected)];
+    views = new long[products.length];
+    addToCart = new long[products.length];
+    purchases = new long[products.length];
+  }
+
+  // Product keys are > 0 here; 0 marks an empty table entry.
+  int slotOf(int product) {
+    int index = mix(product) & mask;
+    while (keys[index] != EMPTY) {
+      if (keys[index] == product) {
+        return slots[index];
+      }
+      index = (index + 1) & mask;
+    }
+    if (size * 2 >= keys.length) {
+      rehash();
+      return slotOf(product);
+    }
+    keys[index] = product;
+    slots[index] = size;
+    if (size == products.length) {
+      int grown = products.length * 2;
+      products = Arrays.copyOf(products, grown);
+      views = Arrays.copyOf(views, grown);
+      addToCart = Arrays.copyOf(addToCart, grown);
+      purchases = Arrays.copyOf(purchases, grown);
+    }
+    products[size] = product;
+    return size++;
+  }
+
+  // Returns -1 for products that were never added.
+  int find(int product) {
+    int index = mix(product) & mask;
+    while (keys[index] != EMPTY) {
+      if (keys[index] == product) {
+        return slots[index];
+      }
+      index = (index + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void rehash() {
+    int[] oldKeys = keys;
+    int[] oldSlots = slots;
+    keys = new int[oldKeys.length * 2];
+    slots = new int[keys.length];
+    mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int index = mix(oldKeys[i]) & mask;
+        while (keys[index] != EMPTY) {
+          index = (index + 1) & mask;
+        }
+        keys[index] = oldKeys[i];
+        slots[index] = oldSlots[i];
+      }
+    }
+  }
+
+  private static int mix(int value) {
+    int h = value * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,11 @@
+package com.projectx.analytics.analytics.cube;
+
+public record ProductTotals(
+    int productId,
+    long views,
+    long addToCart,
+    long purchases,
+    long uniqueSessions,
+    long uniqueUsers
+) {
+}
@@ -3,6 +3,8 @@ package com.projectx.analytics.analytics.dto;
 public record FunnelStepResponse(
     String eventType,
     long events,
-    Double conversionFromPrevious
+    Double conversionFromPrevious,
+    long uniqueSessions,
+    long uniqueUsers
 ) {
 }
@@ -6,6 +6,21 @@ public record TopProductMetricResponse(
     long addToCart,
     long purchases,
     double viewToCartConversion,
-    double cartToPurchaseConversion
+    double cartToPurchaseConversion,
+    long uniqueSessions,
+    long uniqueUsers
 ) {
+
+  public TopProductMetricResponse withUniques(long uniqueSessions, long uniqueUsers) {
+    return new TopProductMetricResponse(
+        productId,
+        views,
+        addToCart,
+        purchases,
+        viewToCartConversion,
+        cartToPurchaseConversion,
+        uniqueSessions,
+        uniqueUsers
+    );
+  }
 }
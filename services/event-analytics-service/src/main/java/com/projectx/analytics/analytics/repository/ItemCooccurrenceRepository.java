@@ -0,0 +1,229 @@
+package com.projectx.analytics.analytics.repository;
+
+import com.projectx.analytics.analytics.scoring.ItemNeighbors;
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.repository.EventWriteHorizonRepository;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Item-item co-occurrence built from session item sets. A session contributes
+ * {@code min(weight(a), weight(b))} to every pair of its products, where a product's weight is its
+ * strongest signal in the session. Each batch reads only the raw events ingested past the
+ * watermark plus the stored items of the sessions they touch, and adds the difference between the
+ * pairs of the grown and the previous item sets.
+ */
+@Repository
+public class ItemCooccurrenceRepository {
+
+  private static final String LOCK_WATERMARK_SQL =
+      "SELECT cooccurrence_ingested_at FROM analytics_aggregation_state WHERE id = 1 FOR UPDATE";
+  private static final String FIRST_INGESTED_SQL =
+      "SELECT MIN(created_at) FROM analytics_events_raw WHERE created_at >= ?";
+  private static final String UPDATE_WATERMARK_SQL =
+      "UPDATE analytics_aggregation_state SET cooccurrence_ingested_at = ? WHERE id = 1";
+
+  // Sessions above the product cap (crawlers, bulk tools) stop adding pairs; the item sets only
+  // grow, so such a session never comes back under the cap.
+  private static final String APPLY_INGESTED_RANGE_SQL = """
+      WITH fresh AS (
+        SELECT
+          session_id,
+          product_id,
+          MAX(
+            CASE event_type
+              WHEN 'PURCHASE' THEN 4
+              WHEN 'ADD_TO_CART' THEN 2
+              ELSE 1
+            END
+          ) AS weight,
+          MAX(occurred_at) AS last_seen_at
+        FROM analytics_events_raw
+        WHERE created_at >= ? AND created_at < ?
+          AND occurred_at >= ?
+          AND product_id IS NOT NULL
+          AND event_type IN ('PRODUCT_VIEW', 'ADD_TO_CART', 'PURCHASE')
+        GROUP BY session_id, product_id
+      ),
+      merged AS (
+        SELECT session_id, product_id, MAX(old_weight) AS old_weight, MAX(weight) AS new_weight
+        FROM (
+          SELECT s.session_id, s.product_id, s.weight AS old_weight, s.weight
+          FROM analytics_session_items s
+          WHERE s.session_id IN (SELECT session_id FROM fresh)
+          UNION ALL
+          SELECT session_id, product_id, NULL, weight
+          FROM fresh
+        ) items
+        GROUP BY session_id, product_id
+      ),
+      sessions AS (
+        SELECT session_id
+        FROM merged
+        GROUP BY session_id
+        HAVING COUNT(*) BETWEEN 2 AND ?
+      ),
+      deltas AS (
+        SELECT
+          a.product_id AS product_a,
+          b.product_id AS product_b,
+          SUM(
+            LEAST(a.new_weight, b.new_weight)
+            - CASE
+                WHEN a.old_weight IS NULL OR b.old_weight IS NULL THEN 0
+                ELSE LEAST(a.old_weight, b.old_weight)
+              END
+          ) AS weight
+        FROM merged a
+        JOIN merged b ON b.session_id = a.session_id AND b.product_id <> a.product_id
+        WHERE a.session_id IN (SELECT session_id FROM sessions)
+        GROUP BY a.product_id, b.product_id
+      ),
+      items AS (
+        INSERT INTO analytics_session_items AS t (session_id, product_id, weight, last_seen_at)
+        SELECT session_id, product_id, weight, last_seen_at
+        FROM fresh
+        ON CONFLICT (session_id, product_id) DO UPDATE
+        SET weight = GREATEST(t.weight, EXCLUDED.weight),
+            last_seen_at = GREATEST(t.last_seen_at, EXCLUDED.last_seen_at)
+      ),
+      pairs AS (
+        INSERT INTO analytics_item_pairs AS t (product_a, product_b, weight)
+        SELECT product_a, product_b, weight
+        FROM deltas
+        WHERE weight > 0
+        ON CONFLICT (product_a, product_b) DO UPDATE
+        SET weight = t.weight + EXCLUDED.weight
+        RETURNING product_a
+      )
+      SELECT DISTINCT product_a FROM pairs
+      """;
+
+  private static final String REFRESH_NEIGHBORS_SQL = """
+      INSERT INTO analytics_item_neighbors AS t (product_id, neighbor_ids, weights, updated_at)
+      SELECT
+        product_a,
+        array_agg(product_b ORDER BY weight DESC, product_b),
+        array_agg(CAST(weight AS real) ORDER BY weight DESC, product_b),
+        now()
+      FROM (
+        SELECT
+          product_a,
+          product_b,
+          weight,
+          row_number() OVER (
+            PARTITION BY product_a
+            ORDER BY weight DESC, product_b
+          ) AS neighbor_rank
+        FROM analytics_item_pairs
+        WHERE product_a = ANY(?)
+      ) ranked
+      WHERE neighbor_rank <= ?
+      GROUP BY product_a
+      ON CONFLICT (product_id) DO UPDATE
+      SET neighbor_ids = EXCLUDED.neighbor_ids,
+          weights = EXCLUDED.weights,
+          updated_at = EXCLUDED.updated_at
+      """;
+
+  private static final String DELETE_STALE_SESSIONS_SQL =
+      "DELETE FROM analytics_session_items WHERE last_seen_at < ?";
+
+  private static final String SELECT_NEIGHBORS_SQL = """
+      SELECT product_id, neighbor_ids, weights
+      FROM analytics_item_neighbors
+      WHERE product_id > 0
+      ORDER BY product_id
+      """;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final EventWriteHorizonRepository writeHorizon;
+
+  public ItemCooccurrenceRepository(JdbcTemplate jdbcTemplate, EventWriteHorizonRepository writeHorizon) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.writeHorizon = writeHorizon;
+  }
+
+  // Applies the next ingested range up to upperBound, at most max-range-hours of it and never past
+  // the oldest open transaction, and returns the new watermark. The watermark row lock keeps instances from applying a range twice.
+  @Transactional
+  public Batch applyNextBatch(Instant upperBound, AnalyticsProperties.Cooccurrence settings) {
+    Timestamp locked = jdbcTemplate.queryForObject(LOCK_WATERMARK_SQL, Timestamp.class);
+    upperBound = writeHorizon.committedBefore(upperBound);
+    Instant from = locked == null ? firstIngested(upperBound, settings) : locked.toInstant();
+    if (!upperBound.isAfter(from)) {
+      return new Batch(from, 0);
+    }
+    Instant candidate = from.plus(settings.getMaxRangeHours(), ChronoUnit.HOURS);
+    Instant to = candidate.isBefore(upperBound) ? candidate : upperBound;
+    Duration sessionWindow = Duration.ofHours(settings.getSessionWindowHours());
+
+    List<Integer> changed = jdbcTemplate.queryForList(
+        APPLY_INGESTED_RANGE_SQL,
+        Integer.class,
+        Timestamp.from(from),
+        Timestamp.from(to),
+        Timestamp.from(from.minus(sessionWindow)),
+        settings.getMaxSessionProducts()
+    );
+    if (!changed.isEmpty()) {
+      Integer[] productIds = changed.toArray(new Integer[0]);
+      jdbcTemplate.update(connection -> {
+        PreparedStatement ps = connection.prepareStatement(REFRESH_NEIGHBORS_SQL);
+        ps.setArray(1, connection.createArrayOf("int4", productIds));
+        ps.setInt(2, settings.getNeighbors());
+        return ps;
+      });
+    }
+    jdbcTemplate.update(DELETE_STALE_SESSIONS_SQL, Timestamp.from(to.minus(sessionWindow)));
+    jdbcTemplate.update(UPDATE_WATERMARK_SQL, Timestamp.from(to));
+    return new Batch(to, changed.size());
+  }
+
+  // The first run starts at the oldest ingested event inside the backfill window, so an empty
+  // history is not walked through range by range.
+  private Instant firstIngested(Instant upperBound, AnalyticsProperties.Cooccurrence settings) {
+    Instant backfillFrom = upperBound.minus(settings.getBackfillDays(), ChronoUnit.DAYS);
+    Timestamp first = jdbcTemplate.queryForObject(
+        FIRST_INGESTED_SQL, Timestamp.class, Timestamp.from(backfillFrom)
+    );
+    return first == null ? upperBound : first.toInstant();
+  }
+
+  public ItemNeighbors loadNeighbors() {
+    List<Integer> productIds = new ArrayList<>();
+    List<int[]> neighborIds = new ArrayList<>();
+    List<float[]> weights = new ArrayList<>();
+    jdbcTemplate.query(SELECT_NEIGHBORS_SQL, (RowCallbackHandler) rs -> {
+      Integer[] ids = (Integer[]) rs.getArray("neighbor_ids").getArray();
+      Float[] scores = (Float[]) rs.getArray("weights").getArray();
+      int[] row = new int[ids.length];
+      float[] rowWeights = new float[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        row[i] = ids[i];
+        rowWeights[i] = scores[i];
+      }
+      productIds.add(rs.getInt("product_id"));
+      neighborIds.add(row);
+      weights.add(rowWeights);
+    });
+    return ItemNeighbors.of(
+        productIds.stream().mapToInt(Integer::intValue).toArray(),
+        neighborIds.toArray(new int[0][]),
+        weights.toArray(new float[0][])
+    );
+  }
+
+  /** {@code processedUpTo} is the new watermark; {@code changedProducts} got new neighbor rows. */
+  public record Batch(Instant processedUpTo, int changedProducts) {
+  }
+}
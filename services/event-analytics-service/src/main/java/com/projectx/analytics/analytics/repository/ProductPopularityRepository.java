@@ -0,0 +1,80 @@
+package com.projectx.analytics.analytics.repository;
+
+import com.projectx.analytics.analytics.service.MetricsRange;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class ProductPopularityRepository {
+
+  // Same event weights the recommendation query used inline, decayed by bucket age. Products that
+  // fell out of the window are removed in the same statement so readers never see a half-refresh.
+  private static final String REFRESH_SQL = """
+      WITH fresh AS (
+        SELECT
+          product_key AS product_id,
+          SUM(
+            CASE event_type
+              WHEN 'PURCHASE' THEN total_events * 4.0
+              WHEN 'ADD_TO_CART' THEN total_events * 2.0
+              WHEN 'PRODUCT_VIEW' THEN total_events * 0.4
+              ELSE 0.0
+            END
+            * power(0.5, EXTRACT(EPOCH FROM (CAST(? AS timestamptz) - bucket_start)) / ?)
+          ) AS score
+        FROM """ + MetricsRange.SOURCE_SQL + """
+        WHERE product_key > 0
+        GROUP BY product_key
+      ),
+      removed AS (
+        DELETE FROM analytics_product_popularity p
+        WHERE NOT EXISTS (SELECT 1 FROM fresh f WHERE f.product_id = p.product_id)
+      )
+      INSERT INTO analytics_product_popularity (product_id, score, updated_at)
+      SELECT product_id, score, now()
+      FROM fresh
+      ON CONFLICT (product_id) DO UPDATE
+      SET score = EXCLUDED.score,
+          updated_at = EXCLUDED.updated_at
+      """;
+
+  private static final String SELECT_SCORES_SQL = """
+      SELECT product_id, score
+      FROM analytics_product_popularity
+      WHERE product_id > 0
+      ORDER BY product_id DESC
+      """;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public ProductPopularityRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public int refresh(Instant now, Instant windowStart, long halfLifeSeconds) {
+    List<Object> params = new ArrayList<>();
+    params.add(Timestamp.from(now));
+    params.add(halfLifeSeconds);
+    params.addAll(Arrays.asList(MetricsRange.plan(windowStart, now).params()));
+    return jdbcTemplate.update(REFRESH_SQL, params.toArray());
+  }
+
+  // Dense array indexed by product id; ids arrive in descending order so the first row sizes it.
+  public float[] loadScores() {
+    float[][] scores = {new float[0]};
+    jdbcTemplate.query(SELECT_SCORES_SQL, (RowCallbackHandler) rs -> {
+      int productId = rs.getInt("product_id");
+      if (scores[0].length == 0) {
+        scores[0] = new float[productId + 1];
+      }
+      scores[0][productId] = (float) rs.getDouble("score");
+    });
+    return scores[0];
+  }
+}
@@ -0,0 +1,149 @@
+package com.projectx.analytics.analytics.repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Per-viewer event counts by product and by brand. A viewer is either a user ({@code u:<id>}) or
+ * a session ({@code s:<id>}); every event counts towards its session and, when known, its user.
+ * Counts are kept per UTC day of the event, so readers sum the days from {@link #windowStartDay}
+ * and days that leave the window are deleted with their counts.
+ */
+@Repository
+public class ViewerProfileRepository {
+
+  public static final int WINDOW_DAYS = 180;
+
+  private static final String SELECT_WATERMARK_SQL =
+      "SELECT profiles_ingested_at FROM analytics_aggregation_state WHERE id = 1";
+  private static final String UPDATE_WATERMARK_SQL =
+      "UPDATE analytics_aggregation_state SET profiles_ingested_at = ? WHERE id = 1";
+
+  private static final String APPLY_INGESTED_RANGE_SQL = """
+      WITH viewer_events AS (
+        SELECT
+          k.viewer_key,
+          e.event_type,
+          e.product_id,
+          COALESCE(e.brand_id, p."brandId") AS brand_id,
+          e.occurred_at,
+          (e.occurred_at AT TIME ZONE 'UTC')::date AS day
+        FROM analytics_events_raw e
+        LEFT JOIN "Product" p ON e.brand_id IS NULL AND p.id = e.product_id
+        CROSS JOIN LATERAL (VALUES ('u:' || e.user_id), ('s:' || e.session_id)) AS k(viewer_key)
+        WHERE e.created_at >= ? AND e.created_at < ?
+          AND e.occurred_at >= ?
+          AND k.viewer_key IS NOT NULL
+      ),
+      products AS (
+        INSERT INTO analytics_viewer_product_profile AS t (
+          viewer_key, product_id, day, purchases, add_to_cart, favorites, views, searches, last_event_at
+        )
+        SELECT
+          viewer_key,
+          product_id,
+          day,
+          COUNT(*) FILTER (WHERE event_type = 'PURCHASE'),
+          COUNT(*) FILTER (WHERE event_type = 'ADD_TO_CART'),
+          COUNT(*) FILTER (WHERE event_type = 'FAVORITE_ADD'),
+          COUNT(*) FILTER (WHERE event_type = 'PRODUCT_VIEW'),
+          COUNT(*) FILTER (WHERE event_type = 'SEARCH'),
+          MAX(occurred_at)
+        FROM viewer_events
+        WHERE product_id IS NOT NULL
+        GROUP BY viewer_key, product_id, day
+        ON CONFLICT (viewer_key, product_id, day) DO UPDATE
+        SET purchases = t.purchases + EXCLUDED.purchases,
+            add_to_cart = t.add_to_cart + EXCLUDED.add_to_cart,
+            favorites = t.favorites + EXCLUDED.favorites,
+            views = t.views + EXCLUDED.views,
+            searches = t.searches + EXCLUDED.searches,
+            last_event_at = GREATEST(t.last_event_at, EXCLUDED.last_event_at)
+      ),
+      brands AS (
+        INSERT INTO analytics_viewer_brand_profile AS t (
+          viewer_key, brand_id, day, purchases, add_to_cart, favorites, views, brand_clicks, searches,
+          last_event_at
+        )
+        SELECT
+          viewer_key,
+          brand_id,
+          day,
+          COUNT(*) FILTER (WHERE event_type = 'PURCHASE'),
+          COUNT(*) FILTER (WHERE event_type = 'ADD_TO_CART'),
+          COUNT(*) FILTER (WHERE event_type = 'FAVORITE_ADD'),
+          COUNT(*) FILTER (WHERE event_type = 'PRODUCT_VIEW'),
+          COUNT(*) FILTER (WHERE event_type = 'BRAND_CLICK'),
+          COUNT(*) FILTER (WHERE event_type = 'SEARCH'),
+          MAX(occurred_at)
+        FROM viewer_events
+        WHERE brand_id IS NOT NULL
+        GROUP BY viewer_key, brand_id, day
+        ON CONFLICT (viewer_key, brand_id, day) DO UPDATE
+        SET purchases = t.purchases + EXCLUDED.purchases,
+            add_to_cart = t.add_to_cart + EXCLUDED.add_to_cart,
+            favorites = t.favorites + EXCLUDED.favorites,
+            views = t.views + EXCLUDED.views,
+            brand_clicks = t.brand_clicks + EXCLUDED.brand_clicks,
+            searches = t.searches + EXCLUDED.searches,
+            last_event_at = GREATEST(t.last_event_at, EXCLUDED.last_event_at)
+      )
+      SELECT DISTINCT viewer_key
+      FROM viewer_events
+      WHERE product_id IS NOT NULL OR brand_id IS NOT NULL
+      """;
+
+  private static final String DELETE_STALE_PRODUCTS_SQL =
+      "DELETE FROM analytics_viewer_product_profile WHERE day < ?";
+  private static final String DELETE_STALE_BRANDS_SQL =
+      "DELETE FROM analytics_viewer_brand_profile WHERE day < ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public ViewerProfileRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public static String viewerKey(Long userId, String sessionId) {
+    if (userId != null) {
+      return "u:" + userId;
+    }
+    return sessionId == null ? null : "s:" + sessionId;
+  }
+
+  // UTC day of the window start; the partial first day counts as inside the window.
+  public static LocalDate windowStartDay(Instant windowStart) {
+    return LocalDate.ofInstant(windowStart, ZoneOffset.UTC);
+  }
+
+  public Instant getIngestedAt() {
+    Timestamp value = jdbcTemplate.queryForObject(SELECT_WATERMARK_SQL, Timestamp.class);
+    return value == null ? null : value.toInstant();
+  }
+
+  public void updateIngestedAt(Instant value) {
+    jdbcTemplate.update(UPDATE_WATERMARK_SQL, Timestamp.from(value));
+  }
+
+  // Returns the viewers whose profiles the range changed.
+  public List<String> applyIngestedRange(Instant from, Instant to, Instant windowStart) {
+    return jdbcTemplate.queryForList(
+        APPLY_INGESTED_RANGE_SQL,
+        String.class,
+        Timestamp.from(from),
+        Timestamp.from(to),
+        Timestamp.from(windowStart)
+    );
+  }
+
+  public void deleteStale(Instant windowStart) {
+    LocalDate firstDay = windowStartDay(windowStart);
+    jdbcTemplate.update(DELETE_STALE_PRODUCTS_SQL, firstDay);
+    jdbcTemplate.update(DELETE_STALE_BRANDS_SQL, firstDay);
+  }
+}
@@ -0,0 +1,75 @@
+package com.projectx.analytics.analytics.scoring;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable column copy of the recommendable part of {@code "Product"}, ordered by id. Brands are
+ * mapped to dense ordinals so per-request brand scores fit a small array, and every category has
+ * a precomputed bitset of catalog positions.
+ */
+final class CatalogSnapshot {
+
+  static final int NO_BRAND = -1;
+
+  final int[] productIds;
+  final int[] brandOrdinals;
+  final int[] brandIds;
+  private final Map<Integer, BitSet> positionsByCategory;
+
+  private CatalogSnapshot(
+      int[] productIds,
+      int[] brandOrdinals,
+      int[] brandIds,
+      Map<Integer, BitSet> positionsByCategory
+  ) {
+    this.productIds = productIds;
+    this.brandOrdinals = brandOrdinals;
+    this.brandIds = brandIds;
+    this.positionsByCategory = positionsByCategory;
+  }
+
+  // Rows must be sorted by product id; brand and category ids <= 0 mean "none".
+  static CatalogSnapshot of(int[] productIds, int[] brandIds, int[] categoryIds) {
+    int[] distinctBrands = Arrays.stream(brandIds)
+        .filter(id -> id > 0)
+        .distinct()
+        .sorted()
+        .toArray();
+    int[] brandOrdinals = new int[productIds.length];
+    Map<Integer, BitSet> positionsByCategory = new HashMap<>();
+    for (int position = 0; position < productIds.length; position++) {
+      brandOrdinals[position] = brandIds[position] > 0
+          ? Arrays.binarySearch(distinctBrands, brandIds[position])
+          : NO_BRAND;
+      if (categoryIds[position] > 0) {
+        positionsByCategory
+            .computeIfAbsent(categoryIds[position], id -> new BitSet(productIds.length))
+            .set(position);
+      }
+    }
+    return new CatalogSnapshot(productIds, brandOrdinals, distinctBrands, positionsByCategory);
+  }
+
+  int size() {
+    return productIds.length;
+  }
+
+  // Returns -1 for products that are not recommendable.
+  int positionOf(int productId) {
+    int position = Arrays.binarySearch(productIds, productId);
+    return position >= 0 ? position : -1;
+  }
+
+  int brandOrdinalOf(int brandId) {
+    int ordinal = Arrays.binarySearch(brandIds, brandId);
+    return ordinal >= 0 ? ordinal : NO_BRAND;
+  }
+
+  BitSet positionsInCategory(int categoryId) {
+    BitSet positions = positionsByCategory.get(categoryId);
+    return positions == null ? new BitSet() : positions;
+  }
+}
@@ -0,0 +1,65 @@
+package com.projectx.analytics.analytics.scoring;
+
+/**
+ * Top co-occurring products per product in compressed rows: the neighbors of {@code p} are the
+ * entries {@code [offsets[p], offsets[p + 1])} of {@link #neighborIds} and {@link #weights}, best
+ * first. Offsets are indexed by product id, so a lookup is two array reads.
+ */
+public final class ItemNeighbors {
+
+  public static final ItemNeighbors EMPTY = of(new int[0], new int[0][], new float[0][]);
+
+  private final int[] offsets;
+  final int[] neighborIds;
+  final float[] weights;
+  private final int products;
+
+  private ItemNeighbors(int[] offsets, int[] neighborIds, float[] weights, int products) {
+    this.offsets = offsets;
+    this.neighborIds = neighborIds;
+    this.weights = weights;
+    this.products = products;
+  }
+
+  // Product ids must be positive and ascending; each neighbor row is ordered best first.
+  public static ItemNeighbors of(int[] productIds, int[][] neighborIds, float[][] weights) {
+    int maxProductId = productIds.length == 0 ? 0 : productIds[productIds.length - 1];
+    int[] offsets = new int[maxProductId + 2];
+    int total = 0;
+    for (int[] row : neighborIds) {
+      total += row.length;
+    }
+    int[] flatIds = new int[total];
+    float[] flatWeights = new float[total];
+    int next = 0;
+    int filled = 0;
+    for (int i = 0; i < productIds.length; i++) {
+      while (filled <= productIds[i]) {
+        offsets[filled++] = next;
+      }
+      System.arraycopy(neighborIds[i], 0, flatIds, next, neighborIds[i].length);
+      System.arraycopy(weights[i], 0, flatWeights, next, weights[i].length);
+      next += neighborIds[i].length;
+    }
+    while (filled < offsets.length) {
+      offsets[filled++] = next;
+    }
+    return new ItemNeighbors(offsets, flatIds, flatWeights, productIds.length);
+  }
+
+  public int products() {
+    return products;
+  }
+
+  public int size() {
+    return neighborIds.length;
+  }
+
+  int start(int productId) {
+    return productId > 0 && productId + 1 < offsets.length ? offsets[productId] : 0;
+  }
+
+  int end(int productId) {
+    return productId > 0 && productId + 1 < offsets.length ? offsets[productId + 1] : 0;
+  }
+}
@@ -0,0 +1,90 @@
+package com.projectx.analytics.analytics.scoring;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import java.util.Arrays;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically reloaded copy of the products that may be recommended. Deleted and unavailable
+ * products are filtered out at load time, so readers only see candidates.
+ */
+@Component
+public class ProductCatalog {
+
+  private static final Logger log = LoggerFactory.getLogger(ProductCatalog.class);
+
+  private static final String SELECT_CATALOG_SQL = """
+      SELECT
+        p.id,
+        COALESCE(p."brandId", 0) AS brand_id,
+        COALESCE(p."categoryId", 0) AS category_id
+      FROM "Product" p
+      WHERE p."deletedAt" IS NULL
+        AND COALESCE(p.available, true) = true
+      ORDER BY p.id
+      """;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final AnalyticsProperties.Scoring settings;
+
+  private volatile CatalogSnapshot snapshot;
+
+  public ProductCatalog(JdbcTemplate jdbcTemplate, AnalyticsProperties properties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.settings = properties.getScoring();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    refreshQuietly();
+  }
+
+  @Scheduled(
+      fixedDelayString = "${analytics.scoring.catalog-refresh-ms:60000}",
+      initialDelayString = "${analytics.scoring.catalog-refresh-ms:60000}"
+  )
+  public void refreshQuietly() {
+    if (!settings.isEnabled()) {
+      return;
+    }
+    try {
+      refresh();
+    } catch (RuntimeException ex) {
+      log.warn("Product catalog refresh failed; keeping the previous copy", ex);
+    }
+  }
+
+  public void refresh() {
+    int[][] columns = {new int[1024], new int[1024], new int[1024]};
+    int[] size = {0};
+    jdbcTemplate.query(SELECT_CATALOG_SQL, (RowCallbackHandler) rs -> {
+      if (size[0] == columns[0].length) {
+        for (int i = 0; i < columns.length; i++) {
+          columns[i] = Arrays.copyOf(columns[i], size[0] * 2);
+        }
+      }
+      columns[0][size[0]] = rs.getInt("id");
+      columns[1][size[0]] = rs.getInt("brand_id");
+      columns[2][size[0]] = rs.getInt("category_id");
+      size[0]++;
+    });
+    snapshot = CatalogSnapshot.of(
+        Arrays.copyOf(columns[0], size[0]),
+        Arrays.copyOf(columns[1], size[0]),
+        Arrays.copyOf(columns[2], size[0])
+    );
+    log.debug("Product catalog refreshed. products={}", size[0]);
+  }
+
+  Optional<CatalogSnapshot> snapshot() {
+    return settings.isEnabled() ? Optional.ofNullable(snapshot) : Optional.empty();
+  }
+}
@@ -0,0 +1,133 @@
+package com.projectx.analytics.analytics.scoring;
+
+import com.projectx.analytics.analytics.service.ProductPopularityService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.stereotype.Component;
+
+/**
+ * Scores every catalog candidate with the weights of the SQL recommendation query and keeps the
+ * best {@code limit} in a {@link TopN}. The work per request is one pass over int arrays, so it
+ * does not depend on database load.
+ */
+@Component
+public class RecommendationEngine {
+
+  static final double DIRECT_WEIGHT = 2.4;
+  static final double BRAND_WEIGHT = 1.1;
+  static final double GLOBAL_WEIGHT = 0.06;
+
+  private final ProductCatalog productCatalog;
+  private final ProductPopularityService productPopularityService;
+
+  public RecommendationEngine(
+      ProductCatalog productCatalog,
+      ProductPopularityService productPopularityService
+  ) {
+    this.productCatalog = productCatalog;
+    this.productPopularityService = productPopularityService;
+  }
+
+  public boolean isReady() {
+    return productCatalog.snapshot().isPresent();
+  }
+
+  // Empty when the catalog is not loaded; callers fall back to the SQL query.
+  public Optional<List<ScoredProduct>> rank(
+      ViewerScores viewer,
+      Integer categoryId,
+      Collection<Integer> excludeProductIds,
+      int limit,
+      String seed
+  ) {
+    Optional<CatalogSnapshot> loaded = productCatalog.snapshot();
+    if (loaded.isEmpty()) {
+      return Optional.empty();
+    }
+    CatalogSnapshot catalog = loaded.get();
+
+    BitSet candidates;
+    if (categoryId != null) {
+      candidates = (BitSet) catalog.positionsInCategory(categoryId).clone();
+    } else {
+      candidates = new BitSet(catalog.size());
+      candidates.set(0, catalog.size());
+    }
+    for (Integer productId : excludeProductIds) {
+      int position = catalog.positionOf(productId);
+      if (position >= 0) {
+        candidates.clear(position);
+      }
+    }
+
+    double[] brandScores = new double[catalog.brandIds.length];
+    for (int i = 0; i < viewer.brandIds().length; i++) {
+      int ordinal = catalog.brandOrdinalOf(viewer.brandIds()[i]);
+      if (ordinal != CatalogSnapshot.NO_BRAND) {
+        brandScores[ordinal] += viewer.brandScores()[i];
+      }
+    }
+
+    int seedHash = seed.hashCode();
+    int[] viewerProducts = viewer.productIds();
+    int next = 0;
+    TopN top = new TopN(limit);
+    int position = candidates.nextSetBit(0);
+    for (; position >= 0; position = candidates.nextSetBit(position + 1)) {
+      int productId = catalog.productIds[position];
+      // Both sides are sorted by id, so the viewer's products are merged in one forward walk.
+      while (next < viewerProducts.length && viewerProducts[next] < productId) {
+        next++;
+      }
+      double directScore = next < viewerProducts.length && viewerProducts[next] == productId
+          ? viewer.productScores()[next]
+          : 0.0;
+      double brandScore = brandScoreOf(catalog, brandScores, position);
+      double total = totalScore(productId, directScore, brandScore, seedHash);
+      if (total > 0) {
+        top.offer(total, position);
+      }
+    }
+
+    int[] positions = top.drainDescending();
+    List<ScoredProduct> result = new ArrayList<>(positions.length);
+    for (int ranked : positions) {
+      int productId = catalog.productIds[ranked];
+      int index = Arrays.binarySearch(viewerProducts, productId);
+      double directScore = index >= 0 ? viewer.productScores()[index] : 0.0;
+      double brandScore = brandScoreOf(catalog, brandScores, ranked);
+      result.add(new ScoredProduct(
+          productId,
+          totalScore(productId, directScore, brandScore, seedHash),
+          directScore,
+          brandScore
+      ));
+    }
+    return Optional.of(result);
+  }
+
+  // Deterministic stand-in for the SQL (abs(hashtext(id || seed)) % 1000) / 100000.0 jitter.
+  static double tieBreaker(int productId, int seedHash) {
+    int h = (productId * 0x9E3779B9) ^ seedHash;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    return Math.floorMod(h, 1000) / 100000.0;
+  }
+
+  private double totalScore(int productId, double directScore, double brandScore, int seedHash) {
+    return directScore * DIRECT_WEIGHT
+        + brandScore * BRAND_WEIGHT
+        + productPopularityService.scoreOf(productId) * GLOBAL_WEIGHT
+        + tieBreaker(productId, seedHash);
+  }
+
+  private static double brandScoreOf(CatalogSnapshot catalog, double[] brandScores, int position) {
+    int brand = catalog.brandOrdinals[position];
+    return brand == CatalogSnapshot.NO_BRAND ? 0.0 : brandScores[brand];
+  }
+}
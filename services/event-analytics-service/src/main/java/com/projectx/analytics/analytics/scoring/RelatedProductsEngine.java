@@ -0,0 +1,87 @@
+package com.projectx.analytics.analytics.scoring;
+
+import com.projectx.analytics.analytics.service.ItemCooccurrenceService;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.springframework.stereotype.Component;
+
+/**
+ * Expands seed products through their co-occurrence neighbors. Each seed spreads its weight over
+ * its neighbors in proportion to their pair weight relative to its strongest neighbor, so a seed
+ * with a popular partner does not drown out the others. Seeds themselves are never returned.
+ */
+@Component
+public class RelatedProductsEngine {
+
+  private final ProductCatalog productCatalog;
+  private final ItemCooccurrenceService itemCooccurrenceService;
+
+  public RelatedProductsEngine(
+      ProductCatalog productCatalog,
+      ItemCooccurrenceService itemCooccurrenceService
+  ) {
+    this.productCatalog = productCatalog;
+    this.itemCooccurrenceService = itemCooccurrenceService;
+  }
+
+  // Empty when the catalog is not loaded: neighbors are only returned if they are recommendable.
+  public Optional<List<ScoredProduct>> rank(
+      int[] seedIds,
+      double[] seedWeights,
+      Integer categoryId,
+      Collection<Integer> excludeProductIds,
+      int limit
+  ) {
+    Optional<CatalogSnapshot> loaded = productCatalog.snapshot();
+    if (loaded.isEmpty()) {
+      return Optional.empty();
+    }
+    CatalogSnapshot catalog = loaded.get();
+    ItemNeighbors neighbors = itemCooccurrenceService.neighbors();
+
+    Set<Integer> skipped = new HashSet<>(excludeProductIds);
+    for (int seedId : seedIds) {
+      skipped.add(seedId);
+    }
+
+    Map<Integer, Double> scores = new HashMap<>();
+    for (int i = 0; i < seedIds.length; i++) {
+      int start = neighbors.start(seedIds[i]);
+      int end = neighbors.end(seedIds[i]);
+      if (start == end || seedWeights[i] <= 0) {
+        continue;
+      }
+      double scale = seedWeights[i] / neighbors.weights[start];
+      for (int j = start; j < end; j++) {
+        int productId = neighbors.neighborIds[j];
+        if (!skipped.contains(productId)) {
+          scores.merge(productId, neighbors.weights[j] * scale, Double::sum);
+        }
+      }
+    }
+
+    BitSet category = categoryId == null ? null : catalog.positionsInCategory(categoryId);
+    TopN top = new TopN(limit);
+    for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+      int position = catalog.positionOf(entry.getKey());
+      if (position >= 0 && (category == null || category.get(position))) {
+        top.offer(entry.getValue(), position);
+      }
+    }
+
+    int[] positions = top.drainDescending();
+    List<ScoredProduct> result = new ArrayList<>(positions.length);
+    for (int position : positions) {
+      int productId = catalog.productIds[position];
+      result.add(new ScoredProduct(productId, scores.get(productId), 0.0, 0.0));
+    }
+    return Optional.of(result);
+  }
+}
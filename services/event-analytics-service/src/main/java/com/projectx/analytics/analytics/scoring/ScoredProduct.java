@@ -0,0 +1,9 @@
+package com.projectx.analytics.analytics.scoring;
+
+public record ScoredProduct(
+    int productId,
+    double totalScore,
+    double directScore,
+    double brandScore
+) {
+}
@@ -0,0 +1,81 @@
+package com.projectx.analytics.analytics.scoring;
+
+/**
+ * Bounded min-heap of {@code (score, position)} pairs kept in parallel primitive arrays; the root
+ * is the weakest of the best {@code capacity} offers seen so far.
+ */
+final class TopN {
+
+  private final double[] scores;
+  private final int[] positions;
+  private int size;
+
+  TopN(int capacity) {
+    this.scores = new double[capacity];
+    this.positions = new int[capacity];
+  }
+
+  void offer(double score, int position) {
+    if (size < scores.length) {
+      scores[size] = score;
+      positions[size] = position;
+      siftUp(size++);
+    } else if (scores.length > 0 && score > scores[0]) {
+      scores[0] = score;
+      positions[0] = position;
+      siftDown(0);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  // Empties the heap; the returned positions are ordered by descending score.
+  int[] drainDescending() {
+    int[] ordered = new int[size];
+    while (size > 0) {
+      ordered[size - 1] = positions[0];
+      size--;
+      scores[0] = scores[size];
+      positions[0] = positions[size];
+      siftDown(0);
+    }
+    return ordered;
+  }
+
+  private void siftUp(int index) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (scores[parent] <= scores[index]) {
+        return;
+      }
+      swap(parent, index);
+      index = parent;
+    }
+  }
+
+  private void siftDown(int index) {
+    while (true) {
+      int left = index * 2 + 1;
+      if (left >= size) {
+        return;
+      }
+      int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+      if (scores[index] <= scores[smallest]) {
+        return;
+      }
+      swap(index, smallest);
+      index = smallest;
+    }
+  }
+
+  private void swap(int a, int b) {
+    double score = scores[a];
+    scores[a] = scores[b];
+    scores[b] = score;
+    int position = positions[a];
+    positions[a] = positions[b];
+    positions[b] = position;
+  }
+}
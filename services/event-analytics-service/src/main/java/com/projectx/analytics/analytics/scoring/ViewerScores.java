@@ -0,0 +1,16 @@
+package com.projectx.analytics.analytics.scoring;
+
+/**
+ * Interest scores of one viewer. Product ids must be sorted ascending; brand ids may be in any
+ * order.
+ */
+public record ViewerScores(
+    int[] productIds,
+    double[] productScores,
+    int[] brandIds,
+    double[] brandScores
+) {
+
+  public static final ViewerScores EMPTY =
+      new ViewerScores(new int[0], new double[0], new int[0], new double[0]);
+}
@@ -1,15 +1,31 @@
 package com.projectx.analytics.analytics.service;
 
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.analytics.cache.QueryResultCache;
+import com.projectx.analytics.analytics.cube.EventTypeTotals;
+import com.projectx.analytics.analytics.cube.MetricsCube;
+import com.projectx.analytics.analytics.cube.ProductTotals;
 import com.projectx.analytics.analytics.dto.FunnelReportResponse;
 import com.projectx.analytics.analytics.dto.FunnelStepResponse;
 import com.projectx.analytics.analytics.dto.TopProductMetricResponse;
+import com.projectx.analytics.common.Bulkhead;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.DataSourceConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -24,9 +40,7 @@ public class AnalyticsQueryService {
 
   private static final String FUNNEL_SQL = """
       SELECT event_type, SUM(total_events) AS total_events
-      FROM analytics_event_metrics_hourly
-      WHERE bucket_start >= ?
-        AND bucket_start <= ?
+      FROM """ + MetricsRange.SOURCE_SQL + """
       GROUP BY event_type
       """;
 
@@ -36,30 +50,77 @@ public class AnalyticsQueryService {
         COALESCE(SUM(CASE WHEN event_type = 'PRODUCT_VIEW' THEN total_events END), 0) AS views,
         COALESCE(SUM(CASE WHEN event_type = 'ADD_TO_CART' THEN total_events END), 0) AS add_to_cart,
         COALESCE(SUM(CASE WHEN event_type = 'PURCHASE' THEN total_events END), 0) AS purchases
-      FROM analytics_event_metrics_hourly
+      FROM """ + MetricsRange.SOURCE_SQL + """
       WHERE product_key > 0
-        AND bucket_start >= ?
-        AND bucket_start <= ?
       GROUP BY product_key
       ORDER BY purchases DESC, add_to_cart DESC, views DESC
       LIMIT ?
       """;
 
+  // Sketches are unioned in Java so uniques stay correct across any number of buckets.
+  private static final String FUNNEL_SKETCHES_SQL = """
+      SELECT event_type, sessions_sketch, users_sketch
+      FROM """ + MetricsRange.SOURCE_SQL + """
+      WHERE event_type IN ('PRODUCT_VIEW', 'ADD_TO_CART', 'START_CHECKOUT', 'PURCHASE')
+      """;
+
+  private static final String PRODUCT_SKETCHES_SQL = """
+      SELECT product_key, sessions_sketch, users_sketch
+      FROM """ + MetricsRange.SOURCE_SQL + """
+      WHERE product_key = ANY (?)
+      """;
+
   private final JdbcTemplate jdbcTemplate;
+  private final MetricsCube metricsCube;
+  private final QueryResultCache resultCache;
+  private final Bulkhead bulkhead;
+  private final MeterRegistry meterRegistry;
 
-  public AnalyticsQueryService(JdbcTemplate jdbcTemplate) {
+  public AnalyticsQueryService(
+      @Qualifier(DataSourceConfig.READ_JDBC_TEMPLATE) JdbcTemplate jdbcTemplate,
+      MetricsCube metricsCube,
+      QueryResultCache resultCache,
+      Bulkheads bulkheads,
+      MeterRegistry meterRegistry
+  ) {
     this.jdbcTemplate = jdbcTemplate;
+    this.metricsCube = metricsCube;
+    this.resultCache = resultCache;
+    this.bulkhead = bulkheads.analytics();
+    this.meterRegistry = meterRegistry;
   }
 
   public FunnelReportResponse getFunnel(Instant from, Instant to) {
+    Timer.Sample sample = Timer.start(meterRegistry);
     Instant fromSafe = from.truncatedTo(ChronoUnit.SECONDS);
     Instant toSafe = to.truncatedTo(ChronoUnit.SECONDS);
 
-    List<Map<String, Object>> rows = jdbcTemplate.queryForList(
-        FUNNEL_SQL,
-        Timestamp.from(fromSafe),
-        Timestamp.from(toSafe)
-    );
+    QueryResultCache.Key key = QueryResultCache.Key.of("funnel", fromSafe, toSafe, 0);
+    Optional<Map<String, EventTypeTotals>> hit = resultCache.get(key);
+    if (hit.isPresent()) {
+      return timed(sample, "funnel", "cache", buildFunnel(fromSafe, toSafe, hit.get()));
+    }
+    long generation = resultCache.generation();
+
+    Optional<List<EventTypeTotals>> cached = metricsCube.totalsByEventType(fromSafe, toSafe, FUNNEL_STEPS);
+    if (cached.isPresent()) {
+      Map<String, EventTypeTotals> byType = new HashMap<>();
+      for (EventTypeTotals totals : cached.get()) {
+        byType.put(totals.eventType(), totals);
+      }
+      resultCache.put(key, byType, byType.size(), generation);
+      return timed(sample, "funnel", "cube", buildFunnel(fromSafe, toSafe, byType));
+    }
+
+    Map<String, EventTypeTotals> byType = bulkhead.call(() -> funnelFromSql(fromSafe, toSafe));
+    resultCache.put(key, byType, byType.size(), generation);
+    return timed(sample, "funnel", "sql", buildFunnel(fromSafe, toSafe, byType));
+  }
+
+  private Map<String, EventTypeTotals> funnelFromSql(Instant fromSafe, Instant toSafe) {
+    MetricsRange range = MetricsRange.plan(fromSafe, toSafe);
+
+    List<Map<String, Object>> rows = jdbcTemplate.queryForList(FUNNEL_SQL, range.params());
 
     Map<String, Long> counter = new HashMap<>();
     for (Map<String, Object> row : rows) {
@@ -68,46 +129,185 @@ public class AnalyticsQueryService {
       counter.put(eventType, value);
     }
 
-    long views = counter.getOrDefault("PRODUCT_VIEW", 0L);
-    long purchases = counter.getOrDefault("PURCHASE", 0L);
-    List<FunnelStepResponse> steps = new java.util.ArrayList<>();
-    long previous = 0L;
+    Map<String, SketchUnion> uniques = new HashMap<>();
+    jdbcTemplate.query(
+        FUNNEL_SKETCHES_SQL,
+        (RowCallbackHandler) rs -> uniques
+            .computeIfAbsent(rs.getString("event_type"), key -> new SketchUnion())
+            .add(rs.getBytes("sessions_sketch"), rs.getBytes("users_sketch")),
+        range.params()
+    );
+
+    Map<String, EventTypeTotals> byType = new HashMap<>();
     for (String step : FUNNEL_STEPS) {
-      long count = counter.getOrDefault(step, 0L);
-      Double conversion = previous > 0 ? (double) count / (double) previous : null;
-      steps.add(new FunnelStepResponse(step, count, conversion));
-      previous = count;
+      SketchUnion union = uniques.getOrDefault(step, SketchUnion.EMPTY);
+      byType.put(step, new EventTypeTotals(
+          step,
+          counter.getOrDefault(step, 0L),
+          union.sessions.estimate(),
+          union.users.estimate()
+      ));
     }
-
-    double overallConversion = views > 0 ? (double) purchases / (double) views : 0.0;
-    return new FunnelReportResponse(fromSafe, toSafe, overallConversion, steps);
+    return byType;
   }
 
   public List<TopProductMetricResponse> getTopProducts(Instant from, Instant to, int limit) {
+    Timer.Sample sample = Timer.start(meterRegistry);
     Instant fromSafe = from.truncatedTo(ChronoUnit.SECONDS);
     Instant toSafe = to.truncatedTo(ChronoUnit.SECONDS);
 
-    return jdbcTemplate.query(
+    QueryResultCache.Key key = QueryResultCache.Key.of("top_products", fromSafe, toSafe, limit);
+    Optional<List<TopProductMetricResponse>> hit = resultCache.get(key);
+    if (hit.isPresent()) {
+      return timed(sample, "top_products", "cache", hit.get());
+    }
+    long generation = resultCache.generation();
+
+    Optional<List<ProductTotals>> cached = metricsCube.topProducts(fromSafe, toSafe, limit);
+    if (cached.isPresent()) {
+      List<TopProductMetricResponse> result = new ArrayList<>(cached.get().size());
+      for (ProductTotals totals : cached.get()) {
+        result.add(toTopProduct(
+            totals.productId(),
+            totals.views(),
+            totals.addToCart(),
+            totals.purchases(),
+            totals.uniqueSessions(),
+            totals.uniqueUsers()
+        ));
+      }
+      resultCache.put(key, result, result.size(), generation);
+      return timed(sample, "top_products", "cube", result);
+    }
+
+    List<TopProductMetricResponse> products = bulkhead.call(() -> topProductsFromSql(fromSafe, toSafe, limit));
+    resultCache.put(key, products, products.size(), generation);
+    return timed(sample, "top_products", "sql", products);
+  }
+
+  private List<TopProductMetricResponse> topProductsFromSql(Instant fromSafe, Instant toSafe, int limit) {
+    MetricsRange range = MetricsRange.plan(fromSafe, toSafe);
+    Object[] rangeParams = range.params();
+
+    Object[] params = Arrays.copyOf(rangeParams, rangeParams.length + 1);
+    params[rangeParams.length] = limit;
+    List<TopProductMetricResponse> products = jdbcTemplate.query(
         TOP_PRODUCTS_SQL,
-        (rs, rowNum) -> {
-          long views = rs.getLong("views");
-          long addToCart = rs.getLong("add_to_cart");
-          long purchases = rs.getLong("purchases");
-          double viewToCart = views > 0 ? (double) addToCart / (double) views : 0.0;
-          double cartToPurchase = addToCart > 0 ? (double) purchases / (double) addToCart : 0.0;
-
-          return new TopProductMetricResponse(
-              rs.getInt("product_id"),
-              views,
-              addToCart,
-              purchases,
-              viewToCart,
-              cartToPurchase
-          );
+        (rs, rowNum) -> toTopProduct(
+            rs.getInt("product_id"),
+            rs.getLong("views"),
+            rs.getLong("add_to_cart"),
+            rs.getLong("purchases"),
+            0L,
+            0L
+        ),
+        params
+    );
+    if (products.isEmpty()) {
+      return products;
+    }
+
+    Integer[] productIds = products.stream()
+        .map(TopProductMetricResponse::productId)
+        .toArray(Integer[]::new);
+    Map<Integer, SketchUnion> uniques = new HashMap<>();
+    jdbcTemplate.query(
+        connection -> {
+          PreparedStatement ps = connection.prepareStatement(PRODUCT_SKETCHES_SQL);
+          for (int i = 0; i < rangeParams.length; i++) {
+            ps.setTimestamp(i + 1, (Timestamp) rangeParams[i]);
+          }
+          ps.setArray(rangeParams.length + 1, connection.createArrayOf("int4", productIds));
+          return ps;
         },
-        Timestamp.from(fromSafe),
-        Timestamp.from(toSafe),
-        limit
+        (RowCallbackHandler) rs -> uniques
+            .computeIfAbsent(rs.getInt("product_key"), key -> new SketchUnion())
+            .add(rs.getBytes("sessions_sketch"), rs.getBytes("users_sketch"))
+    );
+
+    List<TopProductMetricResponse> result = new ArrayList<>(products.size());
+    for (TopProductMetricResponse product : products) {
+      SketchUnion union = uniques.getOrDefault(product.productId(), SketchUnion.EMPTY);
+      result.add(product.withUniques(union.sessions.estimate(), union.users.estimate()));
+    }
+    return result;
+  }
+
+  private <T> T timed(Timer.Sample sample, String query, String source, T result) {
+    sample.stop(meterRegistry.timer("analytics.query", "query", query, "source", source));
+    return result;
+  }
+
+  private static FunnelReportResponse buildFunnel(
+      Instant from,
+      Instant to,
+      Map<String, EventTypeTotals> byType
+  ) {
+    long views = totalOf(byType, "PRODUCT_VIEW");
+    long purchases = totalOf(byType, "PURCHASE");
+    List<FunnelStepResponse> steps = new ArrayList<>();
+    long previous = 0L;
+    for (String step : FUNNEL_STEPS) {
+      EventTypeTotals totals = byType.get(step);
+      long count = totals == null ? 0L : totals.totalEvents();
+      Double conversion = previous > 0 ? (double) count / (double) previous : null;
+      steps.add(new FunnelStepResponse(
+          step,
+          count,
+          conversion,
+          totals == null ? 0L : totals.uniqueSessions(),
+          totals == null ? 0L : totals.uniqueUsers()
+      ));
+      previous = count;
+    }
+
+    double overallConversion = views > 0 ? (double) purchases / (double) views : 0.0;
+    return new FunnelReportResponse(from, to, overallConversion, steps);
+  }
+
+  private static long totalOf(Map<String, EventTypeTotals> byType, String eventType) {
+    EventTypeTotals totals = byType.get(eventType);
+    return totals == null ? 0L : totals.totalEvents();
+  }
+
+  private static TopProductMetricResponse toTopProduct(
+      int productId,
+      long views,
+      long addToCart,
+      long purchases,
+      long uniqueSessions,
+      long uniqueUsers
+  ) {
+    double viewToCart = views > 0 ? (double) addToCart / (double) views : 0.0;
+    double cartToPurchase = addToCart > 0 ? (double) purchases / (double) addToCart : 0.0;
+    return new TopProductMetricResponse(
+        productId,
+        views,
+        addToCart,
+        purchases,
+        viewToCart,
+        cartToPurchase,
+        uniqueSessions,
+        uniqueUsers
     );
   }
+
+  // Rows aggregated before sketches were introduced carry no sketch and are skipped,
+  // so uniques over such ranges are a lower bound.
+  private static final class SketchUnion {
+
+    private static final SketchUnion EMPTY = new SketchUnion();
+
+    private final HyperLogLog sessions = new HyperLogLog();
+    private final HyperLogLog users = new HyperLogLog();
+
+    private void add(byte[] sessionsSketch, byte[] usersSketch) {
+      if (sessionsSketch != null) {
+        sessions.merge(HyperLogLog.fromBytes(sessionsSketch));
+      }
+      if (usersSketch != null) {
+        users.merge(HyperLogLog.fromBytes(usersSketch));
+      }
+    }
+  }
 }
@@ -0,0 +1,120 @@
+package com.projectx.analytics.analytics.service;
+
+import com.projectx.analytics.analytics.repository.ItemCooccurrenceRepository;
+import com.projectx.analytics.analytics.scoring.ItemNeighbors;
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Advances the item co-occurrence index from the aggregation cycle and keeps its top-K neighbor
+ * rows in memory. Runs at most once per {@code analytics.cooccurrence.refresh-interval-minutes},
+ * except while a backlog is being caught up, when every cycle applies the next range.
+ */
+@Service
+public class ItemCooccurrenceService {
+
+  private static final Logger log = LoggerFactory.getLogger(ItemCooccurrenceService.class);
+
+  private final ItemCooccurrenceRepository itemCooccurrenceRepository;
+  private final AnalyticsProperties.Cooccurrence settings;
+  private final long lagSeconds;
+
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  private volatile ItemNeighbors neighbors = ItemNeighbors.EMPTY;
+  private volatile Instant lastRefreshedAt;
+  private volatile Instant processedUpTo;
+  private volatile boolean catchingUp;
+
+  public ItemCooccurrenceService(
+      ItemCooccurrenceRepository itemCooccurrenceRepository,
+      AnalyticsProperties properties,
+      MeterRegistry meterRegistry
+  ) {
+    this.itemCooccurrenceRepository = itemCooccurrenceRepository;
+    this.settings = properties.getCooccurrence();
+    this.lagSeconds = properties.getAggregation().getLagSeconds();
+    Gauge.builder("analytics.cooccurrence.products", this, service -> service.neighbors.products())
+        .description("Products with co-occurrence neighbors loaded in memory")
+        .register(meterRegistry);
+    Gauge.builder("analytics.cooccurrence.lag", this, ItemCooccurrenceService::lagSeconds)
+        .description("Seconds between now and the co-occurrence watermark")
+        .baseUnit("seconds")
+        .register(meterRegistry);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (!settings.isEnabled()) {
+      return;
+    }
+    try {
+      neighbors = itemCooccurrenceRepository.loadNeighbors();
+    } catch (RuntimeException ex) {
+      log.warn("Item co-occurrence load failed; it will be loaded on the next aggregation run", ex);
+    }
+  }
+
+  public void refreshIfDue() {
+    if (!settings.isEnabled()) {
+      return;
+    }
+    Instant last = lastRefreshedAt;
+    Duration interval = Duration.ofMinutes(settings.getRefreshIntervalMinutes());
+    if (!catchingUp && last != null && Instant.now().isBefore(last.plus(interval))) {
+      return;
+    }
+    try {
+      refresh();
+    } catch (RuntimeException ex) {
+      log.warn("Item co-occurrence refresh failed", ex);
+    }
+  }
+
+  public void refresh() {
+    refreshLock.lock();
+    try {
+      doRefresh();
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private void doRefresh() {
+    Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    Instant upperBound = now.minusSeconds(lagSeconds);
+    ItemCooccurrenceRepository.Batch batch =
+        itemCooccurrenceRepository.applyNextBatch(upperBound, settings);
+    // Another instance may have advanced the index, so the rows are reloaded either way.
+    neighbors = itemCooccurrenceRepository.loadNeighbors();
+    processedUpTo = batch.processedUpTo();
+    catchingUp = batch.processedUpTo().isBefore(upperBound);
+    lastRefreshedAt = now;
+    log.debug(
+        "Item co-occurrence refreshed. processedUpTo={}, changedProducts={}, products={}",
+        batch.processedUpTo(),
+        batch.changedProducts(),
+        neighbors.products()
+    );
+  }
+
+  public ItemNeighbors neighbors() {
+    return neighbors;
+  }
+
+  double lagSeconds() {
+    Instant watermark = processedUpTo;
+    return watermark == null
+        ? Double.NaN
+        : Duration.between(watermark, Instant.now()).toMillis() / 1000.0;
+  }
+}
@@ -0,0 +1,57 @@
+package com.projectx.analytics.analytics.service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Splits an inclusive bucket range into whole UTC days, read from the daily rollup, and the
+ * leftover hours at either edge, read from the hourly table. {@link #SOURCE_SQL} is a derived
+ * table over both with the same columns, bound by {@link #params()}.
+ */
+public record MetricsRange(Instant from, Instant daysFrom, Instant daysTo, Instant to) {
+
+  public static final String SOURCE_SQL = """
+      (
+        SELECT bucket_start, event_type, product_key, total_events, sessions_sketch, users_sketch
+        FROM analytics_event_metrics_hourly
+        WHERE (bucket_start >= ? AND bucket_start < ?)
+           OR (bucket_start >= ? AND bucket_start <= ?)
+        UNION ALL
+        SELECT day_start, event_type, product_key, total_events, sessions_sketch, users_sketch
+        FROM analytics_event_metrics_daily
+        WHERE day_start >= ? AND day_start < ?
+      ) m
+      """;
+
+  private static final Duration LAST_HOUR = Duration.ofHours(1);
+
+  public static MetricsRange plan(Instant from, Instant to) {
+    Instant firstDay = from.truncatedTo(ChronoUnit.DAYS);
+    if (firstDay.isBefore(from)) {
+      firstDay = firstDay.plus(1, ChronoUnit.DAYS);
+    }
+    // A day is whole only when its last hour bucket is still within the range.
+    Instant dayEnd = to.plus(LAST_HOUR).truncatedTo(ChronoUnit.DAYS);
+    if (!dayEnd.isAfter(firstDay)) {
+      return new MetricsRange(from, from, from, to);
+    }
+    return new MetricsRange(from, firstDay, dayEnd, to);
+  }
+
+  public boolean hasDays() {
+    return daysTo.isAfter(daysFrom);
+  }
+
+  public Object[] params() {
+    return new Object[] {
+        Timestamp.from(from),
+        Timestamp.from(daysFrom),
+        Timestamp.from(daysTo),
+        Timestamp.from(to),
+        Timestamp.from(daysFrom),
+        Timestamp.from(daysTo)
+    };
+  }
+}
@@ -0,0 +1,87 @@
+package com.projectx.analytics.analytics.service;
+
+import com.projectx.analytics.analytics.repository.ProductPopularityRepository;
+import com.projectx.analytics.config.AnalyticsProperties;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Materializes the time-decayed global product score into {@code analytics_product_popularity}
+ * and keeps a dense {@code productId -> score} copy in memory. Refreshed from the aggregation
+ * cycle at most once per {@code analytics.popularity.refresh-interval-minutes}.
+ */
+@Service
+public class ProductPopularityService {
+
+  private static final Logger log = LoggerFactory.getLogger(ProductPopularityService.class);
+
+  private final ProductPopularityRepository productPopularityRepository;
+  private final AnalyticsProperties.Popularity settings;
+
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  private volatile float[] scores = new float[0];
+  private volatile Instant lastRefreshedAt;
+
+  public ProductPopularityService(
+      ProductPopularityRepository productPopularityRepository,
+      AnalyticsProperties properties
+  ) {
+    this.productPopularityRepository = productPopularityRepository;
+    this.settings = properties.getPopularity();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    try {
+      scores = productPopularityRepository.loadScores();
+    } catch (RuntimeException ex) {
+      log.warn("Product popularity load failed; it will be rebuilt on the next aggregation run", ex);
+    }
+  }
+
+  public void refreshIfDue() {
+    Instant last = lastRefreshedAt;
+    Duration interval = Duration.ofMinutes(settings.getRefreshIntervalMinutes());
+    if (last != null && Instant.now().isBefore(last.plus(interval))) {
+      return;
+    }
+    try {
+      refresh();
+    } catch (RuntimeException ex) {
+      log.warn("Product popularity refresh failed", ex);
+    }
+  }
+
+  public void refresh() {
+    refreshLock.lock();
+    try {
+      doRefresh();
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private void doRefresh() {
+    Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    int products = productPopularityRepository.refresh(
+        now,
+        now.minus(settings.getWindowDays(), ChronoUnit.DAYS),
+        Duration.ofDays(settings.getHalfLifeDays()).toSeconds()
+    );
+    scores = productPopularityRepository.loadScores();
+    lastRefreshedAt = now;
+    log.debug("Product popularity refreshed. products={}", products);
+  }
+
+  public float scoreOf(int productId) {
+    float[] current = scores;
+    return productId > 0 && productId < current.length ? current[productId] : 0f;
+  }
+}
@@ -1,8 +1,19 @@
 package com.projectx.analytics.analytics.service;
 
+import com.projectx.analytics.analytics.cache.RecommendationCache;
 import com.projectx.analytics.analytics.dto.PersonalizedRecommendationResponse;
 import com.projectx.analytics.analytics.dto.RecommendationProductResponse;
 import com.projectx.analytics.analytics.dto.TopBrandMetricResponse;
+import com.projectx.analytics.analytics.repository.ViewerProfileRepository;
+import com.projectx.analytics.analytics.scoring.RecommendationEngine;
+import com.projectx.analytics.analytics.scoring.RelatedProductsEngine;
+import com.projectx.analytics.analytics.scoring.ScoredProduct;
+import com.projectx.analytics.analytics.scoring.ViewerScores;
+import com.projectx.analytics.common.Bulkhead;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.DataSourceConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -10,82 +21,65 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 
 @Service
 public class RecommendationQueryService {
 
+  private static final String VIEWER_PRODUCT_SCORES_SQL = """
+      SELECT
+        product_id,
+        SUM(purchases) * 16.0
+          + SUM(add_to_cart) * 7.0
+          + SUM(favorites) * 6.0
+          + SUM(views) * 2.0
+          + SUM(searches) * 0.8 AS score
+      FROM analytics_viewer_product_profile
+      WHERE viewer_key = ? AND day >= ?
+      GROUP BY product_id
+      ORDER BY product_id
+      """;
+
+  private static final String VIEWER_BRAND_SCORES_SQL = """
+      SELECT
+        brand_id,
+        SUM(purchases) * 10.0
+          + SUM(add_to_cart) * 6.0
+          + SUM(favorites) * 5.0
+          + SUM(views) * 2.5
+          + SUM(brand_clicks) * 4.0
+          + SUM(searches) * 1.0 AS score
+      FROM analytics_viewer_brand_profile
+      WHERE viewer_key = ? AND day >= ?
+      GROUP BY brand_id
+      """;
+
+  private static final String RECENT_VIEWER_PRODUCTS_SQL = """
+      SELECT
+        product_id,
+        SUM(purchases) * 16.0
+          + SUM(add_to_cart) * 7.0
+          + SUM(favorites) * 6.0
+          + SUM(views) * 2.0
+          + SUM(searches) * 0.8 AS score
+      FROM analytics_viewer_product_profile
+      WHERE viewer_key = ? AND day >= ?
+      GROUP BY product_id
+      ORDER BY MAX(last_event_at) DESC
+      LIMIT ?
+      """;
+
+  private static final int RELATED_SEED_PRODUCTS = 20;
+
+  // Fallback while the in-process catalog is not loaded or scoring is disabled.
   private static final String RECOMMENDATION_SQL_TEMPLATE = """
-      WITH viewer_events AS (
-        SELECT
-          e.event_type,
-          e.product_id,
-          COALESCE(
-            p_evt."brandId",
-            CASE
-              WHEN (e.metadata->>'brandId') ~ '^[0-9]+$'
-              THEN (e.metadata->>'brandId')::int
-            END
-          ) AS brand_id
-        FROM analytics_events_raw e
-        LEFT JOIN "Product" p_evt ON p_evt.id = e.product_id
-        WHERE e.occurred_at >= ?
-          AND (
-            (? IS NOT NULL AND e.user_id = ?)
-            OR (? IS NULL AND ? IS NOT NULL AND e.session_id = ?)
-          )
+      WITH product_scores AS (""" + VIEWER_PRODUCT_SCORES_SQL + """
       ),
-      product_scores AS (
-        SELECT
-          product_id,
-          SUM(
-            CASE event_type
-              WHEN 'PURCHASE' THEN 16.0
-              WHEN 'ADD_TO_CART' THEN 7.0
-              WHEN 'FAVORITE_ADD' THEN 6.0
-              WHEN 'PRODUCT_VIEW' THEN 2.0
-              WHEN 'SEARCH' THEN 0.8
-              ELSE 0.0
-            END
-          ) AS score
-        FROM viewer_events
-        WHERE product_id IS NOT NULL
-        GROUP BY product_id
-      ),
-      brand_scores AS (
-        SELECT
-          brand_id,
-          SUM(
-            CASE event_type
-              WHEN 'PURCHASE' THEN 10.0
-              WHEN 'ADD_TO_CART' THEN 6.0
-              WHEN 'FAVORITE_ADD' THEN 5.0
-              WHEN 'PRODUCT_VIEW' THEN 2.5
-              WHEN 'BRAND_CLICK' THEN 4.0
-              WHEN 'SEARCH' THEN 1.0
-              ELSE 0.0
-            END
-          ) AS score
-        FROM viewer_events
-        WHERE brand_id IS NOT NULL
-        GROUP BY brand_id
-      ),
-      global_scores AS (
-        SELECT
-          product_key AS product_id,
-          SUM(
-            CASE event_type
-              WHEN 'PURCHASE' THEN total_events * 4.0
-              WHEN 'ADD_TO_CART' THEN total_events * 2.0
-              WHEN 'PRODUCT_VIEW' THEN total_events * 0.4
-              ELSE 0.0
-            END
-          ) AS score
-        FROM analytics_event_metrics_hourly
-        WHERE product_key > 0
-          AND bucket_start >= ?
-        GROUP BY product_key
+      brand_scores AS (""" + VIEWER_BRAND_SCORES_SQL + """
       ),
       candidate_scores AS (
         SELECT
@@ -102,7 +96,7 @@ public class RecommendationQueryService {
         FROM "Product" p
         LEFT JOIN product_scores ps ON ps.product_id = p.id
         LEFT JOIN brand_scores bs ON bs.brand_id = p."brandId"
-        LEFT JOIN global_scores gs ON gs.product_id = p.id
+        LEFT JOIN analytics_product_popularity gs ON gs.product_id = p.id
         WHERE p."deletedAt" IS NULL
           AND COALESCE(p.available, true) = true
           AND (? IS NULL OR p."categoryId" = ?)
@@ -116,79 +110,91 @@ public class RecommendationQueryService {
       """;
 
   private static final String TOP_BRANDS_PERSONAL_SQL = """
-      WITH viewer_events AS (
+      WITH vb AS (
         SELECT
-          e.event_type,
-          COALESCE(
-            p_evt."brandId",
-            CASE
-              WHEN (e.metadata->>'brandId') ~ '^[0-9]+$'
-              THEN (e.metadata->>'brandId')::int
-            END
-          ) AS brand_id
-        FROM analytics_events_raw e
-        LEFT JOIN "Product" p_evt ON p_evt.id = e.product_id
-        WHERE e.occurred_at >= ?
-          AND (
-            (? IS NOT NULL AND e.user_id = ?)
-            OR (? IS NULL AND ? IS NOT NULL AND e.session_id = ?)
-          )
+          brand_id,
+          SUM(views) AS views,
+          SUM(add_to_cart) AS add_to_cart,
+          SUM(purchases) AS purchases,
+          SUM(brand_clicks) AS brand_clicks
+        FROM analytics_viewer_brand_profile
+        WHERE viewer_key = ? AND day >= ?
+        GROUP BY brand_id
       )
       SELECT
         b.id AS brand_id,
         b.name AS brand_name,
-        COALESCE(SUM(CASE WHEN ve.event_type = 'PRODUCT_VIEW' THEN 1 ELSE 0 END), 0) AS views,
-        COALESCE(SUM(CASE WHEN ve.event_type = 'ADD_TO_CART' THEN 1 ELSE 0 END), 0) AS add_to_cart,
-        COALESCE(SUM(CASE WHEN ve.event_type = 'PURCHASE' THEN 1 ELSE 0 END), 0) AS purchases,
-        COALESCE(SUM(CASE WHEN ve.event_type = 'BRAND_CLICK' THEN 1 ELSE 0 END), 0) AS brand_clicks,
+        vb.views,
+        vb.add_to_cart,
+        vb.purchases,
+        vb.brand_clicks,
         (
-          COALESCE(SUM(CASE WHEN ve.event_type = 'PURCHASE' THEN 1 ELSE 0 END), 0) * 4.0
-          + COALESCE(SUM(CASE WHEN ve.event_type = 'ADD_TO_CART' THEN 1 ELSE 0 END), 0) * 2.0
-          + COALESCE(SUM(CASE WHEN ve.event_type = 'BRAND_CLICK' THEN 1 ELSE 0 END), 0) * 1.5
-          + COALESCE(SUM(CASE WHEN ve.event_type = 'PRODUCT_VIEW' THEN 1 ELSE 0 END), 0) * 0.5
+          vb.purchases * 4.0
+          + vb.add_to_cart * 2.0
+          + vb.brand_clicks * 1.5
+          + vb.views * 0.5
         ) AS weighted_score
-      FROM viewer_events ve
-      JOIN "Brand" b ON b.id = ve.brand_id
-      GROUP BY b.id, b.name
+      FROM vb
+      JOIN "Brand" b ON b.id = vb.brand_id
       ORDER BY weighted_score DESC, purchases DESC, add_to_cart DESC, views DESC
       LIMIT ?
       """;
 
   private static final String TOP_BRANDS_GLOBAL_SQL = """
+      WITH brand_counts AS (
+        SELECT
+          brand_id,
+          SUM(views) AS views,
+          SUM(add_to_cart) AS add_to_cart,
+          SUM(purchases) AS purchases,
+          SUM(brand_clicks) AS brand_clicks
+        FROM analytics_brand_metrics_hourly
+        WHERE bucket_start >= ?
+          AND bucket_start <= ?
+        GROUP BY brand_id
+      )
       SELECT
         b.id AS brand_id,
         b.name AS brand_name,
-        COALESCE(SUM(CASE WHEN e.event_type = 'PRODUCT_VIEW' THEN 1 ELSE 0 END), 0) AS views,
-        COALESCE(SUM(CASE WHEN e.event_type = 'ADD_TO_CART' THEN 1 ELSE 0 END), 0) AS add_to_cart,
-        COALESCE(SUM(CASE WHEN e.event_type = 'PURCHASE' THEN 1 ELSE 0 END), 0) AS purchases,
-        COALESCE(SUM(CASE WHEN e.event_type = 'BRAND_CLICK' THEN 1 ELSE 0 END), 0) AS brand_clicks,
+        bc.views,
+        bc.add_to_cart,
+        bc.purchases,
+        bc.brand_clicks,
         (
-          COALESCE(SUM(CASE WHEN e.event_type = 'PURCHASE' THEN 1 ELSE 0 END), 0) * 4.0
-          + COALESCE(SUM(CASE WHEN e.event_type = 'ADD_TO_CART' THEN 1 ELSE 0 END), 0) * 2.0
-          + COALESCE(SUM(CASE WHEN e.event_type = 'BRAND_CLICK' THEN 1 ELSE 0 END), 0) * 1.5
-          + COALESCE(SUM(CASE WHEN e.event_type = 'PRODUCT_VIEW' THEN 1 ELSE 0 END), 0) * 0.5
+          bc.purchases * 4.0
+          + bc.add_to_cart * 2.0
+          + bc.brand_clicks * 1.5
+          + bc.views * 0.5
         ) AS weighted_score
-      FROM analytics_events_raw e
-      LEFT JOIN "Product" p_evt ON p_evt.id = e.product_id
-      LEFT JOIN "Brand" b ON b.id = COALESCE(
-        p_evt."brandId",
-        CASE
-          WHEN (e.metadata->>'brandId') ~ '^[0-9]+$'
-          THEN (e.metadata->>'brandId')::int
-        END
-      )
-      WHERE e.occurred_at >= ?
-        AND e.occurred_at <= ?
-        AND b.id IS NOT NULL
-      GROUP BY b.id, b.name
+      FROM brand_counts bc
+      JOIN "Brand" b ON b.id = bc.brand_id
       ORDER BY weighted_score DESC, purchases DESC, add_to_cart DESC, views DESC
       LIMIT ?
       """;
 
   private final JdbcTemplate jdbcTemplate;
+  private final RecommendationEngine recommendationEngine;
+  private final RelatedProductsEngine relatedProductsEngine;
+  private final RecommendationCache recommendationCache;
+  private final Bulkhead recommendationsBulkhead;
+  private final Bulkhead analyticsBulkhead;
+  private final MeterRegistry meterRegistry;
 
-  public RecommendationQueryService(JdbcTemplate jdbcTemplate) {
+  public RecommendationQueryService(
+      @Qualifier(DataSourceConfig.READ_JDBC_TEMPLATE) JdbcTemplate jdbcTemplate,
+      RecommendationEngine recommendationEngine,
+      RelatedProductsEngine relatedProductsEngine,
+      RecommendationCache recommendationCache,
+      Bulkheads bulkheads,
+      MeterRegistry meterRegistry
+  ) {
     this.jdbcTemplate = jdbcTemplate;
+    this.recommendationEngine = recommendationEngine;
+    this.relatedProductsEngine = relatedProductsEngine;
+    this.recommendationCache = recommendationCache;
+    this.recommendationsBulkhead = bulkheads.recommendations();
+    this.analyticsBulkhead = bulkheads.analytics();
+    this.meterRegistry = meterRegistry;
   }
 
   public PersonalizedRecommendationResponse getRecommendations(
@@ -199,13 +205,75 @@ public class RecommendationQueryService {
       int limit,
       String seed
   ) {
+    Timer.Sample sample = Timer.start(meterRegistry);
     int safeLimit = Math.max(1, Math.min(100, limit));
+    List<Integer> excludes = sanitizeIds(excludeProductIds);
+    RecommendationCache.Key key = RecommendationCache.Key.of(
+        ViewerProfileRepository.viewerKey(userId, sessionId), categoryId, excludes, safeLimit, seed
+    );
+
+    // Only the request that computes takes a permit; coalesced ones wait on its result.
+    boolean[] computed = new boolean[1];
+    PersonalizedRecommendationResponse response = recommendationCache.get(key, () -> {
+      computed[0] = true;
+      return recommendationsBulkhead.call(
+          () -> recommend(userId, sessionId, categoryId, excludes, safeLimit, seed)
+      );
+    });
+    return computed[0] ? response : timed(sample, "recommendations", "cache", response);
+  }
+
+  public PersonalizedRecommendationResponse getRelatedRecommendations(
+      Long userId,
+      String sessionId,
+      Integer productId,
+      Integer categoryId,
+      List<Integer> excludeProductIds,
+      int limit
+  ) {
+    return recommendationsBulkhead.call(
+        () -> related(userId, sessionId, productId, categoryId, excludeProductIds, limit)
+    );
+  }
+
+  public List<TopBrandMetricResponse> getTopBrands(Instant from, Instant to, int limit) {
+    return analyticsBulkhead.call(() -> topBrands(from, to, limit));
+  }
+
+  private PersonalizedRecommendationResponse recommend(
+      Long userId,
+      String sessionId,
+      Integer categoryId,
+      List<Integer> excludes,
+      int safeLimit,
+      String seed
+  ) {
+    Timer.Sample sample = Timer.start(meterRegistry);
     Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
-    Instant viewerFrom = now.minus(180, ChronoUnit.DAYS);
-    Instant globalFrom = now.minus(120, ChronoUnit.DAYS);
+    Instant viewerFrom = now.minus(ViewerProfileRepository.WINDOW_DAYS, ChronoUnit.DAYS);
     String tieBreakerSeed = seed == null || seed.isBlank() ? String.valueOf(now.getEpochSecond()) : seed.trim();
 
-    List<Integer> excludes = sanitizeIds(excludeProductIds);
+    String viewerKey = ViewerProfileRepository.viewerKey(userId, sessionId);
+
+    if (recommendationEngine.isReady()) {
+      ViewerScores viewer = loadViewerScores(viewerKey, viewerFrom);
+      Optional<List<ScoredProduct>> ranked =
+          recommendationEngine.rank(viewer, categoryId, excludes, safeLimit, tieBreakerSeed);
+      if (ranked.isPresent()) {
+        List<RecommendationProductResponse> items = ranked.get().stream()
+            .map(product -> new RecommendationProductResponse(
+                product.productId(),
+                product.totalScore(),
+                resolveReason(product.directScore(), product.brandScore())
+            ))
+            .toList();
+        List<TopBrandMetricResponse> topBrands = getPersonalTopBrands(userId, sessionId, 8);
+        PersonalizedRecommendationResponse response =
+            new PersonalizedRecommendationResponse(now, items, topBrands);
+        return timed(sample, "recommendations", "engine", response);
+      }
+    }
+
     String exclusionSql = "";
     if (!excludes.isEmpty()) {
       exclusionSql = " AND product_id NOT IN (" + "?,".repeat(excludes.size());
@@ -215,13 +283,10 @@ public class RecommendationQueryService {
     String sql = String.format(RECOMMENDATION_SQL_TEMPLATE, exclusionSql);
 
     List<Object> params = new ArrayList<>();
-    params.add(Timestamp.from(viewerFrom));
-    params.add(userId);
-    params.add(userId);
-    params.add(userId);
-    params.add(sessionId);
-    params.add(sessionId);
-    params.add(Timestamp.from(globalFrom));
+    params.add(viewerKey);
+    params.add(ViewerProfileRepository.windowStartDay(viewerFrom));
+    params.add(viewerKey);
+    params.add(ViewerProfileRepository.windowStartDay(viewerFrom));
     params.add(tieBreakerSeed);
     params.add(categoryId);
     params.add(categoryId);
@@ -240,15 +305,68 @@ public class RecommendationQueryService {
 
     List<TopBrandMetricResponse> topBrands = getPersonalTopBrands(userId, sessionId, 8);
 
-    return new PersonalizedRecommendationResponse(now, items, topBrands);
+    PersonalizedRecommendationResponse response =
+        new PersonalizedRecommendationResponse(now, items, topBrands);
+    return timed(sample, "recommendations", "sql", response);
   }
 
-  public List<TopBrandMetricResponse> getTopBrands(Instant from, Instant to, int limit) {
+  // Seeds are the viewer's most recently touched products, damped by log1p so repeated views do
+  // not outweigh a purchase, plus the given product weighted like the strongest seed (at least 1).
+  private PersonalizedRecommendationResponse related(
+      Long userId,
+      String sessionId,
+      Integer productId,
+      Integer categoryId,
+      List<Integer> excludeProductIds,
+      int limit
+  ) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    int safeLimit = Math.max(1, Math.min(100, limit));
+    Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    Instant viewerFrom = now.minus(ViewerProfileRepository.WINDOW_DAYS, ChronoUnit.DAYS);
+    String viewerKey = ViewerProfileRepository.viewerKey(userId, sessionId);
+
+    List<Integer> seedIds = new ArrayList<>();
+    List<Double> seedWeights = new ArrayList<>();
+    if (viewerKey != null) {
+      jdbcTemplate.query(RECENT_VIEWER_PRODUCTS_SQL, (RowCallbackHandler) rs -> {
+        seedIds.add(rs.getInt("product_id"));
+        seedWeights.add(Math.log1p(rs.getDouble("score")));
+      }, viewerKey, ViewerProfileRepository.windowStartDay(viewerFrom), RELATED_SEED_PRODUCTS);
+    }
+    if (productId != null && productId > 0 && !seedIds.contains(productId)) {
+      seedIds.add(productId);
+      double strongest = seedWeights.stream().mapToDouble(Double::doubleValue).max().orElse(0.0);
+      seedWeights.add(Math.max(1.0, strongest));
+    }
+
+    List<RecommendationProductResponse> items = relatedProductsEngine.rank(
+            seedIds.stream().mapToInt(Integer::intValue).toArray(),
+            seedWeights.stream().mapToDouble(Double::doubleValue).toArray(),
+            categoryId,
+            sanitizeIds(excludeProductIds),
+            safeLimit
+        )
+        .orElse(List.of())
+        .stream()
+        .map(product -> new RecommendationProductResponse(
+            product.productId(),
+            product.totalScore(),
+            "frequently_together"
+        ))
+        .toList();
+    PersonalizedRecommendationResponse response =
+        new PersonalizedRecommendationResponse(now, items, List.of());
+    return timed(sample, "related_recommendations", "engine", response);
+  }
+
+  private List<TopBrandMetricResponse> topBrands(Instant from, Instant to, int limit) {
+    Timer.Sample sample = Timer.start(meterRegistry);
     int safeLimit = Math.max(1, Math.min(100, limit));
     Instant fromSafe = from.truncatedTo(ChronoUnit.SECONDS);
     Instant toSafe = to.truncatedTo(ChronoUnit.SECONDS);
 
-    return jdbcTemplate.query(
+    List<TopBrandMetricResponse> brands = jdbcTemplate.query(
         TOP_BRANDS_GLOBAL_SQL,
         (rs, rowNum) -> new TopBrandMetricResponse(
             rs.getInt("brand_id"),
@@ -263,11 +381,14 @@ public class RecommendationQueryService {
         Timestamp.from(toSafe),
         safeLimit
     );
+    return timed(sample, "top_brands", "sql", brands);
   }
 
   private List<TopBrandMetricResponse> getPersonalTopBrands(Long userId, String sessionId, int limit) {
     int safeLimit = Math.max(1, Math.min(20, limit));
-    Instant from = Instant.now().minus(180, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS);
+    Instant from = Instant.now()
+        .minus(ViewerProfileRepository.WINDOW_DAYS, ChronoUnit.DAYS)
+        .truncatedTo(ChronoUnit.SECONDS);
 
     List<TopBrandMetricResponse> rows = jdbcTemplate.query(
         TOP_BRANDS_PERSONAL_SQL,
@@ -280,18 +401,38 @@ public class RecommendationQueryService {
             rs.getLong("brand_clicks"),
             rs.getDouble("weighted_score")
         ),
-        Timestamp.from(from),
-        userId,
-        userId,
-        userId,
-        sessionId,
-        sessionId,
+        ViewerProfileRepository.viewerKey(userId, sessionId),
+        ViewerProfileRepository.windowStartDay(from),
         safeLimit
     );
 
     return rows == null ? Collections.emptyList() : rows;
   }
 
+  private ViewerScores loadViewerScores(String viewerKey, Instant from) {
+    if (viewerKey == null) {
+      return ViewerScores.EMPTY;
+    }
+    List<Integer> productIds = new ArrayList<>();
+    List<Double> productScores = new ArrayList<>();
+    jdbcTemplate.query(VIEWER_PRODUCT_SCORES_SQL, (RowCallbackHandler) rs -> {
+      productIds.add(rs.getInt("product_id"));
+      productScores.add(rs.getDouble("score"));
+    }, viewerKey, ViewerProfileRepository.windowStartDay(from));
+    List<Integer> brandIds = new ArrayList<>();
+    List<Double> brandScores = new ArrayList<>();
+    jdbcTemplate.query(VIEWER_BRAND_SCORES_SQL, (RowCallbackHandler) rs -> {
+      brandIds.add(rs.getInt("brand_id"));
+      brandScores.add(rs.getDouble("score"));
+    }, viewerKey, ViewerProfileRepository.windowStartDay(from));
+    return new ViewerScores(
+        productIds.stream().mapToInt(Integer::intValue).toArray(),
+        productScores.stream().mapToDouble(Double::doubleValue).toArray(),
+        brandIds.stream().mapToInt(Integer::intValue).toArray(),
+        brandScores.stream().mapToDouble(Double::doubleValue).toArray()
+    );
+  }
+
   private String resolveReason(double directScore, double brandScore) {
     if (directScore > 0 && brandScore > 0) {
       return "direct_and_brand_interest";
@@ -315,4 +456,9 @@ public class RecommendationQueryService {
         .distinct()
         .toList();
   }
+
+  private <T> T timed(Timer.Sample sample, String query, String source, T result) {
+    sample.stop(meterRegistry.timer("analytics.query", "query", query, "source", source));
+    return result;
+  }
 }
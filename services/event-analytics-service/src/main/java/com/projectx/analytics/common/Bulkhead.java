@@ -0,0 +1,93 @@
+package com.projectx.analytics.common;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many callers of one workload touch the database at once. With virtual threads the
+ * Hikari pool is the only other limit, so without this a burst in one workload takes every
+ * connection and the others time out. Callers over the limit either wait up to the acquire
+ * timeout in arrival order ({@code QUEUE}) or are rejected at once ({@code FAIL_FAST}).
+ */
+public class Bulkhead {
+
+  private final String name;
+  private final Semaphore permits;
+  private final int maxConcurrent;
+  private final long acquireTimeoutMs;
+  private final AnalyticsProperties.BulkheadPolicy policy;
+  private final Counter rejected;
+  private final Timer waits;
+
+  public Bulkhead(String name, AnalyticsProperties.BulkheadLimit limit, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.maxConcurrent = limit.getMaxConcurrent();
+    this.permits = new Semaphore(maxConcurrent, true);
+    this.acquireTimeoutMs = limit.getAcquireTimeoutMs();
+    this.policy = limit.getPolicy();
+    this.rejected = meterRegistry.counter("bulkhead.rejected", "bulkhead", name);
+    this.waits = meterRegistry.timer("bulkhead.wait", "bulkhead", name);
+    Gauge.builder("bulkhead.active", this, Bulkhead::active)
+        .description("Callers currently holding a permit")
+        .tag("bulkhead", name)
+        .register(meterRegistry);
+    Gauge.builder("bulkhead.queued", permits, Semaphore::getQueueLength)
+        .description("Callers waiting for a permit")
+        .tag("bulkhead", name)
+        .register(meterRegistry);
+    Gauge.builder("bulkhead.limit", this, bulkhead -> bulkhead.maxConcurrent)
+        .tag("bulkhead", name)
+        .register(meterRegistry);
+  }
+
+  public <T> T call(Supplier<T> action) {
+    acquire();
+    try {
+      return action.get();
+    } finally {
+      permits.release();
+    }
+  }
+
+  public void run(Runnable action) {
+    acquire();
+    try {
+      action.run();
+    } finally {
+      permits.release();
+    }
+  }
+
+  public int active() {
+    return maxConcurrent - permits.availablePermits();
+  }
+
+  private void acquire() {
+    if (policy == AnalyticsProperties.BulkheadPolicy.FAIL_FAST) {
+      if (permits.tryAcquire()) {
+        return;
+      }
+    } else {
+      long started = System.nanoTime();
+      boolean acquired;
+      try {
+        acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        acquired = false;
+      }
+      waits.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+      if (acquired) {
+        return;
+      }
+    }
+    rejected.increment();
+    throw new BulkheadFullException(name);
+  }
+}
@@ -0,0 +1,15 @@
+package com.projectx.analytics.common;
+
+public class BulkheadFullException extends RuntimeException {
+
+  private final String bulkhead;
+
+  public BulkheadFullException(String bulkhead) {
+    super("Too many concurrent " + bulkhead + " requests, retry later");
+    this.bulkhead = bulkhead;
+  }
+
+  public String getBulkhead() {
+    return bulkhead;
+  }
+}
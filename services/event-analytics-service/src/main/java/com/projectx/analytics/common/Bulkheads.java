@@ -0,0 +1,32 @@
+package com.projectx.analytics.common;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+@Component
+public class Bulkheads {
+
+  private final Bulkhead ingest;
+  private final Bulkhead analytics;
+  private final Bulkhead recommendations;
+
+  public Bulkheads(AnalyticsProperties properties, MeterRegistry meterRegistry) {
+    AnalyticsProperties.Bulkheads settings = properties.getBulkheads();
+    this.ingest = new Bulkhead("ingest", settings.getIngest(), meterRegistry);
+    this.analytics = new Bulkhead("analytics", settings.getAnalytics(), meterRegistry);
+    this.recommendations = new Bulkhead("recommendations", settings.getRecommendations(), meterRegistry);
+  }
+
+  public Bulkhead ingest() {
+    return ingest;
+  }
+
+  public Bulkhead analytics() {
+    return analytics;
+  }
+
+  public Bulkhead recommendations() {
+    return recommendations;
+  }
+}
@@ -4,6 +4,7 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
@@ -17,6 +18,33 @@ public class AnalyticsProperties {
   @Valid
   private final Aggregation aggregation = new Aggregation();
 
+  @Valid
+  private final Ingestion ingestion = new Ingestion();
+
+  @Valid
+  private final Cube cube = new Cube();
+
+  @Valid
+  private final Popularity popularity = new Popularity();
+
+  @Valid
+  private final Scoring scoring = new Scoring();
+
+  @Valid
+  private final Partitions partitions = new Partitions();
+
+  @Valid
+  private final Bulkheads bulkheads = new Bulkheads();
+
+  @Valid
+  private final ResultCache resultCache = new ResultCache();
+
+  @Valid
+  private final RecommendationCache recommendationCache = new RecommendationCache();
+
+  @Valid
+  private final Cooccurrence cooccurrence = new Cooccurrence();
+
   public Security getSecurity() {
     return security;
   }
@@ -25,6 +53,42 @@ public class AnalyticsProperties {
     return aggregation;
   }
 
+  public Ingestion getIngestion() {
+    return ingestion;
+  }
+
+  public Cube getCube() {
+    return cube;
+  }
+
+  public Popularity getPopularity() {
+    return popularity;
+  }
+
+  public Scoring getScoring() {
+    return scoring;
+  }
+
+  public Partitions getPartitions() {
+    return partitions;
+  }
+
+  public Bulkheads getBulkheads() {
+    return bulkheads;
+  }
+
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  public RecommendationCache getRecommendationCache() {
+    return recommendationCache;
+  }
+
+  public Cooccurrence getCooccurrence() {
+    return cooccurrence;
+  }
+
   public static class Security {
     @NotBlank
     private String apiKey = "local-dev-key";
@@ -38,11 +102,21 @@ public class AnalyticsProperties {
     }
   }
 
+  public enum AggregationMode {
+    RECOMPUTE,
+    INCREMENTAL
+  }
+
   public static class Aggregation {
+    @NotNull
+    private AggregationMode mode = AggregationMode.RECOMPUTE;
+
     @Min(5_000)
     private long fixedDelayMs = 60_000;
 
-    @Min(0)
+    // Covers clock skew between the service and the database; writes still in flight are
+    // excluded by the open-transaction horizon, whatever their length.
+    @Min(5)
     @Max(300)
     private long lagSeconds = 30;
 
@@ -50,6 +124,14 @@ public class AnalyticsProperties {
     @Max(72)
     private int lookbackHours = 6;
 
+    public AggregationMode getMode() {
+      return mode;
+    }
+
+    public void setMode(AggregationMode mode) {
+      this.mode = mode;
+    }
+
     public long getFixedDelayMs() {
       return fixedDelayMs;
     }
@@ -74,4 +156,559 @@ public class AnalyticsProperties {
       this.lookbackHours = lookbackHours;
     }
   }
+
+  public enum WriteMode {
+    BATCH_INSERT,
+    COPY
+  }
+
+  public static class Ingestion {
+    private boolean asyncEnabled = false;
+
+    @NotNull
+    private WriteMode writeMode = WriteMode.BATCH_INSERT;
+
+    @Min(100)
+    @Max(1_000_000)
+    private int queueCapacity = 50_000;
+
+    @Min(1)
+    @Max(5_000)
+    private int batchSize = 500;
+
+    @Min(10)
+    @Max(60_000)
+    private long flushIntervalMs = 200;
+
+    @Min(1)
+    @Max(16)
+    private int writerThreads = 2;
+
+    @Min(0)
+    @Max(120_000)
+    private long shutdownTimeoutMs = 10_000;
+
+    // A failed queue flush is retried with doubling backoff before its events are dropped.
+    @Min(1)
+    @Max(10)
+    private int flushAttempts = 3;
+
+    @Min(10)
+    @Max(60_000)
+    private long flushRetryBackoffMs = 500;
+
+    @Min(1_000)
+    private long brandRefreshMs = 300_000;
+
+    // How long a client eventId keeps resolving to its first-seen occurredAt, i.e. the window in
+    // which retries are deduplicated whatever occurredAt they carry.
+    @Min(1)
+    @Max(8_760)
+    private int eventIdRetentionHours = 72;
+
+    // How far ahead of the server clock an occurredAt may lie before the event is rejected.
+    @Min(0)
+    @Max(86_400)
+    private long maxFutureSkewSeconds = 300;
+
+    public boolean isAsyncEnabled() {
+      return asyncEnabled;
+    }
+
+    public void setAsyncEnabled(boolean asyncEnabled) {
+      this.asyncEnabled = asyncEnabled;
+    }
+
+    public WriteMode getWriteMode() {
+      return writeMode;
+    }
+
+    public void setWriteMode(WriteMode writeMode) {
+      this.writeMode = writeMode;
+    }
+
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public long getFlushIntervalMs() {
+      return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+      this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public int getWriterThreads() {
+      return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+      this.writerThreads = writerThreads;
+    }
+
+    public long getShutdownTimeoutMs() {
+      return shutdownTimeoutMs;
+    }
+
+    public long getBrandRefreshMs() {
+      return brandRefreshMs;
+    }
+
+    public void setBrandRefreshMs(long brandRefreshMs) {
+      this.brandRefreshMs = brandRefreshMs;
+    }
+
+    public void setShutdownTimeoutMs(long shutdownTimeoutMs) {
+      this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    public int getFlushAttempts() {
+      return flushAttempts;
+    }
+
+    public void setFlushAttempts(int flushAttempts) {
+      this.flushAttempts = flushAttempts;
+    }
+
+    public long getFlushRetryBackoffMs() {
+      return flushRetryBackoffMs;
+    }
+
+    public void setFlushRetryBackoffMs(long flushRetryBackoffMs) {
+      this.flushRetryBackoffMs = flushRetryBackoffMs;
+    }
+
+    public int getEventIdRetentionHours() {
+      return eventIdRetentionHours;
+    }
+
+    public void setEventIdRetentionHours(int eventIdRetentionHours) {
+      this.eventIdRetentionHours = eventIdRetentionHours;
+    }
+
+    public long getMaxFutureSkewSeconds() {
+      return maxFutureSkewSeconds;
+    }
+
+    public void setMaxFutureSkewSeconds(long maxFutureSkewSeconds) {
+      this.maxFutureSkewSeconds = maxFutureSkewSeconds;
+    }
+  }
+
+  public static class Cube {
+    private boolean enabled = false;
+
+    @Min(1)
+    @Max(2_160)
+    private int retentionHours = 168;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getRetentionHours() {
+      return retentionHours;
+    }
+
+    public void setRetentionHours(int retentionHours) {
+      this.retentionHours = retentionHours;
+    }
+  }
+
+  public static class Popularity {
+    @Min(1)
+    @Max(365)
+    private int windowDays = 120;
+
+    @Min(1)
+    @Max(365)
+    private int halfLifeDays = 30;
+
+    @Min(1)
+    @Max(1_440)
+    private int refreshIntervalMinutes = 15;
+
+    public int getWindowDays() {
+      return windowDays;
+    }
+
+    public void setWindowDays(int windowDays) {
+      this.windowDays = windowDays;
+    }
+
+    public int getHalfLifeDays() {
+      return halfLifeDays;
+    }
+
+    public void setHalfLifeDays(int halfLifeDays) {
+      this.halfLifeDays = halfLifeDays;
+    }
+
+    public int getRefreshIntervalMinutes() {
+      return refreshIntervalMinutes;
+    }
+
+    public void setRefreshIntervalMinutes(int refreshIntervalMinutes) {
+      this.refreshIntervalMinutes = refreshIntervalMinutes;
+    }
+  }
+
+  public static class Scoring {
+    private boolean enabled = false;
+
+    @Min(1_000)
+    private long catalogRefreshMs = 60_000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public long getCatalogRefreshMs() {
+      return catalogRefreshMs;
+    }
+
+    public void setCatalogRefreshMs(long catalogRefreshMs) {
+      this.catalogRefreshMs = catalogRefreshMs;
+    }
+  }
+
+  public static class Partitions {
+    private boolean enabled = false;
+
+    @Min(1)
+    @Max(90)
+    private int premakeDays = 7;
+
+    // 0 keeps every partition.
+    @Min(0)
+    @Max(3_650)
+    private int retentionDays = 0;
+
+    @Min(60_000)
+    private long checkIntervalMs = 3_600_000;
+
+    // Expired partitions are written here as gzip NDJSON before they are dropped.
+    private boolean archiveEnabled = false;
+
+    @NotBlank
+    private String archiveDir = "archive/events";
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getPremakeDays() {
+      return premakeDays;
+    }
+
+    public void setPremakeDays(int premakeDays) {
+      this.premakeDays = premakeDays;
+    }
+
+    public int getRetentionDays() {
+      return retentionDays;
+    }
+
+    public void setRetentionDays(int retentionDays) {
+      this.retentionDays = retentionDays;
+    }
+
+    public long getCheckIntervalMs() {
+      return checkIntervalMs;
+    }
+
+    public void setCheckIntervalMs(long checkIntervalMs) {
+      this.checkIntervalMs = checkIntervalMs;
+    }
+
+    public boolean isArchiveEnabled() {
+      return archiveEnabled;
+    }
+
+    public void setArchiveEnabled(boolean archiveEnabled) {
+      this.archiveEnabled = archiveEnabled;
+    }
+
+    public String getArchiveDir() {
+      return archiveDir;
+    }
+
+    public void setArchiveDir(String archiveDir) {
+      this.archiveDir = archiveDir;
+    }
+  }
+
+  public static class ResultCache {
+    private boolean enabled = true;
+
+    // Each entry weighs one plus its result rows.
+    @Min(100)
+    @Max(10_000_000)
+    private long maxWeight = 100_000;
+
+    @Min(1_000)
+    @Max(3_600_000)
+    private long openHourTtlMs = 30_000;
+
+    // How far a read replica can trail the primary: its max lag plus the lag check interval.
+    @Min(0)
+    @Max(3_600_000)
+    private long replicaLagMs = 35_000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public long getMaxWeight() {
+      return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) {
+      this.maxWeight = maxWeight;
+    }
+
+    public long getOpenHourTtlMs() {
+      return openHourTtlMs;
+    }
+
+    public void setOpenHourTtlMs(long openHourTtlMs) {
+      this.openHourTtlMs = openHourTtlMs;
+    }
+
+    public long getReplicaLagMs() {
+      return replicaLagMs;
+    }
+
+    public void setReplicaLagMs(long replicaLagMs) {
+      this.replicaLagMs = replicaLagMs;
+    }
+  }
+
+  public static class RecommendationCache {
+    private boolean enabled = true;
+
+    @Min(100)
+    @Max(60_000)
+    private long ttlMs = 5_000;
+
+    @Min(100)
+    @Max(10_000_000)
+    private long maxSize = 50_000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public long getTtlMs() {
+      return ttlMs;
+    }
+
+    public void setTtlMs(long ttlMs) {
+      this.ttlMs = ttlMs;
+    }
+
+    public long getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+      this.maxSize = maxSize;
+    }
+  }
+
+  public static class Cooccurrence {
+    private boolean enabled = true;
+
+    @Min(1)
+    @Max(1_440)
+    private int refreshIntervalMinutes = 10;
+
+    @Min(1)
+    @Max(200)
+    private int neighbors = 20;
+
+    @Min(1)
+    @Max(720)
+    private int sessionWindowHours = 24;
+
+    @Min(2)
+    @Max(1_000)
+    private int maxSessionProducts = 50;
+
+    // Largest ingest range applied per run, so a long backlog is caught up in bounded steps.
+    @Min(1)
+    @Max(720)
+    private int maxRangeHours = 6;
+
+    @Min(0)
+    @Max(3_650)
+    private int backfillDays = 90;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getRefreshIntervalMinutes() {
+      return refreshIntervalMinutes;
+    }
+
+    public void setRefreshIntervalMinutes(int refreshIntervalMinutes) {
+      this.refreshIntervalMinutes = refreshIntervalMinutes;
+    }
+
+    public int getNeighbors() {
+      return neighbors;
+    }
+
+    public void setNeighbors(int neighbors) {
+      this.neighbors = neighbors;
+    }
+
+    public int getSessionWindowHours() {
+      return sessionWindowHours;
+    }
+
+    public void setSessionWindowHours(int sessionWindowHours) {
+      this.sessionWindowHours = sessionWindowHours;
+    }
+
+    public int getMaxSessionProducts() {
+      return maxSessionProducts;
+    }
+
+    public void setMaxSessionProducts(int maxSessionProducts) {
+      this.maxSessionProducts = maxSessionProducts;
+    }
+
+    public int getMaxRangeHours() {
+      return maxRangeHours;
+    }
+
+    public void setMaxRangeHours(int maxRangeHours) {
+      this.maxRangeHours = maxRangeHours;
+    }
+
+    public int getBackfillDays() {
+      return backfillDays;
+    }
+
+    public void setBackfillDays(int backfillDays) {
+      this.backfillDays = backfillDays;
+    }
+  }
+
+  public enum BulkheadPolicy {
+    FAIL_FAST,
+    QUEUE
+  }
+
+  // Defaults split the default Hikari pools of 10: ingest 6 + 2 queue writers + the one scheduled
+  // aggregation run on the write pool, analytics 4 + recommendations 6 on the read pool.
+  public static class Bulkheads {
+    @Valid
+    private final BulkheadLimit ingest = new BulkheadLimit(6, 2_000, BulkheadPolicy.QUEUE);
+
+    @Valid
+    private final BulkheadLimit analytics = new BulkheadLimit(4, 1_000, BulkheadPolicy.QUEUE);
+
+    @Valid
+    private final BulkheadLimit recommendations = new BulkheadLimit(6, 200, BulkheadPolicy.QUEUE);
+
+    public BulkheadLimit getIngest() {
+      return ingest;
+    }
+
+    public BulkheadLimit getAnalytics() {
+      return analytics;
+    }
+
+    public BulkheadLimit getRecommendations() {
+      return recommendations;
+    }
+  }
+
+  public static class BulkheadLimit {
+    @Min(1)
+    @Max(1_000)
+    private int maxConcurrent;
+
+    // Ignored with FAIL_FAST.
+    @Min(0)
+    @Max(600_000)
+    private long acquireTimeoutMs;
+
+    @NotNull
+    private BulkheadPolicy policy;
+
+    public BulkheadLimit() {
+      this(10, 1_000, BulkheadPolicy.QUEUE);
+    }
+
+    public BulkheadLimit(int maxConcurrent, long acquireTimeoutMs, BulkheadPolicy policy) {
+      this.maxConcurrent = maxConcurrent;
+      this.acquireTimeoutMs = acquireTimeoutMs;
+      this.policy = policy;
+    }
+
+    public int getMaxConcurrent() {
+      return maxConcurrent;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+      this.maxConcurrent = maxConcurrent;
+    }
+
+    public long getAcquireTimeoutMs() {
+      return acquireTimeoutMs;
+    }
+
+    public void setAcquireTimeoutMs(long acquireTimeoutMs) {
+      this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    public BulkheadPolicy getPolicy() {
+      return policy;
+    }
+
+    public void setPolicy(BulkheadPolicy policy) {
+      this.policy = policy;
+    }
+  }
 }
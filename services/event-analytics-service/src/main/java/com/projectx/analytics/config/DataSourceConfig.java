@@ -1,6 +1,8 @@
 package com.projectx.analytics.config;
 
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URLDecoder;
@@ -8,13 +10,17 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.sql.DataSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 @Configuration
 public class DataSourceConfig {
@@ -25,8 +31,64 @@ public class DataSourceConfig {
       "pool_timeout"
   );
 
+  public static final String READ_JDBC_TEMPLATE = "readJdbcTemplate";
+
   @Bean
+  @Primary
   public DataSource dataSource(Environment env) {
+    HikariDataSource dataSource = newPool(env, primaryJdbcUrl(env), "events-write");
+
+    Integer maxPool = env.getProperty("EVENTS_DB_POOL_MAX", Integer.class);
+    Integer minPool = env.getProperty("EVENTS_DB_POOL_MIN", Integer.class);
+    if (maxPool != null) {
+      dataSource.setMaximumPoolSize(maxPool);
+    }
+    if (minPool != null) {
+      dataSource.setMinimumIdle(minPool);
+    }
+
+    return dataSource;
+  }
+
+  // Read pools are created by hand, so Boot's Hikari metrics binder does not see them.
+  @Bean
+  public ReadRoutingDataSource readDataSource(Environment env, MeterRegistry meterRegistry) {
+    List<HikariDataSource> replicas = new ArrayList<>();
+    String readUrls = env.getProperty("EVENTS_DB_READ_URL");
+    if (readUrls != null && !readUrls.isBlank()) {
+      for (String readUrl : readUrls.split(",")) {
+        if (readUrl.isBlank()) {
+          continue;
+        }
+        String poolName = "events-read-" + (replicas.size() + 1);
+        replicas.add(newReadPool(env, normalizeJdbcUrl(readUrl.trim()), poolName, meterRegistry));
+      }
+    }
+
+    HikariDataSource primaryReads = newReadPool(env, primaryJdbcUrl(env), "events-read-primary", meterRegistry);
+    // With replicas the primary read pool is only a fallback, so it holds no idle connections on
+    // the primary and opens them only while every replica is out of rotation.
+    if (!replicas.isEmpty()) {
+      primaryReads.setMinimumIdle(0);
+    }
+
+    double maxLagSeconds = env.getProperty("EVENTS_DB_READ_MAX_LAG_SECONDS", Double.class, 30.0);
+    return new ReadRoutingDataSource(primaryReads, replicas, maxLagSeconds, meterRegistry);
+  }
+
+  // Declaring any JdbcTemplate switches off Boot's own, so the write template is declared too.
+  @Bean
+  @Primary
+  public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+    return new JdbcTemplate(dataSource);
+  }
+
+  @Bean(READ_JDBC_TEMPLATE)
+  public JdbcTemplate readJdbcTemplate(ReadRoutingDataSource readDataSource) {
+    return new JdbcTemplate(readDataSource);
+  }
+
+  private String primaryJdbcUrl(Environment env) {
     String rawUrl = firstNonBlank(
         env.getProperty("EVENTS_DB_URL"),
         env.getProperty("DATABASE_URL"),
@@ -38,10 +100,34 @@ public class DataSourceConfig {
       throw new IllegalStateException("Set EVENTS_DB_URL or DATABASE_URL for event-analytics-service");
     }
 
-    String jdbcUrl = normalizeJdbcUrl(rawUrl.trim());
+    return normalizeJdbcUrl(rawUrl.trim());
+  }
+
+  private HikariDataSource newReadPool(
+      Environment env,
+      String jdbcUrl,
+      String poolName,
+      MeterRegistry meterRegistry
+  ) {
+    HikariDataSource dataSource = newPool(env, jdbcUrl, poolName);
+    dataSource.setReadOnly(true);
+    dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+    Integer maxPool = env.getProperty("EVENTS_DB_READ_POOL_MAX", Integer.class);
+    Integer minPool = env.getProperty("EVENTS_DB_READ_POOL_MIN", Integer.class);
+    if (maxPool != null) {
+      dataSource.setMaximumPoolSize(maxPool);
+    }
+    if (minPool != null) {
+      dataSource.setMinimumIdle(minPool);
+    }
+    return dataSource;
+  }
 
+  private HikariDataSource newPool(Environment env, String jdbcUrl, String poolName) {
     HikariDataSource dataSource = new HikariDataSource();
     dataSource.setJdbcUrl(jdbcUrl);
+    dataSource.setPoolName(poolName);
 
     String username = env.getProperty("EVENTS_DB_USERNAME");
     String password = env.getProperty("EVENTS_DB_PASSWORD");
@@ -52,15 +138,12 @@ public class DataSourceConfig {
       dataSource.setPassword(password);
     }
 
-    Integer maxPool = env.getProperty("EVENTS_DB_POOL_MAX", Integer.class);
-    Integer minPool = env.getProperty("EVENTS_DB_POOL_MIN", Integer.class);
-    if (maxPool != null) {
-      dataSource.setMaximumPoolSize(maxPool);
-    }
-    if (minPool != null) {
-      dataSource.setMinimumIdle(minPool);
+    // With virtual threads every waiting request is cheap, so the pool is the only DB concurrency
+    // limit; a short acquire timeout turns overload into fast failures instead of a growing backlog.
+    Long connectionTimeoutMs = env.getProperty("EVENTS_DB_CONNECTION_TIMEOUT_MS", Long.class);
+    if (connectionTimeoutMs != null) {
+      dataSource.setConnectionTimeout(connectionTimeoutMs);
     }
-
     return dataSource;
   }
 
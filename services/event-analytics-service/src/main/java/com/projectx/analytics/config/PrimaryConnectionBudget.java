@@ -0,0 +1,71 @@
+package com.projectx.analytics.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks at startup that the pools one instance may open on the primary, the write pool and the
+ * primary read pool, fit into the connections the server accepts. Replica pools are not counted:
+ * each replica has its own max_connections.
+ */
+@Component
+public class PrimaryConnectionBudget {
+
+  private static final Logger log = LoggerFactory.getLogger(PrimaryConnectionBudget.class);
+
+  // reserved_connections exists since Postgres 16; missing_ok turns it into NULL before that.
+  private static final String AVAILABLE_CONNECTIONS_SQL = """
+      SELECT current_setting('max_connections')::int
+        - current_setting('superuser_reserved_connections')::int
+        - COALESCE(current_setting('reserved_connections', true)::int, 0)
+      """;
+
+  private final DataSource writeDataSource;
+  private final ReadRoutingDataSource readDataSource;
+
+  public PrimaryConnectionBudget(DataSource writeDataSource, ReadRoutingDataSource readDataSource) {
+    this.writeDataSource = writeDataSource;
+    this.readDataSource = readDataSource;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void check() {
+    if (!(writeDataSource instanceof HikariDataSource writePool)) {
+      return;
+    }
+    int writeMax = writePool.getMaximumPoolSize();
+    int readMax = readDataSource.primaryPool().getMaximumPoolSize();
+    Integer available;
+    try {
+      available = new JdbcTemplate(writePool).queryForObject(AVAILABLE_CONNECTIONS_SQL, Integer.class);
+    } catch (RuntimeException ex) {
+      log.warn("Could not read max_connections of the primary", ex);
+      return;
+    }
+    if (available == null) {
+      return;
+    }
+    if (writeMax + readMax > available) {
+      log.warn(
+          "Pools of one instance exceed the connections the primary accepts. "
+              + "writePoolMax={}, primaryReadPoolMax={}, available={}",
+          writeMax,
+          readMax,
+          available
+      );
+    } else {
+      log.info(
+          "Primary connection budget per instance. writePoolMax={}, primaryReadPoolMax={}, available={}",
+          writeMax,
+          readMax,
+          available
+      );
+    }
+  }
+}
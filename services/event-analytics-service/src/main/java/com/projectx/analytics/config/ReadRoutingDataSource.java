@@ -0,0 +1,161 @@
+package com.projectx.analytics.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Connections for read-only queries. Replicas are used round-robin while their replay lag is
+ * within {@code maxLagSeconds}; otherwise, and until the first check, reads go to a read pool on
+ * the primary. That pool is separate from the write pool, so a burst of slow reads can never take
+ * connections away from ingestion or aggregation.
+ */
+public class ReadRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(ReadRoutingDataSource.class);
+
+  // A replica whose received WAL is fully replayed is current even if the primary has been idle
+  // for a while, which would otherwise look like a growing replay timestamp lag.
+  private static final String LAG_SQL = """
+      SELECT CASE
+        WHEN NOT pg_is_in_recovery() THEN 0
+        WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+        ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)
+      END
+      """;
+
+  private final HikariDataSource primary;
+  private final List<Replica> replicas;
+  private final double maxLagSeconds;
+  private final AtomicInteger next = new AtomicInteger();
+  private final Counter fallbacks;
+
+  public ReadRoutingDataSource(
+      HikariDataSource primary,
+      List<HikariDataSource> replicas,
+      double maxLagSeconds,
+      MeterRegistry meterRegistry
+  ) {
+    this.primary = primary;
+    this.replicas = replicas.stream().map(Replica::new).toList();
+    this.maxLagSeconds = maxLagSeconds;
+    this.fallbacks = Counter.builder("events.db.read.fallback")
+        .description("Reads sent to the primary because no replica was usable")
+        .register(meterRegistry);
+    for (Replica replica : this.replicas) {
+      Gauge.builder("events.db.read.replica.lag", replica, r -> r.lagSeconds)
+          .tag("pool", replica.pool.getPoolName())
+          .baseUnit("seconds")
+          .register(meterRegistry);
+    }
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    Replica replica = nextUsable();
+    if (replica != null) {
+      try {
+        return replica.pool.getConnection();
+      } catch (SQLException ex) {
+        replica.usable = false;
+        log.warn("Read replica unavailable, using primary. pool={}", replica.pool.getPoolName(), ex);
+      }
+    }
+    if (!replicas.isEmpty()) {
+      fallbacks.increment();
+    }
+    return primary.getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("Credentials are configured per pool");
+  }
+
+  @Scheduled(
+      fixedDelayString = "${EVENTS_DB_READ_CHECK_INTERVAL_MS:5000}",
+      initialDelayString = "0"
+  )
+  public void checkReplicas() {
+    for (Replica replica : replicas) {
+      Double lag;
+      try {
+        lag = new JdbcTemplate(replica.pool).queryForObject(LAG_SQL, Double.class);
+      } catch (RuntimeException ex) {
+        lag = null;
+        if (replica.usable) {
+          log.warn("Read replica check failed. pool={}", replica.pool.getPoolName(), ex);
+        }
+      }
+      recordLag(replica, lag);
+    }
+  }
+
+  HikariDataSource primaryPool() {
+    return primary;
+  }
+
+  @Override
+  public void close() {
+    for (Replica replica : replicas) {
+      replica.pool.close();
+    }
+    primary.close();
+  }
+
+  // Null means the replica could not be checked.
+  void recordLag(int replica, Double lagSeconds) {
+    recordLag(replicas.get(replica), lagSeconds);
+  }
+
+  private void recordLag(Replica replica, Double lagSeconds) {
+    boolean usable = lagSeconds != null && lagSeconds <= maxLagSeconds;
+    if (usable != replica.usable) {
+      log.info(
+          "Read replica {}. pool={}, lagSeconds={}",
+          usable ? "in use" : "out of rotation",
+          replica.pool.getPoolName(),
+          lagSeconds
+      );
+    }
+    replica.lagSeconds = lagSeconds == null ? Double.NaN : lagSeconds;
+    replica.usable = usable;
+  }
+
+  private Replica nextUsable() {
+    int size = replicas.size();
+    if (size == 0) {
+      return null;
+    }
+    int start = Math.floorMod(next.getAndIncrement(), size);
+    for (int i = 0; i < size; i++) {
+      Replica replica = replicas.get((start + i) % size);
+      if (replica.usable) {
+        return replica;
+      }
+    }
+    return null;
+  }
+
+  private static final class Replica {
+
+    private final HikariDataSource pool;
+    private volatile boolean usable;
+    private volatile double lagSeconds = Double.NaN;
+
+    private Replica(HikariDataSource pool) {
+      this.pool = pool;
+    }
+  }
+}
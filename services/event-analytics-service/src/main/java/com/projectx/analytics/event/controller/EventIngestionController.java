@@ -3,8 +3,15 @@ package com.projectx.analytics.event.controller;
 import com.projectx.analytics.event.dto.BatchEventRequest;
 import com.projectx.analytics.event.dto.EventAcceptedResponse;
 import com.projectx.analytics.event.dto.EventRequest;
+import com.projectx.analytics.event.dto.StreamIngestionResponse;
+import com.projectx.analytics.event.service.CompactBatchDecoder;
 import com.projectx.analytics.event.service.EventIngestionService;
+import com.projectx.analytics.event.service.EventStreamIngestionService;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -15,10 +22,21 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/v1/events")
 public class EventIngestionController {
 
+  static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+  static final String CBOR_MEDIA_TYPE = "application/cbor";
+
   private final EventIngestionService eventIngestionService;
+  private final EventStreamIngestionService eventStreamIngestionService;
+  private final CompactBatchDecoder compactBatchDecoder;
 
-  public EventIngestionController(EventIngestionService eventIngestionService) {
+  public EventIngestionController(
+      EventIngestionService eventIngestionService,
+      EventStreamIngestionService eventStreamIngestionService,
+      CompactBatchDecoder compactBatchDecoder
+  ) {
     this.eventIngestionService = eventIngestionService;
+    this.eventStreamIngestionService = eventStreamIngestionService;
+    this.compactBatchDecoder = compactBatchDecoder;
   }
 
   @PostMapping
@@ -34,4 +52,21 @@ public class EventIngestionController {
     int accepted = eventIngestionService.ingestBatch(request.events());
     return ResponseEntity.accepted().body(new EventAcceptedResponse(accepted));
   }
+
+  @PostMapping(value = "/batch", consumes = CBOR_MEDIA_TYPE)
+  public ResponseEntity<EventAcceptedResponse> ingestCompactBatch(InputStream body) throws IOException {
+    int accepted = eventIngestionService.ingestBatch(compactBatchDecoder.decode(body));
+    return ResponseEntity.accepted().body(new EventAcceptedResponse(accepted));
+  }
+
+  @PostMapping(value = "/stream", consumes = NDJSON_MEDIA_TYPE)
+  public ResponseEntity<StreamIngestionResponse> ingestStream(InputStream body) throws IOException {
+    StreamIngestionResponse response = eventStreamIngestionService.ingest(body);
+    if (response.error() != null) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+          .header(HttpHeaders.RETRY_AFTER, "1")
+          .body(response);
+    }
+    return ResponseEntity.ok(response);
+  }
 }
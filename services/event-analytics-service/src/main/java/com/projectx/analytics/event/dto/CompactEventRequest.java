@@ -0,0 +1,63 @@
+package com.projectx.analytics.event.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.projectx.analytics.event.model.EventType;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One event of the CBOR batch format: single-letter keys, the event type as a numeric code and
+ * the id as 16 raw bytes (a UUID string is accepted too). It is converted to an
+ * {@link EventRequest}, so validation and normalization are the same as for JSON.
+ */
+public record CompactEventRequest(
+    @JsonProperty("i") UUID eventId,
+    @JsonProperty("t") Integer eventType,
+    @JsonProperty("u") Long userId,
+    @JsonProperty("s") String sessionId,
+    @JsonProperty("p") Integer productId,
+    @JsonProperty("o") Long orderId,
+    @JsonProperty("w") String pageUrl,
+    @JsonProperty("r") String source,
+    @JsonProperty("d") String deviceType,
+    @JsonProperty("a") Long occurredAtMillis,
+    @JsonProperty("m") Map<String, Object> metadata
+) {
+
+  // Throws IllegalArgumentException for a code no event type has.
+  public EventRequest toEventRequest() {
+    return new EventRequest(
+        eventId,
+        eventTypeName(eventType),
+        userId,
+        sessionId,
+        productId,
+        orderId,
+        pageUrl,
+        source,
+        deviceType,
+        occurredAtMillis == null ? null : Instant.ofEpochMilli(occurredAtMillis),
+        metadata
+    );
+  }
+
+  public static int codeOf(String eventType) {
+    EventType type = EventType.lookup(eventType);
+    if (type == null) {
+      throw new IllegalArgumentException("Unsupported eventType: " + eventType);
+    }
+    return type.code();
+  }
+
+  private static String eventTypeName(Integer code) {
+    if (code == null) {
+      return null;
+    }
+    EventType type = EventType.fromCode(code);
+    if (type == null) {
+      throw new IllegalArgumentException("Unsupported eventType code: " + code);
+    }
+    return type.name();
+  }
+}
@@ -0,0 +1,7 @@
+package com.projectx.analytics.event.dto;
+
+public record RejectedLineResponse(
+    long line,
+    String message
+) {
+}
@@ -0,0 +1,18 @@
+package com.projectx.analytics.event.dto;
+
+import java.util.List;
+
+/**
+ * Lines up to {@code committedLines} are stored or rejected. {@code error} is set when a write
+ * failed and the rest of the body was not read; the client resends from the next line.
+ */
+public record StreamIngestionResponse(
+    long lines,
+    long accepted,
+    long duplicates,
+    long rejected,
+    List<RejectedLineResponse> rejectedLines,
+    long committedLines,
+    String error
+) {
+}
@@ -0,0 +1,90 @@
+package com.projectx.analytics.event.model;
+
+import java.util.Arrays;
+
+/**
+ * Supported event types. {@link #lookup} resolves the raw request value case-insensitively and
+ * ignoring surrounding whitespace without allocating: candidates are bucketed by length, which
+ * leaves at most two names to compare. {@link #code} is the number the compact batch format sends
+ * instead of the name; producers depend on it, so codes are never reused or renumbered.
+ */
+public enum EventType {
+  PRODUCT_VIEW(1),
+  ADD_TO_CART(2),
+  REMOVE_FROM_CART(3),
+  START_CHECKOUT(4),
+  PURCHASE(5),
+  SEARCH(6),
+  FAVORITE_ADD(7),
+  BRAND_CLICK(8);
+
+  private static final EventType[][] BY_LENGTH = byLength();
+  private static final EventType[] BY_CODE = byCode();
+
+  private final int code;
+
+  EventType(int code) {
+    this.code = code;
+  }
+
+  public int code() {
+    return code;
+  }
+
+  // Null when no type has this code.
+  public static EventType fromCode(int code) {
+    return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+  }
+
+  // Null when the value is not a supported type.
+  public static EventType lookup(String raw) {
+    int start = 0;
+    int end = raw.length();
+    while (start < end && Character.isWhitespace(raw.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(raw.charAt(end - 1))) {
+      end--;
+    }
+    int length = end - start;
+    if (length >= BY_LENGTH.length) {
+      return null;
+    }
+    for (EventType type : BY_LENGTH[length]) {
+      if (type.name().regionMatches(true, 0, raw, start, length)) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  private static EventType[][] byLength() {
+    int maxLength = 0;
+    for (EventType type : values()) {
+      maxLength = Math.max(maxLength, type.name().length());
+    }
+    EventType[][] buckets = new EventType[maxLength + 1][0];
+    for (EventType type : values()) {
+      EventType[] bucket = buckets[type.name().length()];
+      EventType[] grown = Arrays.copyOf(bucket, bucket.length + 1);
+      grown[bucket.length] = type;
+      buckets[type.name().length()] = grown;
+    }
+    return buckets;
+  }
+
+  private static EventType[] byCode() {
+    int maxCode = 0;
+    for (EventType type : values()) {
+      maxCode = Math.max(maxCode, type.code);
+    }
+    EventType[] byCode = new EventType[maxCode + 1];
+    for (EventType type : values()) {
+      if (byCode[type.code] != null) {
+        throw new IllegalStateException("Duplicate event type code " + type.code);
+      }
+      byCode[type.code] = type;
+    }
+    return byCode;
+  }
+}
@@ -3,17 +3,73 @@ package com.projectx.analytics.event.model;
 import java.time.Instant;
 import java.util.UUID;
 
+/**
+ * {@code clientEventId} marks an event whose id was sent by the client: when it is written, its
+ * occurredAt is resolved to the one stored for the id when it was first seen, so retries that
+ * resend the id with another occurredAt (or none) still collide on the primary key.
+ */
 public record NormalizedEvent(
     UUID id,
     String eventType,
     Long userId,
     String sessionId,
     Integer productId,
+    Integer brandId,
     Long orderId,
     String pageUrl,
     String source,
     String deviceType,
     Instant occurredAt,
-    String metadataJson
+    String metadataJson,
+    boolean clientEventId
 ) {
+
+  public NormalizedEvent(
+      UUID id,
+      String eventType,
+      Long userId,
+      String sessionId,
+      Integer productId,
+      Integer brandId,
+      Long orderId,
+      String pageUrl,
+      String source,
+      String deviceType,
+      Instant occurredAt,
+      String metadataJson
+  ) {
+    this(
+        id,
+        eventType,
+        userId,
+        sessionId,
+        productId,
+        brandId,
+        orderId,
+        pageUrl,
+        source,
+        deviceType,
+        occurredAt,
+        metadataJson,
+        false
+    );
+  }
+
+  public NormalizedEvent withOccurredAt(Instant value) {
+    return new NormalizedEvent(
+        id,
+        eventType,
+        userId,
+        sessionId,
+        productId,
+        brandId,
+        orderId,
+        pageUrl,
+        source,
+        deviceType,
+        value,
+        metadataJson,
+        false
+    );
+  }
 }
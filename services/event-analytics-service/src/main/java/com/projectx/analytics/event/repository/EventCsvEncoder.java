@@ -0,0 +1,58 @@
+package com.projectx.analytics.event.repository;
+
+import com.projectx.analytics.event.model.NormalizedEvent;
+
+final class EventCsvEncoder {
+
+  private EventCsvEncoder() {
+  }
+
+  // Column order must match EventWriteRepository.COPY_SQL.
+  static void appendRow(StringBuilder out, NormalizedEvent event) {
+    out.append(event.id()).append(',');
+    appendText(out, event.eventType());
+    out.append(',');
+    appendNumber(out, event.userId());
+    out.append(',');
+    appendText(out, event.sessionId());
+    out.append(',');
+    appendNumber(out, event.productId());
+    out.append(',');
+    appendNumber(out, event.brandId());
+    out.append(',');
+    appendNumber(out, event.orderId());
+    out.append(',');
+    appendText(out, event.pageUrl());
+    out.append(',');
+    appendText(out, event.source());
+    out.append(',');
+    appendText(out, event.deviceType());
+    out.append(',');
+    out.append(event.occurredAt());
+    out.append(',');
+    appendText(out, event.metadataJson() == null ? "{}" : event.metadataJson());
+    out.append('\n');
+  }
+
+  private static void appendNumber(StringBuilder out, Number value) {
+    if (value != null) {
+      out.append(value);
+    }
+  }
+
+  // An unquoted empty field is NULL in CSV COPY, so every non-null string is quoted.
+  private static void appendText(StringBuilder out, String value) {
+    if (value == null) {
+      return;
+    }
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        out.append('"');
+      }
+      out.append(c);
+    }
+    out.append('"');
+  }
+}
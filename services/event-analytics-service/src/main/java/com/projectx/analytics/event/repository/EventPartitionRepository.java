@@ -0,0 +1,138 @@
+package com.projectx.analytics.event.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * DDL for the daily partitions of {@code analytics_events_raw}. Partition names are derived from
+ * the day only, so no caller-supplied text reaches the statements.
+ */
+@Repository
+public class EventPartitionRepository {
+
+  private static final String PARTITION_PREFIX = "analytics_events_raw_p";
+  private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+  private static final String SELECT_PARTITIONS_SQL = """
+      SELECT c.relname
+      FROM pg_inherits i
+      JOIN pg_class c ON c.oid = i.inhrelid
+      WHERE i.inhparent = 'analytics_events_raw'::regclass
+      """;
+
+  private static final int EXPORT_FETCH_SIZE = 5_000;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public EventPartitionRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public List<LocalDate> findDailyPartitions() {
+    List<LocalDate> days = new ArrayList<>();
+    for (String name : jdbcTemplate.queryForList(SELECT_PARTITIONS_SQL, String.class)) {
+      if (!name.startsWith(PARTITION_PREFIX)) {
+        continue;
+      }
+      try {
+        days.add(LocalDate.parse(name.substring(PARTITION_PREFIX.length()), SUFFIX));
+      } catch (DateTimeParseException ignored) {
+        // Not one of ours.
+      }
+    }
+    return days;
+  }
+
+  // Rows of this day that already fell into the default partition are moved before attaching,
+  // otherwise ATTACH would fail on the default partition's implicit constraint.
+  @Transactional
+  public void createDailyPartition(LocalDate day) {
+    String name = partitionName(day);
+    String from = day.atStartOfDay(ZoneOffset.UTC).toInstant().toString();
+    String to = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toString();
+
+    jdbcTemplate.execute(
+        "CREATE TABLE IF NOT EXISTS " + name
+            + " (LIKE analytics_events_raw INCLUDING DEFAULTS INCLUDING CONSTRAINTS)"
+    );
+    jdbcTemplate.update(
+        "WITH moved AS ("
+            + " DELETE FROM analytics_events_raw_default"
+            + " WHERE occurred_at >= CAST(? AS timestamptz) AND occurred_at < CAST(? AS timestamptz)"
+            + " RETURNING *"
+            + ") INSERT INTO " + name + " SELECT * FROM moved",
+        from,
+        to
+    );
+    jdbcTemplate.execute(
+        "ALTER TABLE analytics_events_raw ATTACH PARTITION " + name
+            + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')"
+    );
+  }
+
+  // True once the aggregation and viewer profile watermarks have both passed every row of the
+  // day, i.e. hourly metrics and viewer summaries no longer need it. A started co-occurrence
+  // index must have passed the day as well.
+  public boolean isFullyAggregated(LocalDate day) {
+    Boolean aggregated = jdbcTemplate.queryForObject(
+        "SELECT NOT EXISTS ("
+            + " SELECT 1 FROM " + partitionName(day) + " e, analytics_aggregation_state s"
+            + " WHERE s.id = 1"
+            + " AND (s.profiles_ingested_at IS NULL"
+            + " OR e.created_at >= LEAST(s.last_processed_at, s.profiles_ingested_at)"
+            + " OR e.created_at >= s.cooccurrence_ingested_at)"
+            + ")",
+        Boolean.class
+    );
+    return Boolean.TRUE.equals(aggregated);
+  }
+
+  // Streams the day as one JSON object per line; the transaction lets the driver use a cursor
+  // instead of materializing the partition.
+  @Transactional(readOnly = true)
+  public long exportDailyPartition(LocalDate day, Writer out) {
+    long[] rows = {0};
+    jdbcTemplate.query(
+        con -> {
+          PreparedStatement statement = con.prepareStatement(
+              "SELECT row_to_json(e)::text FROM " + partitionName(day) + " e"
+          );
+          statement.setFetchSize(EXPORT_FETCH_SIZE);
+          return statement;
+        },
+        (RowCallbackHandler) rs -> {
+          try {
+            out.write(rs.getString(1));
+            out.write('\n');
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+          rows[0]++;
+        }
+    );
+    return rows[0];
+  }
+
+  @Transactional
+  public void dropDailyPartition(LocalDate day) {
+    String name = partitionName(day);
+    jdbcTemplate.execute("ALTER TABLE analytics_events_raw DETACH PARTITION " + name);
+    jdbcTemplate.execute("DROP TABLE " + name);
+  }
+
+  public static String partitionName(LocalDate day) {
+    return PARTITION_PREFIX + day.format(SUFFIX);
+  }
+}
@@ -0,0 +1,42 @@
+package com.projectx.analytics.event.repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * {@code created_at} is the start time of the writing transaction, not its commit time, so a
+ * row can become visible after newer rows and below a watermark that already passed it. Every
+ * watermark over {@code created_at} is therefore capped at the start of the oldest transaction
+ * still open in the database: any row stamped earlier belongs to a transaction that has ended.
+ */
+@Repository
+public class EventWriteHorizonRepository {
+
+  // Only sessions of the service's own role report xact_start, which covers every event writer.
+  // Any open transaction holds the horizon back, not only writing ones: a transaction gets its
+  // xid at its first write, but its rows carry its start time.
+  private static final String COMMITTED_BEFORE_SQL = """
+      SELECT LEAST(?::timestamptz, MIN(xact_start))
+      FROM pg_stat_activity
+      WHERE datname = current_database()
+        AND backend_type = 'client backend'
+        AND pid <> pg_backend_pid()
+        AND xact_start IS NOT NULL
+      """;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public EventWriteHorizonRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  // Returns upperBound, or the start of the oldest open transaction if that is earlier.
+  public Instant committedBefore(Instant upperBound) {
+    Timestamp horizon = jdbcTemplate.queryForObject(
+        COMMITTED_BEFORE_SQL, Timestamp.class, Timestamp.from(upperBound)
+    );
+    return horizon == null ? upperBound : horizon.toInstant();
+  }
+}
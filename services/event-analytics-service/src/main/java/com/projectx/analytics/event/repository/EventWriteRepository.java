@@ -1,11 +1,29 @@
 package com.projectx.analytics.event.repository;
 
+import com.projectx.analytics.config.AnalyticsProperties;
 import com.projectx.analytics.event.model.NormalizedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -18,6 +36,7 @@ public class EventWriteRepository {
         user_id,
         session_id,
         product_id,
+        brand_id,
         order_id,
         page_url,
         source,
@@ -25,21 +44,187 @@ public class EventWriteRepository {
         occurred_at,
         metadata,
         created_at
-      ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CAST(? AS jsonb), now())
-      ON CONFLICT (id) DO NOTHING
+      ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CAST(? AS jsonb), now())
+      ON CONFLICT (id, occurred_at) DO NOTHING
       """;
 
+  // Each session gets its own staging table, so concurrent writers share no table, no row locks
+  // and no dead tuples. It is created in the writing transaction itself, which keeps it working
+  // behind a transaction-mode pooler, and lists the COPY columns itself, so it depends on no
+  // other table. ON COMMIT DELETE ROWS empties it without leaving dead rows behind.
+  private static final String CREATE_STAGING_SQL = """
+      CREATE TEMP TABLE IF NOT EXISTS analytics_events_copy (
+        id UUID NOT NULL,
+        event_type VARCHAR(64) NOT NULL,
+        user_id BIGINT NULL,
+        session_id VARCHAR(200) NOT NULL,
+        product_id INTEGER NULL,
+        brand_id INTEGER NULL,
+        order_id BIGINT NULL,
+        page_url VARCHAR(1024) NULL,
+        source VARCHAR(120) NULL,
+        device_type VARCHAR(64) NULL,
+        occurred_at TIMESTAMPTZ NOT NULL,
+        metadata JSONB NOT NULL DEFAULT '{}'::jsonb
+      ) ON COMMIT DELETE ROWS
+      """;
+
+  private static final String COPY_SQL = """
+      COPY pg_temp.analytics_events_copy (
+        id,
+        event_type,
+        user_id,
+        session_id,
+        product_id,
+        brand_id,
+        order_id,
+        page_url,
+        source,
+        device_type,
+        occurred_at,
+        metadata
+      ) FROM STDIN WITH (FORMAT csv)
+      """;
+
+  private static final String MERGE_STAGING_SQL = """
+      INSERT INTO analytics_events_raw (
+        id,
+        event_type,
+        user_id,
+        session_id,
+        product_id,
+        brand_id,
+        order_id,
+        page_url,
+        source,
+        device_type,
+        occurred_at,
+        metadata,
+        created_at
+      )
+      SELECT
+        id,
+        event_type,
+        user_id,
+        session_id,
+        product_id,
+        brand_id,
+        order_id,
+        page_url,
+        source,
+        device_type,
+        occurred_at,
+        metadata,
+        now()
+      FROM pg_temp.analytics_events_copy
+      ON CONFLICT (id, occurred_at) DO NOTHING
+      """;
+
+  // Only needed when the caller's transaction writes more than one batch before it commits.
+  private static final String CLEAR_STAGING_SQL = "DELETE FROM pg_temp.analytics_events_copy";
+
+  // The no-op update makes RETURNING yield the stored time for ids that were already claimed.
+  private static final String CLAIM_EVENT_IDS_SQL = """
+      INSERT INTO analytics_event_ids AS t (id, occurred_at)
+      SELECT id, CAST(occurred_at AS timestamptz)
+      FROM unnest(CAST(? AS uuid[]), CAST(? AS text[])) AS claimed (id, occurred_at)
+      ON CONFLICT (id) DO UPDATE SET id = t.id
+      RETURNING id, occurred_at
+      """;
+
+  private static final String DELETE_EVENT_IDS_SQL =
+      "DELETE FROM analytics_event_ids WHERE created_at < ?";
+
+  private static final int COPY_CHUNK_CHARS = 64 * 1024;
+
   private final JdbcTemplate jdbcTemplate;
+  private final AnalyticsProperties properties;
+  private final Timer batchInsertTimer;
+  private final Timer copyTimer;
+  private final Counter duplicates;
 
-  public EventWriteRepository(JdbcTemplate jdbcTemplate) {
+  public EventWriteRepository(
+      JdbcTemplate jdbcTemplate,
+      AnalyticsProperties properties,
+      MeterRegistry meterRegistry
+  ) {
     this.jdbcTemplate = jdbcTemplate;
+    this.properties = properties;
+    this.batchInsertTimer = meterRegistry.timer("events.write", "mode", "batch-insert");
+    this.copyTimer = meterRegistry.timer("events.write", "mode", "copy");
+    this.duplicates = Counter.builder("events.write.duplicates")
+        .description("Events skipped by ON CONFLICT because their id was already stored")
+        .register(meterRegistry);
   }
 
   public int insertEvents(List<NormalizedEvent> events) {
     if (events.isEmpty()) {
       return 0;
     }
+    List<NormalizedEvent> resolved = resolveClaimedTimes(events);
+    int inserted;
+    if (properties.getIngestion().getWriteMode() == AnalyticsProperties.WriteMode.COPY) {
+      inserted = copyTimer.record(() -> copyEvents(resolved));
+    } else {
+      inserted = batchInsertTimer.record(() -> batchInsertEvents(resolved));
+    }
+    duplicates.increment(events.size() - inserted);
+    return inserted;
+  }
 
+  public int deleteEventIdsBefore(Instant cutoff) {
+    return jdbcTemplate.update(DELETE_EVENT_IDS_SQL, Timestamp.from(cutoff));
+  }
+
+  // The raw primary key is (id, occurred_at), so a client eventId takes the occurredAt it was
+  // first seen with (or the receive time if it had none). Its retries then carry the same key and
+  // are dropped by ON CONFLICT however they are stamped, for as long as the claim is retained
+  // (ingestion.event-id-retention-hours). The claim is committed on its own: if the insert then
+  // fails, the retry still resolves to the same time.
+  List<NormalizedEvent> resolveClaimedTimes(List<NormalizedEvent> events) {
+    Map<UUID, Instant> claims = null;
+    for (NormalizedEvent event : events) {
+      if (event.clientEventId()) {
+        if (claims == null) {
+          claims = new LinkedHashMap<>();
+        }
+        claims.putIfAbsent(event.id(), event.occurredAt());
+      }
+    }
+    if (claims == null) {
+      return events;
+    }
+    Map<UUID, Instant> firstSeen = claimEventIds(claims);
+    List<NormalizedEvent> resolved = new ArrayList<>(events.size());
+    for (NormalizedEvent event : events) {
+      resolved.add(event.clientEventId() ? event.withOccurredAt(firstSeen.get(event.id())) : event);
+    }
+    return resolved;
+  }
+
+  private Map<UUID, Instant> claimEventIds(Map<UUID, Instant> claims) {
+    UUID[] ids = claims.keySet().toArray(new UUID[0]);
+    String[] times = new String[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      times[i] = claims.get(ids[i]).toString();
+    }
+    Map<UUID, Instant> firstSeen = new HashMap<>(ids.length * 2);
+    jdbcTemplate.query(
+        connection -> {
+          PreparedStatement ps = connection.prepareStatement(CLAIM_EVENT_IDS_SQL);
+          ps.setArray(1, connection.createArrayOf("uuid", ids));
+          ps.setArray(2, connection.createArrayOf("text", times));
+          return ps;
+        },
+        (RowCallbackHandler) rs -> firstSeen.put(
+            rs.getObject("id", UUID.class),
+            rs.getTimestamp("occurred_at").toInstant()
+        )
+    );
+    return firstSeen;
+  }
+
+  private int batchInsertEvents(List<NormalizedEvent> events) {
     int[] updated = jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
       @Override
       public void setValues(PreparedStatement ps, int i) throws java.sql.SQLException {
@@ -49,12 +234,13 @@ public class EventWriteRepository {
         ps.setObject(3, event.userId());
         ps.setString(4, event.sessionId());
         ps.setObject(5, event.productId());
-        ps.setObject(6, event.orderId());
-        ps.setString(7, event.pageUrl());
-        ps.setString(8, event.source());
-        ps.setString(9, event.deviceType());
-        ps.setTimestamp(10, Timestamp.from(event.occurredAt()));
-        ps.setString(11, event.metadataJson());
+        ps.setObject(6, event.brandId());
+        ps.setObject(7, event.orderId());
+        ps.setString(8, event.pageUrl());
+        ps.setString(9, event.source());
+        ps.setString(10, event.deviceType());
+        ps.setTimestamp(11, Timestamp.from(event.occurredAt()));
+        ps.setString(12, event.metadataJson());
       }
 
       @Override
@@ -71,4 +257,71 @@ public class EventWriteRepository {
     }
     return accepted;
   }
+
+  private int copyEvents(List<NormalizedEvent> events) {
+    Integer accepted = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+      // COPY, merge and cleanup must share one transaction; join the caller's if there is one.
+      boolean ownTransaction = connection.getAutoCommit();
+      if (ownTransaction) {
+        connection.setAutoCommit(false);
+      }
+      try {
+        int inserted = copyAndMerge(connection, events);
+        if (ownTransaction) {
+          connection.commit();
+        }
+        return inserted;
+      } catch (SQLException | RuntimeException ex) {
+        if (ownTransaction) {
+          connection.rollback();
+        }
+        throw ex;
+      } finally {
+        if (ownTransaction) {
+          connection.setAutoCommit(true);
+        }
+      }
+    });
+    return accepted == null ? 0 : accepted;
+  }
+
+  private int copyAndMerge(Connection connection, List<NormalizedEvent> events) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(CREATE_STAGING_SQL);
+      copyToStaging(connection, events);
+      int inserted = statement.executeUpdate(MERGE_STAGING_SQL);
+      statement.executeUpdate(CLEAR_STAGING_SQL);
+      return inserted;
+    }
+  }
+
+  private void copyToStaging(Connection connection, List<NormalizedEvent> events) throws SQLException {
+    CopyIn copyIn = connection.unwrap(PGConnection.class)
+        .getCopyAPI()
+        .copyIn(COPY_SQL);
+    try {
+      StringBuilder chunk = new StringBuilder(Math.min(COPY_CHUNK_CHARS, events.size() * 256));
+      for (NormalizedEvent event : events) {
+        EventCsvEncoder.appendRow(chunk, event);
+        if (chunk.length() >= COPY_CHUNK_CHARS) {
+          writeChunk(copyIn, chunk);
+        }
+      }
+      writeChunk(copyIn, chunk);
+      copyIn.endCopy();
+    } finally {
+      if (copyIn.isActive()) {
+        copyIn.cancelCopy();
+      }
+    }
+  }
+
+  private void writeChunk(CopyIn copyIn, StringBuilder chunk) throws SQLException {
+    if (chunk.isEmpty()) {
+      return;
+    }
+    byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+    copyIn.writeToCopy(bytes, 0, bytes.length);
+    chunk.setLength(0);
+  }
 }
@@ -0,0 +1,79 @@
+package com.projectx.analytics.event.service;
+
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code productId -> brandId} lookup used to stamp {@code brand_id} on events at ingest time.
+ * Held as two sorted int arrays and replaced as a whole on every refresh.
+ */
+@Component
+public class BrandDictionary {
+
+  private static final Logger log = LoggerFactory.getLogger(BrandDictionary.class);
+
+  private static final String SELECT_PRODUCT_BRANDS_SQL = """
+      SELECT id, "brandId" AS brand_id
+      FROM "Product"
+      WHERE "brandId" IS NOT NULL
+      ORDER BY id
+      """;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private volatile Entries entries = new Entries(new int[0], new int[0]);
+
+  public BrandDictionary(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    refreshQuietly();
+  }
+
+  @Scheduled(
+      fixedDelayString = "${analytics.ingestion.brand-refresh-ms:300000}",
+      initialDelayString = "${analytics.ingestion.brand-refresh-ms:300000}"
+  )
+  public void refreshQuietly() {
+    try {
+      refresh();
+    } catch (RuntimeException ex) {
+      log.warn("Brand dictionary refresh failed; keeping the previous copy", ex);
+    }
+  }
+
+  public void refresh() {
+    int[][] columns = {new int[1024], new int[1024]};
+    int[] size = {0};
+    jdbcTemplate.query(SELECT_PRODUCT_BRANDS_SQL, (RowCallbackHandler) rs -> {
+      if (size[0] == columns[0].length) {
+        columns[0] = Arrays.copyOf(columns[0], size[0] * 2);
+        columns[1] = Arrays.copyOf(columns[1], size[0] * 2);
+      }
+      columns[0][size[0]] = rs.getInt("id");
+      columns[1][size[0]] = rs.getInt("brand_id");
+      size[0]++;
+    });
+    entries = new Entries(Arrays.copyOf(columns[0], size[0]), Arrays.copyOf(columns[1], size[0]));
+    log.debug("Brand dictionary refreshed. products={}", size[0]);
+  }
+
+  // 0 when the product is unknown or has no brand.
+  public int brandOf(int productId) {
+    Entries current = entries;
+    int index = Arrays.binarySearch(current.productIds, productId);
+    return index >= 0 ? current.brandIds[index] : 0;
+  }
+
+  private record Entries(int[] productIds, int[] brandIds) {
+  }
+}
@@ -0,0 +1,84 @@
+package com.projectx.analytics.event.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.projectx.analytics.event.dto.CompactEventRequest;
+import com.projectx.analytics.event.dto.EventRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads the CBOR batch body: an array of {@link CompactEventRequest}. Events are read one at a
+ * time, so an oversized batch is rejected without binding all of it, and every event is validated
+ * with the constraints of {@link EventRequest}.
+ */
+@Component
+public class CompactBatchDecoder {
+
+  static final int MAX_EVENTS = 500;
+
+  private final EventIngestionService eventIngestionService;
+  private final Validator validator;
+  private final ObjectReader eventReader;
+
+  public CompactBatchDecoder(EventIngestionService eventIngestionService, Validator validator) {
+    this.eventIngestionService = eventIngestionService;
+    this.validator = validator;
+    this.eventReader = CBORMapper.builder()
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build()
+        .readerFor(CompactEventRequest.class);
+  }
+
+  public List<EventRequest> decode(InputStream body) throws IOException {
+    List<EventRequest> events = new ArrayList<>();
+    try (MappingIterator<CompactEventRequest> iterator = eventReader.readValues(body)) {
+      while (iterator.hasNextValue()) {
+        if (events.size() == MAX_EVENTS) {
+          eventIngestionService.recordRejected("invalid_fields");
+          throw new IllegalArgumentException("Batch exceeds " + MAX_EVENTS + " events");
+        }
+        events.add(validated(toEventRequest(iterator.nextValue())));
+      }
+    } catch (JsonProcessingException ex) {
+      eventIngestionService.recordRejected("malformed_cbor");
+      throw new IllegalArgumentException("Malformed CBOR: " + ex.getOriginalMessage());
+    }
+    if (events.isEmpty()) {
+      eventIngestionService.recordRejected("invalid_fields");
+      throw new IllegalArgumentException("Batch must contain at least one event");
+    }
+    return events;
+  }
+
+  private EventRequest toEventRequest(CompactEventRequest compact) {
+    try {
+      return compact.toEventRequest();
+    } catch (IllegalArgumentException ex) {
+      eventIngestionService.recordRejected("unsupported_event_type");
+      throw ex;
+    }
+  }
+
+  private EventRequest validated(EventRequest request) {
+    Set<ConstraintViolation<EventRequest>> violations = validator.validate(request);
+    if (!violations.isEmpty()) {
+      eventIngestionService.recordRejected("invalid_fields");
+      throw new IllegalArgumentException(violations.stream()
+          .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+          .sorted()
+          .collect(Collectors.joining("; ")));
+    }
+    return request;
+  }
+}
@@ -0,0 +1,232 @@
+package com.projectx.analytics.event.service;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.projectx.analytics.event.repository.EventWriteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+@Component
+public class EventIngestionQueue implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(EventIngestionQueue.class);
+  // Longest a writer waits on the queue before it checks for stop() again.
+  private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private final EventWriteRepository eventWriteRepository;
+  private final AnalyticsProperties.Ingestion settings;
+  private final BlockingQueue<NormalizedEvent> queue;
+  private final Counter droppedEvents;
+  private final List<Thread> writers = new ArrayList<>();
+  private final boolean virtualWriters;
+  // Not synchronized: stop() joins writers and flushes over JDBC, which would pin a virtual thread.
+  private final ReentrantLock lifecycleLock = new ReentrantLock();
+
+  private volatile boolean accepting;
+  private volatile boolean running;
+
+  public EventIngestionQueue(
+      EventWriteRepository eventWriteRepository,
+      AnalyticsProperties properties,
+      Environment environment,
+      MeterRegistry meterRegistry
+  ) {
+    this.eventWriteRepository = eventWriteRepository;
+    this.settings = properties.getIngestion();
+    this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+    this.virtualWriters = Threading.VIRTUAL.isActive(environment);
+    this.droppedEvents = Counter.builder("events.ingest.dropped")
+        .description("Queued events lost after every flush attempt failed")
+        .baseUnit("events")
+        .register(meterRegistry);
+  }
+
+  public boolean isEnabled() {
+    return settings.isAsyncEnabled() && accepting;
+  }
+
+  // Returns the events that did not fit so the caller can write them synchronously.
+  public List<NormalizedEvent> offerAll(List<NormalizedEvent> events) {
+    if (!isEnabled()) {
+      return events;
+    }
+    for (int i = 0; i < events.size(); i++) {
+      if (!queue.offer(events.get(i))) {
+        return events.subList(i, events.size());
+      }
+    }
+    return List.of();
+  }
+
+  public int size() {
+    return queue.size();
+  }
+
+  public long droppedEvents() {
+    return (long) droppedEvents.count();
+  }
+
+  @Override
+  public void start() {
+    lifecycleLock.lock();
+    try {
+      if (running || !settings.isAsyncEnabled()) {
+        return;
+      }
+      running = true;
+      accepting = true;
+      Thread.Builder builder = virtualWriters
+          ? Thread.ofVirtual().name("events-writer-", 0)
+          : Thread.ofPlatform().daemon(true).name("events-writer-", 0);
+      for (int i = 0; i < settings.getWriterThreads(); i++) {
+        writers.add(builder.start(this::drainLoop));
+      }
+      log.info(
+          "Ingestion queue started. capacity={}, batchSize={}, flushIntervalMs={}, writers={}, virtual={}",
+          settings.getQueueCapacity(),
+          settings.getBatchSize(),
+          settings.getFlushIntervalMs(),
+          settings.getWriterThreads(),
+          virtualWriters
+      );
+    } finally {
+      lifecycleLock.unlock();
+    }
+  }
+
+  @Override
+  public void stop() {
+    lifecycleLock.lock();
+    try {
+      if (!running) {
+        return;
+      }
+      accepting = false;
+      running = false;
+
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getShutdownTimeoutMs());
+      for (Thread writer : writers) {
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        try {
+          writer.join(Math.max(1, remainingMs));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      writers.clear();
+
+      // Writers may have timed out mid-drain; whatever is left is flushed from the stopping thread.
+      List<NormalizedEvent> leftover = new ArrayList<>();
+      queue.drainTo(leftover);
+      for (int from = 0; from < leftover.size(); from += settings.getBatchSize()) {
+        int to = Math.min(leftover.size(), from + settings.getBatchSize());
+        flush(leftover.subList(from, to));
+      }
+      log.info("Ingestion queue stopped. flushedOnShutdown={}, dropped={}", leftover.size(), droppedEvents());
+    } finally {
+      lifecycleLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    // Stop only after the web server has stopped accepting requests, so nothing is enqueued late.
+    return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 2048;
+  }
+
+  private void drainLoop() {
+    int batchSize = settings.getBatchSize();
+    long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getFlushIntervalMs());
+    // Every wait is capped, so a writer holding a partial batch sees stop() within STOP_CHECK_NANOS
+    // and flushes it while stop() is still joining, not after the flush interval.
+    while (running || !queue.isEmpty()) {
+      List<NormalizedEvent> batch = new ArrayList<>(batchSize);
+      try {
+        NormalizedEvent first = queue.poll(Math.min(flushIntervalNanos, STOP_CHECK_NANOS), TimeUnit.NANOSECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          long remaining = deadline - System.nanoTime();
+          if (batch.size() >= batchSize || remaining <= 0 || !running) {
+            break;
+          }
+          NormalizedEvent next = queue.poll(Math.min(remaining, STOP_CHECK_NANOS), TimeUnit.NANOSECONDS);
+          if (next != null) {
+            batch.add(next);
+          }
+        }
+
+        flush(batch);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        flush(batch);
+        return;
+      }
+    }
+  }
+
+  // Duplicates are skipped by ON CONFLICT, so a batch that failed after part of it was written is
+  // retried whole. The events were already acknowledged with 202; once the attempts run out they
+  // are lost and counted in events.ingest.dropped.
+  private void flush(List<NormalizedEvent> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    long backoffMs = settings.getFlushRetryBackoffMs();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        eventWriteRepository.insertEvents(batch);
+        return;
+      } catch (RuntimeException ex) {
+        if (attempt >= settings.getFlushAttempts() || !sleep(backoffMs)) {
+          droppedEvents.increment(batch.size());
+          log.error("Dropped ingestion batch. size={}, attempts={}", batch.size(), attempt, ex);
+          return;
+        }
+        log.warn(
+            "Failed to flush ingestion batch, retrying. size={}, attempt={}, backoffMs={}",
+            batch.size(),
+            attempt,
+            backoffMs,
+            ex
+        );
+        backoffMs *= 2;
+      }
+    }
+  }
+
+  // An interrupted writer stops retrying; the interrupt is kept for the drain loop.
+  private static boolean sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -2,77 +2,177 @@ package com.projectx.analytics.event.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.projectx.analytics.common.Bulkhead;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
 import com.projectx.analytics.event.dto.EventRequest;
+import com.projectx.analytics.event.model.EventType;
 import com.projectx.analytics.event.model.NormalizedEvent;
 import com.projectx.analytics.event.repository.EventWriteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import org.springframework.stereotype.Service;
 
 @Service
 public class EventIngestionService {
 
-  private static final Set<String> ALLOWED_EVENT_TYPES = Set.of(
-      "PRODUCT_VIEW",
-      "ADD_TO_CART",
-      "REMOVE_FROM_CART",
-      "START_CHECKOUT",
-      "PURCHASE",
-      "SEARCH",
-      "FAVORITE_ADD",
-      "BRAND_CLICK"
-  );
+  private static final String EMPTY_METADATA_JSON = "{}";
+  private static final int METADATA_BUFFER_CHARS = 256;
+  private static final int METADATA_CHARS_PER_ENTRY = 24;
 
   private final EventWriteRepository eventWriteRepository;
   private final ObjectMapper objectMapper;
+  private final EventIngestionQueue ingestionQueue;
+  private final BrandDictionary brandDictionary;
+  private final long maxFutureSkewSeconds;
+  private final Bulkhead ingestBulkhead;
+  private final MeterRegistry meterRegistry;
+  private final Counter[] normalizedByType = new Counter[EventType.values().length];
+  private final DistributionSummary batchSizes;
 
-  public EventIngestionService(EventWriteRepository eventWriteRepository, ObjectMapper objectMapper) {
+  public EventIngestionService(
+      EventWriteRepository eventWriteRepository,
+      ObjectMapper objectMapper,
+      EventIngestionQueue ingestionQueue,
+      BrandDictionary brandDictionary,
+      AnalyticsProperties properties,
+      Bulkheads bulkheads,
+      MeterRegistry meterRegistry
+  ) {
     this.eventWriteRepository = eventWriteRepository;
     this.objectMapper = objectMapper;
+    this.ingestionQueue = ingestionQueue;
+    this.brandDictionary = brandDictionary;
+    this.maxFutureSkewSeconds = properties.getIngestion().getMaxFutureSkewSeconds();
+    this.ingestBulkhead = bulkheads.ingest();
+    this.meterRegistry = meterRegistry;
+    for (EventType eventType : EventType.values()) {
+      normalizedByType[eventType.ordinal()] =
+          meterRegistry.counter("events.ingest.normalized", "event_type", eventType.name());
+    }
+    this.batchSizes = DistributionSummary.builder("events.ingest.batch.size")
+        .baseUnit("events")
+        .register(meterRegistry);
   }
 
   public int ingestSingle(EventRequest request) {
     NormalizedEvent event = normalize(request);
-    return eventWriteRepository.insertEvents(List.of(event));
+    return write(List.of(event));
   }
 
   public int ingestBatch(List<EventRequest> events) {
-    List<NormalizedEvent> prepared = events.stream().map(this::normalize).toList();
-    return eventWriteRepository.insertEvents(prepared);
+    return write(normalizeAll(events));
+  }
+
+  // Events without occurredAt share one receive time per batch, and all metadata of the batch is
+  // encoded in one reused builder.
+  List<NormalizedEvent> normalizeAll(List<EventRequest> events) {
+    Instant receivedAt = Instant.now();
+    StringBuilder metadataBuffer = new StringBuilder(METADATA_BUFFER_CHARS);
+    List<NormalizedEvent> prepared = new ArrayList<>(events.size());
+    for (EventRequest event : events) {
+      prepared.add(normalize(event, receivedAt, metadataBuffer));
+    }
+    return prepared;
+  }
+
+  private int write(List<NormalizedEvent> events) {
+    batchSizes.record(events.size());
+    if (events.isEmpty() || !ingestionQueue.isEnabled()) {
+      return ingestBulkhead.call(() -> eventWriteRepository.insertEvents(events));
+    }
+
+    // When the queue is full the overflow is written on the request thread (backpressure, no loss).
+    List<NormalizedEvent> overflow = ingestionQueue.offerAll(events);
+    int queued = events.size() - overflow.size();
+    if (overflow.isEmpty()) {
+      return queued;
+    }
+    return queued + ingestBulkhead.call(() -> eventWriteRepository.insertEvents(overflow));
+  }
+
+  public NormalizedEvent normalize(EventRequest request) {
+    return normalize(request, null, null);
   }
 
-  private NormalizedEvent normalize(EventRequest request) {
-    String eventType = request.eventType().trim().toUpperCase(Locale.ROOT);
-    if (!ALLOWED_EVENT_TYPES.contains(eventType)) {
+  // String.trim() returns the same instance when there is nothing to strip, so the common
+  // already-clean values are not copied.
+  private NormalizedEvent normalize(
+      EventRequest request,
+      Instant receivedAt,
+      StringBuilder metadataBuffer
+  ) {
+    EventType eventType = EventType.lookup(request.eventType());
+    if (eventType == null) {
+      recordRejected("unsupported_event_type");
       throw new IllegalArgumentException("Unsupported eventType: " + request.eventType());
     }
 
-    Instant occurredAt = request.occurredAt() == null ? Instant.now() : request.occurredAt();
+    Instant now = receivedAt != null ? receivedAt : Instant.now();
+    if (request.occurredAt() != null && request.occurredAt().isAfter(now.plusSeconds(maxFutureSkewSeconds))) {
+      recordRejected("occurred_at_in_future");
+      throw new IllegalArgumentException("occurredAt is too far in the future: " + request.occurredAt());
+    }
+    Instant occurredAt = request.occurredAt() != null ? request.occurredAt() : now;
     UUID id = request.eventId() == null ? UUID.randomUUID() : request.eventId();
 
-    String metadataJson = toJson(
-        request.metadata() == null ? Map.of() : request.metadata()
-    );
+    Map<String, Object> metadata = request.metadata() == null ? Map.of() : request.metadata();
+    String metadataJson = metadata.isEmpty()
+        ? EMPTY_METADATA_JSON
+        : metadataJson(metadata, metadataBuffer);
 
+    normalizedByType[eventType.ordinal()].increment();
     return new NormalizedEvent(
         id,
-        eventType,
+        eventType.name(),
         request.userId(),
         request.sessionId().trim(),
         request.productId(),
+        resolveBrandId(request.productId(), metadata),
         request.orderId(),
         blankToNull(request.pageUrl()),
         blankToNull(request.source()),
         blankToNull(request.deviceType()),
         occurredAt,
-        metadataJson
+        metadataJson,
+        request.eventId() != null
     );
   }
 
+  // Lines rejected before normalization (malformed JSON, failed validation) use the same counter.
+  public void recordRejected(String reason) {
+    meterRegistry.counter("events.ingest.rejected", "reason", reason).increment();
+  }
+
+  // The product's brand wins; otherwise metadata.brandId when it is a plain non-negative integer.
+  private Integer resolveBrandId(Integer productId, Map<String, Object> metadata) {
+    int brandId = productId == null ? 0 : brandDictionary.brandOf(productId);
+    if (brandId > 0) {
+      return brandId;
+    }
+    Object value = metadata.get("brandId");
+    if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+      long number = ((Number) value).longValue();
+      return number >= 0 && number <= Integer.MAX_VALUE ? (int) number : null;
+    }
+    if (value instanceof String text && !text.isEmpty() && text.length() <= 10) {
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+          return null;
+        }
+      }
+      long number = Long.parseLong(text);
+      return number <= Integer.MAX_VALUE ? (int) number : null;
+    }
+    return null;
+  }
+
   private String blankToNull(String value) {
     if (value == null || value.isBlank()) {
       return null;
@@ -80,10 +180,19 @@ public class EventIngestionService {
     return value.trim();
   }
 
+  private String metadataJson(Map<String, Object> metadata, StringBuilder buffer) {
+    StringBuilder out = buffer == null
+        ? new StringBuilder(metadata.size() * METADATA_CHARS_PER_ENTRY)
+        : buffer;
+    out.setLength(0);
+    return MetadataJsonEncoder.append(out, metadata) ? out.toString() : toJson(metadata);
+  }
+
   private String toJson(Map<String, Object> map) {
     try {
       return objectMapper.writeValueAsString(map);
     } catch (JsonProcessingException ex) {
+      recordRejected("invalid_metadata");
       throw new IllegalArgumentException("metadata must be valid JSON object", ex);
     }
   }
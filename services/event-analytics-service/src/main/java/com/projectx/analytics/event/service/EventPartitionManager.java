@@ -0,0 +1,164 @@
+package com.projectx.analytics.event.service;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.repository.EventPartitionRepository;
+import com.projectx.analytics.event.repository.EventWriteRepository;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps {@code analytics_events_raw} partitioned by UTC day: today and the next
+ * {@code premake-days} always exist, and with a non-zero {@code retention-days} older
+ * partitions are dropped. A partition is only dropped once the hourly metrics and viewer
+ * profiles have consumed it, so those tables become the long-term summary of the raw events; with
+ * {@code archive-enabled} the rows are also written to {@code archive-dir} first. The same check
+ * expires first-seen eventId times after {@code ingestion.event-id-retention-hours}, partitioned
+ * or not.
+ */
+@Service
+public class EventPartitionManager {
+
+  private static final Logger log = LoggerFactory.getLogger(EventPartitionManager.class);
+
+  private final EventPartitionRepository eventPartitionRepository;
+  private final EventWriteRepository eventWriteRepository;
+  private final AnalyticsProperties.Partitions settings;
+  private final AnalyticsProperties.Aggregation aggregation;
+  private final AnalyticsProperties.Ingestion ingestion;
+
+  public EventPartitionManager(
+      EventPartitionRepository eventPartitionRepository,
+      EventWriteRepository eventWriteRepository,
+      AnalyticsProperties properties
+  ) {
+    this.eventPartitionRepository = eventPartitionRepository;
+    this.eventWriteRepository = eventWriteRepository;
+    this.settings = properties.getPartitions();
+    this.aggregation = properties.getAggregation();
+    this.ingestion = properties.getIngestion();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    maintain();
+  }
+
+  @Scheduled(
+      fixedDelayString = "${analytics.partitions.check-interval-ms:3600000}",
+      initialDelayString = "${analytics.partitions.check-interval-ms:3600000}"
+  )
+  public void maintain() {
+    expireEventIds();
+    if (!settings.isEnabled()) {
+      return;
+    }
+    List<LocalDate> existing;
+    try {
+      existing = eventPartitionRepository.findDailyPartitions();
+    } catch (RuntimeException ex) {
+      log.warn("Listing event partitions failed", ex);
+      return;
+    }
+
+    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    LocalDate lastDay = today.plusDays(settings.getPremakeDays());
+    Set<LocalDate> present = new HashSet<>(existing);
+    for (LocalDate day = today; !day.isAfter(lastDay); day = day.plusDays(1)) {
+      if (present.contains(day)) {
+        continue;
+      }
+      try {
+        eventPartitionRepository.createDailyPartition(day);
+        log.info("Created event partition. day={}", day);
+      } catch (RuntimeException ex) {
+        log.warn("Creating event partition failed. day={}", day, ex);
+      }
+    }
+
+    if (settings.getRetentionDays() == 0) {
+      return;
+    }
+    // Recompute mode re-reads the last lookback-hours of raw events, whatever the retention.
+    LocalDate recomputeFloor = LocalDate.ofInstant(
+        Instant.now().minus(aggregation.getLookbackHours(), ChronoUnit.HOURS),
+        ZoneOffset.UTC
+    );
+    LocalDate retentionFloor = today.minusDays(settings.getRetentionDays());
+    LocalDate oldestKept = recomputeFloor.isBefore(retentionFloor) ? recomputeFloor : retentionFloor;
+    for (LocalDate day : existing) {
+      if (!day.isBefore(oldestKept)) {
+        continue;
+      }
+      try {
+        expire(day);
+      } catch (RuntimeException ex) {
+        log.warn("Dropping event partition failed. day={}", day, ex);
+      }
+    }
+  }
+
+  private void expireEventIds() {
+    Instant cutoff = Instant.now().minus(ingestion.getEventIdRetentionHours(), ChronoUnit.HOURS);
+    try {
+      int deleted = eventWriteRepository.deleteEventIdsBefore(cutoff);
+      log.debug("Expired first-seen event ids. deleted={}", deleted);
+    } catch (RuntimeException ex) {
+      log.warn("Expiring first-seen event ids failed", ex);
+    }
+  }
+
+  private void expire(LocalDate day) {
+    if (!eventPartitionRepository.isFullyAggregated(day)) {
+      log.info("Keeping expired event partition until it is aggregated. day={}", day);
+      return;
+    }
+    if (settings.isArchiveEnabled()) {
+      Path archive = archive(day);
+      log.info("Archived event partition. day={}, file={}", day, archive);
+    }
+    eventPartitionRepository.dropDailyPartition(day);
+    log.info("Dropped expired event partition. day={}", day);
+  }
+
+  // Written under a temporary name and renamed, so a file with the final name is always complete.
+  private Path archive(LocalDate day) {
+    String name = EventPartitionRepository.partitionName(day) + ".ndjson.gz";
+    Path dir = Path.of(settings.getArchiveDir());
+    Path target = dir.resolve(name);
+    Path partial = dir.resolve(name + ".tmp");
+    try {
+      Files.createDirectories(dir);
+      try (Writer out = new BufferedWriter(new OutputStreamWriter(
+          new GZIPOutputStream(Files.newOutputStream(partial)),
+          StandardCharsets.UTF_8
+      ))) {
+        eventPartitionRepository.exportDailyPartition(day, out);
+      }
+      Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return target;
+  }
+}
@@ -0,0 +1,179 @@
+package com.projectx.analytics.event.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.projectx.analytics.common.Bulkhead;
+import com.projectx.analytics.common.BulkheadFullException;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.dto.EventRequest;
+import com.projectx.analytics.event.dto.RejectedLineResponse;
+import com.projectx.analytics.event.dto.StreamIngestionResponse;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.projectx.analytics.event.repository.EventWriteRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+@Service
+public class EventStreamIngestionService {
+
+  private static final Logger log = LoggerFactory.getLogger(EventStreamIngestionService.class);
+
+  static final int MAX_LINE_CHARS = 64 * 1_024;
+  static final int MAX_REPORTED_REJECTIONS = 100;
+
+  private final EventIngestionService eventIngestionService;
+  private final EventWriteRepository eventWriteRepository;
+  private final Bulkhead ingestBulkhead;
+  private final ObjectReader eventReader;
+  private final Validator validator;
+  private final AnalyticsProperties properties;
+
+  public EventStreamIngestionService(
+      EventIngestionService eventIngestionService,
+      EventWriteRepository eventWriteRepository,
+      ObjectMapper objectMapper,
+      Validator validator,
+      AnalyticsProperties properties,
+      Bulkheads bulkheads
+  ) {
+    this.eventIngestionService = eventIngestionService;
+    this.eventWriteRepository = eventWriteRepository;
+    this.eventReader = objectMapper.readerFor(EventRequest.class)
+        .with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+    this.validator = validator;
+    this.properties = properties;
+    this.ingestBulkhead = bulkheads.ingest();
+  }
+
+  // Chunks are written directly (not through EventIngestionQueue) so duplicates can be reported.
+  // Earlier chunks stay committed when a write fails, so reading stops there and the response
+  // carries committedLines: the client resends from the next line.
+  public StreamIngestionResponse ingest(InputStream body) throws IOException {
+    int chunkSize = properties.getIngestion().getBatchSize();
+    NdjsonLineReader reader = new NdjsonLineReader(
+        new InputStreamReader(body, StandardCharsets.UTF_8),
+        MAX_LINE_CHARS
+    );
+
+    StringBuilder line = new StringBuilder();
+    List<NormalizedEvent> chunk = new ArrayList<>(chunkSize);
+    List<RejectedLineResponse> rejectedLines = new ArrayList<>();
+    long lineNumber = 0;
+    long committedLines = 0;
+    long accepted = 0;
+    long duplicates = 0;
+    long rejected = 0;
+
+    while (reader.nextLine(line)) {
+      lineNumber++;
+      String text = line.toString();
+      if (text.isBlank()) {
+        continue;
+      }
+
+      try {
+        if (reader.overflowed()) {
+          eventIngestionService.recordRejected("line_too_long");
+          throw new IllegalArgumentException("Line exceeds " + MAX_LINE_CHARS + " characters");
+        }
+        chunk.add(parseLine(text));
+      } catch (IllegalArgumentException ex) {
+        rejected++;
+        if (rejectedLines.size() < MAX_REPORTED_REJECTIONS) {
+          rejectedLines.add(new RejectedLineResponse(lineNumber, ex.getMessage()));
+        }
+        continue;
+      }
+
+      if (chunk.size() >= chunkSize) {
+        int inserted;
+        try {
+          inserted = insert(chunk);
+        } catch (RuntimeException ex) {
+          return stopped(ex, lineNumber, committedLines, accepted, duplicates, rejected, rejectedLines);
+        }
+        accepted += inserted;
+        duplicates += chunk.size() - inserted;
+        committedLines = lineNumber;
+        chunk = new ArrayList<>(chunkSize);
+      }
+    }
+
+    if (!chunk.isEmpty()) {
+      int inserted;
+      try {
+        inserted = insert(chunk);
+      } catch (RuntimeException ex) {
+        return stopped(ex, lineNumber, committedLines, accepted, duplicates, rejected, rejectedLines);
+      }
+      accepted += inserted;
+      duplicates += chunk.size() - inserted;
+    }
+
+    return new StreamIngestionResponse(
+        lineNumber, accepted, duplicates, rejected, rejectedLines, lineNumber, null
+    );
+  }
+
+  private static StreamIngestionResponse stopped(
+      RuntimeException ex,
+      long lineNumber,
+      long committedLines,
+      long accepted,
+      long duplicates,
+      long rejected,
+      List<RejectedLineResponse> rejectedLines
+  ) {
+    log.warn("Stream ingestion stopped at line {}. committedLines={}", lineNumber, committedLines, ex);
+    String error = ex instanceof BulkheadFullException
+        ? ex.getMessage()
+        : "Failed to write events after line " + committedLines;
+    return new StreamIngestionResponse(
+        lineNumber, accepted, duplicates, rejected, rejectedLines, committedLines, error
+    );
+  }
+
+  // The permit is taken per chunk, not per stream, so a slow upload does not hold it while idle.
+  private int insert(List<NormalizedEvent> chunk) {
+    return ingestBulkhead.call(() -> eventWriteRepository.insertEvents(chunk));
+  }
+
+  private NormalizedEvent parseLine(String line) {
+    EventRequest request;
+    try {
+      request = eventReader.readValue(line);
+    } catch (JsonProcessingException ex) {
+      eventIngestionService.recordRejected("malformed_json");
+      throw new IllegalArgumentException("Malformed JSON: " + ex.getOriginalMessage());
+    }
+    if (request == null) {
+      eventIngestionService.recordRejected("malformed_json");
+      throw new IllegalArgumentException("Line must be a JSON object");
+    }
+
+    Set<ConstraintViolation<EventRequest>> violations = validator.validate(request);
+    if (!violations.isEmpty()) {
+      eventIngestionService.recordRejected("invalid_fields");
+      throw new IllegalArgumentException(violations.stream()
+          .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+          .sorted()
+          .collect(Collectors.joining("; ")));
+    }
+
+    return eventIngestionService.normalize(request);
+  }
+}
@@ -0,0 +1,84 @@
+package com.projectx.analytics.event.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+
+/**
+ * Writes flat metadata (string, integer, finite floating point, boolean and null values) as JSON
+ * into a caller-owned builder. Anything else makes it return {@code false} and leave the builder
+ * as it was, and the caller falls back to Jackson. The column is jsonb, so the text only has to be
+ * valid JSON, not identical to Jackson's output.
+ */
+final class MetadataJsonEncoder {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private MetadataJsonEncoder() {
+  }
+
+  static boolean append(StringBuilder out, Map<String, Object> metadata) {
+    int start = out.length();
+    out.append('{');
+    boolean first = true;
+    for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+      if (entry.getKey() == null) {
+        out.setLength(start);
+        return false;
+      }
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+      appendString(out, entry.getKey());
+      out.append(':');
+      if (!appendValue(out, entry.getValue())) {
+        out.setLength(start);
+        return false;
+      }
+    }
+    out.append('}');
+    return true;
+  }
+
+  private static boolean appendValue(StringBuilder out, Object value) {
+    if (value == null) {
+      out.append("null");
+    } else if (value instanceof String text) {
+      appendString(out, text);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+        || value instanceof Byte || value instanceof BigInteger || value instanceof BigDecimal
+        || value instanceof Boolean) {
+      out.append(value);
+    } else if (value instanceof Double number && Double.isFinite(number)) {
+      out.append(number.doubleValue());
+    } else if (value instanceof Float number && Float.isFinite(number)) {
+      out.append(number.floatValue());
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private static void appendString(StringBuilder out, String value) {
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> out.append("\\\"");
+        case '\\' -> out.append("\\\\");
+        case '\n' -> out.append("\\n");
+        case '\r' -> out.append("\\r");
+        case '\t' -> out.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+          } else {
+            out.append(c);
+          }
+        }
+      }
+    }
+    out.append('"');
+  }
+}
@@ -0,0 +1,71 @@
+package com.projectx.analytics.event.service;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// Reads newline-delimited records while holding at most maxLineChars of any one line in memory.
+final class NdjsonLineReader {
+
+  private final Reader reader;
+  private final int maxLineChars;
+  private final char[] buffer = new char[8_192];
+  private int position;
+  private int limit;
+  private boolean overflowed;
+
+  NdjsonLineReader(Reader reader, int maxLineChars) {
+    this.reader = reader;
+    this.maxLineChars = maxLineChars;
+  }
+
+  boolean nextLine(StringBuilder line) throws IOException {
+    line.setLength(0);
+    overflowed = false;
+    boolean consumedAny = false;
+
+    while (true) {
+      if (position >= limit) {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+          limit = 0;
+          return consumedAny;
+        }
+      }
+      consumedAny = true;
+
+      int start = position;
+      while (position < limit && buffer[position] != '\n') {
+        position++;
+      }
+      append(line, start, position);
+
+      if (position < limit) {
+        position++;
+        int last = line.length() - 1;
+        if (last >= 0 && line.charAt(last) == '\r') {
+          line.setLength(last);
+        }
+        return true;
+      }
+    }
+  }
+
+  boolean overflowed() {
+    return overflowed;
+  }
+
+  private void append(StringBuilder line, int start, int end) {
+    if (overflowed) {
+      return;
+    }
+    int room = maxLineChars - line.length();
+    int length = end - start;
+    if (length > room) {
+      line.append(buffer, start, room);
+      overflowed = true;
+      return;
+    }
+    line.append(buffer, start, length);
+  }
+}
@@ -0,0 +1,157 @@
+-- analytics_events_raw becomes range-partitioned by occurred_at, one partition per UTC day.
+-- EventPartitionManager creates upcoming days ahead of time and drops expired ones; rows
+-- outside every daily partition land in the default partition until their day is created.
+--
+-- Runs outside a transaction (see the .conf next to this file): the swap is a short transaction
+-- of its own, after which writers already go to the partitioned table, and existing rows are
+-- copied in committed batches instead of one transaction holding the whole table. Every step is
+-- idempotent, so a failed run can be repaired and resumed.
+DO $$
+BEGIN
+  IF to_regclass('analytics_events_raw_legacy') IS NULL
+    AND NOT EXISTS (
+      SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'analytics_events_raw'::regclass
+    )
+  THEN
+    ALTER TABLE analytics_events_raw RENAME TO analytics_events_raw_legacy;
+    ALTER TABLE analytics_events_raw_legacy
+      RENAME CONSTRAINT analytics_events_raw_pkey TO analytics_events_raw_legacy_pkey;
+
+    CREATE TABLE analytics_events_raw (
+      id UUID NOT NULL,
+      event_type VARCHAR(64) NOT NULL,
+      user_id BIGINT NULL,
+      session_id VARCHAR(200) NOT NULL,
+      product_id INTEGER NULL,
+      order_id BIGINT NULL,
+      page_url VARCHAR(1024) NULL,
+      source VARCHAR(120) NULL,
+      device_type VARCHAR(64) NULL,
+      occurred_at TIMESTAMPTZ NOT NULL,
+      metadata JSONB NOT NULL DEFAULT '{}'::jsonb,
+      created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+      brand_id INTEGER NULL,
+      PRIMARY KEY (id, occurred_at)
+    ) PARTITION BY RANGE (occurred_at);
+
+    CREATE TABLE analytics_events_raw_default PARTITION OF analytics_events_raw DEFAULT;
+  END IF;
+END $$;
+
+-- The legacy secondary indexes would only slow the copy down, and their names are reused below.
+DO $$
+DECLARE
+  index_name TEXT;
+BEGIN
+  IF to_regclass('analytics_events_raw_legacy') IS NULL THEN
+    RETURN;
+  END IF;
+  FOR index_name IN
+    SELECT indexrelid::regclass::text
+    FROM pg_index
+    WHERE indrelid = 'analytics_events_raw_legacy'::regclass AND NOT indisprimary
+  LOOP
+    EXECUTE 'DROP INDEX ' || index_name;
+  END LOOP;
+END $$;
+
+DO $$
+DECLARE
+  first_day DATE := (now() AT TIME ZONE 'UTC')::date;
+  day DATE;
+BEGIN
+  IF to_regclass('analytics_events_raw_legacy') IS NOT NULL THEN
+    SELECT COALESCE(MIN((occurred_at AT TIME ZONE 'UTC')::date), first_day)
+    INTO first_day
+    FROM analytics_events_raw_legacy;
+  END IF;
+
+  day := first_day;
+  WHILE day <= (now() AT TIME ZONE 'UTC')::date + 7 LOOP
+    EXECUTE format(
+      'CREATE TABLE IF NOT EXISTS %I PARTITION OF analytics_events_raw FOR VALUES FROM (%L) TO (%L)',
+      'analytics_events_raw_p' || to_char(day, 'YYYYMMDD'),
+      day::timestamp AT TIME ZONE 'UTC',
+      (day + 1)::timestamp AT TIME ZONE 'UTC'
+    );
+    day := day + 1;
+  END LOOP;
+END $$;
+
+-- Built while the partitions are still empty; the copy below maintains them row by row.
+-- occurred_at serves recomputes and created_at the ingest watermarks. The per-user,
+-- per-session and brand indexes from V2 and V8 keep serving direct lookups on raw events.
+CREATE INDEX IF NOT EXISTS idx_analytics_events_raw_occurred_at
+  ON analytics_events_raw (occurred_at);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_events_raw_created_at
+  ON analytics_events_raw (created_at);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_events_raw_user_occurred
+  ON analytics_events_raw (user_id, occurred_at DESC);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_events_raw_event_session_occurred
+  ON analytics_events_raw (event_type, session_id, occurred_at DESC);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_events_raw_brand_occurred
+  ON analytics_events_raw (brand_id, occurred_at)
+  WHERE brand_id IS NOT NULL;
+
+-- Walks the legacy primary key in batches of 50000 rows, committing after each one. Rows a
+-- resumed run already copied are skipped by ON CONFLICT.
+DO $$
+DECLARE
+  last_id UUID := '00000000-0000-0000-0000-000000000000';
+  batch_end UUID;
+BEGIN
+  IF to_regclass('analytics_events_raw_legacy') IS NULL THEN
+    RETURN;
+  END IF;
+  LOOP
+    SELECT id INTO batch_end
+    FROM (
+      SELECT id FROM analytics_events_raw_legacy WHERE id > last_id ORDER BY id LIMIT 50000
+    ) batch
+    ORDER BY id DESC
+    LIMIT 1;
+    EXIT WHEN NOT FOUND;
+
+    INSERT INTO analytics_events_raw (
+      id,
+      event_type,
+      user_id,
+      session_id,
+      product_id,
+      order_id,
+      page_url,
+      source,
+      device_type,
+      occurred_at,
+      metadata,
+      created_at,
+      brand_id
+    )
+    SELECT
+      id,
+      event_type,
+      user_id,
+      session_id,
+      product_id,
+      order_id,
+      page_url,
+      source,
+      device_type,
+      occurred_at,
+      metadata,
+      created_at,
+      brand_id
+    FROM analytics_events_raw_legacy
+    WHERE id > last_id AND id <= batch_end
+    ON CONFLICT (id, occurred_at) DO NOTHING;
+
+    last_id := batch_end;
+    COMMIT;
+  END LOOP;
+END $$;
+
+DROP TABLE IF EXISTS analytics_events_raw_legacy;
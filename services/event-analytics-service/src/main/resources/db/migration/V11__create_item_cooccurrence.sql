@@ -0,0 +1,32 @@
+-- Strongest signal per product within a session (1 view, 2 cart, 4 purchase). Kept only while the
+-- session may still continue, so new events can be paired with what the session saw before.
+CREATE TABLE IF NOT EXISTS analytics_session_items (
+  session_id VARCHAR(200) NOT NULL,
+  product_id INTEGER NOT NULL,
+  weight SMALLINT NOT NULL,
+  last_seen_at TIMESTAMPTZ NOT NULL,
+  PRIMARY KEY (session_id, product_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_session_items_last_seen
+  ON analytics_session_items (last_seen_at);
+
+-- Sparse symmetric co-occurrence matrix: both (a, b) and (b, a) are stored.
+CREATE TABLE IF NOT EXISTS analytics_item_pairs (
+  product_a INTEGER NOT NULL,
+  product_b INTEGER NOT NULL,
+  weight BIGINT NOT NULL,
+  PRIMARY KEY (product_a, product_b)
+);
+
+-- Top-K neighbors per product, best first.
+CREATE TABLE IF NOT EXISTS analytics_item_neighbors (
+  product_id INTEGER PRIMARY KEY,
+  neighbor_ids INTEGER[] NOT NULL,
+  weights REAL[] NOT NULL,
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- Left empty: the service starts EVENTS_COOCCURRENCE_BACKFILL_DAYS back and catches up in chunks.
+ALTER TABLE analytics_aggregation_state
+  ADD COLUMN IF NOT EXISTS cooccurrence_ingested_at TIMESTAMPTZ NULL;
@@ -0,0 +1,12 @@
+-- The raw primary key is (id, occurred_at), so a retried event only deduplicates when it carries
+-- the same occurredAt. Every client eventId is kept here with the occurredAt it was first seen
+-- with (or its receive time); retries resolve to that occurred_at whatever they carry. Rows older
+-- than analytics.ingestion.event-id-retention-hours are deleted, which bounds the dedup window.
+CREATE TABLE IF NOT EXISTS analytics_event_ids (
+  id UUID PRIMARY KEY,
+  occurred_at TIMESTAMPTZ NOT NULL,
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_event_ids_created_at
+  ON analytics_event_ids (created_at);
@@ -0,0 +1,36 @@
+-- Profile counts are kept per UTC day of the event, so a day that leaves the 180-day window is
+-- deleted with its counts instead of staying folded into a row that is still active.
+-- Raw partitions may already be dropped, so existing rows are not rebuilt: each is assigned to
+-- the day of its last event and leaves the window as a whole once that day does.
+
+ALTER TABLE analytics_viewer_product_profile ADD COLUMN IF NOT EXISTS day DATE;
+
+UPDATE analytics_viewer_product_profile
+SET day = (last_event_at AT TIME ZONE 'UTC')::date
+WHERE day IS NULL;
+
+ALTER TABLE analytics_viewer_product_profile
+  ALTER COLUMN day SET NOT NULL,
+  DROP CONSTRAINT analytics_viewer_product_profile_pkey,
+  ADD PRIMARY KEY (viewer_key, product_id, day);
+
+DROP INDEX IF EXISTS idx_analytics_viewer_product_profile_last_event;
+
+CREATE INDEX IF NOT EXISTS idx_analytics_viewer_product_profile_day
+  ON analytics_viewer_product_profile (day);
+
+ALTER TABLE analytics_viewer_brand_profile ADD COLUMN IF NOT EXISTS day DATE;
+
+UPDATE analytics_viewer_brand_profile
+SET day = (last_event_at AT TIME ZONE 'UTC')::date
+WHERE day IS NULL;
+
+ALTER TABLE analytics_viewer_brand_profile
+  ALTER COLUMN day SET NOT NULL,
+  DROP CONSTRAINT analytics_viewer_brand_profile_pkey,
+  ADD PRIMARY KEY (viewer_key, brand_id, day);
+
+DROP INDEX IF EXISTS idx_analytics_viewer_brand_profile_last_event;
+
+CREATE INDEX IF NOT EXISTS idx_analytics_viewer_brand_profile_day
+  ON analytics_viewer_brand_profile (day);
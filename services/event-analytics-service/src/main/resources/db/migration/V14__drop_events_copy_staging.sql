@@ -0,0 +1,3 @@
+-- COPY stages into a temp table of the writing session, which declares its own columns, so the
+-- shared staging table from V3 is no longer read or written.
+DROP TABLE IF EXISTS analytics_events_raw_staging;
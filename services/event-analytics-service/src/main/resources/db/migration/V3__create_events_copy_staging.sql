@@ -0,0 +1,13 @@
+CREATE UNLOGGED TABLE IF NOT EXISTS analytics_events_raw_staging (
+  id UUID NOT NULL,
+  event_type VARCHAR(64) NOT NULL,
+  user_id BIGINT NULL,
+  session_id VARCHAR(200) NOT NULL,
+  product_id INTEGER NULL,
+  order_id BIGINT NULL,
+  page_url VARCHAR(1024) NULL,
+  source VARCHAR(120) NULL,
+  device_type VARCHAR(64) NULL,
+  occurred_at TIMESTAMPTZ NOT NULL,
+  metadata JSONB NOT NULL DEFAULT '{}'::jsonb
+);
@@ -0,0 +1,9 @@
+ALTER TABLE analytics_event_metrics_hourly
+  ADD COLUMN IF NOT EXISTS sessions_sketch BYTEA NULL,
+  ADD COLUMN IF NOT EXISTS users_sketch BYTEA NULL;
+
+ALTER TABLE analytics_aggregation_state
+  ADD COLUMN IF NOT EXISTS last_ingested_at TIMESTAMPTZ NULL;
+
+CREATE INDEX IF NOT EXISTS idx_analytics_events_raw_created_at
+  ON analytics_events_raw (created_at);
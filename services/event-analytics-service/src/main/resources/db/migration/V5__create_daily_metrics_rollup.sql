@@ -0,0 +1,39 @@
+CREATE TABLE IF NOT EXISTS analytics_event_metrics_daily (
+  day_start TIMESTAMPTZ NOT NULL,
+  event_type VARCHAR(64) NOT NULL,
+  product_key INTEGER NOT NULL DEFAULT 0,
+  total_events BIGINT NOT NULL,
+  unique_sessions BIGINT NOT NULL,
+  unique_users BIGINT NOT NULL,
+  sessions_sketch BYTEA NULL,
+  users_sketch BYTEA NULL,
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  PRIMARY KEY (day_start, event_type, product_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_event_metrics_daily_event_time
+  ON analytics_event_metrics_daily (event_type, day_start);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_event_metrics_daily_product_time
+  ON analytics_event_metrics_daily (product_key, day_start);
+
+-- Sketches cannot be unioned in SQL, so backfilled days keep lower-bound uniques until the
+-- aggregation job rolls them up again.
+INSERT INTO analytics_event_metrics_daily (
+  day_start,
+  event_type,
+  product_key,
+  total_events,
+  unique_sessions,
+  unique_users
+)
+SELECT
+  date_trunc('day', bucket_start, 'UTC'),
+  event_type,
+  product_key,
+  SUM(total_events),
+  MAX(unique_sessions),
+  MAX(unique_users)
+FROM analytics_event_metrics_hourly
+GROUP BY 1, 2, 3
+ON CONFLICT (day_start, event_type, product_key) DO NOTHING;
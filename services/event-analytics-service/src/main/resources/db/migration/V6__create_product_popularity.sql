@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS analytics_product_popularity (
+  product_id INTEGER PRIMARY KEY,
+  score DOUBLE PRECISION NOT NULL,
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
@@ -0,0 +1,94 @@
+CREATE TABLE IF NOT EXISTS analytics_viewer_product_profile (
+  viewer_key VARCHAR(210) NOT NULL,
+  product_id INTEGER NOT NULL,
+  purchases BIGINT NOT NULL DEFAULT 0,
+  add_to_cart BIGINT NOT NULL DEFAULT 0,
+  favorites BIGINT NOT NULL DEFAULT 0,
+  views BIGINT NOT NULL DEFAULT 0,
+  searches BIGINT NOT NULL DEFAULT 0,
+  last_event_at TIMESTAMPTZ NOT NULL,
+  PRIMARY KEY (viewer_key, product_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_viewer_product_profile_last_event
+  ON analytics_viewer_product_profile (last_event_at);
+
+CREATE TABLE IF NOT EXISTS analytics_viewer_brand_profile (
+  viewer_key VARCHAR(210) NOT NULL,
+  brand_id INTEGER NOT NULL,
+  purchases BIGINT NOT NULL DEFAULT 0,
+  add_to_cart BIGINT NOT NULL DEFAULT 0,
+  favorites BIGINT NOT NULL DEFAULT 0,
+  views BIGINT NOT NULL DEFAULT 0,
+  brand_clicks BIGINT NOT NULL DEFAULT 0,
+  searches BIGINT NOT NULL DEFAULT 0,
+  last_event_at TIMESTAMPTZ NOT NULL,
+  PRIMARY KEY (viewer_key, brand_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_analytics_viewer_brand_profile_last_event
+  ON analytics_viewer_brand_profile (last_event_at);
+
+ALTER TABLE analytics_aggregation_state
+  ADD COLUMN IF NOT EXISTS profiles_ingested_at TIMESTAMPTZ NULL;
+
+UPDATE analytics_aggregation_state
+SET profiles_ingested_at = now()
+WHERE id = 1 AND profiles_ingested_at IS NULL;
+
+-- Backfill the last 180 days; later events are applied by the aggregation job past the watermark.
+WITH viewer_events AS (
+  SELECT
+    k.viewer_key,
+    e.event_type,
+    e.product_id,
+    COALESCE(
+      p."brandId",
+      CASE
+        WHEN (e.metadata->>'brandId') ~ '^[0-9]+$'
+        THEN (e.metadata->>'brandId')::int
+      END
+    ) AS brand_id,
+    e.occurred_at
+  FROM analytics_events_raw e
+  LEFT JOIN "Product" p ON p.id = e.product_id
+  CROSS JOIN LATERAL (VALUES ('u:' || e.user_id), ('s:' || e.session_id)) AS k(viewer_key)
+  WHERE e.occurred_at >= now() - interval '180 days'
+    AND e.created_at < (SELECT profiles_ingested_at FROM analytics_aggregation_state WHERE id = 1)
+    AND k.viewer_key IS NOT NULL
+),
+products AS (
+  INSERT INTO analytics_viewer_product_profile (
+    viewer_key, product_id, purchases, add_to_cart, favorites, views, searches, last_event_at
+  )
+  SELECT
+    viewer_key,
+    product_id,
+    COUNT(*) FILTER (WHERE event_type = 'PURCHASE'),
+    COUNT(*) FILTER (WHERE event_type = 'ADD_TO_CART'),
+    COUNT(*) FILTER (WHERE event_type = 'FAVORITE_ADD'),
+    COUNT(*) FILTER (WHERE event_type = 'PRODUCT_VIEW'),
+    COUNT(*) FILTER (WHERE event_type = 'SEARCH'),
+    MAX(occurred_at)
+  FROM viewer_events
+  WHERE product_id IS NOT NULL
+  GROUP BY viewer_key, product_id
+  ON CONFLICT (viewer_key, product_id) DO NOTHING
+)
+INSERT INTO analytics_viewer_brand_profile (
+  viewer_key, brand_id, purchases, add_to_cart, favorites, views, brand_clicks, searches, last_event_at
+)
+SELECT
+  viewer_key,
+  brand_id,
+  COUNT(*) FILTER (WHERE event_type = 'PURCHASE'),
+  COUNT(*) FILTER (WHERE event_type = 'ADD_TO_CART'),
+  COUNT(*) FILTER (WHERE event_type = 'FAVORITE_ADD'),
+  COUNT(*) FILTER (WHERE event_type = 'PRODUCT_VIEW'),
+  COUNT(*) FILTER (WHERE event_type = 'BRAND_CLICK'),
+  COUNT(*) FILTER (WHERE event_type = 'SEARCH'),
+  MAX(occurred_at)
+FROM viewer_events
+WHERE brand_id IS NOT NULL
+GROUP BY viewer_key, brand_id
+ON CONFLICT (viewer_key, brand_id) DO NOTHING;
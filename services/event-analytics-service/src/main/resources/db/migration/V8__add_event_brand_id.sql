@@ -0,0 +1,23 @@
+ALTER TABLE analytics_events_raw
+  ADD COLUMN IF NOT EXISTS brand_id INTEGER NULL;
+
+ALTER TABLE analytics_events_raw_staging
+  ADD COLUMN IF NOT EXISTS brand_id INTEGER NULL;
+
+-- New events get brand_id from the service; older ones are resolved once, the way queries used to.
+UPDATE analytics_events_raw e
+SET brand_id = COALESCE(
+  (SELECT p."brandId" FROM "Product" p WHERE p.id = e.product_id),
+  CASE
+    WHEN (e.metadata->>'brandId') ~ '^[0-9]+$'
+    THEN (e.metadata->>'brandId')::int
+  END
+)
+WHERE e.brand_id IS NULL
+  AND (e.product_id IS NOT NULL OR e.metadata ? 'brandId');
+
+DROP INDEX IF EXISTS idx_analytics_events_raw_metadata_brand_id;
+
+CREATE INDEX IF NOT EXISTS idx_analytics_events_raw_brand_occurred
+  ON analytics_events_raw (brand_id, occurred_at)
+  WHERE brand_id IS NOT NULL;
@@ -0,0 +1,24 @@
+CREATE TABLE IF NOT EXISTS analytics_brand_metrics_hourly (
+  bucket_start TIMESTAMPTZ NOT NULL,
+  brand_id INTEGER NOT NULL,
+  views BIGINT NOT NULL DEFAULT 0,
+  add_to_cart BIGINT NOT NULL DEFAULT 0,
+  purchases BIGINT NOT NULL DEFAULT 0,
+  brand_clicks BIGINT NOT NULL DEFAULT 0,
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  PRIMARY KEY (bucket_start, brand_id)
+);
+
+INSERT INTO analytics_brand_metrics_hourly (bucket_start, brand_id, views, add_to_cart, purchases, brand_clicks)
+SELECT
+  date_trunc('hour', occurred_at, 'UTC'),
+  brand_id,
+  COUNT(*) FILTER (WHERE event_type = 'PRODUCT_VIEW'),
+  COUNT(*) FILTER (WHERE event_type = 'ADD_TO_CART'),
+  COUNT(*) FILTER (WHERE event_type = 'PURCHASE'),
+  COUNT(*) FILTER (WHERE event_type = 'BRAND_CLICK')
+FROM analytics_events_raw
+WHERE brand_id IS NOT NULL
+  AND event_type IN ('PRODUCT_VIEW', 'ADD_TO_CART', 'PURCHASE', 'BRAND_CLICK')
+GROUP BY 1, 2
+ON CONFLICT (bucket_start, brand_id) DO NOTHING;
@@ -2,32 +2,214 @@ package com.projectx.analytics.aggregation.service;
 
 import com.projectx.analytics.aggregation.model.AggregatedBucket;
 import com.projectx.analytics.aggregation.repository.AggregationRepository;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.analytics.cache.QueryResultCache;
+import com.projectx.analytics.analytics.cache.RecommendationCache;
+import com.projectx.analytics.analytics.cube.MetricsCube;
+import com.projectx.analytics.analytics.repository.ViewerProfileRepository;
+import com.projectx.analytics.analytics.service.ItemCooccurrenceService;
+import com.projectx.analytics.analytics.service.ProductPopularityService;
 import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.repository.EventWriteHorizonRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @DisplayName("EventAggregationService — Unit Tests")
 class EventAggregationServiceTest {
 
     private AggregationRepository repository;
+    private EventWriteHorizonRepository writeHorizon;
     private AnalyticsProperties properties;
+    private MetricsCube metricsCube;
+    private QueryResultCache resultCache;
+    private ProductPopularityService productPopularityService;
+    private ItemCooccurrenceService itemCooccurrenceService;
+    private ViewerProfileRepository viewerProfileRepository;
+    private RecommendationCache recommendationCache;
+    private Connection connection;
+    private TransactionTemplate transactions;
     private EventAggregationService service;
 
     @BeforeEach
-    void setUp() {
+    void setUp() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
         repository = mock(AggregationRepository.class);
+        writeHorizon = mock(EventWriteHorizonRepository.class);
+        when(writeHorizon.committedBefore(any())).thenAnswer(inv -> inv.getArgument(0));
         properties = new AnalyticsProperties();
         properties.getAggregation().setLagSeconds(0);
         properties.getAggregation().setLookbackHours(6);
-        service = new EventAggregationService(repository, properties);
+        metricsCube = mock(MetricsCube.class);
+        resultCache = mock(QueryResultCache.class);
+        productPopularityService = mock(ProductPopularityService.class);
+        itemCooccurrenceService = mock(ItemCooccurrenceService.class);
+        viewerProfileRepository = mock(ViewerProfileRepository.class);
+        recommendationCache = mock(RecommendationCache.class);
+        service = new EventAggregationService(
+                repository,
+                writeHorizon,
+                properties,
+                metricsCube,
+                resultCache,
+                productPopularityService,
+                itemCooccurrenceService,
+                viewerProfileRepository,
+                recommendationCache,
+                transactions,
+                new SimpleMeterRegistry()
+        );
+    }
+
+    @Test
+    @DisplayName("should apply events ingested since the profile watermark to viewer profiles")
+    void updatesViewerProfiles() {
+        Instant watermark = Instant.now().minus(5, ChronoUnit.MINUTES);
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(Instant.now());
+        when(viewerProfileRepository.getIngestedAt()).thenReturn(watermark);
+
+        service.runAggregationOnce();
+
+        ArgumentCaptor<Instant> upperBound = ArgumentCaptor.forClass(Instant.class);
+        verify(viewerProfileRepository).applyIngestedRange(eq(watermark), upperBound.capture(), any());
+        verify(viewerProfileRepository).deleteStale(upperBound.getValue().minus(180, ChronoUnit.DAYS));
+        verify(viewerProfileRepository).updateIngestedAt(upperBound.getValue());
+    }
+
+    @Test
+    @DisplayName("should drop cached recommendations of the changed viewers only after the run commits")
+    void invalidatesChangedViewersAfterCommit() throws SQLException {
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(Instant.now());
+        when(viewerProfileRepository.getIngestedAt()).thenReturn(Instant.now().minus(5, ChronoUnit.MINUTES));
+        when(viewerProfileRepository.applyIngestedRange(any(), any(), any())).thenReturn(List.of("u:1", "s:a"));
+        doAnswer(inv -> {
+            verify(connection).commit();
+            return null;
+        }).when(recommendationCache).invalidateViewers(any());
+
+        service.runAggregationOnce();
+
+        verify(recommendationCache).invalidateViewers(List.of("u:1", "s:a"));
+    }
+
+    @Test
+    @DisplayName("should keep cached recommendations when the profile update rolls back")
+    void keepsRecommendationsOnRollback() {
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(Instant.now());
+        when(viewerProfileRepository.getIngestedAt()).thenReturn(Instant.now().minus(5, ChronoUnit.MINUTES));
+        when(viewerProfileRepository.applyIngestedRange(any(), any(), any())).thenReturn(List.of("u:1"));
+        doThrow(new IllegalStateException("connection lost"))
+                .when(viewerProfileRepository).updateIngestedAt(any());
+
+        assertThatThrownBy(service::runAggregationOnce).isInstanceOf(IllegalStateException.class);
+
+        verify(recommendationCache, never()).invalidateViewers(any());
+    }
+
+    @Test
+    @DisplayName("should only set the profile watermark when it is missing")
+    void initializesProfileWatermark() {
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(Instant.now());
+
+        service.runAggregationOnce();
+
+        verify(viewerProfileRepository, never()).applyIngestedRange(any(), any(), any());
+        verify(viewerProfileRepository).updateIngestedAt(any());
+    }
+
+    @Test
+    @DisplayName("should refresh product popularity and the co-occurrence index after a scheduled run")
+    void scheduledRunRefreshesPopularity() {
+        Instant now = Instant.now();
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(now);
+
+        service.runScheduledAggregation();
+
+        verify(productPopularityService).refreshIfDue();
+        verify(itemCooccurrenceService).refreshIfDue();
+    }
+
+    @Test
+    @DisplayName("should roll back metric deltas and watermarks together when a scheduled run fails")
+    void scheduledRunFailureRollsBack() throws SQLException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service = new EventAggregationService(
+                repository,
+                writeHorizon,
+                properties,
+                metricsCube,
+                resultCache,
+                productPopularityService,
+                itemCooccurrenceService,
+                viewerProfileRepository,
+                recommendationCache,
+                transactions,
+                meterRegistry
+        );
+        properties.getAggregation().setMode(AnalyticsProperties.AggregationMode.INCREMENTAL);
+        Instant bucket = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        AggregatedBucket delta = new AggregatedBucket(bucket, "PRODUCT_VIEW", 42, 3L, 2L, 1L);
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(Instant.now().minus(2, ChronoUnit.HOURS));
+        when(repository.getLastIngestedAt()).thenReturn(Instant.now().minus(1, ChronoUnit.MINUTES));
+        when(repository.aggregateIngestedRange(any(), any())).thenReturn(List.of(delta));
+        List<Boolean> writesInTransaction = new ArrayList<>();
+        doAnswer(inv -> writesInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive()))
+                .when(repository).upsertMetrics(any());
+        doAnswer(inv -> writesInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive()))
+                .when(repository).updateLastProcessedAt(any());
+        doThrow(new IllegalStateException("connection lost"))
+                .when(repository).updateLastIngestedAt(any());
+
+        assertThatThrownBy(service::runScheduledAggregation).isInstanceOf(IllegalStateException.class);
+
+        // The counts and the processed watermark were written on the connection that is rolled back.
+        assertThat(writesInTransaction).containsExactly(true, true);
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(metricsCube, never()).upsert(any());
+        verify(resultCache, never()).invalidate(any(), any());
+        assertThat(meterRegistry.get("events.aggregation.buckets").counter().count()).isZero();
+        // The lag still measures from the committed watermark, two hours back.
+        assertThat(meterRegistry.get("events.aggregation.lag").gauge().value()).isGreaterThan(7_000.0);
+    }
+
+    @Test
+    @DisplayName("should publish cube rows only after the run commits")
+    void publishesAfterCommit() throws SQLException {
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(Instant.now().minus(2, ChronoUnit.HOURS));
+        when(repository.aggregateRange(any(), any())).thenReturn(List.of());
+        doAnswer(inv -> {
+            verify(connection).commit();
+            return null;
+        }).when(metricsCube).replaceHours(any(), any(), any());
+
+        service.runScheduledAggregation();
+
+        verify(metricsCube).replaceHours(any(), any(), any());
     }
 
     @Test
@@ -54,7 +236,44 @@ class EventAggregationServiceTest {
         verify(repository).aggregateRange(any(), any());
         verify(repository).deleteMetricsRange(any(), any());
         verify(repository).upsertMetrics(buckets);
-        verify(repository).updateLastProcessedAt(any());
+        verify(repository).replaceBrandMetricsRange(any(), any());
+        ArgumentCaptor<Instant> upperBound = ArgumentCaptor.forClass(Instant.class);
+        verify(repository).updateLastProcessedAt(upperBound.capture());
+        verify(metricsCube).replaceHours(any(), any(), eq(buckets));
+        verify(resultCache).invalidate(lastProcessed.truncatedTo(ChronoUnit.HOURS), upperBound.getValue());
+    }
+
+    @Test
+    @DisplayName("should publish buckets written, run duration and the watermark lag")
+    void recordsMetrics() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service = new EventAggregationService(
+                repository,
+                writeHorizon,
+                properties,
+                metricsCube,
+                resultCache,
+                productPopularityService,
+                itemCooccurrenceService,
+                viewerProfileRepository,
+                recommendationCache,
+                transactions,
+                meterRegistry
+        );
+        Instant lastProcessed = Instant.now().minus(2, ChronoUnit.HOURS);
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(lastProcessed);
+        when(repository.aggregateRange(any(), any())).thenReturn(List.of(
+                new AggregatedBucket(lastProcessed.truncatedTo(ChronoUnit.HOURS), "PRODUCT_VIEW", 42, 3L, 2L, 1L)
+        ));
+
+        assertThat(meterRegistry.get("events.aggregation.lag").gauge().value()).isNaN();
+
+        service.runScheduledAggregation();
+
+        assertThat(meterRegistry.get("events.aggregation.buckets").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("events.aggregation.run").tag("outcome", "success").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("events.aggregation.lag").gauge().value()).isBetween(0.0, 5.0);
     }
 
     @Test
@@ -100,4 +319,243 @@ class EventAggregationServiceTest {
         verify(repository).upsertMetrics(List.of());
         verify(repository).updateLastProcessedAt(any());
     }
+
+    @Test
+    @DisplayName("should rebuild the daily rollup for every day in the recomputed range")
+    void rollupRecomputedDays() {
+        Instant lastProcessed = Instant.now().minus(30, ChronoUnit.HOURS);
+        when(repository.lockAndGetLastProcessedAt()).thenReturn(lastProcessed);
+        when(repository.aggregateRange(any(), any())).thenReturn(List.of());
+        properties.getAggregation().setLookbackHours(48);
+        List<AggregatedBucket> dayRows = List.of(new AggregatedBucket(
+                Instant.now().truncatedTo(ChronoUnit.DAYS), "PRODUCT_VIEW", 42, 10L, 5L, 3L
+        ));
+        when(repository.rollupDay(any())).thenReturn(dayRows);
+
+        service.runAggregationOnce();
+
+        Instant firstDay = lastProcessed.truncatedTo(ChronoUnit.DAYS);
+        verify(repository).rollupDay(firstDay);
+        verify(repository).replaceDailyMetrics(firstDay, dayRows);
+        verify(repository).rollupDay(Instant.now().truncatedTo(ChronoUnit.DAYS));
+    }
+
+    @Nested
+    @DisplayName("incremental mode")
+    class Incremental {
+
+        private final Instant bucket = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+
+        @BeforeEach
+        void enableIncremental() {
+            properties.getAggregation().setMode(AnalyticsProperties.AggregationMode.INCREMENTAL);
+            when(repository.lockAndGetLastProcessedAt()).thenReturn(Instant.now().minus(2, ChronoUnit.HOURS));
+        }
+
+        @Test
+        @DisplayName("should bootstrap with a full recompute when no ingest watermark exists")
+        void bootstrapWithoutWatermark() {
+            when(repository.getLastIngestedAt()).thenReturn(null);
+            when(repository.aggregateRange(any(), any())).thenReturn(List.of());
+
+            service.runAggregationOnce();
+
+            verify(repository).aggregateRange(any(), any());
+            verify(repository).deleteMetricsRange(any(), any());
+            verify(repository).updateLastIngestedAt(any());
+            verify(repository, never()).aggregateIngestedRange(any(), any());
+        }
+
+        @Test
+        @DisplayName("should insert delta buckets as-is when no row exists yet")
+        void insertNewBuckets() {
+            Instant watermark = Instant.now().minus(1, ChronoUnit.MINUTES);
+            when(repository.getLastIngestedAt()).thenReturn(watermark);
+            AggregatedBucket delta = bucket("PRODUCT_VIEW", 5, sketch(1, 2, 3), sketch(10));
+            when(repository.aggregateIngestedRange(eq(watermark), any())).thenReturn(List.of(delta));
+            when(repository.findMetrics(any())).thenReturn(List.of());
+
+            service.runAggregationOnce();
+
+            verify(repository, never()).deleteMetricsRange(any(), any());
+            verify(repository, never()).aggregateRange(any(), any());
+            verify(repository).upsertMetrics(List.of(delta));
+            verify(repository).addBrandMetricsIngestedRange(eq(watermark), any());
+            verify(repository, never()).replaceBrandMetricsRange(any(), any());
+            verify(repository).upsertDailyMetrics(List.of(new AggregatedBucket(
+                    bucket.truncatedTo(ChronoUnit.DAYS), "PRODUCT_VIEW", 42, 5L, 3L, 1L,
+                    delta.sessionsSketch(), delta.usersSketch()
+            )));
+            verify(repository, never()).rollupDay(any());
+            verify(metricsCube).upsert(List.of(delta));
+            verify(metricsCube, never()).replaceHours(any(), any(), any());
+            verify(resultCache).invalidate(bucket, bucket);
+            verify(repository).updateLastProcessedAt(any());
+            verify(repository).updateLastIngestedAt(any());
+        }
+
+        @Test
+        @DisplayName("should stop the ingest watermark at the oldest open transaction")
+        void stopAtOpenTransaction() {
+            Instant watermark = Instant.now().minus(10, ChronoUnit.MINUTES);
+            Instant openSince = Instant.now().minus(4, ChronoUnit.MINUTES).plusMillis(250);
+            when(writeHorizon.committedBefore(any())).thenReturn(openSince);
+            when(repository.getLastIngestedAt()).thenReturn(watermark);
+            when(viewerProfileRepository.getIngestedAt()).thenReturn(watermark);
+
+            service.runAggregationOnce();
+
+            Instant horizon = openSince.truncatedTo(ChronoUnit.SECONDS);
+            verify(repository).aggregateIngestedRange(watermark, horizon);
+            verify(repository).updateLastIngestedAt(horizon);
+            verify(viewerProfileRepository).applyIngestedRange(eq(watermark), eq(horizon), any());
+            verify(viewerProfileRepository).updateIngestedAt(horizon);
+        }
+
+        @Test
+        @DisplayName("should add totals and union sketches with the stored row")
+        void mergeWithExistingRow() {
+            when(repository.getLastIngestedAt()).thenReturn(Instant.now().minus(1, ChronoUnit.MINUTES));
+            AggregatedBucket stored = bucket("PRODUCT_VIEW", 7, sketch(1, 2, 3), sketch(10, 11));
+            AggregatedBucket delta = bucket("PRODUCT_VIEW", 4, sketch(3, 4), sketch(11));
+            when(repository.aggregateIngestedRange(any(), any())).thenReturn(List.of(delta));
+            when(repository.findMetrics(List.of(delta.key()))).thenReturn(List.of(stored));
+
+            service.runAggregationOnce();
+
+            AggregatedBucket merged = captureSingleUpsert();
+            assertThat(merged.totalEvents()).isEqualTo(11);
+            assertThat(merged.uniqueSessions()).isEqualTo(4);
+            assertThat(merged.uniqueUsers()).isEqualTo(2);
+            assertThat(merged.sessionsSketch().estimate()).isEqualTo(4);
+        }
+
+        @Test
+        @DisplayName("should recompute an hour inside the lookback window whose row has no sketches")
+        void rebuildLegacyHourlyRow() {
+            Instant watermark = Instant.now().minus(1, ChronoUnit.MINUTES);
+            when(repository.getLastIngestedAt()).thenReturn(watermark);
+            AggregatedBucket stored = new AggregatedBucket(bucket, "PRODUCT_VIEW", 42, 50L, 9L, 6L);
+            AggregatedBucket delta = bucket("PRODUCT_VIEW", 2, sketch(1), sketch(10));
+            AggregatedBucket other = new AggregatedBucket(
+                    bucket, "SEARCH", 0, 3L, 1L, 0L, sketch(1), new HyperLogLog()
+            );
+            when(repository.aggregateIngestedRange(any(), any())).thenReturn(List.of(delta, other));
+            when(repository.findMetrics(any())).thenReturn(List.of(stored));
+            AggregatedBucket rebuilt = bucket("PRODUCT_VIEW", 52, sketch(1, 2, 3), sketch(10, 11));
+            when(repository.aggregateRangeIngestedBefore(eq(bucket), eq(bucket.plus(1, ChronoUnit.HOURS)), any()))
+                    .thenReturn(List.of(rebuilt, other));
+
+            service.runAggregationOnce();
+
+            ArgumentCaptor<Instant> upperBound = ArgumentCaptor.forClass(Instant.class);
+            verify(repository).aggregateRangeIngestedBefore(any(), any(), upperBound.capture());
+            verify(repository).updateLastIngestedAt(upperBound.getValue());
+            verify(repository).upsertMetrics(List.of(rebuilt, other));
+            verify(metricsCube).upsert(List.of(rebuilt, other));
+        }
+
+        @Test
+        @DisplayName("should keep a lower bound for rows without sketches older than the lookback window")
+        void legacyRowWithoutSketch() {
+            Instant old = Instant.now().minus(10, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+            when(repository.getLastIngestedAt()).thenReturn(Instant.now().minus(1, ChronoUnit.MINUTES));
+            AggregatedBucket stored = new AggregatedBucket(old, "PRODUCT_VIEW", 42, 50L, 9L, 6L);
+            AggregatedBucket delta = new AggregatedBucket(old, "PRODUCT_VIEW", 42, 2L, 1L, 1L, sketch(1), sketch(10));
+            when(repository.aggregateIngestedRange(any(), any())).thenReturn(List.of(delta));
+            when(repository.findMetrics(any())).thenReturn(List.of(stored));
+
+            service.runAggregationOnce();
+
+            AggregatedBucket merged = captureSingleUpsert();
+            assertThat(merged.totalEvents()).isEqualTo(52);
+            assertThat(merged.uniqueSessions()).isEqualTo(9);
+            assertThat(merged.uniqueUsers()).isEqualTo(6);
+            assertThat(merged.sessionsSketch()).isNull();
+            verify(repository, never()).aggregateRangeIngestedBefore(any(), any(), any());
+        }
+
+        @Test
+        @DisplayName("should merge the deltas of a day into its stored daily row without reading its hours")
+        void mergeIntoDailyRow() {
+            when(repository.getLastIngestedAt()).thenReturn(Instant.now().minus(1, ChronoUnit.MINUTES));
+            Instant day = bucket.truncatedTo(ChronoUnit.DAYS);
+            AggregatedBucket stored = new AggregatedBucket(
+                    day, "PRODUCT_VIEW", 42, 20L, 3L, 2L, sketch(1, 2, 3), sketch(10, 11)
+            );
+            AggregatedBucket otherHour = new AggregatedBucket(
+                    day, "PRODUCT_VIEW", 42, 1L, 1L, 1L, sketch(5), sketch(12)
+            );
+            when(repository.aggregateIngestedRange(any(), any())).thenReturn(List.of(
+                    bucket("PRODUCT_VIEW", 4, sketch(3, 4), sketch(11)), otherHour
+            ));
+            when(repository.findDailyMetrics(any())).thenReturn(List.of(stored));
+
+            service.runAggregationOnce();
+
+            AggregatedBucket merged = captureSingle(verify(repository)::upsertDailyMetrics);
+            assertThat(merged.bucketStart()).isEqualTo(day);
+            assertThat(merged.totalEvents()).isEqualTo(25);
+            assertThat(merged.uniqueSessions()).isEqualTo(5);
+            assertThat(merged.uniqueUsers()).isEqualTo(3);
+            verify(repository, never()).rollupDay(any());
+            verify(repository, never()).replaceDailyMetrics(any(), any());
+        }
+
+        @Test
+        @DisplayName("should rebuild a day from its hours when its daily row has no sketches")
+        void rebuildLegacyDailyRow() {
+            when(repository.getLastIngestedAt()).thenReturn(Instant.now().minus(1, ChronoUnit.MINUTES));
+            Instant day = bucket.truncatedTo(ChronoUnit.DAYS);
+            when(repository.aggregateIngestedRange(any(), any()))
+                    .thenReturn(List.of(bucket("PRODUCT_VIEW", 2, sketch(1), sketch(10))));
+            when(repository.findDailyMetrics(any())).thenReturn(List.of(
+                    new AggregatedBucket(day, "PRODUCT_VIEW", 42, 50L, 9L, 6L)
+            ));
+            List<AggregatedBucket> dayRows = List.of(new AggregatedBucket(day, "PRODUCT_VIEW", 42, 52L, 9L, 6L));
+            when(repository.rollupDay(day)).thenReturn(dayRows);
+
+            service.runAggregationOnce();
+
+            verify(repository).upsertDailyMetrics(List.of());
+            verify(repository).replaceDailyMetrics(day, dayRows);
+        }
+
+        @Test
+        @DisplayName("should skip when the watermark is not behind upperBound")
+        void skipWhenWatermarkCurrent() {
+            when(repository.getLastIngestedAt()).thenReturn(Instant.now().plus(1, ChronoUnit.HOURS));
+
+            service.runAggregationOnce();
+
+            verify(repository, never()).aggregateIngestedRange(any(), any());
+            verify(repository, never()).updateLastIngestedAt(any());
+        }
+
+        private AggregatedBucket bucket(String eventType, long total, HyperLogLog sessions, HyperLogLog users) {
+            return new AggregatedBucket(
+                    bucket, eventType, 42, total, sessions.estimate(), users.estimate(), sessions, users
+            );
+        }
+
+        private HyperLogLog sketch(long... values) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (long value : values) {
+                sketch.add(value);
+            }
+            return sketch;
+        }
+
+        private AggregatedBucket captureSingleUpsert() {
+            return captureSingle(verify(repository)::upsertMetrics);
+        }
+
+        @SuppressWarnings("unchecked")
+        private AggregatedBucket captureSingle(Consumer<List<AggregatedBucket>> upsert) {
+            ArgumentCaptor<List<AggregatedBucket>> captor = ArgumentCaptor.forClass(List.class);
+            upsert.accept(captor.capture());
+            assertThat(captor.getValue()).hasSize(1);
+            return captor.getValue().get(0);
+        }
+    }
 }
@@ -0,0 +1,156 @@
+package com.projectx.analytics.aggregation.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("HyperLogLog — Unit Tests")
+class HyperLogLogTest {
+
+    @Test
+    @DisplayName("should estimate zero for an empty sketch")
+    void emptySketch() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        assertThat(sketch.isEmpty()).isTrue();
+        assertThat(sketch.estimate()).isZero();
+        assertThat(HyperLogLog.fromBytes(sketch.toBytes()).estimate()).isZero();
+    }
+
+    @Test
+    @DisplayName("should count small cardinalities exactly and ignore repeats")
+    void smallCardinality() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int round = 0; round < 3; round++) {
+            for (long value = 1; value <= 20; value++) {
+                sketch.add(value);
+            }
+        }
+
+        assertThat(sketch.estimate()).isEqualTo(20);
+    }
+
+    @Test
+    @DisplayName("should round-trip sparse and dense sketches through bytes")
+    void serializationRoundTrip() {
+        HyperLogLog sparse = sketchOf(0, 50);
+        HyperLogLog dense = sketchOf(0, 50_000);
+
+        HyperLogLog sparseCopy = HyperLogLog.fromBytes(sparse.toBytes());
+        HyperLogLog denseCopy = HyperLogLog.fromBytes(dense.toBytes());
+
+        assertThat(sparse.toBytes().length).isLessThan(dense.toBytes().length);
+        assertThat(sparseCopy.estimate()).isEqualTo(sparse.estimate());
+        assertThat(denseCopy.estimate()).isEqualTo(dense.estimate());
+        assertThat(denseCopy.toBytes()).isEqualTo(dense.toBytes());
+    }
+
+    @Test
+    @DisplayName("should union overlapping sketches without double counting")
+    void mergeOverlapping() {
+        HyperLogLog left = sketchOf(0, 30_000);
+        HyperLogLog right = sketchOf(20_000, 50_000);
+
+        left.merge(right);
+
+        assertThat(left.estimate()).isBetween(47_500L, 52_500L);
+    }
+
+    @Test
+    @DisplayName("should reject merging sketches of different precision")
+    void mergeDifferentPrecision() {
+        HyperLogLog left = new HyperLogLog(10);
+        HyperLogLog right = new HyperLogLog(12);
+
+        assertThatThrownBy(() -> left.merge(right)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Nested
+    @DisplayName("accuracy vs size")
+    class Accuracy {
+
+        private static final int TRIALS = 5;
+
+        @ParameterizedTest(name = "p={0}, n={1}")
+        @CsvSource({
+                "10, 1000",
+                "10, 100000",
+                "12, 1000",
+                "12, 100000",
+                "12, 1000000",
+                "14, 10000",
+                "14, 1000000"
+        })
+        @DisplayName("should stay within the expected standard error for its precision")
+        void errorWithinBound(int precision, int cardinality) {
+            double standardError = 1.04 / Math.sqrt(1 << precision);
+            double errorSum = 0;
+            for (int trial = 0; trial < TRIALS; trial++) {
+                HyperLogLog sketch = new HyperLogLog(precision);
+                long offset = trial * 10_000_000_000L;
+                for (long value = 0; value < cardinality; value++) {
+                    sketch.add(offset + value);
+                }
+                double error = Math.abs(sketch.estimate() - cardinality) / (double) cardinality;
+                assertThat(error).as("trial %d", trial).isLessThan(4 * standardError);
+                errorSum += error;
+            }
+            assertThat(errorSum / TRIALS).isLessThan(1.5 * standardError);
+        }
+
+        @ParameterizedTest(name = "p={0}")
+        @ValueSource(ints = {HyperLogLog.MIN_PRECISION, 10, 12, 14, HyperLogLog.MAX_PRECISION})
+        @DisplayName("should never serialize larger than one byte per register")
+        void sizeBoundedByPrecision(int precision) {
+            int registers = 1 << precision;
+            HyperLogLog sketch = new HyperLogLog(precision);
+            for (long value = 0; value < registers * 20L; value++) {
+                sketch.add(value);
+                if (value % 97 == 0) {
+                    assertThat(sketch.toBytes().length).isLessThanOrEqualTo(2 + registers);
+                }
+            }
+            assertThat(sketch.toBytes()).hasSize(2 + registers);
+        }
+
+        @Test
+        @DisplayName("should keep low-cardinality sketches much smaller than dense ones")
+        void sparseIsCompact() {
+            assertThat(sketchOf(0, 100).toBytes().length).isLessThan(400);
+            assertThat(sketchOf(0, 100_000).toBytes()).hasSize(2 + (1 << HyperLogLog.DEFAULT_PRECISION));
+        }
+
+        @Test
+        @DisplayName("should estimate a union of hourly sketches like one sketch over all values")
+        void unionMatchesSingleSketch() {
+            HyperLogLog all = new HyperLogLog();
+            HyperLogLog union = new HyperLogLog();
+            for (int hour = 0; hour < 168; hour++) {
+                HyperLogLog hourly = new HyperLogLog();
+                // Sliding window of users so consecutive hours overlap heavily.
+                for (long user = hour * 500L; user < hour * 500L + 2_000; user++) {
+                    hourly.add(user);
+                    all.add(user);
+                }
+                union.merge(HyperLogLog.fromBytes(hourly.toBytes()));
+            }
+
+            assertThat(union.estimate()).isEqualTo(all.estimate());
+            assertThat(Math.abs(union.estimate() - 85_500) / 85_500.0).isLessThan(0.05);
+        }
+    }
+
+    private static HyperLogLog sketchOf(long fromInclusive, long toExclusive) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long value = fromInclusive; value < toExclusive; value++) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+}
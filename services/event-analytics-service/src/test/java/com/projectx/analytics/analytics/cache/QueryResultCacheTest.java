@@ -0,0 +1,120 @@
+package com.projectx.analytics.analytics.cache;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("QueryResultCache — Unit Tests")
+class QueryResultCacheTest {
+
+    private static final Instant FROM = Instant.parse("2025-06-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2025-06-01T12:00:00Z");
+
+    private SimpleMeterRegistry meterRegistry;
+    private QueryResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new QueryResultCache(new AnalyticsProperties(), meterRegistry);
+    }
+
+    private QueryResultCache.Key key() {
+        return QueryResultCache.Key.of("top_products", FROM, TO, 5);
+    }
+
+    private void put(QueryResultCache.Key key, Object value) {
+        cache.put(key, value, 1, cache.generation());
+    }
+
+    @Test
+    @DisplayName("should key a range by the hour buckets it reads")
+    void normalizeKey() {
+        QueryResultCache.Key aligned = key();
+
+        assertThat(QueryResultCache.Key.of("top_products", FROM.minusSeconds(1_800), TO.plusSeconds(3_599), 5))
+                .isEqualTo(aligned);
+        assertThat(QueryResultCache.Key.of("top_products", FROM.plusSeconds(1), TO, 5)).isNotEqualTo(aligned);
+        assertThat(QueryResultCache.Key.of("top_products", FROM, TO.minusSeconds(1), 5)).isNotEqualTo(aligned);
+        assertThat(QueryResultCache.Key.of("funnel", FROM, TO, 5)).isNotEqualTo(aligned);
+    }
+
+    @Test
+    @DisplayName("should count hits and misses")
+    void hitAndMiss() {
+        assertThat(cache.<List<Integer>>get(key())).isEmpty();
+        put(key(), List.of(1, 2));
+
+        Optional<List<Integer>> hit = cache.get(key());
+
+        assertThat(hit).contains(List.of(1, 2));
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should only drop entries that read a rewritten hour")
+    void invalidateOverlapping() {
+        QueryResultCache.Key later = QueryResultCache.Key.of("funnel", TO.plusSeconds(3_600), TO.plusSeconds(7_200), 0);
+        put(key(), "first half");
+        put(later, "afternoon");
+
+        cache.invalidate(TO, TO.plusSeconds(1_800));
+
+        assertThat(cache.<String>get(key())).isEmpty();
+        assertThat(cache.<String>get(later)).contains("afternoon");
+        assertThat(meterRegistry.counter("analytics.result.cache.invalidated").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should drop a result computed before an invalidation")
+    void rejectStaleResult() {
+        long generation = cache.generation();
+        cache.invalidate(FROM, FROM);
+
+        cache.put(key(), "stale", 1, generation);
+
+        assertThat(cache.<String>get(key())).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should expire a closed-hour result loaded within the replica lag of an invalidation")
+    void settleAfterInvalidation() throws InterruptedException {
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getResultCache().setReplicaLagMs(100);
+        cache = new QueryResultCache(properties, new SimpleMeterRegistry());
+        QueryResultCache.Key untouched = QueryResultCache.Key.of("funnel", TO.plusSeconds(3_600), TO.plusSeconds(7_200), 0);
+        cache.invalidate(TO, TO);
+        put(key(), "maybe stale");
+        put(untouched, "fresh");
+
+        assertThat(cache.<String>get(key())).contains("maybe stale");
+        Thread.sleep(200);
+
+        assertThat(cache.<String>get(key())).isEmpty();
+        assertThat(cache.<String>get(untouched)).contains("fresh");
+        put(key(), "settled");
+        Thread.sleep(200);
+        assertThat(cache.<String>get(key())).contains("settled");
+    }
+
+    @Test
+    @DisplayName("should store nothing when disabled")
+    void disabled() {
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getResultCache().setEnabled(false);
+        QueryResultCache disabled = new QueryResultCache(properties, new SimpleMeterRegistry());
+
+        disabled.put(key(), "value", 1, disabled.generation());
+
+        assertThat(disabled.<String>get(key())).isEmpty();
+    }
+}
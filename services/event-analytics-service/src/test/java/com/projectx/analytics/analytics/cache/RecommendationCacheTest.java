@@ -0,0 +1,194 @@
+package com.projectx.analytics.analytics.cache;
+
+import com.projectx.analytics.analytics.dto.PersonalizedRecommendationResponse;
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("RecommendationCache — Unit Tests")
+class RecommendationCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RecommendationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new RecommendationCache(new AnalyticsProperties(), meterRegistry);
+    }
+
+    private static RecommendationCache.Key key(String viewer) {
+        return RecommendationCache.Key.of(viewer, 3, List.of(), 20, null);
+    }
+
+    private static PersonalizedRecommendationResponse response() {
+        return new PersonalizedRecommendationResponse(Instant.parse("2025-06-01T12:00:00Z"), List.of(), List.of());
+    }
+
+    @Test
+    @DisplayName("should ignore exclusion order and a blank seed in the key")
+    void normalizeKey() {
+        assertThat(RecommendationCache.Key.of("u:1", 3, List.of(9, 4), 20, " "))
+                .isEqualTo(RecommendationCache.Key.of("u:1", 3, List.of(4, 9), 20, null));
+        assertThat(RecommendationCache.Key.of("u:1", 3, List.of(4), 20, "a"))
+                .isNotEqualTo(RecommendationCache.Key.of("u:1", 3, List.of(4), 20, "b"));
+    }
+
+    @Test
+    @DisplayName("should compute once and serve repeats from the cache")
+    void cacheRepeats() {
+        AtomicInteger loads = new AtomicInteger();
+        PersonalizedRecommendationResponse first = cache.get(key("u:1"), () -> {
+            loads.incrementAndGet();
+            return response();
+        });
+
+        PersonalizedRecommendationResponse second = cache.get(key("u:1"), () -> {
+            loads.incrementAndGet();
+            return response();
+        });
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("should let concurrent identical requests wait for one computation")
+    void coalesceConcurrentRequests() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<PersonalizedRecommendationResponse> leader = CompletableFuture.supplyAsync(
+                () -> cache.get(key("u:1"), () -> {
+                    loads.incrementAndGet();
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return response();
+                })
+        );
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<PersonalizedRecommendationResponse> follower = CompletableFuture.supplyAsync(
+                () -> cache.get(key("u:1"), () -> {
+                    loads.incrementAndGet();
+                    return response();
+                })
+        );
+        while (meterRegistry.counter("analytics.recommendation.cache.coalesced").count() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(leader.get(5, TimeUnit.SECONDS));
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("should not cache a failed computation")
+    void failureNotCached() {
+        assertThatThrownBy(() -> cache.get(key("u:1"), () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        PersonalizedRecommendationResponse retried = cache.get(key("u:1"), RecommendationCacheTest::response);
+
+        assertThat(retried).isNotNull();
+    }
+
+    @Test
+    @DisplayName("should drop only the invalidated viewers")
+    void invalidateViewers() {
+        PersonalizedRecommendationResponse kept = cache.get(key("u:2"), RecommendationCacheTest::response);
+        cache.get(key("u:1"), RecommendationCacheTest::response);
+
+        cache.invalidateViewers(Set.of("u:1"));
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(key("u:1"), () -> {
+            loads.incrementAndGet();
+            return response();
+        });
+        assertThat(loads).hasValue(1);
+        assertThat(cache.get(key("u:2"), RecommendationCacheTest::response)).isSameAs(kept);
+        assertThat(meterRegistry.counter("analytics.recommendation.cache.invalidated").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should not store a computation that was in flight when its viewer was invalidated")
+    void invalidateInFlight() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<PersonalizedRecommendationResponse> stale = CompletableFuture.supplyAsync(
+                () -> cache.get(key("u:1"), () -> {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return response();
+                })
+        );
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        cache.invalidateViewers(List.of("u:1"));
+        release.countDown();
+        stale.get(5, TimeUnit.SECONDS);
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(key("u:1"), () -> {
+            loads.incrementAndGet();
+            return response();
+        });
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("should drop every cached variant of an invalidated viewer")
+    void invalidateAllVariants() {
+        cache.get(key("u:1"), RecommendationCacheTest::response);
+        cache.get(RecommendationCache.Key.of("u:1", null, List.of(7), 5, "s"), RecommendationCacheTest::response);
+
+        cache.invalidateViewers(Set.of("u:1", "u:9"));
+
+        assertThat(meterRegistry.counter("analytics.recommendation.cache.invalidated").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    @DisplayName("should compute every time and report no cache metrics when disabled")
+    void disabled() {
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getRecommendationCache().setEnabled(false);
+        SimpleMeterRegistry disabledRegistry = new SimpleMeterRegistry();
+        RecommendationCache disabled = new RecommendationCache(properties, disabledRegistry);
+        AtomicInteger loads = new AtomicInteger();
+
+        disabled.get(key("u:1"), () -> {
+            loads.incrementAndGet();
+            return response();
+        });
+        disabled.get(key("u:1"), () -> {
+            loads.incrementAndGet();
+            return response();
+        });
+
+        assertThat(loads).hasValue(2);
+        assertThat(disabledRegistry.find("cache.gets").tag("cache", "recommendations").meters()).isEmpty();
+    }
+}
@@ -3,6 +3,7 @@ package com.projectx.analytics.analytics.controller;
 import com.projectx.analytics.analytics.dto.*;
 import com.projectx.analytics.analytics.service.AnalyticsQueryService;
 import com.projectx.analytics.analytics.service.RecommendationQueryService;
+import com.projectx.analytics.common.BulkheadFullException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -47,10 +48,10 @@ class AnalyticsControllerTest {
             FunnelReportResponse response = new FunnelReportResponse(
                     now.minusSeconds(7 * 86400), now, 0.05,
                     List.of(
-                            new FunnelStepResponse("PRODUCT_VIEW", 1000L, null),
-                            new FunnelStepResponse("ADD_TO_CART", 300L, 0.3),
-                            new FunnelStepResponse("START_CHECKOUT", 100L, 0.333),
-                            new FunnelStepResponse("PURCHASE", 50L, 0.5)
+                            new FunnelStepResponse("PRODUCT_VIEW", 1000L, null, 800L, 600L),
+                            new FunnelStepResponse("ADD_TO_CART", 300L, 0.3, 250L, 200L),
+                            new FunnelStepResponse("START_CHECKOUT", 100L, 0.333, 90L, 80L),
+                            new FunnelStepResponse("PURCHASE", 50L, 0.5, 45L, 40L)
                     )
             );
 
@@ -64,6 +65,7 @@ class AnalyticsControllerTest {
                     .andExpect(jsonPath("$.steps.length()").value(4))
                     .andExpect(jsonPath("$.steps[0].eventType").value("PRODUCT_VIEW"))
                     .andExpect(jsonPath("$.steps[0].events").value(1000))
+                    .andExpect(jsonPath("$.steps[0].uniqueUsers").value(600))
                     .andExpect(jsonPath("$.steps[3].eventType").value("PURCHASE"))
                     .andExpect(jsonPath("$.steps[3].events").value(50));
         }
@@ -101,8 +103,8 @@ class AnalyticsControllerTest {
         void topProducts() throws Exception {
             when(analyticsQueryService.getTopProducts(any(), any(), anyInt()))
                     .thenReturn(List.of(
-                            new TopProductMetricResponse(42, 500L, 100L, 30L, 0.2, 0.3),
-                            new TopProductMetricResponse(99, 200L, 50L, 10L, 0.25, 0.2)
+                            new TopProductMetricResponse(42, 500L, 100L, 30L, 0.2, 0.3, 400L, 300L),
+                            new TopProductMetricResponse(99, 200L, 50L, 10L, 0.25, 0.2, 150L, 120L)
                     ));
 
             mockMvc.perform(get("/api/v1/analytics/top-products")
@@ -113,7 +115,8 @@ class AnalyticsControllerTest {
                     .andExpect(jsonPath("$.length()").value(2))
                     .andExpect(jsonPath("$[0].productId").value(42))
                     .andExpect(jsonPath("$[0].views").value(500))
-                    .andExpect(jsonPath("$[0].purchases").value(30));
+                    .andExpect(jsonPath("$[0].purchases").value(30))
+                    .andExpect(jsonPath("$[0].uniqueSessions").value(400));
         }
     }
 
@@ -178,6 +181,21 @@ class AnalyticsControllerTest {
                     .andExpect(jsonPath("$.topBrands[0].brandName").value("Nike"));
         }
 
+        @Test
+        @DisplayName("should answer 503 with Retry-After when the recommendations bulkhead is full")
+        void bulkheadFull() throws Exception {
+            when(recommendationQueryService.getRecommendations(
+                    any(), any(), any(), anyList(), anyInt(), any()
+            )).thenThrow(new BulkheadFullException("recommendations"));
+
+            mockMvc.perform(get("/api/v1/analytics/recommendations")
+                            .header("X-Events-Api-Key", API_KEY)
+                            .param("sessionId", "s1"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"))
+                    .andExpect(jsonPath("$.success").value(false));
+        }
+
         @Test
         @DisplayName("should parse excludeProductIds CSV parameter")
         void parseExcludeIds() throws Exception {
@@ -216,4 +234,35 @@ class AnalyticsControllerTest {
                     .andExpect(status().isOk());
         }
     }
+
+    // ========== GET /api/v1/analytics/recommendations/related ==========
+
+    @Nested
+    @DisplayName("GET /api/v1/analytics/recommendations/related")
+    class RelatedRecommendations {
+
+        @Test
+        @DisplayName("should pass the anchor product and clamp the limit")
+        void relatedRecommendations() throws Exception {
+            PersonalizedRecommendationResponse response = new PersonalizedRecommendationResponse(
+                    Instant.now(),
+                    List.of(new RecommendationProductResponse(8, 1.5, "frequently_together")),
+                    List.of()
+            );
+            when(recommendationQueryService.getRelatedRecommendations(
+                    eq(1L), eq("s1"), eq(42), isNull(), eq(List.of(10, 20)), eq(100)
+            )).thenReturn(response);
+
+            mockMvc.perform(get("/api/v1/analytics/recommendations/related")
+                            .header("X-Events-Api-Key", API_KEY)
+                            .param("userId", "1")
+                            .param("sessionId", "s1")
+                            .param("productId", "42")
+                            .param("excludeProductIds", "10,20")
+                            .param("limit", "500"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.items[0].productId").value(8))
+                    .andExpect(jsonPath("$.items[0].reason").value("frequently_together"));
+        }
+    }
 }
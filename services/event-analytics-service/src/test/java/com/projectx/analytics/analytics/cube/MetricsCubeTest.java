@@ -0,0 +1,202 @@
+package com.projectx.analytics.analytics.cube;
+
+import com.projectx.analytics.aggregation.model.AggregatedBucket;
+import com.projectx.analytics.aggregation.repository.AggregationRepository;
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.config.AnalyticsProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("MetricsCube — Unit Tests")
+class MetricsCubeTest {
+
+    private static final List<String> FUNNEL = List.of("PRODUCT_VIEW", "ADD_TO_CART", "PURCHASE");
+
+    private final Instant hour = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(3, ChronoUnit.HOURS);
+    private final Instant nextHour = hour.plus(1, ChronoUnit.HOURS);
+
+    private AggregationRepository repository;
+    private AnalyticsProperties properties;
+    private MetricsCube cube;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(AggregationRepository.class);
+        properties = new AnalyticsProperties();
+        properties.getCube().setEnabled(true);
+        properties.getCube().setRetentionHours(24);
+        cube = new MetricsCube(repository, properties);
+    }
+
+    @Test
+    @DisplayName("should not answer anything before it is loaded")
+    void emptyUntilLoaded() {
+        assertThat(cube.isReady()).isFalse();
+        assertThat(cube.totalsByEventType(hour, nextHour, FUNNEL)).isEmpty();
+        assertThat(cube.topProducts(hour, nextHour, 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should sum totals and union sketches per event type over the range")
+    void totalsByEventType() {
+        load(
+                row(hour, "PRODUCT_VIEW", 1, 10, sketch(1, 2), sketch(100)),
+                row(hour, "PRODUCT_VIEW", 2, 5, sketch(2, 3), sketch(100, 101)),
+                row(nextHour, "PRODUCT_VIEW", 1, 7, sketch(3, 4), sketch(102)),
+                row(nextHour, "PURCHASE", 1, 1, sketch(4), sketch(102))
+        );
+
+        List<EventTypeTotals> totals = cube.totalsByEventType(hour, nextHour, FUNNEL).orElseThrow();
+
+        assertThat(totals).containsExactly(
+                new EventTypeTotals("PRODUCT_VIEW", 22L, 4L, 3L),
+                new EventTypeTotals("ADD_TO_CART", 0L, 0L, 0L),
+                new EventTypeTotals("PURCHASE", 1L, 1L, 1L)
+        );
+        assertThat(cube.totalsByEventType(nextHour, nextHour, FUNNEL).orElseThrow().get(0).totalEvents())
+                .isEqualTo(7L);
+    }
+
+    @Test
+    @DisplayName("should rank products by purchases, then add-to-cart, then views")
+    void topProductsOrdering() {
+        load(
+                row(hour, "PRODUCT_VIEW", 1, 100, sketch(1), sketch(10)),
+                row(hour, "PRODUCT_VIEW", 2, 50, sketch(2), sketch(20)),
+                row(hour, "ADD_TO_CART", 2, 5, sketch(2), sketch(20)),
+                row(hour, "PURCHASE", 3, 1, sketch(3, 4), sketch(30, 31)),
+                row(hour, "SEARCH", 0, 500, sketch(5), sketch(50))
+        );
+
+        List<ProductTotals> top = cube.topProducts(hour, nextHour, 2).orElseThrow();
+
+        assertThat(top).extracting(ProductTotals::productId).containsExactly(3, 2);
+        assertThat(top.get(0).uniqueSessions()).isEqualTo(2L);
+        assertThat(top.get(1)).isEqualTo(new ProductTotals(2, 50L, 5L, 0L, 1L, 1L));
+    }
+
+    @Test
+    @DisplayName("should overwrite upserted cells and keep the rest of the hour")
+    void upsertKeepsOtherCells() {
+        load(
+                row(hour, "PRODUCT_VIEW", 1, 10, sketch(1), sketch(10)),
+                row(hour, "PRODUCT_VIEW", 2, 5, sketch(2), sketch(20))
+        );
+
+        cube.upsert(List.of(row(hour, "PRODUCT_VIEW", 1, 12, sketch(1, 9), sketch(10))));
+
+        assertThat(cube.totalsByEventType(hour, hour, FUNNEL).orElseThrow().get(0))
+                .isEqualTo(new EventTypeTotals("PRODUCT_VIEW", 17L, 3L, 2L));
+    }
+
+    @Test
+    @DisplayName("should drop cells of replaced hours that the recompute no longer produced")
+    void replaceHoursDropsMissingCells() {
+        load(
+                row(hour, "PRODUCT_VIEW", 1, 10, sketch(1), sketch(10)),
+                row(nextHour, "PRODUCT_VIEW", 2, 5, sketch(2), sketch(20))
+        );
+
+        cube.replaceHours(hour, hour.plus(30, ChronoUnit.MINUTES), List.of(
+                row(hour, "ADD_TO_CART", 1, 3, sketch(1), sketch(10))
+        ));
+
+        List<EventTypeTotals> totals = cube.totalsByEventType(hour, nextHour, FUNNEL).orElseThrow();
+        assertThat(totals.get(0).totalEvents()).isEqualTo(5L);
+        assertThat(totals.get(1).totalEvents()).isEqualTo(3L);
+    }
+
+    @Test
+    @DisplayName("should leave ranges starting before the retention window to Postgres")
+    void fallbackOutsideWindow() {
+        load(row(hour, "PRODUCT_VIEW", 1, 10, sketch(1), sketch(10)));
+
+        Instant tooOld = Instant.now().minus(2, ChronoUnit.DAYS);
+
+        assertThat(cube.totalsByEventType(tooOld, nextHour, FUNNEL)).isEmpty();
+        assertThat(cube.topProducts(tooOld, nextHour, 5)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should skip hours past the allowed clock skew instead of sizing the window by them")
+    void skipFarFutureHours() {
+        Instant farFuture = Instant.parse("9999-01-01T00:00:00Z");
+        load(
+                row(hour, "PRODUCT_VIEW", 1, 10, sketch(1), sketch(10)),
+                row(farFuture, "PRODUCT_VIEW", 1, 99, sketch(2), sketch(20))
+        );
+
+        cube.upsert(List.of(row(farFuture, "PURCHASE", 1, 1, sketch(3), sketch(30))));
+
+        List<EventTypeTotals> totals = cube.totalsByEventType(hour, farFuture, FUNNEL).orElseThrow();
+        assertThat(totals.get(0).totalEvents()).isEqualTo(10L);
+        assertThat(totals.get(2).totalEvents()).isZero();
+    }
+
+    @Test
+    @DisplayName("should load itself on the first patch when the startup load failed")
+    void reloadOnFirstPatch() {
+        doThrow(new IllegalStateException("db down"))
+                .doAnswer(invocation -> null)
+                .when(repository).forEachMetricSince(any(), any());
+
+        cube.onApplicationReady();
+        assertThat(cube.isReady()).isFalse();
+
+        cube.upsert(List.of());
+        assertThat(cube.isReady()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should stay empty when disabled")
+    void disabled() {
+        properties.getCube().setEnabled(false);
+
+        cube.onApplicationReady();
+        cube.upsert(List.of(row(hour, "PRODUCT_VIEW", 1, 10, sketch(1), sketch(10))));
+
+        assertThat(cube.isReady()).isFalse();
+        verifyNoInteractions(repository);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load(AggregatedBucket... rows) {
+        doAnswer(invocation -> {
+            Consumer<AggregatedBucket> consumer = invocation.getArgument(1);
+            for (AggregatedBucket row : rows) {
+                consumer.accept(row);
+            }
+            return null;
+        }).when(repository).forEachMetricSince(any(), any(Consumer.class));
+        cube.reload();
+    }
+
+    private static AggregatedBucket row(
+            Instant bucket,
+            String eventType,
+            int productKey,
+            long total,
+            HyperLogLog sessions,
+            HyperLogLog users
+    ) {
+        return new AggregatedBucket(bucket, eventType, productKey, total, 0L, 0L, sessions, users);
+    }
+
+    private static HyperLogLog sketch(long... values) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+}
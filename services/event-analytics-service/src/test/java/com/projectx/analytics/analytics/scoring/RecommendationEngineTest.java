@@ -0,0 +1,127 @@
+package com.projectx.analytics.analytics.scoring;
+
+import com.projectx.analytics.analytics.service.ProductPopularityService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.*;
+
+@DisplayName("RecommendationEngine — Unit Tests")
+class RecommendationEngineTest {
+
+    private ProductCatalog catalog;
+    private ProductPopularityService popularity;
+    private RecommendationEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        catalog = mock(ProductCatalog.class);
+        popularity = mock(ProductPopularityService.class);
+        engine = new RecommendationEngine(catalog, popularity);
+        // product ids 1..6; brands 10/20/none; categories 100/200
+        when(catalog.snapshot()).thenReturn(Optional.of(CatalogSnapshot.of(
+                new int[] {1, 2, 3, 4, 5, 6},
+                new int[] {10, 10, 20, 20, 0, 10},
+                new int[] {100, 100, 200, 200, 100, 0}
+        )));
+    }
+
+    @Test
+    @DisplayName("should fall back when the catalog is not loaded")
+    void notReady() {
+        when(catalog.snapshot()).thenReturn(Optional.empty());
+
+        assertThat(engine.isReady()).isFalse();
+        assertThat(engine.rank(ViewerScores.EMPTY, null, List.of(), 10, "s")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should combine direct, brand and global scores with the SQL weights")
+    void combinesScores() {
+        when(popularity.scoreOf(5)).thenReturn(100f);
+        ViewerScores viewer = new ViewerScores(
+                new int[] {2, 9}, new double[] {10.0, 50.0},
+                new int[] {20}, new double[] {4.0}
+        );
+
+        List<ScoredProduct> ranked = engine.rank(viewer, null, List.of(), 4, "seed").orElseThrow();
+
+        assertThat(ranked).extracting(ScoredProduct::productId).startsWith(2, 5).containsOnly(2, 5, 3, 4);
+        ScoredProduct top = ranked.get(0);
+        assertThat(top.directScore()).isEqualTo(10.0);
+        assertThat(top.brandScore()).isZero();
+        assertThat(top.totalScore())
+                .isCloseTo(24.0 + RecommendationEngine.tieBreaker(2, "seed".hashCode()), within(1e-9));
+        assertThat(ranked.get(1).totalScore()).isGreaterThanOrEqualTo(6.0);
+        assertThat(ranked.get(2).brandScore()).isEqualTo(4.0);
+    }
+
+    @Test
+    @DisplayName("should apply category and exclusion filters")
+    void filters() {
+        ViewerScores viewer = new ViewerScores(
+                new int[] {1, 2, 3}, new double[] {1.0, 2.0, 3.0},
+                new int[0], new double[0]
+        );
+
+        List<ScoredProduct> ranked = engine.rank(viewer, 100, List.of(2, 999), 10, "s").orElseThrow();
+
+        assertThat(ranked).extracting(ScoredProduct::productId).containsOnly(1, 5);
+        assertThat(engine.rank(viewer, 300, List.of(), 10, "s").orElseThrow()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should give the same order for the same seed")
+    void deterministicTieBreaker() {
+        List<ScoredProduct> first = engine.rank(ViewerScores.EMPTY, null, List.of(), 6, "a").orElseThrow();
+        List<ScoredProduct> second = engine.rank(ViewerScores.EMPTY, null, List.of(), 6, "a").orElseThrow();
+
+        assertThat(first).isEqualTo(second);
+        assertThat(RecommendationEngine.tieBreaker(1, 7)).isBetween(0.0, 0.00999);
+    }
+
+    @Nested
+    @DisplayName("TopN")
+    class TopNHeap {
+
+        @Test
+        @DisplayName("should keep the highest scores in descending order")
+        void keepsBest() {
+            Random random = new Random(42);
+            double[] scores = new double[1_000];
+            TopN top = new TopN(10);
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextDouble();
+                top.offer(scores[i], i);
+            }
+
+            int[] positions = top.drainDescending();
+
+            double[] expected = java.util.Arrays.stream(scores).boxed()
+                    .sorted(java.util.Comparator.reverseOrder())
+                    .limit(10)
+                    .mapToDouble(Double::doubleValue)
+                    .toArray();
+            assertThat(java.util.Arrays.stream(positions).mapToDouble(i -> scores[i]).toArray())
+                    .containsExactly(expected);
+        }
+
+        @Test
+        @DisplayName("should return fewer items when offered fewer than its capacity")
+        void partial() {
+            TopN top = new TopN(5);
+            top.offer(1.0, 3);
+            top.offer(2.0, 8);
+
+            assertThat(top.drainDescending()).containsExactly(8, 3);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.projectx.analytics.analytics.scoring;
+
+import com.projectx.analytics.analytics.service.ItemCooccurrenceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.*;
+
+@DisplayName("RelatedProductsEngine — Unit Tests")
+class RelatedProductsEngineTest {
+
+    private ProductCatalog catalog;
+    private ItemCooccurrenceService cooccurrence;
+    private RelatedProductsEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        catalog = mock(ProductCatalog.class);
+        cooccurrence = mock(ItemCooccurrenceService.class);
+        engine = new RelatedProductsEngine(catalog, cooccurrence);
+        // product ids 1..6; categories 100/200; 7 is not recommendable
+        when(catalog.snapshot()).thenReturn(Optional.of(CatalogSnapshot.of(
+                new int[] {1, 2, 3, 4, 5, 6},
+                new int[] {0, 0, 0, 0, 0, 0},
+                new int[] {100, 100, 200, 200, 100, 0}
+        )));
+        when(cooccurrence.neighbors()).thenReturn(ItemNeighbors.of(
+                new int[] {1, 4},
+                new int[][] {{2, 3, 7}, {3, 1, 5}},
+                new float[][] {{10f, 5f, 4f}, {8f, 4f, 2f}}
+        ));
+    }
+
+    @Test
+    @DisplayName("should lay neighbor rows out by product id")
+    void neighborRows() {
+        ItemNeighbors neighbors = cooccurrence.neighbors();
+
+        assertThat(neighbors.products()).isEqualTo(2);
+        assertThat(neighbors.size()).isEqualTo(6);
+        assertThat(neighbors.end(1) - neighbors.start(1)).isEqualTo(3);
+        assertThat(neighbors.neighborIds[neighbors.start(4)]).isEqualTo(3);
+        assertThat(neighbors.end(2) - neighbors.start(2)).isZero();
+        assertThat(neighbors.end(99) - neighbors.start(99)).isZero();
+        assertThat(neighbors.end(0) - neighbors.start(0)).isZero();
+    }
+
+    @Test
+    @DisplayName("should scale each seed by its strongest neighbor and sum shared neighbors")
+    void sumsSeeds() {
+        List<ScoredProduct> ranked = engine.rank(
+                new int[] {1, 4}, new double[] {2.0, 1.0}, null, List.of(), 10
+        ).orElseThrow();
+
+        // 3: 2.0 * 5/10 + 1.0 * 8/8; 2: 2.0 * 10/10; 5: 1.0 * 2/8; seeds 1 and 4 are skipped
+        assertThat(ranked).extracting(ScoredProduct::productId).containsExactly(3, 2, 5);
+        assertThat(ranked.get(0).totalScore()).isCloseTo(2.0, within(1e-9));
+        assertThat(ranked.get(2).totalScore()).isCloseTo(0.25, within(1e-9));
+    }
+
+    @Test
+    @DisplayName("should drop excluded, unrecommendable and out-of-category neighbors")
+    void filters() {
+        List<ScoredProduct> ranked = engine.rank(
+                new int[] {1}, new double[] {1.0}, 100, List.of(5), 10
+        ).orElseThrow();
+
+        assertThat(ranked).extracting(ScoredProduct::productId).containsExactly(2);
+        assertThat(engine.rank(new int[] {1}, new double[] {1.0}, null, List.of(2), 1).orElseThrow())
+                .extracting(ScoredProduct::productId).containsExactly(3);
+    }
+
+    @Test
+    @DisplayName("should return nothing for seeds without neighbors and fall back without a catalog")
+    void emptyCases() {
+        assertThat(engine.rank(new int[] {2, 6}, new double[] {1.0, 1.0}, null, List.of(), 10).orElseThrow())
+                .isEmpty();
+
+        when(catalog.snapshot()).thenReturn(Optional.empty());
+
+        assertThat(engine.rank(new int[] {1}, new double[] {1.0}, null, List.of(), 10)).isEmpty();
+    }
+}
@@ -1,23 +1,38 @@
 package com.projectx.analytics.analytics.service;
 
+import com.projectx.analytics.aggregation.sketch.HyperLogLog;
+import com.projectx.analytics.analytics.cache.QueryResultCache;
+import com.projectx.analytics.analytics.cube.EventTypeTotals;
+import com.projectx.analytics.analytics.cube.MetricsCube;
+import com.projectx.analytics.analytics.cube.ProductTotals;
 import com.projectx.analytics.analytics.dto.FunnelReportResponse;
 import com.projectx.analytics.analytics.dto.TopProductMetricResponse;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -25,12 +40,149 @@ import static org.mockito.Mockito.*;
 class AnalyticsQueryServiceTest {
 
     private JdbcTemplate jdbcTemplate;
+    private MetricsCube metricsCube;
+    private QueryResultCache resultCache;
+    private SimpleMeterRegistry meterRegistry;
     private AnalyticsQueryService service;
 
     @BeforeEach
     void setUp() {
         jdbcTemplate = mock(JdbcTemplate.class);
-        service = new AnalyticsQueryService(jdbcTemplate);
+        metricsCube = mock(MetricsCube.class);
+        when(metricsCube.totalsByEventType(any(), any(), any())).thenReturn(Optional.empty());
+        when(metricsCube.topProducts(any(), any(), anyInt())).thenReturn(Optional.empty());
+        meterRegistry = new SimpleMeterRegistry();
+        AnalyticsProperties properties = new AnalyticsProperties();
+        resultCache = new QueryResultCache(properties, meterRegistry);
+        service = new AnalyticsQueryService(
+                jdbcTemplate, metricsCube, resultCache, new Bulkheads(properties, meterRegistry), meterRegistry
+        );
+    }
+
+    @Nested
+    @DisplayName("metrics cube")
+    class Cube {
+
+        @Test
+        @DisplayName("should answer the funnel from the cube without touching Postgres")
+        void funnelFromCube() {
+            when(metricsCube.totalsByEventType(any(), any(), any())).thenReturn(Optional.of(List.of(
+                    new EventTypeTotals("PRODUCT_VIEW", 200L, 90L, 60L),
+                    new EventTypeTotals("ADD_TO_CART", 50L, 30L, 20L),
+                    new EventTypeTotals("START_CHECKOUT", 0L, 0L, 0L),
+                    new EventTypeTotals("PURCHASE", 10L, 8L, 8L)
+            )));
+
+            FunnelReportResponse result = service.getFunnel(
+                    Instant.parse("2025-06-01T00:00:00Z"),
+                    Instant.parse("2025-06-02T00:00:00Z")
+            );
+
+            assertThat(result.steps().get(1).conversionFromPrevious()).isCloseTo(0.25, within(0.001));
+            assertThat(result.steps().get(0).uniqueUsers()).isEqualTo(60L);
+            assertThat(result.overallConversion()).isCloseTo(0.05, within(0.001));
+            verifyNoInteractions(jdbcTemplate);
+        }
+
+        @Test
+        @DisplayName("should answer top products from the cube without touching Postgres")
+        void topProductsFromCube() {
+            when(metricsCube.topProducts(any(), any(), eq(5))).thenReturn(Optional.of(List.of(
+                    new ProductTotals(42, 100L, 20L, 5L, 70L, 40L)
+            )));
+
+            List<TopProductMetricResponse> result = service.getTopProducts(
+                    Instant.parse("2025-06-01T00:00:00Z"),
+                    Instant.parse("2025-06-02T00:00:00Z"),
+                    5
+            );
+
+            assertThat(result).containsExactly(
+                    new TopProductMetricResponse(42, 100L, 20L, 5L, 0.2, 0.25, 70L, 40L)
+            );
+            verifyNoInteractions(jdbcTemplate);
+        }
+    }
+
+    @Nested
+    @DisplayName("result cache")
+    class ResultCache {
+
+        private final List<Map<String, Object>> funnelRows = List.of(
+                Map.of("event_type", "PRODUCT_VIEW", "total_events", 1000L),
+                Map.of("event_type", "PURCHASE", "total_events", 50L)
+        );
+
+        @Test
+        @DisplayName("should answer a range reading the same hour buckets from the cache")
+        void funnelHit() {
+            when(jdbcTemplate.queryForList(any(String.class), any(Object[].class))).thenReturn(funnelRows);
+
+            service.getFunnel(Instant.parse("2025-06-01T00:00:00Z"), Instant.parse("2025-06-02T00:00:00Z"));
+            FunnelReportResponse cached = service.getFunnel(
+                    Instant.parse("2025-05-31T23:10:00Z"),
+                    Instant.parse("2025-06-02T00:40:00Z")
+            );
+
+            verify(jdbcTemplate, times(1)).queryForList(any(String.class), any(Object[].class));
+            assertThat(cached.from()).isEqualTo(Instant.parse("2025-05-31T23:10:00Z"));
+            assertThat(cached.steps().get(0).events()).isEqualTo(1000L);
+            assertThat(meterRegistry.timer("analytics.query", "query", "funnel", "source", "cache").count())
+                    .isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("should recompute after the aggregation rewrites one of the cached hours")
+        void invalidatedByAggregation() {
+            when(jdbcTemplate.queryForList(any(String.class), any(Object[].class))).thenReturn(funnelRows);
+            Instant from = Instant.parse("2025-06-01T00:00:00Z");
+            Instant to = Instant.parse("2025-06-02T00:00:00Z");
+            service.getFunnel(from, to);
+
+            resultCache.invalidate(Instant.parse("2025-06-03T00:00:00Z"), Instant.parse("2025-06-03T05:00:00Z"));
+            service.getFunnel(from, to);
+            resultCache.invalidate(Instant.parse("2025-06-02T00:00:00Z"), Instant.parse("2025-06-02T03:00:00Z"));
+            service.getFunnel(from, to);
+
+            verify(jdbcTemplate, times(2)).queryForList(any(String.class), any(Object[].class));
+        }
+
+        @Test
+        @DisplayName("should key top products by limit as well as range")
+        void topProductsByLimit() {
+            when(metricsCube.topProducts(any(), any(), anyInt())).thenReturn(Optional.of(List.of(
+                    new ProductTotals(42, 100L, 20L, 5L, 70L, 40L)
+            )));
+            Instant from = Instant.parse("2025-06-01T00:00:00Z");
+            Instant to = Instant.parse("2025-06-02T00:00:00Z");
+
+            service.getTopProducts(from, to, 5);
+            service.getTopProducts(from, to, 5);
+            service.getTopProducts(from, to, 10);
+
+            verify(metricsCube, times(1)).topProducts(any(), any(), eq(5));
+            verify(metricsCube, times(1)).topProducts(any(), any(), eq(10));
+        }
+
+        @Test
+        @DisplayName("should pass every call through when disabled")
+        void disabled() {
+            AnalyticsProperties properties = new AnalyticsProperties();
+            properties.getResultCache().setEnabled(false);
+            SimpleMeterRegistry uncachedRegistry = new SimpleMeterRegistry();
+            AnalyticsQueryService uncached = new AnalyticsQueryService(
+                    jdbcTemplate, metricsCube, new QueryResultCache(properties, uncachedRegistry),
+                    new Bulkheads(properties, uncachedRegistry), uncachedRegistry
+            );
+            when(jdbcTemplate.queryForList(any(String.class), any(Object[].class))).thenReturn(funnelRows);
+            Instant from = Instant.parse("2025-06-01T00:00:00Z");
+            Instant to = Instant.parse("2025-06-02T00:00:00Z");
+
+            uncached.getFunnel(from, to);
+            uncached.getFunnel(from, to);
+
+            verify(jdbcTemplate, times(2)).queryForList(any(String.class), any(Object[].class));
+        }
     }
 
     @Nested
@@ -52,8 +204,7 @@ class AnalyticsQueryServiceTest {
 
             when(jdbcTemplate.queryForList(
                     any(String.class),
-                    ArgumentMatchers.<Object>any(),
-                    ArgumentMatchers.<Object>any()
+                    any(Object[].class)
             )).thenReturn(mockRows);
 
             FunnelReportResponse result = service.getFunnel(from, to);
@@ -92,8 +243,7 @@ class AnalyticsQueryServiceTest {
 
             when(jdbcTemplate.queryForList(
                     any(String.class),
-                    ArgumentMatchers.<Object>any(),
-                    ArgumentMatchers.<Object>any()
+                    any(Object[].class)
             )).thenReturn(List.of());
 
             FunnelReportResponse result = service.getFunnel(from, to);
@@ -111,8 +261,7 @@ class AnalyticsQueryServiceTest {
 
             when(jdbcTemplate.queryForList(
                     any(String.class),
-                    ArgumentMatchers.<Object>any(),
-                    ArgumentMatchers.<Object>any()
+                    any(Object[].class)
             )).thenReturn(List.of(
                     Map.of("event_type", "ADD_TO_CART", "total_events", 5L)
             ));
@@ -123,6 +272,81 @@ class AnalyticsQueryServiceTest {
             // ADD_TO_CART step: previous (PRODUCT_VIEW) = 0, so conversion = null
             assertThat(result.steps().get(1).conversionFromPrevious()).isNull();
         }
+
+        @Test
+        @DisplayName("should union hourly sketches into per-step unique counts")
+        void unionStepSketches() throws Exception {
+            when(jdbcTemplate.queryForList(
+                    any(String.class),
+                    any(Object[].class)
+            )).thenReturn(List.of(Map.of("event_type", "PRODUCT_VIEW", "total_events", 10L)));
+            doAnswer(invocation -> {
+                RowCallbackHandler handler = invocation.getArgument(1);
+                handler.processRow(sketchRow("event_type", "PRODUCT_VIEW", sketch(1, 2, 3), sketch(100, 101)));
+                handler.processRow(sketchRow("event_type", "PRODUCT_VIEW", sketch(3, 4), sketch(101)));
+                handler.processRow(sketchRow("event_type", "PURCHASE", null, null));
+                return null;
+            }).when(jdbcTemplate).query(any(String.class), any(RowCallbackHandler.class), any(Object[].class));
+
+            FunnelReportResponse result = service.getFunnel(
+                    Instant.parse("2025-06-01T00:00:00Z"),
+                    Instant.parse("2025-06-08T00:00:00Z")
+            );
+
+            assertThat(result.steps().get(0).uniqueSessions()).isEqualTo(4L);
+            assertThat(result.steps().get(0).uniqueUsers()).isEqualTo(2L);
+            assertThat(result.steps().get(3).uniqueSessions()).isZero();
+        }
+    }
+
+    @Nested
+    @DisplayName("range planning")
+    class RangePlanning {
+
+        @Test
+        @DisplayName("should read whole days from the daily rollup and edge hours from hourly")
+        void splitsRangeIntoDaysAndHours() {
+            when(jdbcTemplate.queryForList(any(String.class), any(Object[].class))).thenReturn(List.of());
+
+            service.getFunnel(
+                    Instant.parse("2025-06-01T18:00:00Z"),
+                    Instant.parse("2025-06-04T05:00:00Z")
+            );
+
+            verify(jdbcTemplate).queryForList(
+                    contains("analytics_event_metrics_daily"),
+                    eq(Timestamp.from(Instant.parse("2025-06-01T18:00:00Z"))),
+                    eq(Timestamp.from(Instant.parse("2025-06-02T00:00:00Z"))),
+                    eq(Timestamp.from(Instant.parse("2025-06-04T00:00:00Z"))),
+                    eq(Timestamp.from(Instant.parse("2025-06-04T05:00:00Z"))),
+                    eq(Timestamp.from(Instant.parse("2025-06-02T00:00:00Z"))),
+                    eq(Timestamp.from(Instant.parse("2025-06-04T00:00:00Z")))
+            );
+        }
+
+        @Test
+        @DisplayName("should use only hourly rows when no whole day fits in the range")
+        void hoursOnlyForShortRange() {
+            MetricsRange range = MetricsRange.plan(
+                    Instant.parse("2025-06-01T06:00:00Z"),
+                    Instant.parse("2025-06-02T22:00:00Z")
+            );
+
+            assertThat(range.hasDays()).isFalse();
+            assertThat(range.daysFrom()).isEqualTo(range.from());
+        }
+
+        @Test
+        @DisplayName("should count a day as whole once its last hour bucket is in range")
+        void dayEndingAtLastHourIsWhole() {
+            MetricsRange range = MetricsRange.plan(
+                    Instant.parse("2025-06-01T00:00:00Z"),
+                    Instant.parse("2025-06-01T23:00:00Z")
+            );
+
+            assertThat(range.hasDays()).isTrue();
+            assertThat(range.daysTo()).isEqualTo(Instant.parse("2025-06-02T00:00:00Z"));
+        }
     }
 
     @Nested
@@ -136,16 +360,16 @@ class AnalyticsQueryServiceTest {
             Instant to = Instant.parse("2025-06-08T00:00:00Z");
 
             TopProductMetricResponse product1 = new TopProductMetricResponse(
-                    42, 500L, 100L, 30L, 0.2, 0.3
+                    42, 500L, 100L, 30L, 0.2, 0.3, 0L, 0L
             );
             TopProductMetricResponse product2 = new TopProductMetricResponse(
-                    99, 200L, 50L, 10L, 0.25, 0.2
+                    99, 200L, 50L, 10L, 0.25, 0.2, 0L, 0L
             );
 
             when(jdbcTemplate.query(
                     any(String.class),
                     ArgumentMatchers.<RowMapper<TopProductMetricResponse>>any(),
-                    any(), any(), any()
+                    any(Object[].class)
             )).thenReturn(List.of(product1, product2));
 
             List<TopProductMetricResponse> result = service.getTopProducts(from, to, 20);
@@ -162,7 +386,7 @@ class AnalyticsQueryServiceTest {
             when(jdbcTemplate.query(
                     any(String.class),
                     ArgumentMatchers.<RowMapper<TopProductMetricResponse>>any(),
-                    any(), any(), any()
+                    any(Object[].class)
             )).thenReturn(List.of());
 
             List<TopProductMetricResponse> result = service.getTopProducts(
@@ -173,5 +397,53 @@ class AnalyticsQueryServiceTest {
 
             assertThat(result).isEmpty();
         }
+
+        @Test
+        @DisplayName("should attach unique users and sessions across event types per product")
+        void attachProductUniques() throws Exception {
+            when(jdbcTemplate.query(
+                    any(String.class),
+                    ArgumentMatchers.<RowMapper<TopProductMetricResponse>>any(),
+                    any(Object[].class)
+            )).thenReturn(List.of(new TopProductMetricResponse(42, 5L, 2L, 1L, 0.4, 0.5, 0L, 0L)));
+            doAnswer(invocation -> {
+                RowCallbackHandler handler = invocation.getArgument(1);
+                handler.processRow(sketchRow("product_key", 42, sketch(1, 2), sketch(100, 101, 102)));
+                handler.processRow(sketchRow("product_key", 42, sketch(2), sketch(102, 103)));
+                return null;
+            }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+            List<TopProductMetricResponse> result = service.getTopProducts(
+                    Instant.parse("2025-06-01T00:00:00Z"),
+                    Instant.parse("2025-06-08T00:00:00Z"),
+                    20
+            );
+
+            assertThat(result).hasSize(1);
+            assertThat(result.get(0).views()).isEqualTo(5L);
+            assertThat(result.get(0).uniqueSessions()).isEqualTo(2L);
+            assertThat(result.get(0).uniqueUsers()).isEqualTo(4L);
+        }
+    }
+
+    private static ResultSet sketchRow(String keyColumn, Object key, byte[] sessions, byte[] users)
+            throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        if (key instanceof Integer id) {
+            when(rs.getInt(keyColumn)).thenReturn(id);
+        } else {
+            when(rs.getString(keyColumn)).thenReturn((String) key);
+        }
+        when(rs.getBytes("sessions_sketch")).thenReturn(sessions);
+        when(rs.getBytes("users_sketch")).thenReturn(users);
+        return rs;
+    }
+
+    private static byte[] sketch(long... values) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long value : values) {
+            sketch.add(value);
+        }
+        return sketch.toBytes();
     }
 }
@@ -0,0 +1,106 @@
+package com.projectx.analytics.analytics.service;
+
+import com.projectx.analytics.analytics.repository.ItemCooccurrenceRepository;
+import com.projectx.analytics.analytics.scoring.ItemNeighbors;
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ItemCooccurrenceService — Unit Tests")
+class ItemCooccurrenceServiceTest {
+
+    private static final ItemNeighbors LOADED =
+            ItemNeighbors.of(new int[] {1}, new int[][] {{2}}, new float[][] {{3f}});
+
+    private ItemCooccurrenceRepository repository;
+    private AnalyticsProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private ItemCooccurrenceService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ItemCooccurrenceRepository.class);
+        properties = new AnalyticsProperties();
+        properties.getAggregation().setLagSeconds(0);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new ItemCooccurrenceService(repository, properties, meterRegistry);
+        when(repository.loadNeighbors()).thenReturn(LOADED);
+    }
+
+    private void caughtUp() {
+        when(repository.applyNextBatch(any(), any())).thenAnswer(inv ->
+                new ItemCooccurrenceRepository.Batch(inv.getArgument(0), 1));
+    }
+
+    @Test
+    @DisplayName("should apply the next range with the configured settings and reload the neighbors")
+    void refreshAppliesAndReloads() {
+        caughtUp();
+
+        service.refresh();
+
+        verify(repository).applyNextBatch(
+                argThat(upper -> upper.isAfter(Instant.now().minusSeconds(5))),
+                same(properties.getCooccurrence())
+        );
+        assertThat(service.neighbors()).isSameAs(LOADED);
+        assertThat(meterRegistry.get("analytics.cooccurrence.products").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should refresh only once per interval when caught up")
+    void refreshIfDueRespectsInterval() {
+        caughtUp();
+
+        service.refreshIfDue();
+        service.refreshIfDue();
+
+        verify(repository, times(1)).applyNextBatch(any(), any());
+    }
+
+    @Test
+    @DisplayName("should keep applying ranges every cycle while a backlog remains")
+    void catchUp() {
+        when(repository.applyNextBatch(any(), any())).thenReturn(
+                new ItemCooccurrenceRepository.Batch(Instant.now().minus(30, ChronoUnit.DAYS), 10)
+        );
+
+        service.refreshIfDue();
+        service.refreshIfDue();
+
+        verify(repository, times(2)).applyNextBatch(any(), any());
+        assertThat(meterRegistry.get("analytics.cooccurrence.lag").gauge().value())
+                .isGreaterThan(29 * 86_400.0);
+    }
+
+    @Test
+    @DisplayName("should do nothing when disabled")
+    void disabled() {
+        properties.getCooccurrence().setEnabled(false);
+
+        service.onApplicationReady();
+        service.refreshIfDue();
+
+        verifyNoInteractions(repository);
+        assertThat(service.neighbors()).isSameAs(ItemNeighbors.EMPTY);
+    }
+
+    @Test
+    @DisplayName("should keep the previous neighbors when a refresh fails")
+    void refreshFailureKeepsNeighbors() {
+        service.onApplicationReady();
+        when(repository.applyNextBatch(any(), any())).thenThrow(new IllegalStateException("db down"));
+
+        service.refreshIfDue();
+
+        assertThat(service.neighbors()).isSameAs(LOADED);
+    }
+}
@@ -0,0 +1,96 @@
+package com.projectx.analytics.analytics.service;
+
+import com.projectx.analytics.analytics.repository.ProductPopularityRepository;
+import com.projectx.analytics.config.AnalyticsProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ProductPopularityService — Unit Tests")
+class ProductPopularityServiceTest {
+
+    private ProductPopularityRepository repository;
+    private AnalyticsProperties properties;
+    private ProductPopularityService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ProductPopularityRepository.class);
+        properties = new AnalyticsProperties();
+        service = new ProductPopularityService(repository, properties);
+    }
+
+    @Test
+    @DisplayName("should refresh the table with the configured window and half-life, then reload scores")
+    void refreshUsesSettings() {
+        properties.getPopularity().setWindowDays(10);
+        properties.getPopularity().setHalfLifeDays(2);
+        when(repository.loadScores()).thenReturn(new float[] {0f, 1.5f, 0f, 7f});
+
+        service.refresh();
+
+        verify(repository).refresh(any(), any(), eq(Duration.ofDays(2).toSeconds()));
+        assertThat(service.scoreOf(1)).isEqualTo(1.5f);
+        assertThat(service.scoreOf(3)).isEqualTo(7f);
+    }
+
+    @Test
+    @DisplayName("should pass a window start that is window-days before now")
+    void refreshWindow() {
+        properties.getPopularity().setWindowDays(30);
+        when(repository.loadScores()).thenReturn(new float[0]);
+
+        service.refresh();
+
+        verify(repository).refresh(
+                argThat(now -> Math.abs(Duration.between(now, Instant.now()).toSeconds()) < 5),
+                argThat(from -> Math.abs(Duration.between(from, Instant.now().minus(30, ChronoUnit.DAYS))
+                        .toSeconds()) < 5),
+                anyLong()
+        );
+    }
+
+    @Test
+    @DisplayName("should return zero for unknown or out-of-range products")
+    void scoreOfUnknown() {
+        when(repository.loadScores()).thenReturn(new float[] {0f, 2f});
+        service.refresh();
+
+        assertThat(service.scoreOf(0)).isZero();
+        assertThat(service.scoreOf(-4)).isZero();
+        assertThat(service.scoreOf(99)).isZero();
+    }
+
+    @Test
+    @DisplayName("should refresh only once per interval")
+    void refreshIfDueRespectsInterval() {
+        when(repository.loadScores()).thenReturn(new float[0]);
+
+        service.refreshIfDue();
+        service.refreshIfDue();
+
+        verify(repository, times(1)).refresh(any(), any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("should keep the previous scores when a refresh fails")
+    void refreshFailureKeepsScores() {
+        when(repository.loadScores()).thenReturn(new float[] {0f, 3f});
+        service.onApplicationReady();
+        when(repository.refresh(any(), any(), anyLong())).thenThrow(new IllegalStateException("db down"));
+
+        service.refreshIfDue();
+
+        assertThat(service.scoreOf(1)).isEqualTo(3f);
+    }
+}
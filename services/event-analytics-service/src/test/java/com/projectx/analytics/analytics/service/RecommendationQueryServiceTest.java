@@ -1,21 +1,32 @@
 package com.projectx.analytics.analytics.service;
 
+import com.projectx.analytics.analytics.cache.RecommendationCache;
 import com.projectx.analytics.analytics.dto.PersonalizedRecommendationResponse;
 import com.projectx.analytics.analytics.dto.RecommendationProductResponse;
 import com.projectx.analytics.analytics.dto.TopBrandMetricResponse;
+import com.projectx.analytics.analytics.scoring.RecommendationEngine;
+import com.projectx.analytics.analytics.scoring.RelatedProductsEngine;
+import com.projectx.analytics.analytics.scoring.ScoredProduct;
+import com.projectx.analytics.analytics.scoring.ViewerScores;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -23,12 +34,87 @@ import static org.mockito.Mockito.*;
 class RecommendationQueryServiceTest {
 
     private JdbcTemplate jdbcTemplate;
+    private RecommendationEngine recommendationEngine;
+    private RelatedProductsEngine relatedProductsEngine;
     private RecommendationQueryService service;
 
     @BeforeEach
     void setUp() {
         jdbcTemplate = mock(JdbcTemplate.class);
-        service = new RecommendationQueryService(jdbcTemplate);
+        recommendationEngine = mock(RecommendationEngine.class);
+        relatedProductsEngine = mock(RelatedProductsEngine.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AnalyticsProperties properties = new AnalyticsProperties();
+        service = new RecommendationQueryService(
+                jdbcTemplate,
+                recommendationEngine,
+                relatedProductsEngine,
+                new RecommendationCache(properties, meterRegistry),
+                new Bulkheads(properties, meterRegistry),
+                meterRegistry
+        );
+    }
+
+    @Nested
+    @DisplayName("getRecommendations — in-process scoring")
+    class InProcessScoring {
+
+        @Test
+        @DisplayName("should rank with the engine and skip the SQL scoring query when the catalog is loaded")
+        void usesEngine() {
+            when(recommendationEngine.isReady()).thenReturn(true);
+            when(recommendationEngine.rank(any(), any(), any(), anyInt(), anyString())).thenReturn(Optional.of(List.of(
+                    new ScoredProduct(42, 12.0, 5.0, 0.0),
+                    new ScoredProduct(7, 3.0, 0.0, 2.0)
+            )));
+
+            PersonalizedRecommendationResponse result = service.getRecommendations(
+                    1L, "sess-abc", 3, List.of(9), 20, "seed"
+            );
+
+            assertThat(result.items()).extracting(RecommendationProductResponse::productId).containsExactly(42, 7);
+            assertThat(result.items()).extracting(RecommendationProductResponse::reason)
+                    .containsExactly("direct_interest", "brand_affinity");
+            verify(recommendationEngine).rank(any(ViewerScores.class), eq(3), eq(List.of(9)), eq(20), eq("seed"));
+            verify(jdbcTemplate, never()).query(
+                    contains("candidate_scores"),
+                    ArgumentMatchers.<RowMapper<RecommendationProductResponse>>any(),
+                    any(Object[].class)
+            );
+            verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), eq("u:1"), any());
+        }
+
+        @Test
+        @DisplayName("should answer a repeated request from the cache")
+        void repeatedRequestCached() {
+            when(recommendationEngine.isReady()).thenReturn(true);
+            when(recommendationEngine.rank(any(), any(), any(), anyInt(), anyString()))
+                    .thenReturn(Optional.of(List.of(new ScoredProduct(42, 12.0, 5.0, 0.0))));
+
+            PersonalizedRecommendationResponse first = service.getRecommendations(
+                    1L, "sess-abc", 3, List.of(9, 4), 20, null
+            );
+            PersonalizedRecommendationResponse second = service.getRecommendations(
+                    1L, "other-session", 3, List.of(4, 9, 4), 20, " "
+            );
+            service.getRecommendations(1L, "sess-abc", 3, List.of(9, 4), 10, null);
+
+            assertThat(second).isSameAs(first);
+            verify(recommendationEngine, times(2)).rank(any(), any(), any(), anyInt(), anyString());
+        }
+
+        @Test
+        @DisplayName("should not load viewer scores for an anonymous request without a session")
+        void anonymousViewer() {
+            when(recommendationEngine.isReady()).thenReturn(true);
+            when(recommendationEngine.rank(any(), any(), any(), anyInt(), anyString()))
+                    .thenReturn(Optional.of(List.of()));
+
+            service.getRecommendations(null, null, null, null, 10, null);
+
+            verify(recommendationEngine).rank(eq(ViewerScores.EMPTY), isNull(), eq(List.of()), eq(10), anyString());
+            verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(), any());
+        }
     }
 
     @Nested
@@ -56,9 +142,9 @@ class RecommendationQueryServiceTest {
 
             // Second query call returns top brands
             when(jdbcTemplate.query(
-                    contains("viewer_events"),
+                    contains("analytics_viewer_brand_profile"),
                     ArgumentMatchers.<RowMapper<TopBrandMetricResponse>>any(),
-                    any(), any(), any(), any(), any(), any(), any()
+                    any(), any(), any()
             )).thenReturn(mockBrands);
 
             PersonalizedRecommendationResponse result = service.getRecommendations(
@@ -80,7 +166,7 @@ class RecommendationQueryServiceTest {
             when(jdbcTemplate.query(
                     anyString(),
                     ArgumentMatchers.<RowMapper<TopBrandMetricResponse>>any(),
-                    any(), any(), any(), any(), any(), any(), any()
+                    any(), any(), any()
             )).thenReturn(List.of());
 
             // Should not throw with extreme values
@@ -103,7 +189,7 @@ class RecommendationQueryServiceTest {
             when(jdbcTemplate.query(
                     anyString(),
                     ArgumentMatchers.<RowMapper<TopBrandMetricResponse>>any(),
-                    any(), any(), any(), any(), any(), any(), any()
+                    any(), any(), any()
             )).thenReturn(List.of());
 
             assertThatNoException().isThrownBy(() ->
@@ -122,7 +208,7 @@ class RecommendationQueryServiceTest {
             when(jdbcTemplate.query(
                     anyString(),
                     ArgumentMatchers.<RowMapper<TopBrandMetricResponse>>any(),
-                    any(), any(), any(), any(), any(), any(), any()
+                    any(), any(), any()
             )).thenReturn(List.of());
 
             List<Integer> badIds = new java.util.ArrayList<>();
@@ -137,6 +223,51 @@ class RecommendationQueryServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("getRelatedRecommendations")
+    class GetRelatedRecommendations {
+
+        @Test
+        @DisplayName("should expand the viewer's recent products and the given product")
+        void expandsRecentProducts() {
+            doAnswer(inv -> {
+                RowCallbackHandler handler = inv.getArgument(1);
+                java.sql.ResultSet rs = mock(java.sql.ResultSet.class);
+                when(rs.getInt("product_id")).thenReturn(5);
+                when(rs.getDouble("score")).thenReturn(0.0);
+                handler.processRow(rs);
+                return null;
+            }).when(jdbcTemplate).query(contains("ORDER BY MAX(last_event_at) DESC"), any(RowCallbackHandler.class),
+                    eq("u:1"), any(), eq(20));
+            when(relatedProductsEngine.rank(any(), any(), any(), any(), anyInt()))
+                    .thenReturn(Optional.of(List.of(new ScoredProduct(8, 1.5, 0.0, 0.0))));
+
+            PersonalizedRecommendationResponse result = service.getRelatedRecommendations(
+                    1L, "sess-abc", 7, 3, List.of(9, -1), 10
+            );
+
+            assertThat(result.items()).extracting(RecommendationProductResponse::productId).containsExactly(8);
+            assertThat(result.items().get(0).reason()).isEqualTo("frequently_together");
+            assertThat(result.topBrands()).isEmpty();
+            verify(relatedProductsEngine).rank(
+                    aryEq(new int[] {5, 7}), aryEq(new double[] {0.0, 1.0}), eq(3), eq(List.of(9)), eq(10)
+            );
+        }
+
+        @Test
+        @DisplayName("should return no items when the catalog is not loaded")
+        void catalogNotLoaded() {
+            when(relatedProductsEngine.rank(any(), any(), any(), any(), anyInt())).thenReturn(Optional.empty());
+
+            PersonalizedRecommendationResponse result = service.getRelatedRecommendations(
+                    null, null, 7, null, null, 10
+            );
+
+            assertThat(result.items()).isEmpty();
+            verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(), any(), any());
+        }
+    }
+
     @Nested
     @DisplayName("getTopBrands")
     class GetTopBrands {
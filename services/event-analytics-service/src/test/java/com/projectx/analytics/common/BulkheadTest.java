@@ -0,0 +1,119 @@
+package com.projectx.analytics.common;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Bulkhead — Unit Tests")
+class BulkheadTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private Bulkhead bulkhead(int maxConcurrent, long acquireTimeoutMs, AnalyticsProperties.BulkheadPolicy policy) {
+        return bulkhead("recommendations", maxConcurrent, acquireTimeoutMs, policy);
+    }
+
+    private Bulkhead bulkhead(
+            String name,
+            int maxConcurrent,
+            long acquireTimeoutMs,
+            AnalyticsProperties.BulkheadPolicy policy
+    ) {
+        return new Bulkhead(
+                name,
+                new AnalyticsProperties.BulkheadLimit(maxConcurrent, acquireTimeoutMs, policy),
+                meterRegistry
+        );
+    }
+
+    // Holds the only permit on a virtual thread until the returned latch is released.
+    private CountDownLatch occupy(Bulkhead bulkhead) throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> bulkhead.run(() -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        return release;
+    }
+
+    private double gauge(String name, String bulkhead) {
+        return meterRegistry.get(name).tag("bulkhead", bulkhead).gauge().value();
+    }
+
+    private double rejected(String bulkhead) {
+        return meterRegistry.counter("bulkhead.rejected", "bulkhead", bulkhead).count();
+    }
+
+    @Test
+    @DisplayName("should return the action result and give the permit back")
+    void callReleasesPermit() {
+        Bulkhead bulkhead = bulkhead(1, 0, AnalyticsProperties.BulkheadPolicy.FAIL_FAST);
+
+        assertThat(bulkhead.call(() -> 42)).isEqualTo(42);
+        assertThatThrownBy(() -> bulkhead.run(() -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(bulkhead.active()).isZero();
+        assertThat(bulkhead.call(() -> "again")).isEqualTo("again");
+    }
+
+    @Test
+    @DisplayName("should reject at once with FAIL_FAST while the permits are taken")
+    void failFast() throws InterruptedException {
+        Bulkhead bulkhead = bulkhead(1, 10_000, AnalyticsProperties.BulkheadPolicy.FAIL_FAST);
+        CountDownLatch release = occupy(bulkhead);
+
+        assertThat(gauge("bulkhead.active", "recommendations")).isEqualTo(1.0);
+        assertThat(gauge("bulkhead.limit", "recommendations")).isEqualTo(1.0);
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> bulkhead.call(() -> 1))
+                .isInstanceOf(BulkheadFullException.class)
+                .hasMessageContaining("recommendations");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(1_000);
+        assertThat(rejected("recommendations")).isEqualTo(1.0);
+
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("should wait for a permit with QUEUE and reject after the acquire timeout")
+    void queue() throws Exception {
+        Bulkhead bulkhead = bulkhead(1, 100, AnalyticsProperties.BulkheadPolicy.QUEUE);
+        CountDownLatch release = occupy(bulkhead);
+
+        assertThatThrownBy(() -> bulkhead.call(() -> 1)).isInstanceOf(BulkheadFullException.class);
+        assertThat(rejected("recommendations")).isEqualTo(1.0);
+        release.countDown();
+
+        Bulkhead patient = bulkhead("analytics", 1, 10_000, AnalyticsProperties.BulkheadPolicy.QUEUE);
+        CountDownLatch releasePatient = occupy(patient);
+        CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> patient.call(() -> 7));
+        while (gauge("bulkhead.queued", "analytics") == 0) {
+            Thread.sleep(1);
+        }
+        releasePatient.countDown();
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(7);
+        assertThat(rejected("analytics")).isZero();
+    }
+}
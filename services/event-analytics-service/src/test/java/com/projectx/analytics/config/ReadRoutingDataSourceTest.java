@@ -0,0 +1,150 @@
+package com.projectx.analytics.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ReadRoutingDataSource — Unit Tests")
+class ReadRoutingDataSourceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private HikariDataSource primary;
+    private Connection primaryConnection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        primaryConnection = mock(Connection.class);
+        primary = pool("events-read-primary", primaryConnection);
+    }
+
+    private static HikariDataSource pool(String name, Connection connection) throws SQLException {
+        HikariDataSource pool = mock(HikariDataSource.class);
+        when(pool.getPoolName()).thenReturn(name);
+        when(pool.getConnection()).thenReturn(connection);
+        return pool;
+    }
+
+    private ReadRoutingDataSource routing(HikariDataSource... replicas) {
+        return new ReadRoutingDataSource(primary, List.of(replicas), 30.0, meterRegistry);
+    }
+
+    private double fallbacks() {
+        return meterRegistry.counter("events.db.read.fallback").count();
+    }
+
+    @Nested
+    @DisplayName("Without replicas")
+    class WithoutReplicas {
+
+        @Test
+        @DisplayName("should read from the primary read pool without counting a fallback")
+        void readFromPrimary() throws SQLException {
+            ReadRoutingDataSource routing = routing();
+
+            assertThat(routing.getConnection()).isSameAs(primaryConnection);
+            assertThat(fallbacks()).isZero();
+        }
+    }
+
+    @Nested
+    @DisplayName("With replicas")
+    class WithReplicas {
+
+        private Connection firstConnection;
+        private Connection secondConnection;
+        private HikariDataSource first;
+        private HikariDataSource second;
+
+        @BeforeEach
+        void setUp() throws SQLException {
+            firstConnection = mock(Connection.class);
+            secondConnection = mock(Connection.class);
+            first = pool("events-read-1", firstConnection);
+            second = pool("events-read-2", secondConnection);
+        }
+
+        @Test
+        @DisplayName("should keep replicas out of rotation until their lag is known")
+        void primaryBeforeFirstCheck() throws SQLException {
+            ReadRoutingDataSource routing = routing(first);
+
+            assertThat(routing.getConnection()).isSameAs(primaryConnection);
+            assertThat(fallbacks()).isEqualTo(1.0);
+            verify(first, never()).getConnection();
+        }
+
+        @Test
+        @DisplayName("should alternate between replicas within the lag limit")
+        void roundRobin() throws SQLException {
+            ReadRoutingDataSource routing = routing(first, second);
+            routing.recordLag(0, 0.0);
+            routing.recordLag(1, 12.5);
+
+            assertThat(List.of(routing.getConnection(), routing.getConnection(), routing.getConnection()))
+                    .containsExactly(firstConnection, secondConnection, firstConnection);
+            assertThat(fallbacks()).isZero();
+            assertThat(meterRegistry.get("events.db.read.replica.lag").tag("pool", "events-read-2").gauge().value())
+                    .isEqualTo(12.5);
+        }
+
+        @Test
+        @DisplayName("should skip a stale replica and fall back once none is fresh enough")
+        void skipStaleReplica() throws SQLException {
+            ReadRoutingDataSource routing = routing(first, second);
+            routing.recordLag(0, 120.0);
+            routing.recordLag(1, 1.0);
+
+            assertThat(routing.getConnection()).isSameAs(secondConnection);
+            assertThat(routing.getConnection()).isSameAs(secondConnection);
+
+            routing.recordLag(1, null);
+
+            assertThat(routing.getConnection()).isSameAs(primaryConnection);
+            assertThat(fallbacks()).isEqualTo(1.0);
+            assertThat(meterRegistry.get("events.db.read.replica.lag").tag("pool", "events-read-2").gauge().value())
+                    .isNaN();
+        }
+
+        @Test
+        @DisplayName("should take a replica out of rotation when it refuses connections")
+        void replicaConnectionFailure() throws SQLException {
+            when(first.getConnection()).thenThrow(new SQLTransientConnectionException("timeout"));
+            ReadRoutingDataSource routing = routing(first);
+            routing.recordLag(0, 0.0);
+
+            assertThat(routing.getConnection()).isSameAs(primaryConnection);
+            assertThat(routing.getConnection()).isSameAs(primaryConnection);
+            verify(first, times(1)).getConnection();
+            assertThat(fallbacks()).isEqualTo(2.0);
+
+            routing.recordLag(0, 0.0);
+
+            reset(first);
+            when(first.getConnection()).thenReturn(firstConnection);
+            assertThat(routing.getConnection()).isSameAs(firstConnection);
+        }
+    }
+
+    @Test
+    @DisplayName("should close every pool it owns")
+    void closePools() throws SQLException {
+        HikariDataSource replica = pool("events-read-1", mock(Connection.class));
+
+        routing(replica).close();
+
+        verify(replica).close();
+        verify(primary).close();
+    }
+}
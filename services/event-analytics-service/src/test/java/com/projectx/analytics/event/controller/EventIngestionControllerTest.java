@@ -1,6 +1,11 @@
 package com.projectx.analytics.event.controller;
 
+import com.projectx.analytics.event.dto.EventRequest;
+import com.projectx.analytics.event.dto.RejectedLineResponse;
+import com.projectx.analytics.event.dto.StreamIngestionResponse;
+import com.projectx.analytics.event.service.CompactBatchDecoder;
 import com.projectx.analytics.event.service.EventIngestionService;
+import com.projectx.analytics.event.service.EventStreamIngestionService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -10,6 +15,8 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.when;
@@ -28,6 +35,12 @@ class EventIngestionControllerTest {
     @MockitoBean
     private EventIngestionService eventIngestionService;
 
+    @MockitoBean
+    private EventStreamIngestionService eventStreamIngestionService;
+
+    @MockitoBean
+    private CompactBatchDecoder compactBatchDecoder;
+
     // ========== POST /api/v1/events ==========
 
     @Nested
@@ -227,5 +240,103 @@ class EventIngestionControllerTest {
                                     """))
                     .andExpect(status().isUnauthorized());
         }
+
+        @Test
+        @DisplayName("should route an application/cbor body through the compact decoder")
+        void acceptCborBatch() throws Exception {
+            List<EventRequest> decoded = List.of(new EventRequest(
+                    null, "PRODUCT_VIEW", null, "s1", 10, null, null, null, null, null, null
+            ));
+            when(compactBatchDecoder.decode(any())).thenReturn(decoded);
+            when(eventIngestionService.ingestBatch(decoded)).thenReturn(1);
+
+            mockMvc.perform(post("/api/v1/events/batch")
+                            .header("X-Events-Api-Key", API_KEY)
+                            .contentType("application/cbor")
+                            .content(new byte[] {(byte) 0x80}))
+                    .andExpect(status().isAccepted())
+                    .andExpect(jsonPath("$.accepted").value(1));
+        }
+
+        @Test
+        @DisplayName("should return 400 when the CBOR body is rejected")
+        void rejectInvalidCborBatch() throws Exception {
+            when(compactBatchDecoder.decode(any()))
+                    .thenThrow(new IllegalArgumentException("Malformed CBOR: unexpected end-of-input"));
+
+            mockMvc.perform(post("/api/v1/events/batch")
+                            .header("X-Events-Api-Key", API_KEY)
+                            .contentType("application/cbor")
+                            .content(new byte[] {(byte) 0x9f}))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value("Malformed CBOR: unexpected end-of-input"));
+        }
+    }
+
+    // ========== POST /api/v1/events/stream ==========
+
+    @Nested
+    @DisplayName("POST /api/v1/events/stream")
+    class StreamEvents {
+
+        @Test
+        @DisplayName("should accept NDJSON and return per-line counts")
+        void acceptNdjson() throws Exception {
+            when(eventStreamIngestionService.ingest(any())).thenReturn(new StreamIngestionResponse(
+                    3, 1, 1, 1, List.of(new RejectedLineResponse(3, "Unsupported eventType: CLICK")), 3, null
+            ));
+
+            mockMvc.perform(post("/api/v1/events/stream")
+                            .header("X-Events-Api-Key", API_KEY)
+                            .contentType("application/x-ndjson")
+                            .content("""
+                                    {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                                    {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                                    {"eventType":"CLICK","sessionId":"s1"}
+                                    """))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.lines").value(3))
+                    .andExpect(jsonPath("$.accepted").value(1))
+                    .andExpect(jsonPath("$.duplicates").value(1))
+                    .andExpect(jsonPath("$.rejected").value(1))
+                    .andExpect(jsonPath("$.rejectedLines[0].line").value(3))
+                    .andExpect(jsonPath("$.committedLines").value(3));
+        }
+
+        @Test
+        @DisplayName("should return 503 with the committed line count when a write fails mid-stream")
+        void partialFailure() throws Exception {
+            when(eventStreamIngestionService.ingest(any())).thenReturn(new StreamIngestionResponse(
+                    700, 500, 0, 0, List.of(), 500, "Failed to write events after line 500"
+            ));
+
+            mockMvc.perform(post("/api/v1/events/stream")
+                            .header("X-Events-Api-Key", API_KEY)
+                            .contentType("application/x-ndjson")
+                            .content("{\"eventType\":\"PRODUCT_VIEW\",\"sessionId\":\"s1\"}\n"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"))
+                    .andExpect(jsonPath("$.committedLines").value(500))
+                    .andExpect(jsonPath("$.error").value("Failed to write events after line 500"));
+        }
+
+        @Test
+        @DisplayName("should return 415 for a JSON body")
+        void rejectJsonContentType() throws Exception {
+            mockMvc.perform(post("/api/v1/events/stream")
+                            .header("X-Events-Api-Key", API_KEY)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{}"))
+                    .andExpect(status().isUnsupportedMediaType());
+        }
+
+        @Test
+        @DisplayName("should return 401 without API key")
+        void streamWithoutApiKey() throws Exception {
+            mockMvc.perform(post("/api/v1/events/stream")
+                            .contentType("application/x-ndjson")
+                            .content("{}"))
+                    .andExpect(status().isUnauthorized());
+        }
     }
 }
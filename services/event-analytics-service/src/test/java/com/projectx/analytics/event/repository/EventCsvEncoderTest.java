@@ -0,0 +1,72 @@
+package com.projectx.analytics.event.repository;
+
+import com.projectx.analytics.event.model.NormalizedEvent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("EventCsvEncoder — Unit Tests")
+class EventCsvEncoderTest {
+
+    private static final UUID ID = UUID.fromString("11111111-2222-3333-4444-555555555555");
+
+    @Test
+    @DisplayName("should encode a full event in COPY column order")
+    void encodeFullEvent() {
+        NormalizedEvent event = new NormalizedEvent(
+                ID, "PURCHASE", 7L, "sess-1", 42, 5, 900L,
+                "/checkout", "web", "mobile",
+                Instant.parse("2025-06-01T12:00:00Z"),
+                "{\"price\":4990}"
+        );
+
+        StringBuilder out = new StringBuilder();
+        EventCsvEncoder.appendRow(out, event);
+
+        assertThat(out.toString()).isEqualTo(
+                ID + ",\"PURCHASE\",7,\"sess-1\",42,5,900,\"/checkout\",\"web\",\"mobile\","
+                        + "2025-06-01T12:00:00Z,\"{\"\"price\"\":4990}\"\n"
+        );
+    }
+
+    @Test
+    @DisplayName("should leave null columns unquoted so COPY reads them as NULL")
+    void encodeNulls() {
+        NormalizedEvent event = new NormalizedEvent(
+                ID, "PRODUCT_VIEW", null, "sess-1", null, null, null,
+                null, null, null,
+                Instant.parse("2025-06-01T12:00:00Z"),
+                null
+        );
+
+        StringBuilder out = new StringBuilder();
+        EventCsvEncoder.appendRow(out, event);
+
+        assertThat(out.toString()).isEqualTo(
+                ID + ",\"PRODUCT_VIEW\",,\"sess-1\",,,,,,,2025-06-01T12:00:00Z,\"{}\"\n"
+        );
+    }
+
+    @Test
+    @DisplayName("should keep commas and newlines inside quoted values")
+    void encodeSeparatorsInsideValues() {
+        NormalizedEvent event = new NormalizedEvent(
+                ID, "SEARCH", null, "sess,1", null, null, null,
+                "/search?q=a,b", null, null,
+                Instant.parse("2025-06-01T12:00:00Z"),
+                "{\"q\":\"line1\\nline2\"}"
+        );
+
+        StringBuilder out = new StringBuilder();
+        EventCsvEncoder.appendRow(out, event);
+
+        assertThat(out.toString())
+                .contains("\"sess,1\"")
+                .contains("\"/search?q=a,b\"")
+                .endsWith("\"{\"\"q\"\":\"\"line1\\nline2\"\"}\"\n");
+    }
+}
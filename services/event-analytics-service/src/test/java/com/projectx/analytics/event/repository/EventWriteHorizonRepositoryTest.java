@@ -0,0 +1,66 @@
+package com.projectx.analytics.event.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Open-transaction horizon against a real database. Runs only when EVENTS_BENCH_DB_URL points at
+ * a disposable Postgres database (jdbc:postgresql://...).
+ */
+@EnabledIfEnvironmentVariable(named = "EVENTS_BENCH_DB_URL", matches = ".+")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@DisplayName("EventWriteHorizonRepository — Database Tests")
+class EventWriteHorizonRepositoryTest {
+
+    private HikariDataSource dataSource;
+    private EventWriteHorizonRepository repository;
+
+    @BeforeAll
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getenv("EVENTS_BENCH_DB_URL"));
+        dataSource.setMaximumPoolSize(2);
+        repository = new EventWriteHorizonRepository(new JdbcTemplate(dataSource));
+    }
+
+    @AfterAll
+    void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    @DisplayName("should stop at the start of a transaction that is still open")
+    void stopsAtOpenTransaction() throws SQLException {
+        Instant upperBound = Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MICROS);
+        try (Connection writer = dataSource.getConnection()) {
+            writer.setAutoCommit(false);
+            Instant started;
+            try (Statement statement = writer.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT now()")) {
+                rs.next();
+                started = rs.getTimestamp(1).toInstant();
+            }
+
+            assertThat(repository.committedBefore(upperBound)).isEqualTo(started);
+
+            writer.commit();
+        }
+
+        assertThat(repository.committedBefore(upperBound)).isEqualTo(upperBound);
+    }
+}
@@ -0,0 +1,169 @@
+package com.projectx.analytics.event.repository;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Writes and deduplication against a real database. Runs only when EVENTS_BENCH_DB_URL points at a
+ * disposable Postgres database (jdbc:postgresql://...).
+ */
+@EnabledIfEnvironmentVariable(named = "EVENTS_BENCH_DB_URL", matches = ".+")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@DisplayName("EventWriteRepository — Database Tests")
+class EventWriteRepositoryTest {
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getenv("EVENTS_BENCH_DB_URL"));
+        dataSource.setMaximumPoolSize(2);
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterAll
+    void tearDown() {
+        dataSource.close();
+    }
+
+    private EventWriteRepository repository(AnalyticsProperties.WriteMode mode) {
+        AnalyticsProperties properties = new AnalyticsProperties();
+        properties.getIngestion().setWriteMode(mode);
+        return new EventWriteRepository(jdbcTemplate, properties, new SimpleMeterRegistry());
+    }
+
+    private NormalizedEvent event(Instant occurredAt) {
+        return new NormalizedEvent(
+                UUID.randomUUID(), "PRODUCT_VIEW", null, "copy-session", 42, null, null,
+                null, null, null, occurredAt, "{}"
+        );
+    }
+
+    private NormalizedEvent claimed(UUID id, Instant receivedAt) {
+        return new NormalizedEvent(
+                id, "PRODUCT_VIEW", null, "retry-session", 42, null, null,
+                null, null, null, receivedAt, "{}", true
+        );
+    }
+
+    private int rows(UUID id) {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM analytics_events_raw WHERE id = ?", Integer.class, id
+        );
+    }
+
+    @ParameterizedTest
+    @EnumSource(AnalyticsProperties.WriteMode.class)
+    @DisplayName("should store a retried eventId without occurredAt once, at its first-seen time")
+    void retryWithoutOccurredAt(AnalyticsProperties.WriteMode mode) {
+        EventWriteRepository repository = repository(mode);
+        UUID id = UUID.randomUUID();
+        Instant first = Instant.parse("2025-06-01T12:00:00.123456Z");
+
+        assertThat(repository.insertEvents(List.of(claimed(id, first)))).isEqualTo(1);
+        assertThat(repository.insertEvents(List.of(claimed(id, first.plusSeconds(90))))).isZero();
+        assertThat(repository.insertEvents(List.of(
+                claimed(id, first.plusSeconds(120)), claimed(id, first.plusSeconds(121))
+        ))).isZero();
+
+        assertThat(rows(id)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT occurred_at FROM analytics_events_raw WHERE id = ?", Instant.class, id
+        )).isEqualTo(first);
+    }
+
+    @ParameterizedTest
+    @EnumSource(AnalyticsProperties.WriteMode.class)
+    @DisplayName("should drop a retried eventId that was restamped with another occurredAt")
+    void retryWithOtherOccurredAt(AnalyticsProperties.WriteMode mode) {
+        EventWriteRepository repository = repository(mode);
+        UUID id = UUID.randomUUID();
+        Instant first = Instant.parse("2025-06-02T12:00:00Z");
+
+        assertThat(repository.insertEvents(List.of(claimed(id, first)))).isEqualTo(1);
+        assertThat(repository.insertEvents(List.of(claimed(id, first.plus(1, ChronoUnit.DAYS))))).isZero();
+
+        assertThat(rows(id)).isEqualTo(1);
+    }
+
+    @ParameterizedTest
+    @EnumSource(AnalyticsProperties.WriteMode.class)
+    @DisplayName("should resolve a retry to the first-seen time even when the first write was lost")
+    void retryAfterLostWrite(AnalyticsProperties.WriteMode mode) {
+        EventWriteRepository repository = repository(mode);
+        UUID id = UUID.randomUUID();
+        Instant first = Instant.parse("2025-06-01T13:00:00Z");
+        repository.insertEvents(List.of(claimed(id, first)));
+        jdbcTemplate.update("DELETE FROM analytics_events_raw WHERE id = ?", id);
+
+        assertThat(repository.insertEvents(List.of(claimed(id, first.plusSeconds(60))))).isEqualTo(1);
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT occurred_at FROM analytics_events_raw WHERE id = ?", Instant.class, id
+        )).isEqualTo(first);
+    }
+
+    @ParameterizedTest
+    @EnumSource(AnalyticsProperties.WriteMode.class)
+    @DisplayName("should forget first-seen times past the retention cutoff")
+    void expiresEventIds(AnalyticsProperties.WriteMode mode) {
+        EventWriteRepository repository = repository(mode);
+        UUID id = UUID.randomUUID();
+        repository.insertEvents(List.of(claimed(id, Instant.parse("2025-06-01T14:00:00Z"))));
+
+        assertThat(repository.deleteEventIdsBefore(Instant.now().plusSeconds(1))).isPositive();
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM analytics_event_ids WHERE id = ?", Integer.class, id
+        )).isZero();
+    }
+
+    @Test
+    @DisplayName("should stage COPY batches in a session table, even several per transaction")
+    void copyStagesPerSession() {
+        EventWriteRepository repository = repository(AnalyticsProperties.WriteMode.COPY);
+        Instant occurredAt = Instant.parse("2025-06-01T15:00:00Z");
+        TransactionTemplate transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        List<Integer> inserted = transactions.execute(status -> List.of(
+                repository.insertEvents(List.of(event(occurredAt), event(occurredAt))),
+                repository.insertEvents(List.of(event(occurredAt)))
+        ));
+
+        assertThat(inserted).containsExactly(2, 1);
+        assertThat(repository.insertEvents(List.of(event(occurredAt)))).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT to_regclass('analytics_events_raw_staging') IS NULL", Boolean.class
+        )).isTrue();
+    }
+}
@@ -0,0 +1,171 @@
+package com.projectx.analytics.event.repository;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Manual comparison of request concurrency on Tomcat's default 200 platform threads versus one
+ * virtual thread per request, both against the same bounded Hikari pool. Each simulated request
+ * spends {@link #CLIENT_WAIT} blocked outside the database (slow client, upstream call) and then
+ * writes a small batch. Runs only when EVENTS_BENCH_DB_URL points at a disposable Postgres database.
+ */
+@EnabledIfEnvironmentVariable(named = "EVENTS_BENCH_DB_URL", matches = ".+")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@DisplayName("Ingestion — platform vs virtual thread request concurrency")
+class IngestionConcurrencyBenchmarkTest {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final int DB_POOL_SIZE = 10;
+    private static final int REQUESTS = 4_000;
+    private static final int EVENTS_PER_REQUEST = 10;
+    private static final Duration CLIENT_WAIT = Duration.ofMillis(100);
+
+    private HikariDataSource dataSource;
+    private EventWriteRepository repository;
+
+    @BeforeAll
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getenv("EVENTS_BENCH_DB_URL"));
+        dataSource.setMaximumPoolSize(DB_POOL_SIZE);
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+        repository = new EventWriteRepository(
+                new JdbcTemplate(dataSource),
+                new AnalyticsProperties(),
+                new SimpleMeterRegistry()
+        );
+    }
+
+    @AfterAll
+    void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    void compareThreadModels() throws Exception {
+        Result platform;
+        try (ExecutorService executor = Executors.newFixedThreadPool(PLATFORM_THREADS)) {
+            platform = run(executor);
+        }
+
+        Path jfr = Files.createTempFile("ingest-pinning", ".jfr");
+        Result virtual;
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(1)).withStackTrace();
+            recording.start();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                virtual = run(executor);
+            }
+            recording.stop();
+            recording.dump(jfr);
+        }
+        List<RecordedEvent> pinned = pinnedEvents(jfr);
+
+        System.out.printf(
+                "%d requests, %d-connection pool: platform(%d) peak in-flight=%d, %.0f req/s; "
+                        + "virtual peak in-flight=%d, %.0f req/s (x%.2f); pinned events=%d%n",
+                REQUESTS, DB_POOL_SIZE, PLATFORM_THREADS,
+                platform.peakInFlight(), platform.rate(),
+                virtual.peakInFlight(), virtual.rate(), virtual.rate() / platform.rate(),
+                pinned.size()
+        );
+        assertThat(platform.peakInFlight()).isLessThanOrEqualTo(PLATFORM_THREADS);
+        assertThat(virtual.peakInFlight()).isGreaterThan(PLATFORM_THREADS);
+        assertThat(dataSource.getHikariPoolMXBean().getTotalConnections()).isLessThanOrEqualTo(DB_POOL_SIZE);
+        assertThat(pinned).isEmpty();
+    }
+
+    private Result run(ExecutorService executor) throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Future<Integer>> results = new ArrayList<>(REQUESTS);
+        long started = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            results.add(executor.submit(() -> {
+                peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(CLIENT_WAIT);
+                    return repository.insertEvents(batch());
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }));
+        }
+        int accepted = 0;
+        for (Future<Integer> result : results) {
+            accepted += result.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+
+        assertThat(accepted).isEqualTo(REQUESTS * EVENTS_PER_REQUEST);
+        return new Result(peak.get(), REQUESTS / seconds);
+    }
+
+    private static List<RecordedEvent> pinnedEvents(Path jfr) throws IOException {
+        try {
+            return RecordingFile.readAllEvents(jfr).stream()
+                    .filter(event -> event.getEventType().getName().equals("jdk.VirtualThreadPinned"))
+                    .toList();
+        } finally {
+            Files.deleteIfExists(jfr);
+        }
+    }
+
+    private static List<NormalizedEvent> batch() {
+        Instant now = Instant.now();
+        return IntStream.range(0, EVENTS_PER_REQUEST)
+                .mapToObj(i -> new NormalizedEvent(
+                        UUID.randomUUID(),
+                        "PRODUCT_VIEW",
+                        null,
+                        "bench-session-" + (i % 50),
+                        1 + (i % 400),
+                        1 + (i % 40),
+                        null,
+                        "/product/" + (1 + (i % 400)),
+                        "bench",
+                        "desktop",
+                        now,
+                        "{}"
+                ))
+                .toList();
+    }
+
+    private record Result(int peakInFlight, double rate) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.projectx.analytics.event.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.dto.CompactEventRequest;
+import com.projectx.analytics.event.dto.EventRequest;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.projectx.analytics.event.repository.EventWriteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("CompactBatchDecoder — Unit Tests")
+class CompactBatchDecoderTest {
+
+    private final CBORMapper cbor = new CBORMapper();
+    private SimpleMeterRegistry meterRegistry;
+    private ValidatorFactory validatorFactory;
+    private EventIngestionService ingestionService;
+    private CompactBatchDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        AnalyticsProperties properties = new AnalyticsProperties();
+        ingestionService = new EventIngestionService(
+                mock(EventWriteRepository.class), new ObjectMapper(), mock(EventIngestionQueue.class),
+                mock(BrandDictionary.class), properties, new Bulkheads(properties, meterRegistry), meterRegistry
+        );
+        decoder = new CompactBatchDecoder(ingestionService, validatorFactory.getValidator());
+    }
+
+    @AfterEach
+    void tearDown() {
+        validatorFactory.close();
+    }
+
+    private InputStream cbor(Object value) throws Exception {
+        return new ByteArrayInputStream(cbor.writeValueAsBytes(value));
+    }
+
+    private static Map<String, Object> event(int type, String sessionId) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("t", type);
+        event.put("s", sessionId);
+        return event;
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.counter("events.ingest.rejected", "reason", reason).count();
+    }
+
+    @Test
+    @DisplayName("should map short keys, type codes, binary ids and epoch millis to EventRequest")
+    void decodeCompactFields() throws Exception {
+        UUID id = UUID.randomUUID();
+        byte[] idBytes = ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+        Map<String, Object> full = event(CompactEventRequest.codeOf("PURCHASE"), "s1");
+        full.put("i", idBytes);
+        full.put("u", 7L);
+        full.put("p", 42);
+        full.put("o", 900L);
+        full.put("w", "/checkout");
+        full.put("r", "backend");
+        full.put("d", "server");
+        full.put("a", 1_748_779_200_000L);
+        full.put("m", Map.of("brandId", 3));
+
+        List<EventRequest> events = decoder.decode(cbor(List.of(full, event(1, "s2"))));
+
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0)).isEqualTo(new EventRequest(
+                id, "PURCHASE", 7L, "s1", 42, 900L, "/checkout", "backend", "server",
+                Instant.parse("2025-06-01T12:00:00Z"), Map.of("brandId", 3)
+        ));
+        assertThat(events.get(1).eventType()).isEqualTo("PRODUCT_VIEW");
+        assertThat(events.get(1).eventId()).isNull();
+    }
+
+    @Test
+    @DisplayName("should reject type codes that no event type has")
+    void rejectUnknownTypeCode() {
+        assertThatThrownBy(() -> decoder.decode(cbor(List.of(event(1, "s1"), event(99, "s2")))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unsupported eventType code: 99");
+        assertThatThrownBy(() -> decoder.decode(cbor(List.of(event(0, "s1")))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(rejected("unsupported_event_type")).isEqualTo(2.0);
+    }
+
+    @Test
+    @DisplayName("should feed decoded events through the regular normalization")
+    void normalizeDecodedEvents() throws Exception {
+        NormalizedEvent view = ingestionService.normalize(decoder.decode(cbor(List.of(event(1, " s1 ")))).get(0));
+        assertThat(view.eventType()).isEqualTo("PRODUCT_VIEW");
+        assertThat(view.sessionId()).isEqualTo("s1");
+    }
+
+    @Test
+    @DisplayName("should reject events that fail EventRequest constraints")
+    void rejectInvalidEvent() throws Exception {
+        Map<String, Object> noSession = new LinkedHashMap<>();
+        noSession.put("t", 1);
+
+        assertThatThrownBy(() -> decoder.decode(cbor(List.of(noSession))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("sessionId");
+        assertThat(rejected("invalid_fields")).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should reject empty and oversized batches")
+    void rejectBatchSize() throws Exception {
+        List<Map<String, Object>> oversized = new ArrayList<>();
+        for (int i = 0; i <= CompactBatchDecoder.MAX_EVENTS; i++) {
+            oversized.add(event(1, "s" + i));
+        }
+
+        assertThatThrownBy(() -> decoder.decode(cbor(List.of())))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("at least one event");
+        assertThatThrownBy(() -> decoder.decode(cbor(oversized)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("exceeds 500");
+    }
+
+    @Test
+    @DisplayName("should reject a body that is not CBOR")
+    void rejectMalformedBody() {
+        InputStream json = new ByteArrayInputStream("[{\"t\":1}]".getBytes());
+
+        assertThatThrownBy(() -> decoder.decode(json))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Malformed CBOR");
+        assertThat(rejected("malformed_cbor")).isEqualTo(1.0);
+    }
+}
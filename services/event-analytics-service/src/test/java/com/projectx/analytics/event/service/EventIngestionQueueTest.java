@@ -0,0 +1,241 @@
+package com.projectx.analytics.event.service;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.projectx.analytics.event.repository.EventWriteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DisplayName("EventIngestionQueue — Unit Tests")
+class EventIngestionQueueTest {
+
+    private EventWriteRepository repository;
+    private AnalyticsProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private EventIngestionQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(EventWriteRepository.class);
+        properties = new AnalyticsProperties();
+        properties.getIngestion().setAsyncEnabled(true);
+        properties.getIngestion().setQueueCapacity(100);
+        properties.getIngestion().setBatchSize(10);
+        properties.getIngestion().setFlushIntervalMs(50);
+        properties.getIngestion().setWriterThreads(1);
+        properties.getIngestion().setFlushRetryBackoffMs(10);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    private NormalizedEvent event() {
+        return new NormalizedEvent(
+                UUID.randomUUID(), "PRODUCT_VIEW", 1L, "sess-1", 42, null, null,
+                null, null, null, Instant.now(), "{}"
+        );
+    }
+
+    private List<NormalizedEvent> events(int count) {
+        return IntStream.range(0, count).mapToObj(i -> event()).toList();
+    }
+
+    @Test
+    @DisplayName("should stay disabled and hand every event back when async mode is off")
+    void disabledReturnsEverything() {
+        properties.getIngestion().setAsyncEnabled(false);
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+
+        List<NormalizedEvent> batch = events(3);
+
+        assertThat(queue.isEnabled()).isFalse();
+        assertThat(queue.offerAll(batch)).isSameAs(batch);
+    }
+
+    @Test
+    @DisplayName("should flush in batches bounded by batch size")
+    void flushBySize() {
+        List<Integer> sizes = new ArrayList<>();
+        when(repository.insertEvents(anyList())).thenAnswer(inv -> {
+            List<?> batch = inv.getArgument(0);
+            synchronized (sizes) {
+                sizes.add(batch.size());
+            }
+            return batch.size();
+        });
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+
+        assertThat(queue.offerAll(events(25))).isEmpty();
+        queue.stop();
+
+        verify(repository, atLeast(3)).insertEvents(anyList());
+        synchronized (sizes) {
+            assertThat(sizes).allSatisfy(size -> assertThat(size).isLessThanOrEqualTo(10));
+            assertThat(sizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(25);
+        }
+    }
+
+    @Test
+    @DisplayName("should flush a partial batch once the flush interval elapses")
+    void flushByInterval() {
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+
+        queue.offerAll(List.of(event()));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NormalizedEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository, timeout(2_000)).insertEvents(captor.capture());
+        assertThat(captor.getValue()).hasSize(1);
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("should hand events back to the caller once stopped")
+    void rejectAfterStop() {
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+        queue.stop();
+
+        assertThat(queue.isEnabled()).isFalse();
+        assertThat(queue.offerAll(events(5))).hasSize(5);
+    }
+
+    @Test
+    @DisplayName("should flush everything still queued on stop")
+    void flushOnStop() {
+        properties.getIngestion().setFlushIntervalMs(60_000);
+        properties.getIngestion().setBatchSize(1_000);
+        List<Integer> written = new ArrayList<>();
+        when(repository.insertEvents(anyList())).thenAnswer(inv -> {
+            List<?> batch = inv.getArgument(0);
+            synchronized (written) {
+                written.add(batch.size());
+            }
+            return batch.size();
+        });
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+
+        queue.offerAll(events(7));
+        queue.stop();
+
+        synchronized (written) {
+            assertThat(written.stream().mapToInt(Integer::intValue).sum()).isEqualTo(7);
+        }
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("should flush a batch a writer is still collecting when stopped")
+    void flushCollectingBatchOnStop() {
+        properties.getIngestion().setFlushIntervalMs(60_000);
+        properties.getIngestion().setBatchSize(1_000);
+        properties.getIngestion().setShutdownTimeoutMs(5_000);
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+
+        queue.offerAll(events(7));
+        await(() -> queue.size() == 0);
+        long started = System.nanoTime();
+        queue.stop();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NormalizedEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository).insertEvents(captor.capture());
+        assertThat(captor.getValue()).hasSize(7);
+        assertThat(System.nanoTime() - started).isLessThan(TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    @DisplayName("should run writers on virtual threads when spring.threads.virtual.enabled is set")
+    void virtualWriters() {
+        List<Thread> writerThreads = new ArrayList<>();
+        when(repository.insertEvents(anyList())).thenAnswer(inv -> {
+            synchronized (writerThreads) {
+                writerThreads.add(Thread.currentThread());
+            }
+            return ((List<?>) inv.getArgument(0)).size();
+        });
+        queue = new EventIngestionQueue(
+                repository,
+                properties,
+                new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true"),
+                meterRegistry
+        );
+        queue.start();
+
+        queue.offerAll(List.of(event()));
+
+        verify(repository, timeout(2_000)).insertEvents(anyList());
+        synchronized (writerThreads) {
+            assertThat(writerThreads).allSatisfy(thread -> {
+                assertThat(thread.isVirtual()).isTrue();
+                assertThat(thread.getName()).startsWith("events-writer-");
+            });
+        }
+    }
+
+    @Test
+    @DisplayName("should retry a failed flush before giving up on the batch")
+    void retryFailedFlush() {
+        when(repository.insertEvents(anyList()))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+
+        queue.offerAll(events(3));
+        queue.stop();
+
+        verify(repository, times(2)).insertEvents(anyList());
+        assertThat(queue.droppedEvents()).isZero();
+    }
+
+    @Test
+    @DisplayName("should count events as dropped once every flush attempt fails")
+    void countDroppedOnFailure() {
+        when(repository.insertEvents(anyList())).thenThrow(new IllegalStateException("db down"));
+        queue = new EventIngestionQueue(repository, properties, new MockEnvironment(), meterRegistry);
+        queue.start();
+
+        queue.offerAll(events(3));
+        queue.stop();
+
+        verify(repository, times(3)).insertEvents(anyList());
+        assertThat(queue.droppedEvents()).isEqualTo(3);
+        assertThat(meterRegistry.counter("events.ingest.dropped").count()).isEqualTo(3.0);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.projectx.analytics.event.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
 import com.projectx.analytics.event.dto.EventRequest;
 import com.projectx.analytics.event.model.NormalizedEvent;
 import com.projectx.analytics.event.repository.EventWriteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -13,6 +17,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
 
 import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -25,12 +30,23 @@ import static org.mockito.Mockito.*;
 class EventIngestionServiceTest {
 
     private EventWriteRepository repository;
+    private EventIngestionQueue ingestionQueue;
+    private BrandDictionary brandDictionary;
+    private SimpleMeterRegistry meterRegistry;
+    private AnalyticsProperties properties;
     private EventIngestionService service;
 
     @BeforeEach
     void setUp() {
         repository = mock(EventWriteRepository.class);
-        service = new EventIngestionService(repository, new ObjectMapper());
+        ingestionQueue = mock(EventIngestionQueue.class);
+        brandDictionary = mock(BrandDictionary.class);
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new AnalyticsProperties();
+        service = new EventIngestionService(
+                repository, new ObjectMapper(), ingestionQueue, brandDictionary,
+                properties, new Bulkheads(properties, meterRegistry), meterRegistry
+        );
     }
 
     // ========== Helpers ==========
@@ -139,6 +155,46 @@ class EventIngestionServiceTest {
             assertThat(ts).isBeforeOrEqualTo(Instant.now());
         }
 
+        @Test
+        @DisplayName("should resolve occurredAt to the first-seen time for every client eventId")
+        void clientEventId() {
+            UUID id = UUID.randomUUID();
+            when(repository.insertEvents(anyList())).thenReturn(1);
+
+            service.ingestSingle(new EventRequest(
+                    id, "PRODUCT_VIEW", null, "sess-1", null, null, null, null, null, null, null
+            ));
+            service.ingestSingle(new EventRequest(
+                    id, "PRODUCT_VIEW", null, "sess-1", null, null, null, null, null,
+                    Instant.parse("2025-06-01T12:00:00Z"), null
+            ));
+            service.ingestSingle(validRequest("PRODUCT_VIEW"));
+
+            @SuppressWarnings("unchecked")
+            ArgumentCaptor<List<NormalizedEvent>> captor = ArgumentCaptor.forClass(List.class);
+            verify(repository, times(3)).insertEvents(captor.capture());
+            assertThat(captor.getAllValues())
+                    .extracting(events -> events.get(0).clientEventId())
+                    .containsExactly(true, true, false);
+        }
+
+        @Test
+        @DisplayName("should reject occurredAt beyond the allowed clock skew")
+        void rejectFutureOccurredAt() {
+            Instant future = Instant.now().plusSeconds(properties.getIngestion().getMaxFutureSkewSeconds() + 60);
+            EventRequest req = new EventRequest(
+                    null, "PRODUCT_VIEW", null, "sess-1", null, null, null, null, null, future, null
+            );
+
+            assertThatThrownBy(() -> service.ingestSingle(req))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("occurredAt");
+
+            verifyNoInteractions(repository);
+            assertThat(meterRegistry.counter("events.ingest.rejected", "reason", "occurred_at_in_future").count())
+                    .isEqualTo(1.0);
+        }
+
         @ParameterizedTest
         @ValueSource(strings = {
                 "PRODUCT_VIEW", "ADD_TO_CART", "REMOVE_FROM_CART",
@@ -169,7 +225,16 @@ class EventIngestionServiceTest {
         }
 
         @ParameterizedTest
-        @ValueSource(strings = {"INVALID", "PAGE_VIEW", "CLICK", "", "  "})
+        @ValueSource(strings = {" product_view ", "Product_View", "\tPRODUCT_VIEW\n"})
+        @DisplayName("should match eventType ignoring case and surrounding whitespace")
+        void matchEventTypeLeniently(String eventType) {
+            NormalizedEvent event = service.normalize(validRequest(eventType));
+
+            assertThat(event.eventType()).isSameAs("PRODUCT_VIEW");
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"INVALID", "PAGE_VIEW", "CLICK", "", "  ", "PRODUCT_VIEWS", "PRODUCT VIEW"})
         @DisplayName("should reject unsupported event types")
         void rejectUnsupportedEventTypes(String eventType) {
             assertThatThrownBy(() -> service.ingestSingle(validRequest(eventType)))
@@ -214,6 +279,117 @@ class EventIngestionServiceTest {
         }
     }
 
+    // ========== metadata ==========
+
+    @Nested
+    @DisplayName("metadata serialization")
+    class MetadataSerialization {
+
+        private Map<String, Object> roundTrip(Map<String, Object> metadata) throws Exception {
+            EventRequest request = new EventRequest(
+                    null, "SEARCH", null, "s1", null, null, null, null, null, null, metadata
+            );
+            String json = service.normalize(request).metadataJson();
+            return new ObjectMapper().readValue(json, new TypeReference<>() {});
+        }
+
+        @Test
+        @DisplayName("should write flat values as JSON that reads back to the same map")
+        void flatValues() throws Exception {
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            metadata.put("query", "say \"hi\"\\\n\u0001 — ok");
+            metadata.put("position", 3);
+            metadata.put("orderTotal", 12_345_678_901L);
+            metadata.put("score", 0.25);
+            metadata.put("fromAd", true);
+            metadata.put("coupon", null);
+
+            assertThat(roundTrip(metadata)).isEqualTo(metadata);
+        }
+
+        @Test
+        @DisplayName("should fall back to Jackson for nested values")
+        void nestedValues() throws Exception {
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            metadata.put("filters", Map.of("size", List.of(41, 42)));
+            metadata.put("ratio", Double.NaN);
+
+            assertThat(roundTrip(metadata))
+                    .containsEntry("filters", Map.of("size", List.of(41, 42)))
+                    .containsEntry("ratio", "NaN");
+        }
+    }
+
+    // ========== brand resolution ==========
+
+    @Nested
+    @DisplayName("brand resolution")
+    class BrandResolution {
+
+        private EventRequest withMetadata(Integer productId, Map<String, Object> metadata) {
+            return new EventRequest(
+                    null, "BRAND_CLICK", 1L, "sess-1", productId, null,
+                    null, null, null, Instant.now(), metadata
+            );
+        }
+
+        @Test
+        @DisplayName("should take the brand of the product from the dictionary")
+        void productBrandWins() {
+            when(brandDictionary.brandOf(42)).thenReturn(7);
+
+            NormalizedEvent event = service.normalize(withMetadata(42, Map.of("brandId", "9")));
+
+            assertThat(event.brandId()).isEqualTo(7);
+        }
+
+        @Test
+        @DisplayName("should fall back to a numeric metadata brandId")
+        void metadataFallback() {
+            assertThat(service.normalize(withMetadata(null, Map.of("brandId", "15"))).brandId()).isEqualTo(15);
+            assertThat(service.normalize(withMetadata(99, Map.of("brandId", 16))).brandId()).isEqualTo(16);
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"", "-3", "12a", "1.5", "99999999999"})
+        @DisplayName("should leave brandId empty for values the SQL pattern would not accept")
+        void rejectsNonNumeric(String value) {
+            assertThat(service.normalize(withMetadata(null, Map.of("brandId", value))).brandId()).isNull();
+        }
+    }
+
+    // ========== metrics ==========
+
+    @Nested
+    @DisplayName("metrics")
+    class Metrics {
+
+        @Test
+        @DisplayName("should count normalized events by type and record the batch size")
+        void countsNormalized() {
+            when(repository.insertEvents(anyList())).thenReturn(2);
+
+            service.ingestBatch(List.of(validRequest("PRODUCT_VIEW"), validRequest("purchase")));
+
+            assertThat(meterRegistry.counter("events.ingest.normalized", "event_type", "PRODUCT_VIEW").count())
+                    .isEqualTo(1.0);
+            assertThat(meterRegistry.counter("events.ingest.normalized", "event_type", "PURCHASE").count())
+                    .isEqualTo(1.0);
+            assertThat(meterRegistry.summary("events.ingest.batch.size").totalAmount()).isEqualTo(2.0);
+        }
+
+        @Test
+        @DisplayName("should count rejected events by reason")
+        void countsRejected() {
+            assertThatThrownBy(() -> service.ingestSingle(validRequest("CLICK")))
+                    .isInstanceOf(IllegalArgumentException.class);
+
+            assertThat(meterRegistry.counter("events.ingest.rejected", "reason", "unsupported_event_type").count())
+                    .isEqualTo(1.0);
+            assertThat(meterRegistry.find("events.ingest.batch.size").summary().count()).isZero();
+        }
+    }
+
     // ========== ingestBatch ==========
 
     @Nested
@@ -241,6 +417,28 @@ class EventIngestionServiceTest {
             assertThat(captor.getValue()).hasSize(3);
         }
 
+        @Test
+        @DisplayName("should share one receive time and keep each event's metadata separate")
+        void batchSharesReceiveTime() {
+            when(repository.insertEvents(anyList())).thenReturn(2);
+            List<EventRequest> batch = List.of(
+                    new EventRequest(null, "PRODUCT_VIEW", null, "s1", 1, null, null, null, null, null,
+                            Map.of("position", 1, "query", "long query text")),
+                    new EventRequest(null, "PRODUCT_VIEW", null, "s1", 2, null, null, null, null, null,
+                            Map.of("position", 2))
+            );
+
+            service.ingestBatch(batch);
+
+            @SuppressWarnings("unchecked")
+            ArgumentCaptor<List<NormalizedEvent>> captor = ArgumentCaptor.forClass(List.class);
+            verify(repository).insertEvents(captor.capture());
+            List<NormalizedEvent> events = captor.getValue();
+            assertThat(events.get(0).occurredAt()).isSameAs(events.get(1).occurredAt());
+            assertThat(events.get(0).metadataJson()).contains("long query text");
+            assertThat(events.get(1).metadataJson()).isEqualTo("{\"position\":2}");
+        }
+
         @Test
         @DisplayName("should handle empty batch")
         void emptyBatch() {
@@ -265,4 +463,59 @@ class EventIngestionServiceTest {
             verify(repository, never()).insertEvents(anyList());
         }
     }
+
+    // ========== async queue ==========
+
+    @Nested
+    @DisplayName("with async queue enabled")
+    class AsyncQueue {
+
+        @BeforeEach
+        void enableQueue() {
+            when(ingestionQueue.isEnabled()).thenReturn(true);
+        }
+
+        @Test
+        @DisplayName("should enqueue instead of writing on the request thread")
+        void enqueueSingle() {
+            when(ingestionQueue.offerAll(anyList())).thenReturn(List.of());
+
+            int accepted = service.ingestSingle(validRequest("PRODUCT_VIEW"));
+
+            assertThat(accepted).isEqualTo(1);
+            verify(ingestionQueue).offerAll(anyList());
+            verify(repository, never()).insertEvents(anyList());
+        }
+
+        @Test
+        @DisplayName("should write overflow synchronously when the queue is full")
+        void writeOverflowSynchronously() {
+            when(ingestionQueue.offerAll(anyList()))
+                    .thenAnswer(inv -> ((List<?>) inv.getArgument(0)).subList(1, 3));
+            when(repository.insertEvents(anyList())).thenReturn(2);
+
+            int accepted = service.ingestBatch(List.of(
+                    validRequest("PRODUCT_VIEW"),
+                    validRequest("ADD_TO_CART"),
+                    validRequest("PURCHASE")
+            ));
+
+            assertThat(accepted).isEqualTo(3);
+
+            @SuppressWarnings("unchecked")
+            ArgumentCaptor<List<NormalizedEvent>> captor = ArgumentCaptor.forClass(List.class);
+            verify(repository).insertEvents(captor.capture());
+            assertThat(captor.getValue()).extracting(NormalizedEvent::eventType)
+                    .containsExactly("ADD_TO_CART", "PURCHASE");
+        }
+
+        @Test
+        @DisplayName("should reject invalid events before anything is enqueued")
+        void rejectBeforeEnqueue() {
+            assertThatThrownBy(() -> service.ingestSingle(validRequest("INVALID")))
+                    .isInstanceOf(IllegalArgumentException.class);
+
+            verify(ingestionQueue, never()).offerAll(anyList());
+        }
+    }
 }
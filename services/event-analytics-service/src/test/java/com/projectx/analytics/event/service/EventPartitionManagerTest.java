@@ -0,0 +1,180 @@
+package com.projectx.analytics.event.service;
+
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.repository.EventPartitionRepository;
+import com.projectx.analytics.event.repository.EventWriteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("EventPartitionManager — Unit Tests")
+class EventPartitionManagerTest {
+
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+    private EventPartitionRepository repository;
+    private EventWriteRepository eventWriteRepository;
+    private AnalyticsProperties properties;
+    private EventPartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(EventPartitionRepository.class);
+        eventWriteRepository = mock(EventWriteRepository.class);
+        properties = new AnalyticsProperties();
+        properties.getPartitions().setEnabled(true);
+        properties.getPartitions().setPremakeDays(2);
+        manager = new EventPartitionManager(repository, eventWriteRepository, properties);
+    }
+
+    @Test
+    @DisplayName("should create today and the premade days that are missing")
+    void createsMissingDays() {
+        when(repository.findDailyPartitions()).thenReturn(List.of(today.minusDays(1), today));
+
+        manager.maintain();
+
+        verify(repository).createDailyPartition(today.plusDays(1));
+        verify(repository).createDailyPartition(today.plusDays(2));
+        verify(repository, times(2)).createDailyPartition(any());
+        verify(repository, never()).dropDailyPartition(any());
+    }
+
+    @Test
+    @DisplayName("should drop partitions older than the retention window")
+    void dropsExpired() {
+        properties.getPartitions().setRetentionDays(30);
+        when(repository.isFullyAggregated(any())).thenReturn(true);
+        when(repository.findDailyPartitions()).thenReturn(List.of(
+                today.minusDays(31), today.minusDays(30), today, today.plusDays(1), today.plusDays(2)
+        ));
+
+        manager.maintain();
+
+        verify(repository).dropDailyPartition(today.minusDays(31));
+        verify(repository, times(1)).dropDailyPartition(any());
+        verify(repository, never()).createDailyPartition(any());
+    }
+
+    @Test
+    @DisplayName("should keep expired partitions that are not aggregated yet")
+    void keepsUnaggregated() {
+        properties.getPartitions().setRetentionDays(30);
+        when(repository.findDailyPartitions()).thenReturn(List.of(today.minusDays(40), today));
+
+        manager.maintain();
+
+        verify(repository).isFullyAggregated(today.minusDays(40));
+        verify(repository, never()).dropDailyPartition(any());
+    }
+
+    @Test
+    @DisplayName("should keep the recompute lookback even with a shorter retention")
+    void keepsRecomputeLookback() {
+        properties.getPartitions().setRetentionDays(1);
+        properties.getAggregation().setLookbackHours(72);
+        when(repository.isFullyAggregated(any())).thenReturn(true);
+        when(repository.findDailyPartitions()).thenReturn(List.of(today.minusDays(2), today));
+
+        manager.maintain();
+
+        verify(repository, never()).dropDailyPartition(any());
+    }
+
+    @Test
+    @DisplayName("should archive an expired partition as gzip NDJSON before dropping it")
+    void archivesBeforeDrop(@TempDir Path dir) throws IOException {
+        LocalDate expired = today.minusDays(40);
+        properties.getPartitions().setRetentionDays(30);
+        properties.getPartitions().setArchiveEnabled(true);
+        properties.getPartitions().setArchiveDir(dir.toString());
+        when(repository.isFullyAggregated(any())).thenReturn(true);
+        when(repository.findDailyPartitions()).thenReturn(List.of(expired, today));
+        when(repository.exportDailyPartition(eq(expired), any())).thenAnswer(invocation -> {
+            Writer out = invocation.getArgument(1);
+            out.write("{\"id\":\"a\"}\n{\"id\":\"b\"}\n");
+            return 2L;
+        });
+
+        manager.maintain();
+
+        Path archive = dir.resolve(EventPartitionRepository.partitionName(expired) + ".ndjson.gz");
+        try (var in = new GZIPInputStream(Files.newInputStream(archive))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                    .isEqualTo("{\"id\":\"a\"}\n{\"id\":\"b\"}\n");
+        }
+        InOrder order = inOrder(repository);
+        order.verify(repository).exportDailyPartition(eq(expired), any());
+        order.verify(repository).dropDailyPartition(expired);
+    }
+
+    @Test
+    @DisplayName("should not drop a partition whose archive failed")
+    void keepsPartitionWhenArchiveFails(@TempDir Path dir) {
+        LocalDate expired = today.minusDays(40);
+        properties.getPartitions().setRetentionDays(30);
+        properties.getPartitions().setArchiveEnabled(true);
+        properties.getPartitions().setArchiveDir(dir.toString());
+        when(repository.isFullyAggregated(any())).thenReturn(true);
+        when(repository.findDailyPartitions()).thenReturn(List.of(expired, today));
+        when(repository.exportDailyPartition(eq(expired), any()))
+                .thenThrow(new IllegalStateException("connection reset"));
+
+        manager.maintain();
+
+        verify(repository, never()).dropDailyPartition(any());
+        assertThat(dir.resolve(EventPartitionRepository.partitionName(expired) + ".ndjson.gz")).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("should keep going when one partition cannot be created")
+    void continuesAfterFailure() {
+        when(repository.findDailyPartitions()).thenReturn(List.of());
+        doThrow(new IllegalStateException("lock timeout")).when(repository).createDailyPartition(today);
+
+        manager.maintain();
+
+        verify(repository).createDailyPartition(today.plusDays(2));
+    }
+
+    @Test
+    @DisplayName("should leave partitions alone when disabled")
+    void disabled() {
+        properties.getPartitions().setEnabled(false);
+
+        manager.maintain();
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    @DisplayName("should expire first-seen event ids past their retention even without partitioning")
+    void expiresEventIds() {
+        properties.getPartitions().setEnabled(false);
+        properties.getIngestion().setEventIdRetentionHours(48);
+
+        manager.maintain();
+
+        verify(eventWriteRepository).deleteEventIdsBefore(argThat(cutoff ->
+                Math.abs(cutoff.until(Instant.now().minus(48, ChronoUnit.HOURS), ChronoUnit.SECONDS)) < 5));
+    }
+}
@@ -0,0 +1,169 @@
+package com.projectx.analytics.event.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.projectx.analytics.common.Bulkheads;
+import com.projectx.analytics.config.AnalyticsProperties;
+import com.projectx.analytics.event.dto.StreamIngestionResponse;
+import com.projectx.analytics.event.model.NormalizedEvent;
+import com.projectx.analytics.event.repository.EventWriteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DisplayName("EventStreamIngestionService — Unit Tests")
+class EventStreamIngestionServiceTest {
+
+    private EventWriteRepository repository;
+    private AnalyticsProperties properties;
+    private ValidatorFactory validatorFactory;
+    private EventStreamIngestionService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(EventWriteRepository.class);
+        when(repository.insertEvents(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+        properties = new AnalyticsProperties();
+        properties.getIngestion().setBatchSize(2);
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        Bulkheads bulkheads = new Bulkheads(properties, new SimpleMeterRegistry());
+        EventIngestionService ingestionService = new EventIngestionService(
+                repository, objectMapper, mock(EventIngestionQueue.class), mock(BrandDictionary.class),
+                properties, bulkheads, new SimpleMeterRegistry()
+        );
+        service = new EventStreamIngestionService(
+                ingestionService, repository, objectMapper, validatorFactory.getValidator(), properties, bulkheads
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        validatorFactory.close();
+    }
+
+    private InputStream ndjson(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("should write valid lines in rolling chunks of batch size")
+    void writeInRollingChunks() throws Exception {
+        StreamIngestionResponse response = service.ingest(ndjson("""
+                {"eventType":"PRODUCT_VIEW","sessionId":"s1","productId":1}
+                {"eventType":"add_to_cart","sessionId":"s1","productId":1}
+                {"eventType":"PURCHASE","sessionId":"s1","productId":1,"occurredAt":"2025-06-01T12:00:00Z"}
+                """));
+
+        assertThat(response.lines()).isEqualTo(3);
+        assertThat(response.accepted()).isEqualTo(3);
+        assertThat(response.rejected()).isZero();
+        assertThat(response.committedLines()).isEqualTo(3);
+        assertThat(response.error()).isNull();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NormalizedEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(2)).insertEvents(captor.capture());
+        assertThat(captor.getAllValues()).extracting(List::size).containsExactly(2, 1);
+        assertThat(captor.getAllValues().get(0).get(1).eventType()).isEqualTo("ADD_TO_CART");
+    }
+
+    @Test
+    @DisplayName("should report rejected lines with their line numbers and keep going")
+    void reportRejectedLines() throws Exception {
+        StreamIngestionResponse response = service.ingest(ndjson("""
+                {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                {not json}
+                {"eventType":"CLICK","sessionId":"s1"}
+
+                {"eventType":"PRODUCT_VIEW"}
+                {"eventType":"SEARCH","sessionId":"s2"}
+                """));
+
+        assertThat(response.lines()).isEqualTo(6);
+        assertThat(response.accepted()).isEqualTo(2);
+        assertThat(response.rejected()).isEqualTo(3);
+        assertThat(response.rejectedLines())
+                .extracting(line -> line.line())
+                .containsExactly(2L, 3L, 5L);
+        assertThat(response.rejectedLines().get(0).message()).startsWith("Malformed JSON");
+        assertThat(response.rejectedLines().get(1).message()).contains("Unsupported eventType");
+        assertThat(response.rejectedLines().get(2).message()).contains("sessionId");
+    }
+
+    @Test
+    @DisplayName("should stop at a failed chunk and report the lines committed before it")
+    void stopAtFailedChunk() throws Exception {
+        when(repository.insertEvents(anyList()))
+                .thenReturn(2)
+                .thenThrow(new IllegalStateException("db down"));
+
+        StreamIngestionResponse response = service.ingest(ndjson("""
+                {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                {"eventType":"PRODUCT_VIEW","sessionId":"s1"}
+                """));
+
+        assertThat(response.lines()).isEqualTo(4);
+        assertThat(response.accepted()).isEqualTo(2);
+        assertThat(response.committedLines()).isEqualTo(2);
+        assertThat(response.error()).contains("after line 2");
+        verify(repository, times(2)).insertEvents(anyList());
+    }
+
+    @Test
+    @DisplayName("should count rows skipped by ON CONFLICT as duplicates")
+    void countDuplicates() throws Exception {
+        when(repository.insertEvents(anyList())).thenReturn(1);
+
+        StreamIngestionResponse response = service.ingest(ndjson("""
+                {"eventId":"11111111-2222-3333-4444-555555555555","eventType":"PURCHASE","sessionId":"s1"}
+                {"eventId":"11111111-2222-3333-4444-555555555555","eventType":"PURCHASE","sessionId":"s1"}
+                """));
+
+        assertThat(response.accepted()).isEqualTo(1);
+        assertThat(response.duplicates()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should reject oversized lines without buffering them")
+    void rejectOversizedLine() throws Exception {
+        String huge = "{\"eventType\":\"SEARCH\",\"sessionId\":\"s1\",\"metadata\":{\"q\":\""
+                + "x".repeat(EventStreamIngestionService.MAX_LINE_CHARS) + "\"}}";
+
+        StreamIngestionResponse response = service.ingest(ndjson(huge + "\r\n"
+                + "{\"eventType\":\"SEARCH\",\"sessionId\":\"s1\"}\r\n"));
+
+        assertThat(response.rejected()).isEqualTo(1);
+        assertThat(response.rejectedLines().get(0).message()).contains("exceeds");
+        assertThat(response.accepted()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should cap the number of reported rejections")
+    void capReportedRejections() throws Exception {
+        String body = "garbage\n".repeat(EventStreamIngestionService.MAX_REPORTED_REJECTIONS + 20);
+
+        StreamIngestionResponse response = service.ingest(ndjson(body));
+
+        assertThat(response.rejected()).isEqualTo(EventStreamIngestionService.MAX_REPORTED_REJECTIONS + 20);
+        assertThat(response.rejectedLines()).hasSize(EventStreamIngestionService.MAX_REPORTED_REJECTIONS);
+        verify(repository, never()).insertEvents(anyList());
+    }
+}